@@ -19,10 +19,13 @@ import org.junit.Test;
 import org.junit.runner.RunWith;
 
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileReader;
 import java.io.IOException;
+import java.io.InputStreamReader;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.zip.GZIPInputStream;
 
 /**
  * Created by finch on 22/07/16.
@@ -105,7 +108,7 @@ public class BatchManagerTest {
         List<BackgroundLocation> locations = null;
         BatchManager batchManager = new BatchManager(ctx);
         try {
-            File batchFile = batchManager.createBatch(1000L);
+            File batchFile = batchManager.createBatch(1000L, 0);
             JsonReader reader = new JsonReader(new FileReader(batchFile));
             locations = readLocationsArray(reader);
         } catch (Exception e) {
@@ -163,7 +166,7 @@ public class BatchManagerTest {
         Assert.assertEquals(Long.valueOf(49), dao.locationsForSyncCount(1000L));
         BatchManager batchManager = new BatchManager(ctx);
         try {
-            batchManager.createBatch(1000L);
+            batchManager.createBatch(1000L, 0);
             batchManager.setBatchCompleted(1000L);
             Assert.assertEquals(0, dao.getValidLocations().size());
             Assert.assertEquals(Long.valueOf(0), dao.locationsForSyncCount(2000L));
@@ -171,4 +174,35 @@ public class BatchManagerTest {
             Assert.fail(e.getMessage());
         }
     }
+
+    @Test
+    public void createCompressedBatch() {
+        Context ctx = InstrumentationRegistry.getTargetContext();
+        SQLiteDatabase db = new SQLiteOpenHelper(ctx).getWritableDatabase();
+        SQLiteLocationDAO dao = new SQLiteLocationDAO(db);
+
+        for (int i = 1; i < 100; i++) {
+            BackgroundLocation location = new BackgroundLocation();
+            location.setTime(1000 + i);
+            location.setLatitude(40.21 + i);
+            location.setLongitude(23.45 + i);
+            location.setProvider("test");
+            location.setLocationProvider(1);
+            dao.persistLocation(location);
+        }
+
+        List<BackgroundLocation> locations = null;
+        BatchManager batchManager = new BatchManager(ctx);
+        try {
+            File batchFile = batchManager.createBatch(2000L, 0, true);
+            JsonReader reader = new JsonReader(new InputStreamReader(new GZIPInputStream(new FileInputStream(batchFile)), "UTF-8"));
+            locations = readLocationsArray(reader);
+        } catch (Exception e) {
+            Assert.fail(e.getMessage());
+        }
+
+        Assert.assertEquals(99, locations.size());
+        Assert.assertEquals(1001, locations.get(0).getTime());
+        Assert.assertEquals(40.21 + 99, locations.get(98).getLatitude(), 0);
+    }
 }
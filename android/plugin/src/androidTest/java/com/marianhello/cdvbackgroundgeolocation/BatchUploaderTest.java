@@ -0,0 +1,239 @@
+package com.marianhello.cdvbackgroundgeolocation;
+
+import android.content.Context;
+import android.database.sqlite.SQLiteDatabase;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import com.marianhello.bgloc.Config;
+import com.marianhello.bgloc.data.BackgroundLocation;
+import com.marianhello.bgloc.data.sqlite.SQLiteLocationDAO;
+import com.marianhello.bgloc.data.sqlite.SQLiteOpenHelper;
+import com.marianhello.bgloc.sync.BatchManager;
+import com.marianhello.bgloc.sync.BatchUploader;
+
+import junit.framework.Assert;
+
+import org.json.JSONArray;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+@RunWith(AndroidJUnit4.class)
+@SmallTest
+public class BatchUploaderTest {
+    private LocalHttpServer server;
+    private SQLiteLocationDAO dao;
+    private BatchManager batchManager;
+
+    @Before
+    public void setUp() throws IOException {
+        Context ctx = InstrumentationRegistry.getTargetContext();
+        ctx.deleteDatabase(SQLiteOpenHelper.SQLITE_DATABASE_NAME);
+        SQLiteDatabase db = new SQLiteOpenHelper(ctx).getWritableDatabase();
+        dao = new SQLiteLocationDAO(db);
+        batchManager = new BatchManager(ctx);
+        server = new LocalHttpServer();
+    }
+
+    @After
+    public void stopServer() throws IOException {
+        server.close();
+    }
+
+    private void persistLocations(int count) {
+        for (int i = 0; i < count; i++) {
+            BackgroundLocation location = new BackgroundLocation();
+            location.setTime(1000L + i);
+            location.setLatitude(40.21 + i);
+            location.setLongitude(23.45 + i);
+            location.setProvider("test");
+            location.setLocationProvider(1);
+            dao.persistLocation(location);
+        }
+    }
+
+    private Config createConfig() {
+        Config config = new Config();
+        config.setUrl(server.getUrl());
+        return config;
+    }
+
+    private static List<Long> postedTimes(List<LocalHttpServer.Request> requests) throws Exception {
+        List<Long> times = new ArrayList<Long>();
+        for (LocalHttpServer.Request request : requests) {
+            JSONArray locations = new JSONArray(new String(request.body, "UTF-8"));
+            for (int i = 0; i < locations.length(); i++) {
+                times.add(locations.getJSONObject(i).getLong("time"));
+            }
+        }
+        return times;
+    }
+
+    @Test
+    public void testNothingToSyncBelowThreshold() {
+        persistLocations(5);
+        BatchUploader uploader = new BatchUploader(batchManager);
+        Assert.assertNull(uploader.prepare(10, 3));
+        Assert.assertNull(batchManager.getPendingBatchId());
+    }
+
+    @Test
+    public void testUploadChunksWithSequenceHeaders() throws Exception {
+        persistLocations(10);
+        BatchUploader uploader = new BatchUploader(batchManager);
+
+        Long batchId = uploader.prepare(1, 3);
+        Assert.assertNotNull(batchId);
+        Assert.assertEquals(4, batchManager.getChunkCount(batchId));
+        Assert.assertTrue(uploader.upload(batchId, createConfig(), null));
+
+        Assert.assertEquals(4, server.requests.size());
+        for (int seq = 0; seq < 4; seq++) {
+            LocalHttpServer.Request request = server.requests.get(seq);
+            Assert.assertEquals(String.valueOf(batchId), request.headers.get("x-batch-id"));
+            Assert.assertEquals(String.valueOf(seq), request.headers.get("x-batch-seq"));
+            Assert.assertEquals("4", request.headers.get("x-batch-seq-count"));
+        }
+        List<Long> times = postedTimes(server.requests);
+        Assert.assertEquals(10, times.size());
+        for (int i = 0; i < 10; i++) {
+            Assert.assertEquals(Long.valueOf(1000L + i), times.get(i));
+        }
+
+        Assert.assertNull(batchManager.getPendingBatchId());
+        Assert.assertEquals(0, batchManager.getChunkCount(batchId));
+        Assert.assertEquals(0, dao.getValidLocations().size());
+    }
+
+    @Test
+    public void testRetryResumesFromLastAcknowledgedChunk() throws Exception {
+        persistLocations(10);
+        final AtomicBoolean failed = new AtomicBoolean(false);
+        server.setResponder(new LocalHttpServer.Responder() {
+            @Override
+            public int respond(LocalHttpServer.Request request) {
+                if ("2".equals(request.headers.get("x-batch-seq")) && failed.compareAndSet(false, true)) {
+                    return 503;
+                }
+                return 200;
+            }
+        });
+        BatchUploader uploader = new BatchUploader(batchManager);
+        Config config = createConfig();
+
+        Long batchId = uploader.prepare(1, 3);
+        Assert.assertFalse(uploader.upload(batchId, config, null));
+        Assert.assertEquals(3, server.requests.size());
+        Assert.assertEquals(Arrays.asList(2, 3), batchManager.getPendingChunks(batchId));
+        Assert.assertEquals(4, dao.getValidLocations().size());
+
+        // new locations must not join interrupted batch
+        persistLocations(2);
+        Assert.assertEquals(batchId, uploader.prepare(1, 3));
+        Assert.assertTrue(uploader.upload(batchId, config, null));
+
+        List<LocalHttpServer.Request> retried = server.requests.subList(3, server.requests.size());
+        Assert.assertEquals(2, retried.size());
+        Assert.assertEquals("2", retried.get(0).headers.get("x-batch-seq"));
+        Assert.assertEquals("3", retried.get(1).headers.get("x-batch-seq"));
+        Assert.assertEquals(String.valueOf(batchId), retried.get(0).headers.get("x-batch-id"));
+
+        // each location of batch was acknowledged exactly once
+        List<Long> times = postedTimes(server.requests.subList(0, 2));
+        times.addAll(postedTimes(retried));
+        Assert.assertEquals(10, times.size());
+        for (int i = 0; i < 10; i++) {
+            Assert.assertEquals(Long.valueOf(1000L + i), times.get(i));
+        }
+
+        Assert.assertNull(batchManager.getPendingBatchId());
+        Assert.assertEquals(2, dao.getValidLocations().size());
+    }
+
+    @Test
+    public void testConflictIsAcknowledgement() {
+        persistLocations(4);
+        server.setResponder(new LocalHttpServer.Responder() {
+            @Override
+            public int respond(LocalHttpServer.Request request) {
+                return 409;
+            }
+        });
+        BatchUploader uploader = new BatchUploader(batchManager);
+
+        Long batchId = uploader.prepare(1, 2);
+        Assert.assertTrue(uploader.upload(batchId, createConfig(), null));
+        Assert.assertNull(batchManager.getPendingBatchId());
+        Assert.assertEquals(0, dao.getValidLocations().size());
+    }
+
+    @Test
+    public void testPermanentlyRejectedChunkIsDropped() throws Exception {
+        persistLocations(9);
+        server.setResponder(new LocalHttpServer.Responder() {
+            @Override
+            public int respond(LocalHttpServer.Request request) {
+                return "1".equals(request.headers.get("x-batch-seq")) ? 422 : 200;
+            }
+        });
+        BatchUploader uploader = new BatchUploader(batchManager);
+
+        Long batchId = uploader.prepare(1, 3);
+        Assert.assertTrue(uploader.upload(batchId, createConfig(), null));
+        Assert.assertEquals(3, server.requests.size());
+        Assert.assertEquals("2", server.requests.get(2).headers.get("x-batch-seq"));
+        Assert.assertNull(batchManager.getPendingBatchId());
+        Assert.assertEquals(0, dao.getValidLocations().size());
+
+        // rejected locations are not sent again with next batch
+        persistLocations(1);
+        Assert.assertNotNull(uploader.prepare(1, 3));
+        Assert.assertEquals(1, dao.getValidLocations().size());
+    }
+
+    @Test
+    public void testRetryableErrorKeepsChunk() {
+        persistLocations(4);
+        server.setResponder(new LocalHttpServer.Responder() {
+            @Override
+            public int respond(LocalHttpServer.Request request) {
+                return 429;
+            }
+        });
+        BatchUploader uploader = new BatchUploader(batchManager);
+
+        Long batchId = uploader.prepare(1, 2);
+        Assert.assertFalse(uploader.upload(batchId, createConfig(), null));
+        Assert.assertEquals(1, server.requests.size());
+        Assert.assertEquals(Arrays.asList(0, 1), batchManager.getPendingChunks(batchId));
+        Assert.assertEquals(4, dao.getValidLocations().size());
+    }
+
+    @Test
+    public void testChunkOfExpiredBatchIsDroppedOnError() {
+        persistLocations(4);
+        server.setResponder(new LocalHttpServer.Responder() {
+            @Override
+            public int respond(LocalHttpServer.Request request) {
+                return 500;
+            }
+        });
+        BatchUploader uploader = new BatchUploader(batchManager);
+
+        Long batchId = System.currentTimeMillis() - BatchUploader.MAX_BATCH_AGE_MILLIS - 1000;
+        Assert.assertEquals(4, batchManager.prepareBatch(batchId, 1, 2));
+        Assert.assertTrue(uploader.upload(batchId, createConfig(), null));
+        Assert.assertEquals(2, server.requests.size());
+        Assert.assertNull(batchManager.getPendingBatchId());
+        Assert.assertEquals(0, dao.getValidLocations().size());
+    }
+}
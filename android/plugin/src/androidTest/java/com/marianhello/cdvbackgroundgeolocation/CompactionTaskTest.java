@@ -0,0 +1,135 @@
+package com.marianhello.cdvbackgroundgeolocation;
+
+import android.content.Context;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import com.marianhello.bgloc.data.BackgroundLocation;
+import com.marianhello.bgloc.data.sqlite.CompactionTask;
+import com.marianhello.bgloc.data.sqlite.SQLiteLocationContract;
+import com.marianhello.bgloc.data.sqlite.SQLiteLocationDAO;
+import com.marianhello.bgloc.data.sqlite.SQLiteOpenHelper;
+
+import junit.framework.Assert;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@RunWith(AndroidJUnit4.class)
+@SmallTest
+public class CompactionTaskTest {
+    private HandlerThread handlerThread;
+    private SQLiteDatabase db;
+
+    @Before
+    public void setUp() {
+        Context ctx = InstrumentationRegistry.getTargetContext();
+        ctx.deleteDatabase(SQLiteOpenHelper.SQLITE_DATABASE_NAME);
+        db = new SQLiteOpenHelper(ctx).getWritableDatabase();
+        handlerThread = new HandlerThread("CompactionTaskTest");
+        handlerThread.start();
+    }
+
+    @After
+    public void tearDown() {
+        handlerThread.quit();
+        db.close();
+    }
+
+    private long pragma(String name) {
+        return DatabaseUtils.longForQuery(db, "PRAGMA " + name, null);
+    }
+
+    private void awaitCompaction(CompactionTask task) throws InterruptedException {
+        Handler handler = new Handler(handlerThread.getLooper());
+        handler.post(task);
+        long deadline = System.currentTimeMillis() + 10000;
+        while (task.getLastPurgedRows() == 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+        }
+    }
+
+    @Test
+    public void testPurgesSyncedLocationsAndReclaimsPages() throws InterruptedException {
+        Assert.assertEquals(2, pragma("auto_vacuum"));
+
+        SQLiteLocationDAO dao = new SQLiteLocationDAO(db);
+        List<BackgroundLocation> locations = new ArrayList<BackgroundLocation>();
+        for (int i = 0; i < 2000; i++) {
+            BackgroundLocation location = new BackgroundLocation();
+            location.setTime(1000L + i);
+            location.setLatitude(40.21 + i);
+            location.setLongitude(23.45 + i);
+            location.setProvider("test");
+            location.setValid(i >= 1800);
+            locations.add(location);
+        }
+        dao.persistLocations(locations, 10000);
+        long pageCount = pragma("page_count");
+
+        CompactionTask task = new CompactionTask(db, new Handler(handlerThread.getLooper()));
+        awaitCompaction(task);
+
+        Assert.assertEquals(1800, task.getLastPurgedRows());
+        Assert.assertEquals(200, DatabaseUtils.queryNumEntries(db, SQLiteLocationContract.LocationEntry.TABLE_NAME));
+        Assert.assertEquals(200, dao.getValidLocations().size());
+        Assert.assertTrue(task.getLastReclaimedPages() > 0);
+        Assert.assertEquals(pageCount - task.getLastReclaimedPages(), pragma("page_count"));
+        Assert.assertEquals(0, pragma("freelist_count"));
+    }
+
+    @Test
+    public void testRingBufferKeepsWorkingAfterPurge() throws InterruptedException {
+        SQLiteLocationDAO dao = new SQLiteLocationDAO(db);
+        for (int i = 0; i < 10; i++) {
+            BackgroundLocation location = new BackgroundLocation();
+            location.setTime(1000L + i);
+            location.setValid(i % 2 == 0);
+            dao.persistLocationWithLimit(location, 10);
+        }
+
+        CompactionTask task = new CompactionTask(db, new Handler(handlerThread.getLooper()));
+        awaitCompaction(task);
+        Assert.assertEquals(5, task.getLastPurgedRows());
+
+        for (int i = 10; i < 15; i++) {
+            BackgroundLocation location = new BackgroundLocation();
+            location.setTime(1000L + i);
+            dao.persistLocationWithLimit(location, 10);
+        }
+        // new locations evict ids 1-5, ids of purged locations are not reused
+        Assert.assertEquals(7, dao.getAllLocations().size());
+        Assert.assertEquals(7, dao.getValidLocations().size());
+    }
+
+    @Test
+    public void testSwitchesExistingDatabaseToIncrementalVacuum() throws InterruptedException {
+        db.execSQL("PRAGMA auto_vacuum = NONE");
+        db.execSQL("VACUUM");
+        Assert.assertEquals(0, pragma("auto_vacuum"));
+
+        SQLiteLocationDAO dao = new SQLiteLocationDAO(db);
+        for (int i = 0; i < 10; i++) {
+            BackgroundLocation location = new BackgroundLocation();
+            location.setTime(1000L + i);
+            location.setValid(i >= 5);
+            dao.persistLocationWithLimit(location, 10);
+        }
+
+        CompactionTask task = new CompactionTask(db, new Handler(handlerThread.getLooper()));
+        awaitCompaction(task);
+        Assert.assertEquals(5, task.getLastPurgedRows());
+        Assert.assertEquals(2, pragma("auto_vacuum"));
+        Assert.assertEquals(5, dao.getValidLocations().size());
+    }
+}
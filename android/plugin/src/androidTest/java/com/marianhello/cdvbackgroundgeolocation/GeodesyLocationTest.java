@@ -0,0 +1,39 @@
+package com.marianhello.cdvbackgroundgeolocation;
+
+import android.location.Location;
+import android.support.test.runner.AndroidJUnit4;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import com.marianhello.bgloc.Geodesy;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Random;
+
+/**
+ * Geodesy distances compared to Location.distanceBetween (WGS84 ellipsoid)
+ */
+@RunWith(AndroidJUnit4.class)
+@SmallTest
+public class GeodesyLocationTest {
+
+    @Test
+    public void distanceMatchesLocationDistanceBetween() {
+        Random random = new Random(1);
+        double[] point = new double[2];
+        float[] results = new float[1];
+        double latitude = 49.2;
+        double longitude = 16.6;
+        for (int i = 0; i < 10000; i++) {
+            Geodesy.destination(latitude, longitude, random.nextDouble() * 360, 1 + random.nextDouble() * 999, point);
+            Location.distanceBetween(latitude, longitude, point[0], point[1], results);
+            double distance = Geodesy.distance(latitude, longitude, point[0], point[1]);
+            Assert.assertEquals(results[0], distance, results[0] * 0.005);
+            latitude = point[0];
+            longitude = point[1];
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package com.marianhello.cdvbackgroundgeolocation;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Minimal HTTP/1.1 server with keep-alive support recording received requests
+ *
+ * Stand-in for location server in tests. Response status is decided by Responder
+ * (200 by default).
+ */
+public class LocalHttpServer implements Runnable {
+
+    public static class Request {
+        /** header names are lower case */
+        public final Map<String, String> headers;
+        public final byte[] body;
+
+        Request(Map<String, String> headers, byte[] body) {
+            this.headers = headers;
+            this.body = body;
+        }
+    }
+
+    public interface Responder {
+        /**
+         * @return http status code of response
+         */
+        int respond(Request request);
+    }
+
+    public final AtomicInteger connections = new AtomicInteger();
+    public final List<Request> requests = Collections.synchronizedList(new ArrayList<Request>());
+
+    private final ServerSocket serverSocket;
+    private volatile Responder responder;
+    private volatile long responseDelayMillis = 0;
+
+    public LocalHttpServer() throws IOException {
+        serverSocket = new ServerSocket(0);
+        new Thread(this).start();
+    }
+
+    public String getUrl() {
+        return "http://127.0.0.1:" + serverSocket.getLocalPort() + "/locations";
+    }
+
+    public void setResponder(Responder responder) {
+        this.responder = responder;
+    }
+
+    public void setResponseDelay(long responseDelayMillis) {
+        this.responseDelayMillis = responseDelayMillis;
+    }
+
+    @Override
+    public void run() {
+        try {
+            while (true) {
+                final Socket socket = serverSocket.accept();
+                connections.incrementAndGet();
+                new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        serve(socket);
+                    }
+                }).start();
+            }
+        } catch (IOException e) {
+            // server closed
+        }
+    }
+
+    private void serve(Socket socket) {
+        try {
+            InputStream in = new BufferedInputStream(socket.getInputStream());
+            OutputStream out = socket.getOutputStream();
+            while (readLine(in) != null) {
+                Map<String, String> headers = new HashMap<String, String>();
+                String line;
+                while ((line = readLine(in)) != null && line.length() > 0) {
+                    int colon = line.indexOf(':');
+                    if (colon > 0) {
+                        headers.put(line.substring(0, colon).trim().toLowerCase(), line.substring(colon + 1).trim());
+                    }
+                }
+                int contentLength = headers.containsKey("content-length")
+                        ? Integer.parseInt(headers.get("content-length")) : 0;
+                byte[] body = new byte[contentLength];
+                int read = 0;
+                while (read < contentLength) {
+                    read += in.read(body, read, contentLength - read);
+                }
+
+                Request request = new Request(headers, body);
+                requests.add(request);
+                Responder responder = this.responder;
+                int status = responder != null ? responder.respond(request) : 200;
+                if (responseDelayMillis > 0) {
+                    Thread.sleep(responseDelayMillis);
+                }
+                out.write(("HTTP/1.1 " + status + " Status\r\nContent-Length: 2\r\n\r\nOK").getBytes("UTF-8"));
+                out.flush();
+            }
+        } catch (Exception e) {
+            // connection closed
+        }
+    }
+
+    private static String readLine(InputStream in) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        int c;
+        while ((c = in.read()) != -1) {
+            if (c == '\n') {
+                return line.toString("UTF-8").trim();
+            }
+            line.write(c);
+        }
+        return null;
+    }
+
+    public void close() throws IOException {
+        serverSocket.close();
+    }
+}
@@ -0,0 +1,285 @@
+package com.marianhello.cdvbackgroundgeolocation;
+
+import android.content.Context;
+import android.location.Location;
+import android.support.test.InstrumentationRegistry;
+
+import com.marianhello.bgloc.data.BackgroundLocation;
+import com.marianhello.bgloc.data.BoundingBox;
+import com.marianhello.bgloc.data.LocationDAO;
+import com.marianhello.bgloc.data.LocationQuery;
+
+import junit.framework.Assert;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+
+/**
+ * Tests common to all LocationDAO implementations
+ */
+public abstract class LocationDAOTest {
+    protected LocationDAO dao;
+
+    /**
+     * @param ctx
+     * @return DAO with empty store
+     */
+    protected abstract LocationDAO createLocationDAO(Context ctx);
+
+    @Before
+    public void setUp() {
+        dao = createLocationDAO(InstrumentationRegistry.getTargetContext());
+    }
+
+    @Test
+    public void persistLocation() {
+        Location location = new Location("fake");
+        location.setAccuracy(200);
+        location.setAltitude(900);
+        location.setBearing(2);
+        location.setLatitude(40.21);
+        location.setLongitude(23.45);
+        location.setSpeed(20);
+        location.setProvider("test");
+        location.setTime(1000);
+        BackgroundLocation bgLocation = new BackgroundLocation(location);
+
+        dao.persistLocation(bgLocation);
+
+        ArrayList<BackgroundLocation> locations = new ArrayList(dao.getAllLocations());
+        Assert.assertEquals(1, locations.size());
+
+        BackgroundLocation storedLocation = locations.get(0);
+        Assert.assertEquals(200, storedLocation.getAccuracy(), 0);
+        Assert.assertEquals(900, storedLocation.getAltitude(), 0);
+        Assert.assertEquals(2, storedLocation.getBearing(), 0);
+        Assert.assertEquals(40.21, storedLocation.getLatitude(), 0);
+        Assert.assertEquals(23.45, storedLocation.getLongitude(), 0);
+        Assert.assertEquals(20, storedLocation.getSpeed(), 0);
+        Assert.assertEquals("test", storedLocation.getProvider(), "test");
+        Assert.assertEquals(1000, storedLocation.getTime(), 0);
+    }
+
+    @Test
+    public void deleteLocation() {
+        BackgroundLocation bgLocation = new BackgroundLocation(new Location("fake"));
+        Collection<BackgroundLocation> locations = null;
+
+        Long locationId = dao.persistLocation(bgLocation);
+
+        locations = dao.getAllLocations();
+        Assert.assertEquals(1, locations.size());
+
+        dao.deleteLocation(locationId);
+
+        locations = dao.getValidLocations();
+        Assert.assertEquals(0, locations.size());
+    }
+
+    @Test
+    public void deleteAllLocations() {
+        Collection<BackgroundLocation> locations = null;
+
+        for (int i = 0; i < 10; i++) {
+            dao.persistLocation(new BackgroundLocation(new Location("fake")));
+        }
+
+        locations = dao.getValidLocations();
+        Assert.assertEquals(10, locations.size());
+
+        dao.deleteAllLocations();
+
+        locations = dao.getValidLocations();
+        Assert.assertEquals(0, locations.size());
+    }
+
+    @Test
+    public void getAllLocations() {
+        Location location = null;
+        BackgroundLocation bgLocation = null;
+
+        for (int i = 0; i < 10; i++) {
+            location = new Location("fake");
+            location.setAccuracy(200 + i);
+            location.setAltitude(900 + i);
+            location.setBearing(2 + i);
+            location.setLatitude(40.21 + i);
+            location.setLongitude(23.45 + i);
+            location.setSpeed(20 + i);
+            location.setProvider("test");
+            location.setTime(1000 + i);
+            bgLocation = new BackgroundLocation(location);
+            dao.persistLocation(bgLocation);
+        }
+
+        Collection<BackgroundLocation> locations = dao.getAllLocations();
+        Iterator<BackgroundLocation> it = locations.iterator();
+        BackgroundLocation storedLocation = null;
+        for (int i = 0; i < 10; i++) {
+            storedLocation = it.next();
+            Assert.assertEquals(200 + i, storedLocation.getAccuracy(), 0);
+            Assert.assertEquals(900 + i, storedLocation.getAltitude(), 0);
+            Assert.assertEquals(2 + i, storedLocation.getBearing(), 0);
+            Assert.assertEquals(40.21 + i, storedLocation.getLatitude(), 0);
+            Assert.assertEquals(23.45 + i,storedLocation.getLongitude(), 0);
+            Assert.assertEquals(20 + i, storedLocation.getSpeed(), 0);
+            Assert.assertEquals("test", storedLocation.getProvider());
+            Assert.assertEquals(1000 + i, storedLocation.getTime(), 0);
+        }
+    }
+
+    @Test
+    public void persistLocationWithRowLimit() {
+        int maxRows = 100;
+
+        for (int i = 0; i < maxRows * 2; i++) {
+            dao.persistLocationWithLimit(new BackgroundLocation(new Location("fake")), maxRows);
+        }
+
+        Collection<BackgroundLocation> locations = dao.getAllLocations();
+        Assert.assertEquals(maxRows, locations.size());
+    }
+
+    @Test
+    public void persisLocationWithBatchId() {
+        BackgroundLocation location = new BackgroundLocation();
+        location.setBatchStartMillis(1000L);
+        dao.persistLocation(location);
+        ArrayList<BackgroundLocation> locations = new ArrayList(dao.getAllLocations());
+        Assert.assertEquals(Long.valueOf(1000L), locations.get(0).getBatchStartMillis());
+    }
+
+    @Test
+    public void locationsForSyncCount() {
+        BackgroundLocation location;
+        for (int i = 1; i < 100; i++) {
+            location = new BackgroundLocation();
+            if ((i % 3) == 0) {
+                location.setBatchStartMillis(1000L);
+            } else if ((i % 2) == 0) {
+                location.setValid(false);
+            } else {
+                //noop
+            }
+            dao.persistLocation(location);
+        }
+
+        Assert.assertEquals(66, dao.getValidLocations().size());
+        Assert.assertEquals(99, dao.getAllLocations().size());
+        Assert.assertEquals(Long.valueOf(66L), dao.locationsForSyncCount(10001L));
+        Assert.assertEquals(Long.valueOf(33L), dao.locationsForSyncCount(1000L));
+    }
+
+    @Test
+    public void oldestLocationForSyncTime() {
+        Assert.assertNull(dao.oldestLocationForSyncTime(10001L));
+
+        BackgroundLocation location;
+        for (int i = 1; i < 10; i++) {
+            location = new BackgroundLocation();
+            location.setTime(i * 100L);
+            if (i < 3) {
+                location.setValid(false);
+            } else if (i < 5) {
+                location.setBatchStartMillis(1000L);
+            }
+            dao.persistLocation(location);
+        }
+
+        Assert.assertEquals(Long.valueOf(300L), dao.oldestLocationForSyncTime(10001L));
+        Assert.assertEquals(Long.valueOf(500L), dao.oldestLocationForSyncTime(1000L));
+    }
+
+    @Test
+    public void persistLocations() {
+        int maxRows = 100;
+
+        for (int i = 0; i < 3; i++) {
+            ArrayList<BackgroundLocation> batch = new ArrayList<BackgroundLocation>();
+            for (int j = 0; j < maxRows / 2; j++) {
+                BackgroundLocation location = new BackgroundLocation();
+                location.setProvider("test");
+                location.setTime(1000 + i * maxRows + j);
+                batch.add(location);
+            }
+            dao.persistLocations(batch, maxRows);
+            for (BackgroundLocation location : batch) {
+                Assert.assertNotNull(location.getLocationId());
+            }
+        }
+
+        ArrayList<BackgroundLocation> locations = new ArrayList(dao.getAllLocations());
+        Assert.assertEquals(maxRows, locations.size());
+        Assert.assertEquals(1000 + maxRows, locations.get(0).getTime());
+        Assert.assertEquals("test", locations.get(0).getProvider());
+    }
+
+    @Test
+    public void getLocationsByPages() {
+        for (int i = 0; i < 25; i++) {
+            BackgroundLocation location = new BackgroundLocation();
+            location.setTime(1000 + (i / 2)); // pairs of locations with same time
+            location.setValid(i % 5 != 0);
+            dao.persistLocationWithLimit(location, 100);
+        }
+
+        LocationQuery query = new LocationQuery();
+        query.setLimit(10);
+        ArrayList<BackgroundLocation> locations = new ArrayList<BackgroundLocation>();
+        Collection<BackgroundLocation> page;
+        do {
+            page = dao.getLocations(query);
+            for (BackgroundLocation location : page) {
+                locations.add(location);
+                query.setCursor(location);
+            }
+        } while (page.size() == query.getLimit());
+
+        Assert.assertEquals(25, locations.size());
+        for (int i = 1; i < locations.size(); i++) {
+            BackgroundLocation prev = locations.get(i - 1);
+            BackgroundLocation next = locations.get(i);
+            Assert.assertTrue(prev.getTime() < next.getTime()
+                    || (prev.getTime() == next.getTime() && prev.getLocationId() < next.getLocationId()));
+        }
+
+        query = new LocationQuery();
+        query.setValidOnly(true);
+        query.setFromTime(1002L);
+        query.setToTime(1005L);
+        Assert.assertEquals(6, dao.getLocations(query).size());
+    }
+
+    @Test
+    public void queryLocationsInsideBoundingBox() {
+        // 10 x 10 grid of locations 0.01 degree apart, one per second
+        for (int i = 0; i < 100; i++) {
+            BackgroundLocation location = new BackgroundLocation("test");
+            location.setTime(1000 + i * 1000);
+            location.setLatitude(48.0 + (i / 10) * 0.01);
+            location.setLongitude(17.0 + (i % 10) * 0.01);
+            dao.persistLocationWithLimit(location, 1000);
+        }
+
+        BoundingBox bbox = new BoundingBox(48.015, 17.015, 48.045, 17.035);
+        ArrayList<BackgroundLocation> locations = new ArrayList(dao.queryLocations(bbox, null, null, 100));
+        Assert.assertEquals(6, locations.size());
+        for (BackgroundLocation location : locations) {
+            Assert.assertTrue(bbox.contains(location.getLatitude(), location.getLongitude()));
+        }
+        Assert.assertEquals(23000, locations.get(0).getTime());
+
+        // bounds are inclusive
+        bbox = new BoundingBox(48.02, 17.02, 48.02, 17.02);
+        Assert.assertEquals(1, dao.queryLocations(bbox, null, null, 100).size());
+
+        bbox = new BoundingBox(48.0, 17.0, 48.09, 17.09);
+        Assert.assertEquals(10, dao.queryLocations(bbox, 11000L, 20000L, 100).size());
+        Assert.assertEquals(3, dao.queryLocations(bbox, 11000L, 20000L, 3).size());
+        Assert.assertEquals(0, dao.queryLocations(new BoundingBox(47.0, 16.0, 47.5, 16.5), null, null, 100).size());
+    }
+}
@@ -0,0 +1,90 @@
+package com.marianhello.cdvbackgroundgeolocation;
+
+import android.content.Context;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.test.suitebuilder.annotation.LargeTest;
+
+import com.marianhello.bgloc.data.BackgroundLocation;
+import com.marianhello.bgloc.data.LocationDAO;
+import com.marianhello.bgloc.data.segment.SegmentLocationDAO;
+import com.marianhello.bgloc.data.sqlite.SQLiteLocationDAO;
+import com.marianhello.bgloc.data.sqlite.SQLiteOpenHelper;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * Throughput comparison of SQLite and segment location stores
+ *
+ * Locations are persisted one by one with row limit (as location service does),
+ * then sync queue is counted and all valid locations are read.
+ *
+ * Run with: ./gradlew connectedAndroidTest -Pandroid.testInstrumentationRunnerArguments.class=\
+ *   com.marianhello.cdvbackgroundgeolocation.LocationDAOThroughputTest
+ */
+@RunWith(AndroidJUnit4.class)
+@LargeTest
+public class LocationDAOThroughputTest {
+    private static final int LOCATIONS = 5000;
+    private static final int MAX_ROWS = 10000;
+    private static final int COUNTS = 100;
+
+    @Test
+    public void compareStores() {
+        Context ctx = InstrumentationRegistry.getTargetContext();
+
+        ctx.deleteDatabase(SQLiteOpenHelper.SQLITE_DATABASE_NAME);
+        SQLiteOpenHelper helper = new SQLiteOpenHelper(ctx);
+        report("sqlite", measure(new SQLiteLocationDAO(helper.getWritableDatabase(), helper.getReaderDatabase())));
+        helper.close();
+
+        SegmentLocationDAO segmentDAO = new SegmentLocationDAO(
+                SegmentLocationDAOTest.createEmptyDirectory(ctx, "segments-throughput"),
+                SegmentLocationDAO.DEFAULT_SEGMENT_CAPACITY);
+        report("segment", measure(segmentDAO));
+    }
+
+    /**
+     * @return {insert ns, sync count ns, read all ns}
+     */
+    private long[] measure(LocationDAO dao) {
+        long start = System.nanoTime();
+        for (int i = 0; i < LOCATIONS; i++) {
+            dao.persistLocationWithLimit(createLocation(i), MAX_ROWS);
+        }
+        long insert = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (int i = 0; i < COUNTS; i++) {
+            Assert.assertEquals(Long.valueOf(LOCATIONS), dao.locationsForSyncCount(System.currentTimeMillis()));
+        }
+        long count = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        Assert.assertEquals(LOCATIONS, dao.getValidLocations().size());
+        long read = System.nanoTime() - start;
+
+        return new long[] { insert, count, read };
+    }
+
+    private static void report(String store, long[] times) {
+        String message = String.format("%s store inserts: %.0f/s sync count: %.3fms read %d locations: %.1fms",
+                store, LOCATIONS / (times[0] / 1e9), times[1] / 1e6 / COUNTS, LOCATIONS, times[2] / 1e6);
+        for (long time : times) {
+            Assert.assertTrue(message, time > 0);
+        }
+    }
+
+    private static BackgroundLocation createLocation(int i) {
+        BackgroundLocation location = new BackgroundLocation();
+        location.setTime(1000L + i);
+        location.setLatitude(40.21 + i * 0.0001);
+        location.setLongitude(23.45 + i * 0.0001);
+        location.setAccuracy(10);
+        location.setProvider("test");
+        return location;
+    }
+}
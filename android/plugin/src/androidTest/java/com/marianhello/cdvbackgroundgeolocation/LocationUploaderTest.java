@@ -0,0 +1,113 @@
+package com.marianhello.cdvbackgroundgeolocation;
+
+import android.support.test.runner.AndroidJUnit4;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import com.marianhello.bgloc.Config;
+import com.marianhello.bgloc.LocationUploader;
+import com.marianhello.bgloc.data.BackgroundLocation;
+
+import junit.framework.Assert;
+
+import org.json.JSONArray;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+@RunWith(AndroidJUnit4.class)
+@SmallTest
+public class LocationUploaderTest {
+    private static final long RESPONSE_DELAY_MILLIS = 50;
+
+    private LocalHttpServer server;
+
+    @Before
+    public void startServer() throws IOException {
+        server = new LocalHttpServer();
+        server.setResponseDelay(RESPONSE_DELAY_MILLIS);
+    }
+
+    @After
+    public void stopServer() throws IOException {
+        server.close();
+    }
+
+    @Test
+    public void testUploadCoalescesLocationsInOrder() throws Exception {
+        final int count = 50;
+        final CountDownLatch latch = new CountDownLatch(count);
+        Config config = new Config();
+        config.setUrl(server.getUrl());
+
+        LocationUploader uploader = new LocationUploader(new LocationUploader.UploadListener() {
+            @Override
+            public void onUploadSuccess(List<BackgroundLocation> locations) {
+                for (int i = 0; i < locations.size(); i++) {
+                    latch.countDown();
+                }
+            }
+
+            @Override
+            public void onUploadFailure(List<BackgroundLocation> locations, int responseCode) {
+                Assert.fail("Upload failed responseCode: " + responseCode);
+            }
+        });
+        uploader.setConfig(config);
+
+        for (int i = 0; i < count; i++) {
+            BackgroundLocation location = new BackgroundLocation();
+            location.setTime(1000L + i);
+            uploader.upload(location);
+        }
+
+        Assert.assertTrue(latch.await(10, TimeUnit.SECONDS));
+        uploader.close();
+
+        List<Long> times = new ArrayList<Long>();
+        for (LocalHttpServer.Request request : server.requests) {
+            JSONArray locations = new JSONArray(new String(request.body, "UTF-8"));
+            for (int i = 0; i < locations.length(); i++) {
+                times.add(locations.getJSONObject(i).getLong("time"));
+            }
+        }
+        Assert.assertEquals(count, times.size());
+        for (int i = 0; i < count; i++) {
+            Assert.assertEquals(Long.valueOf(1000L + i), times.get(i));
+        }
+        Assert.assertTrue(server.requests.size() < count);
+        Assert.assertEquals(1, server.connections.get());
+    }
+
+    @Test
+    public void testQueueDropsOldestWhenFull() {
+        Config config = new Config();
+        config.setUrl(server.getUrl());
+        config.setHttpQueueSize(3);
+
+        LocationUploader uploader = new LocationUploader(new LocationUploader.UploadListener() {
+            @Override
+            public void onUploadSuccess(List<BackgroundLocation> locations) {
+            }
+
+            @Override
+            public void onUploadFailure(List<BackgroundLocation> locations, int responseCode) {
+            }
+        });
+        uploader.setConfig(config);
+
+        for (int i = 0; i < 20; i++) {
+            BackgroundLocation location = new BackgroundLocation();
+            location.setTime(1000L + i);
+            uploader.upload(location);
+            Assert.assertTrue(uploader.getQueueSize() <= 3);
+        }
+        uploader.close();
+    }
+}
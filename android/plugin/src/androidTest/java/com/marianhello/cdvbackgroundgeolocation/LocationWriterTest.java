@@ -0,0 +1,135 @@
+package com.marianhello.cdvbackgroundgeolocation;
+
+import android.content.Context;
+import android.database.SQLException;
+import android.database.sqlite.SQLiteDatabase;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import com.marianhello.bgloc.Config;
+import com.marianhello.bgloc.LocationWriter;
+import com.marianhello.bgloc.data.BackgroundLocation;
+import com.marianhello.bgloc.data.sqlite.SQLiteLocationDAO;
+import com.marianhello.bgloc.data.sqlite.SQLiteOpenHelper;
+
+import junit.framework.Assert;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+@RunWith(AndroidJUnit4.class)
+@SmallTest
+public class LocationWriterTest {
+    private static final long BAD_TIME = 666L;
+
+    private HandlerThread handlerThread;
+    private SQLiteDatabase db;
+
+    /**
+     * DAO failing every transaction containing location with BAD_TIME
+     * or all transactions when failing is set
+     */
+    private static class ThrowingLocationDAO extends SQLiteLocationDAO {
+        private final List<Integer> batchSizes = new ArrayList<Integer>();
+        private boolean failing = false;
+
+        public ThrowingLocationDAO(SQLiteDatabase db) {
+            super(db);
+        }
+
+        @Override
+        public void persistLocations(Collection<BackgroundLocation> locations, Integer maxRows) {
+            batchSizes.add(locations.size());
+            if (failing) {
+                throw new SQLException("disk I/O error");
+            }
+            for (BackgroundLocation location : locations) {
+                if (location.getTime() == BAD_TIME) {
+                    throw new SQLException("constraint failed");
+                }
+            }
+            super.persistLocations(locations, maxRows);
+        }
+    }
+
+    @Before
+    public void setUp() {
+        Context ctx = InstrumentationRegistry.getTargetContext();
+        ctx.deleteDatabase(SQLiteOpenHelper.SQLITE_DATABASE_NAME);
+        db = new SQLiteOpenHelper(ctx).getWritableDatabase();
+        handlerThread = new HandlerThread("LocationWriterTest");
+        handlerThread.start();
+    }
+
+    @After
+    public void tearDown() {
+        handlerThread.quit();
+        db.close();
+    }
+
+    private LocationWriter createWriter(ThrowingLocationDAO dao) {
+        Config config = new Config();
+        config.setWriteBufferSize(3);
+        config.setWriteBufferMaxAge(60000);
+        config.setCrashSafeWrites(false);
+        config.setMaxLocations(100);
+
+        LocationWriter writer = new LocationWriter(dao, new Handler(handlerThread.getLooper()));
+        writer.setConfig(config);
+        return writer;
+    }
+
+    private BackgroundLocation createLocation(long time) {
+        BackgroundLocation location = new BackgroundLocation();
+        location.setTime(time);
+        return location;
+    }
+
+    @Test
+    public void testFailedFlushPersistsLocationsOneByOne() {
+        ThrowingLocationDAO dao = new ThrowingLocationDAO(db);
+        LocationWriter writer = createWriter(dao);
+
+        BackgroundLocation first = createLocation(1000L);
+        BackgroundLocation bad = createLocation(BAD_TIME);
+        BackgroundLocation last = createLocation(3000L);
+        writer.write(first);
+        writer.write(bad);
+        writer.write(last); // buffer full, flush
+
+        Assert.assertEquals(2, dao.getAllLocations().size());
+        Assert.assertTrue(first.getLocationId() > 0);
+        Assert.assertEquals(Long.valueOf(-1L), bad.getLocationId());
+        Assert.assertTrue(last.getLocationId() > 0);
+    }
+
+    @Test
+    public void testFailedFlushDoesNotKeepLocationsBuffered() {
+        ThrowingLocationDAO dao = new ThrowingLocationDAO(db);
+        LocationWriter writer = createWriter(dao);
+
+        dao.failing = true;
+        for (int i = 0; i < 3; i++) {
+            writer.write(createLocation(1000L + i));
+        }
+        dao.failing = false;
+        for (int i = 0; i < 3; i++) {
+            writer.write(createLocation(2000L + i));
+        }
+        writer.close();
+
+        // failed batch, 3 single row retries, next batch of new locations only
+        Assert.assertEquals(5, dao.batchSizes.size());
+        Assert.assertEquals(3, dao.batchSizes.get(4).intValue());
+        Assert.assertEquals(3, dao.getAllLocations().size());
+    }
+}
@@ -0,0 +1,173 @@
+package com.marianhello.cdvbackgroundgeolocation;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import com.marianhello.bgloc.data.BoundingBox;
+import com.marianhello.bgloc.data.LocationQuery;
+import com.marianhello.bgloc.data.sqlite.CompactionTask;
+import com.marianhello.bgloc.data.sqlite.SQLiteLocationContract.LocationEntry;
+import com.marianhello.bgloc.data.sqlite.SQLiteLocationDAO;
+import com.marianhello.bgloc.data.sqlite.SQLiteOpenHelper;
+import com.marianhello.bgloc.sync.BatchManager;
+
+import junit.framework.Assert;
+
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+
+/**
+ * Query plans of hot location queries
+ *
+ * Guards indices against regressions: every query run on (possibly large) location table
+ * must be answered by expected index, never by full table scan.
+ */
+@RunWith(AndroidJUnit4.class)
+@SmallTest
+public class QueryPlanTest {
+    private SQLiteDatabase db;
+
+    @Before
+    public void setUp() {
+        Context ctx = InstrumentationRegistry.getTargetContext();
+        ctx.deleteDatabase(SQLiteOpenHelper.SQLITE_DATABASE_NAME);
+        db = new SQLiteOpenHelper(ctx).getWritableDatabase();
+    }
+
+    @After
+    public void tearDown() {
+        db.close();
+    }
+
+    private String explain(String sql) {
+        StringBuilder plan = new StringBuilder();
+        Cursor cursor = db.rawQuery("EXPLAIN QUERY PLAN " + sql, null);
+        try {
+            int detail = cursor.getColumnIndex("detail");
+            while (cursor.moveToNext()) {
+                plan.append(cursor.getString(detail)).append('\n');
+            }
+        } finally {
+            cursor.close();
+        }
+        return plan.toString();
+    }
+
+    private static void assertNoTableScan(String plan) {
+        for (String step : plan.split("\n")) {
+            if (step.startsWith("SCAN")) {
+                Assert.assertTrue("Full table scan: " + plan, step.contains("INDEX"));
+            }
+        }
+    }
+
+    private static void assertUsesIndex(String plan, String index) {
+        Assert.assertTrue("Expected " + index + ": " + plan, plan.contains("INDEX " + index));
+        assertNoTableScan(plan);
+    }
+
+    private static void assertCoveredBy(String plan, String index) {
+        Assert.assertTrue("Expected covering " + index + ": " + plan, plan.contains("COVERING INDEX " + index));
+        assertNoTableScan(plan);
+    }
+
+    private static void assertNoSort(String plan) {
+        Assert.assertFalse("Unexpected sort: " + plan, plan.contains("TEMP B-TREE"));
+    }
+
+    @Test
+    public void testSyncQueueCount() {
+        assertCoveredBy(explain(SQLiteLocationDAO.SQL_SYNC_QUEUE_COUNT), "sync_queue_idx");
+    }
+
+    @Test
+    public void testSyncQueueOldestTime() {
+        assertCoveredBy(explain(SQLiteLocationDAO.SQL_SYNC_QUEUE_OLDEST_TIME), "sync_queue_idx");
+    }
+
+    @Test
+    public void testPrepareBatch() {
+        String plan = explain(BatchManager.SQL_PENDING_LOCATION_IDS);
+        assertCoveredBy(plan, "sync_queue_idx");
+        assertNoSort(plan);
+    }
+
+    @Test
+    public void testCreateBatch() {
+        String sql = "UPDATE " + LocationEntry.TABLE_NAME + " SET " +
+                LocationEntry.COLUMN_NAME_BATCH_START_MILLIS + " = ?, " +
+                LocationEntry.COLUMN_NAME_BATCH_SEQ + " = ? WHERE " + SQLiteLocationDAO.SYNC_QUEUE_WHERE_CLAUSE;
+        assertUsesIndex(explain(sql), "sync_queue_idx");
+    }
+
+    @Test
+    public void testChunkLocations() {
+        assertUsesIndex(explain(BatchManager.SQL_CHUNK_LOCATIONS), "batch_idx");
+    }
+
+    @Test
+    public void testChunkCompleted() {
+        String sql = "UPDATE " + LocationEntry.TABLE_NAME + " SET " +
+                LocationEntry.COLUMN_NAME_VALID + " = 0 WHERE " + BatchManager.CHUNK_WHERE_CLAUSE;
+        assertUsesIndex(explain(sql), "batch_idx");
+    }
+
+    @Test
+    public void testAllLocations() {
+        String plan = explain(SQLiteLocationDAO.buildLocationsQuery(null, null));
+        assertUsesIndex(plan, "time_idx");
+        assertNoSort(plan);
+    }
+
+    @Test
+    public void testValidLocations() {
+        String sql = SQLiteLocationDAO.buildLocationsQuery(LocationEntry.COLUMN_NAME_VALID + " = ?", null);
+        assertUsesIndex(explain(sql), "sync_queue_idx");
+    }
+
+    @Test
+    public void testLocationsPage() {
+        LocationQuery query = new LocationQuery();
+        query.setValidOnly(true);
+        query.setFromTime(1000L);
+        query.setToTime(2000L);
+        query.setCursor(1500L, 10L);
+        String whereClause = SQLiteLocationDAO.buildWhereClause(query, new ArrayList<String>());
+        String plan = explain(SQLiteLocationDAO.buildLocationsQuery(whereClause, String.valueOf(query.getLimit())));
+        assertUsesIndex(plan, "sync_queue_idx");
+    }
+
+    @Test
+    public void testAllLocationsPage() {
+        LocationQuery query = new LocationQuery();
+        query.setCursor(1500L, 10L);
+        String whereClause = SQLiteLocationDAO.buildWhereClause(query, new ArrayList<String>());
+        String plan = explain(SQLiteLocationDAO.buildLocationsQuery(whereClause, String.valueOf(query.getLimit())));
+        assertUsesIndex(plan, "time_idx");
+        assertNoSort(plan);
+    }
+
+    @Test
+    public void testBoundingBoxQuery() {
+        Assume.assumeTrue(SQLiteOpenHelper.hasLocationRTree(db));
+        LocationQuery query = new LocationQuery(new BoundingBox(48.1, 17.0, 48.2, 17.2), 1000L, 2000L, 100);
+        String whereClause = SQLiteLocationDAO.buildWhereClause(query, new ArrayList<String>(), true);
+        String plan = explain(SQLiteLocationDAO.buildLocationsQuery(whereClause, String.valueOf(query.getLimit())));
+        Assert.assertTrue("Expected R*Tree lookup: " + plan, plan.contains("VIRTUAL TABLE"));
+        Assert.assertTrue("Expected rowid lookup: " + plan, plan.contains("PRIMARY KEY"));
+    }
+
+    @Test
+    public void testCompactionPurge() {
+        assertCoveredBy(explain(CompactionTask.SQL_PURGE_CHUNK), "sync_queue_idx");
+    }
+}
@@ -1,5 +1,6 @@
 package com.marianhello.cdvbackgroundgeolocation;
 
+import android.content.ContentValues;
 import android.content.Context;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
@@ -8,9 +9,13 @@ import android.support.test.runner.AndroidJUnit4;
 import android.test.suitebuilder.annotation.SmallTest;
 
 import com.marianhello.bgloc.Config;
+import com.marianhello.bgloc.data.segment.SegmentLocationDAO;
 import com.marianhello.bgloc.data.sqlite.SQLiteConfigurationContract;
 import com.marianhello.bgloc.data.sqlite.SQLiteConfigurationDAO;
 import com.marianhello.bgloc.data.sqlite.SQLiteOpenHelper;
+import com.marianhello.bgloc.pipeline.AccuracyGateStage;
+import com.marianhello.bgloc.pipeline.ThrottleStage;
+import com.marianhello.bgloc.sync.BinaryBatchEncoder;
 
 import org.json.JSONException;
 import org.junit.Assert;
@@ -18,6 +23,9 @@ import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+
 /**
  * Created by finch on 13/07/16.
  */
@@ -57,6 +65,23 @@ public class SQLiteConfigurationDAOTest {
         config.setNotificationTitle("test");
         config.setNotificationText("in progress");
         config.setNotificationIconColor("yellow");
+        config.setWriteBufferSize(25);
+        config.setWriteBufferMaxAge(60000);
+        config.setCrashSafeWrites(true);
+        config.setHttpCompression(true);
+        config.setBatchEncoding(BinaryBatchEncoder.NAME);
+        config.setHttpQueueSize(50);
+        config.setSyncMaxDelay(900000);
+        config.setSyncUnmeteredOnly(true);
+        config.setSyncChunkSize(500);
+        config.setLocationStore(SegmentLocationDAO.NAME);
+        config.setMaxAccuracy(100);
+        config.setThrottleInterval(2000);
+        config.setPipeline(new ArrayList<String>(Arrays.asList(AccuracyGateStage.NAME, ThrottleStage.NAME)));
+        config.setKalmanProcessNoise(1.5f);
+        config.setSimplifyTolerance(25f);
+        config.setFusionWindow(750);
+        config.setAdaptiveSampling(true);
 
         dao.persistConfiguration(config);
         dao.persistConfiguration(config); // try once more
@@ -87,9 +112,76 @@ public class SQLiteConfigurationDAOTest {
             Assert.assertEquals("test", storedConfig.getNotificationTitle());
             Assert.assertEquals("in progress", storedConfig.getNotificationText());
             Assert.assertEquals("yellow", storedConfig.getNotificationIconColor());
+            Assert.assertEquals(25, storedConfig.getWriteBufferSize().intValue());
+            Assert.assertEquals(60000, storedConfig.getWriteBufferMaxAge().intValue());
+            Assert.assertEquals(Boolean.TRUE, storedConfig.getCrashSafeWrites());
+            Assert.assertEquals(Boolean.TRUE, storedConfig.getHttpCompression());
+            Assert.assertEquals(BinaryBatchEncoder.NAME, storedConfig.getBatchEncoding());
+            Assert.assertEquals(50, storedConfig.getHttpQueueSize().intValue());
+            Assert.assertEquals(900000, storedConfig.getSyncMaxDelay().intValue());
+            Assert.assertEquals(Boolean.TRUE, storedConfig.getSyncUnmeteredOnly());
+            Assert.assertEquals(500, storedConfig.getSyncChunkSize().intValue());
+            Assert.assertEquals(SegmentLocationDAO.NAME, storedConfig.getLocationStore());
+            Assert.assertEquals(100, storedConfig.getMaxAccuracy().intValue());
+            Assert.assertEquals(2000, storedConfig.getThrottleInterval().intValue());
+            Assert.assertEquals(Arrays.asList(AccuracyGateStage.NAME, ThrottleStage.NAME), storedConfig.getPipeline());
+            Assert.assertEquals(1.5f, storedConfig.getKalmanProcessNoise(), 0);
+            Assert.assertEquals(25f, storedConfig.getSimplifyTolerance(), 0);
+            Assert.assertEquals(750, storedConfig.getFusionWindow().intValue());
+            Assert.assertEquals(Boolean.TRUE, storedConfig.getAdaptiveSampling());
 
         } catch (JSONException e) {
             Assert.fail(e.getMessage());
         }
     }
+
+    @Test
+    public void persistIncrementsVersion() {
+        Context ctx = InstrumentationRegistry.getTargetContext();
+        SQLiteDatabase db = new SQLiteOpenHelper(ctx).getWritableDatabase();
+        SQLiteConfigurationDAO dao = new SQLiteConfigurationDAO(db);
+
+        Assert.assertEquals(0, dao.getConfigurationVersion());
+        dao.persistConfiguration(new Config());
+        Assert.assertEquals(1, dao.getConfigurationVersion());
+        dao.persistConfiguration(new Config());
+        Assert.assertEquals(2, dao.getConfigurationVersion());
+    }
+
+    @Test
+    public void persistLocationStore() throws JSONException {
+        Context ctx = InstrumentationRegistry.getTargetContext();
+        SQLiteDatabase db = new SQLiteOpenHelper(ctx).getWritableDatabase();
+        SQLiteConfigurationDAO dao = new SQLiteConfigurationDAO(db);
+
+        Config config = new Config();
+        config.setLocationStore(SegmentLocationDAO.NAME);
+        dao.persistConfiguration(config);
+        Assert.assertEquals(SegmentLocationDAO.NAME, dao.retrieveConfiguration().getLocationStore());
+
+        config.setLocationStore("sqlite");
+        dao.persistConfiguration(config);
+        Assert.assertEquals("sqlite", dao.retrieveConfiguration().getLocationStore());
+    }
+
+    @Test
+    public void retrieveKeepsDefaultsOfNotPersistedOptions() throws JSONException {
+        Context ctx = InstrumentationRegistry.getTargetContext();
+        SQLiteDatabase db = new SQLiteOpenHelper(ctx).getWritableDatabase();
+        SQLiteConfigurationDAO dao = new SQLiteConfigurationDAO(db);
+
+        // row written before options columns existed
+        ContentValues values = new ContentValues();
+        values.put(SQLiteConfigurationContract.ConfigurationEntry._ID, 1);
+        values.put(SQLiteConfigurationContract.ConfigurationEntry.COLUMN_NAME_HEADERS, "{}");
+        db.insert(SQLiteConfigurationContract.ConfigurationEntry.TABLE_NAME, null, values);
+
+        Config defaults = new Config();
+        Config storedConfig = dao.retrieveConfiguration();
+        Assert.assertEquals(defaults.getLocationStore(), storedConfig.getLocationStore());
+        Assert.assertEquals(defaults.getWriteBufferSize(), storedConfig.getWriteBufferSize());
+        Assert.assertEquals(defaults.getBatchEncoding(), storedConfig.getBatchEncoding());
+        Assert.assertEquals(defaults.getPipeline(), storedConfig.getPipeline());
+        Assert.assertEquals(defaults.getKalmanProcessNoise(), storedConfig.getKalmanProcessNoise());
+    }
 }
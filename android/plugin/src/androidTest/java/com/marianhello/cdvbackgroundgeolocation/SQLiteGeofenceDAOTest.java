@@ -0,0 +1,81 @@
+package com.marianhello.cdvbackgroundgeolocation;
+
+import android.content.Context;
+import android.database.sqlite.SQLiteDatabase;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import com.marianhello.bgloc.data.Geofence;
+import com.marianhello.bgloc.data.sqlite.SQLiteGeofenceDAO;
+import com.marianhello.bgloc.data.sqlite.SQLiteOpenHelper;
+
+import junit.framework.Assert;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+@RunWith(AndroidJUnit4.class)
+@SmallTest
+public class SQLiteGeofenceDAOTest {
+    @Before
+    public void deleteDatabase() {
+        Context ctx = InstrumentationRegistry.getTargetContext();
+        ctx.deleteDatabase(SQLiteOpenHelper.SQLITE_DATABASE_NAME);
+    }
+
+    private SQLiteGeofenceDAO createDAO() {
+        Context ctx = InstrumentationRegistry.getTargetContext();
+        SQLiteDatabase db = new SQLiteOpenHelper(ctx).getWritableDatabase();
+        return new SQLiteGeofenceDAO(db);
+    }
+
+    @Test
+    public void testPersistGeofences() {
+        SQLiteGeofenceDAO dao = createDAO();
+        dao.persistGeofences(Arrays.asList(
+                new Geofence("a", 49.2, 16.6, 100, 60000),
+                new Geofence("b", 49.3, 16.7, 200, 0)));
+
+        List<Geofence> geofences = dao.getAllGeofences();
+        Assert.assertEquals(2, geofences.size());
+        Geofence a = geofences.get(0);
+        Assert.assertEquals("a", a.getId());
+        Assert.assertEquals(49.2, a.getLatitude(), 0);
+        Assert.assertEquals(16.6, a.getLongitude(), 0);
+        Assert.assertEquals(100f, a.getRadius(), 0);
+        Assert.assertEquals(60000, a.getDwellTime());
+    }
+
+    @Test
+    public void testGeofenceWithSameIdIsReplaced() {
+        SQLiteGeofenceDAO dao = createDAO();
+        dao.persistGeofences(Arrays.asList(new Geofence("a", 49.2, 16.6, 100, 0)));
+        dao.persistGeofences(Arrays.asList(new Geofence("a", 50, 17, 300, 0)));
+
+        List<Geofence> geofences = dao.getAllGeofences();
+        Assert.assertEquals(1, geofences.size());
+        Assert.assertEquals(50, geofences.get(0).getLatitude(), 0);
+        Assert.assertEquals(300f, geofences.get(0).getRadius(), 0);
+    }
+
+    @Test
+    public void testDeleteGeofences() {
+        SQLiteGeofenceDAO dao = createDAO();
+        List<Geofence> geofences = new ArrayList<Geofence>();
+        for (int i = 0; i < 10; i++) {
+            geofences.add(new Geofence("fence" + i, 49 + i * 0.01, 16, 100, 0));
+        }
+        dao.persistGeofences(geofences);
+
+        Assert.assertEquals(2, dao.deleteGeofences(Arrays.asList("fence1", "fence5", "unknown")));
+        Assert.assertEquals(8, dao.getAllGeofences().size());
+        Assert.assertEquals(8, dao.deleteAllGeofences());
+        Assert.assertEquals(0, dao.getAllGeofences().size());
+    }
+}
@@ -1,222 +1,168 @@
 package com.marianhello.cdvbackgroundgeolocation;
 
 import android.content.Context;
+import android.database.DatabaseUtils;
 import android.database.sqlite.SQLiteDatabase;
 import android.location.Location;
-import android.support.test.InstrumentationRegistry;
 import android.support.test.runner.AndroidJUnit4;
 import android.test.suitebuilder.annotation.SmallTest;
 
 import com.marianhello.bgloc.data.BackgroundLocation;
+import com.marianhello.bgloc.data.BoundingBox;
+import com.marianhello.bgloc.data.LocationDAO;
+import com.marianhello.bgloc.data.sqlite.SQLiteLocationContract.LocationEntry;
+import com.marianhello.bgloc.data.sqlite.SQLiteLocationContract.LocationRTreeEntry;
 import com.marianhello.bgloc.data.sqlite.SQLiteLocationDAO;
 import com.marianhello.bgloc.data.sqlite.SQLiteOpenHelper;
 
 import junit.framework.Assert;
 
-import org.junit.Before;
+import org.junit.Assume;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Iterator;
 
 /**
  * Created by finch on 12/07/16.
  */
 @RunWith(AndroidJUnit4.class)
 @SmallTest
-public class SQLiteLocationDAOTest {
+public class SQLiteLocationDAOTest extends LocationDAOTest {
 
-    @Before
-    public void deleteDatabase() {
-        Context ctx = InstrumentationRegistry.getTargetContext();
+    private SQLiteDatabase db;
+
+    @Override
+    protected LocationDAO createLocationDAO(Context ctx) {
         ctx.deleteDatabase(SQLiteOpenHelper.SQLITE_DATABASE_NAME);
+        db = new SQLiteOpenHelper(ctx).getWritableDatabase();
+        return new SQLiteLocationDAO(db);
     }
 
-    @Test
-    public void persistLocation() {
-        Context ctx = InstrumentationRegistry.getTargetContext();
-        SQLiteDatabase db = new SQLiteOpenHelper(ctx).getWritableDatabase();
-        SQLiteLocationDAO dao = new SQLiteLocationDAO(db);
-
-        Location location = new Location("fake");
-        location.setAccuracy(200);
-        location.setAltitude(900);
-        location.setBearing(2);
-        location.setLatitude(40.21);
-        location.setLongitude(23.45);
-        location.setSpeed(20);
-        location.setProvider("test");
-        location.setTime(1000);
-        BackgroundLocation bgLocation = new BackgroundLocation(location);
-
-        dao.persistLocation(bgLocation);
-
-        ArrayList<BackgroundLocation> locations = new ArrayList(dao.getAllLocations());
-        Assert.assertEquals(1, locations.size());
-
-        BackgroundLocation storedLocation = locations.get(0);
-        Assert.assertEquals(200, storedLocation.getAccuracy(), 0);
-        Assert.assertEquals(900, storedLocation.getAltitude(), 0);
-        Assert.assertEquals(2, storedLocation.getBearing(), 0);
-        Assert.assertEquals(40.21, storedLocation.getLatitude(), 0);
-        Assert.assertEquals(23.45, storedLocation.getLongitude(), 0);
-        Assert.assertEquals(20, storedLocation.getSpeed(), 0);
-        Assert.assertEquals("test", storedLocation.getProvider(), "test");
-        Assert.assertEquals(1000, storedLocation.getTime(), 0);
+    private static BackgroundLocation createLocation(long time, double latitude, double longitude) {
+        BackgroundLocation location = new BackgroundLocation("test");
+        location.setTime(time);
+        location.setLatitude(latitude);
+        location.setLongitude(longitude);
+        return location;
     }
 
     @Test
-    public void deleteLocation() {
-        Context ctx = InstrumentationRegistry.getTargetContext();
-        SQLiteDatabase db = new SQLiteOpenHelper(ctx).getWritableDatabase();
-        SQLiteLocationDAO dao = new SQLiteLocationDAO(db);
-
-        BackgroundLocation bgLocation = new BackgroundLocation(new Location("fake"));
-        Collection<BackgroundLocation> locations = null;
-
-        Long locationId = dao.persistLocation(bgLocation);
-
-        locations = dao.getAllLocations();
-        Assert.assertEquals(1, locations.size());
+    public void persistLocationWithRowLimitWhenMaxRowsReduced() {
+        int maxRowsRun[] = {100, 10};
 
-        dao.deleteLocation(locationId);
+        for (int i = 0; i < maxRowsRun.length; i++) {
+            int maxRows = maxRowsRun[i];
+            for (int j = 0; j < maxRows * 2; j++) {
+                dao.persistLocationWithLimit(new BackgroundLocation(new Location("fake")), maxRows);
+            }
+            Collection<BackgroundLocation> locations = dao.getAllLocations();
+            Assert.assertEquals(maxRows, locations.size());
+        }
 
-        locations = dao.getValidLocations();
-        Assert.assertEquals(0, locations.size());
+        // ids continue after ring buffer resize
+        Long locationId = dao.persistLocation(new BackgroundLocation(new Location("fake")));
+        Assert.assertEquals(locationId, Long.valueOf(221));
     }
 
     @Test
-    public void deleteAllLocations() {
-        Context ctx = InstrumentationRegistry.getTargetContext();
-        SQLiteDatabase db = new SQLiteOpenHelper(ctx).getWritableDatabase();
-        SQLiteLocationDAO dao = new SQLiteLocationDAO(db);
+    public void persistLocationWithRowLimitDoesNotReuseIds() {
+        int maxRows = 10;
 
-        Collection<BackgroundLocation> locations = null;
-
-        for (int i = 0; i < 10; i++) {
-            dao.persistLocation(new BackgroundLocation(new Location("fake")));
+        for (int i = 0; i < maxRows * 2 + 3; i++) {
+            BackgroundLocation location = new BackgroundLocation();
+            location.setTime(1000 + i);
+            Long locationId = dao.persistLocationWithLimit(location, maxRows);
+            Assert.assertEquals(Long.valueOf(i + 1), locationId);
         }
 
-        locations = dao.getValidLocations();
-        Assert.assertEquals(10, locations.size());
-
-        dao.deleteAllLocations();
-
-        locations = dao.getValidLocations();
-        Assert.assertEquals(0, locations.size());
+        ArrayList<BackgroundLocation> locations = new ArrayList(dao.getAllLocations());
+        Assert.assertEquals(maxRows, locations.size());
+        Assert.assertEquals(1000 + maxRows + 3, locations.get(0).getTime());
+        Assert.assertEquals(1000 + maxRows * 2 + 2, locations.get(maxRows - 1).getTime());
     }
 
     @Test
-    public void getAllLocations() {
-        Context ctx = InstrumentationRegistry.getTargetContext();
-        SQLiteDatabase db = new SQLiteOpenHelper(ctx).getWritableDatabase();
-        SQLiteLocationDAO dao = new SQLiteLocationDAO(db);
-
-        Location location = null;
-        BackgroundLocation bgLocation = null;
-
-        for (int i = 0; i < 10; i++) {
-            location = new Location("fake");
-            location.setAccuracy(200 + i);
-            location.setAltitude(900 + i);
-            location.setBearing(2 + i);
-            location.setLatitude(40.21 + i);
-            location.setLongitude(23.45 + i);
-            location.setSpeed(20 + i);
-            location.setProvider("test");
+    public void persistLocationWithRowLimitKeepsNewestWhenMaxRowsReduced() {
+        for (int i = 0; i < 25; i++) {
+            BackgroundLocation location = new BackgroundLocation();
             location.setTime(1000 + i);
-            bgLocation = new BackgroundLocation(location);
-            dao.persistLocation(bgLocation);
+            dao.persistLocationWithLimit(location, 20);
         }
 
-        Collection<BackgroundLocation> locations = dao.getAllLocations();
-        Iterator<BackgroundLocation> it = locations.iterator();
-        BackgroundLocation storedLocation = null;
-        for (int i = 0; i < 10; i++) {
-            storedLocation = it.next();
-            Assert.assertEquals(200 + i, storedLocation.getAccuracy(), 0);
-            Assert.assertEquals(900 + i, storedLocation.getAltitude(), 0);
-            Assert.assertEquals(2 + i, storedLocation.getBearing(), 0);
-            Assert.assertEquals(40.21 + i, storedLocation.getLatitude(), 0);
-            Assert.assertEquals(23.45 + i,storedLocation.getLongitude(), 0);
-            Assert.assertEquals(20 + i, storedLocation.getSpeed(), 0);
-            Assert.assertEquals("test", storedLocation.getProvider());
-            Assert.assertEquals(1000 + i, storedLocation.getTime(), 0);
-        }
+        BackgroundLocation location = new BackgroundLocation();
+        location.setTime(2000);
+        Assert.assertEquals(Long.valueOf(26), dao.persistLocationWithLimit(location, 5));
+
+        ArrayList<BackgroundLocation> locations = new ArrayList(dao.getAllLocations());
+        Assert.assertEquals(5, locations.size());
+        Assert.assertEquals(1021, locations.get(0).getTime());
+        Assert.assertEquals(2000, locations.get(4).getTime());
     }
 
     @Test
-    public void persistLocationWithRowLimit() {
-        int maxRows = 100;
-        Context ctx = InstrumentationRegistry.getTargetContext();
-        SQLiteDatabase db = new SQLiteOpenHelper(ctx).getWritableDatabase();
-        SQLiteLocationDAO dao = new SQLiteLocationDAO(db);
-
-        for (int i = 0; i < maxRows * 2; i++) {
-            dao.persistLocationWithLimit(new BackgroundLocation(new Location("fake")), maxRows);
-        }
-
-        Collection<BackgroundLocation> locations = dao.getAllLocations();
-        Assert.assertEquals(maxRows, locations.size());
+    public void deleteOfEvictedLocationKeepsNewerLocation() {
+        Long evictedId = dao.persistLocationWithLimit(createLocation(1000, 10, 10), 2);
+        dao.persistLocationWithLimit(createLocation(2000, 10, 10), 2);
+        dao.persistLocationWithLimit(createLocation(3000, 10, 10), 2);
+
+        // eg. uploader deleting location posted before it was evicted
+        dao.deleteLocation(evictedId);
+        Assert.assertEquals(2, dao.getValidLocations().size());
     }
 
     @Test
-    public void persistLocationWithRowLimitWhenMaxRowsReduced() {
-        int maxRowsRun[] = {100, 10};
-        Context ctx = InstrumentationRegistry.getTargetContext();
-        SQLiteDatabase db = new SQLiteOpenHelper(ctx).getWritableDatabase();
-        SQLiteLocationDAO dao = new SQLiteLocationDAO(db);
+    public void idsAreNotReusedAfterNewestLocationsArePurged() {
+        dao.persistLocationWithLimit(createLocation(1000, 10, 10), 10);
+        Long locationId = dao.persistLocationWithLimit(createLocation(2000, 10, 10), 10);
+        db.delete(LocationEntry.TABLE_NAME, null, null);
 
-        for (int i = 0; i < maxRowsRun.length; i++) {
-            int maxRows = maxRowsRun[i];
-            for (int j = 0; j < maxRows * 2; j++) {
-                dao.persistLocationWithLimit(new BackgroundLocation(new Location("fake")), maxRows);
-            }
-            Collection<BackgroundLocation> locations = dao.getAllLocations();
-            Assert.assertEquals(maxRows, locations.size());
-        }
-
-        Long locationId = dao.persistLocation(new BackgroundLocation(new Location("fake")));
-        Assert.assertEquals(locationId, Long.valueOf(101));
+        Assert.assertEquals(Long.valueOf(locationId + 1), dao.persistLocationWithLimit(createLocation(3000, 10, 10), 10));
     }
 
     @Test
-    public void persisLocationWithBatchId() {
-        Context ctx = InstrumentationRegistry.getTargetContext();
-        SQLiteDatabase db = new SQLiteOpenHelper(ctx).getWritableDatabase();
-        SQLiteLocationDAO dao = new SQLiteLocationDAO(db);
+    public void spatialIndexFollowsRingBuffer() {
+        Assume.assumeTrue(SQLiteOpenHelper.hasLocationRTree(db));
+        BoundingBox oldArea = new BoundingBox(10.0, 10.0, 11.0, 11.0);
+        BoundingBox newArea = new BoundingBox(20.0, 20.0, 21.0, 21.0);
 
-        BackgroundLocation location = new BackgroundLocation();
-        location.setBatchStartMillis(1000L);
-        dao.persistLocation(location);
-        ArrayList<BackgroundLocation> locations = new ArrayList(dao.getAllLocations());
-        Assert.assertEquals(Long.valueOf(1000L), locations.get(0).getBatchStartMillis());
+        for (int i = 0; i < 10; i++) {
+            dao.persistLocationWithLimit(createLocation(1000 + i, 10.5, 10.5), 10);
+        }
+        // evict 4 oldest locations
+        for (int i = 0; i < 4; i++) {
+            dao.persistLocationWithLimit(createLocation(2000 + i, 20.5, 20.5), 10);
+        }
+        Assert.assertEquals(6, dao.queryLocations(oldArea, null, null, 100).size());
+        Assert.assertEquals(4, dao.queryLocations(newArea, null, null, 100).size());
+        Assert.assertEquals(10, DatabaseUtils.queryNumEntries(db, LocationRTreeEntry.TABLE_NAME));
+
+        // resize drops oldest locations
+        dao.persistLocationWithLimit(createLocation(3000, 20.5, 20.5), 5);
+        Assert.assertEquals(0, dao.queryLocations(oldArea, null, null, 100).size());
+        ArrayList<BackgroundLocation> locations = new ArrayList(dao.queryLocations(newArea, null, null, 100));
+        Assert.assertEquals(5, locations.size());
+        Assert.assertEquals(3000, locations.get(4).getTime());
+        Assert.assertEquals(Long.valueOf(15), locations.get(4).getLocationId());
+        Assert.assertEquals(5, DatabaseUtils.queryNumEntries(db, LocationRTreeEntry.TABLE_NAME));
+
+        db.delete(LocationEntry.TABLE_NAME, null, null);
+        Assert.assertEquals(0, DatabaseUtils.queryNumEntries(db, LocationRTreeEntry.TABLE_NAME));
     }
 
     @Test
-    public void locationsForSyncCount() {
-        Context ctx = InstrumentationRegistry.getTargetContext();
-        SQLiteDatabase db = new SQLiteOpenHelper(ctx).getWritableDatabase();
-        SQLiteLocationDAO dao = new SQLiteLocationDAO(db);
-
-        BackgroundLocation location;
-        for (int i = 1; i < 100; i++) {
-            location = new BackgroundLocation();
-            if ((i % 3) == 0) {
-                location.setBatchStartMillis(1000L);
-            } else if ((i % 2) == 0) {
-                location.setValid(false);
-            } else {
-                //noop
-            }
-            dao.persistLocation(location);
+    public void spatialQueryMatchesSecondsOfEpochTime() {
+        Assume.assumeTrue(SQLiteOpenHelper.hasLocationRTree(db));
+        BoundingBox area = new BoundingBox(10.0, 10.0, 11.0, 11.0);
+        long time = 1500000000000L;
+        for (int i = 0; i < 10; i++) {
+            dao.persistLocationWithLimit(createLocation(time + i * 1000, 10.5, 10.5), 100);
         }
 
-        Assert.assertEquals(66, dao.getValidLocations().size());
-        Assert.assertEquals(99, dao.getAllLocations().size());
-        Assert.assertEquals(Long.valueOf(66L), dao.locationsForSyncCount(10001L));
-        Assert.assertEquals(Long.valueOf(33L), dao.locationsForSyncCount(1000L));
+        ArrayList<BackgroundLocation> locations = new ArrayList(dao.queryLocations(area, time + 3000, time + 5000, 100));
+        Assert.assertEquals(3, locations.size());
+        Assert.assertEquals(time + 3000, locations.get(0).getTime());
+        Assert.assertEquals(time + 5000, locations.get(2).getTime());
     }
 }
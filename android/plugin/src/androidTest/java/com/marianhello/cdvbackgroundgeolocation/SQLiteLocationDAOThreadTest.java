@@ -1,6 +1,7 @@
 package com.marianhello.cdvbackgroundgeolocation;
 
 import android.content.Context;
+import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.location.Location;
 import android.support.test.InstrumentationRegistry;
@@ -8,8 +9,10 @@ import android.support.test.runner.AndroidJUnit4;
 import android.test.suitebuilder.annotation.SmallTest;
 
 import com.marianhello.bgloc.data.BackgroundLocation;
+import com.marianhello.bgloc.data.sqlite.SQLiteLocationContract;
 import com.marianhello.bgloc.data.sqlite.SQLiteLocationDAO;
 import com.marianhello.bgloc.data.sqlite.SQLiteOpenHelper;
+import com.marianhello.bgloc.sync.JsonBatchEncoder;
 
 import junit.framework.Assert;
 
@@ -17,11 +20,18 @@ import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Iterator;
+import java.util.List;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Created by finch on 13/07/16.
@@ -91,4 +101,97 @@ public class SQLiteLocationDAOThreadTest {
             i++;
         }
     }
+
+    /**
+     * Contention benchmark: latency of location inserts while big batch is being read
+     *
+     * Reader thread repeatedly exports all locations (as batch sync does) while writer
+     * inserts locations one by one. Insert latencies of both journal modes are measured.
+     *
+     * Run with: ./gradlew connectedAndroidTest -Pandroid.testInstrumentationRunnerArguments.class=\
+     *   com.marianhello.cdvbackgroundgeolocation.SQLiteLocationDAOThreadTest
+     */
+    @Test
+    public void insertLatencyWhileReadingBatch() throws Exception {
+        long[] defaultLatencies = measureInsertLatency(SQLiteOpenHelper.JOURNAL_MODE_DEFAULT);
+        long[] walLatencies = measureInsertLatency(SQLiteOpenHelper.JOURNAL_MODE_WAL);
+
+        String message = String.format("insert latency p50/p99/max default journal: %.2f/%.2f/%.2fms WAL: %.2f/%.2f/%.2fms",
+                percentile(defaultLatencies, 50), percentile(defaultLatencies, 99), percentile(defaultLatencies, 100),
+                percentile(walLatencies, 50), percentile(walLatencies, 99), percentile(walLatencies, 100));
+        Assert.assertTrue(message, percentile(defaultLatencies, 50) > 0);
+        Assert.assertTrue(message, percentile(walLatencies, 50) > 0);
+    }
+
+    private static final int BATCH_ROWS = 20000;
+    private static final int INSERTS = 200;
+
+    private long[] measureInsertLatency(String journalMode) throws Exception {
+        Context ctx = InstrumentationRegistry.getTargetContext();
+        ctx.deleteDatabase(SQLiteOpenHelper.SQLITE_DATABASE_NAME);
+        SQLiteOpenHelper helper = new SQLiteOpenHelper(ctx, journalMode);
+        final SQLiteDatabase db = helper.getWritableDatabase();
+        final SQLiteDatabase readerDb = helper.getReaderDatabase();
+        final SQLiteLocationDAO dao = new SQLiteLocationDAO(db, readerDb);
+
+        List<BackgroundLocation> batch = new ArrayList<BackgroundLocation>();
+        for (int i = 0; i < BATCH_ROWS; i++) {
+            batch.add(createLocation(i));
+        }
+        dao.persistLocations(batch, BATCH_ROWS + INSERTS);
+
+        final AtomicBoolean writing = new AtomicBoolean(true);
+        final AtomicInteger batchesRead = new AtomicInteger();
+        Thread reader = new Thread(new Runnable() {
+            public void run() {
+                JsonBatchEncoder encoder = new JsonBatchEncoder();
+                while (writing.get()) {
+                    Cursor cursor = readerDb.query(SQLiteLocationContract.LocationEntry.TABLE_NAME,
+                            null, null, null, null, null, SQLiteLocationContract.LocationEntry.COLUMN_NAME_TIME);
+                    try {
+                        encoder.encode(cursor, new ByteArrayOutputStream(BATCH_ROWS * 200));
+                        batchesRead.incrementAndGet();
+                    } catch (IOException e) {
+                        Assert.fail(e.getMessage());
+                    } finally {
+                        cursor.close();
+                    }
+                }
+            }
+        });
+        reader.start();
+        Thread.sleep(100);
+
+        long[] latencies = new long[INSERTS];
+        for (int i = 0; i < INSERTS; i++) {
+            long start = System.nanoTime();
+            dao.persistLocationWithLimit(createLocation(BATCH_ROWS + i), BATCH_ROWS + INSERTS);
+            latencies[i] = System.nanoTime() - start;
+        }
+        writing.set(false);
+        reader.join();
+
+        Assert.assertTrue(batchesRead.get() > 0);
+        Assert.assertEquals(BATCH_ROWS + INSERTS, dao.getValidLocations().size());
+        helper.close();
+
+        return latencies;
+    }
+
+    private static BackgroundLocation createLocation(int i) {
+        BackgroundLocation location = new BackgroundLocation();
+        location.setTime(1000L + i);
+        location.setLatitude(40.21 + i * 0.0001);
+        location.setLongitude(23.45 + i * 0.0001);
+        location.setAccuracy(10);
+        location.setProvider("test");
+        return location;
+    }
+
+    private static double percentile(long[] latencies, int percentile) {
+        long[] sorted = latencies.clone();
+        Arrays.sort(sorted);
+        int index = Math.min(sorted.length - 1, (int) Math.ceil(percentile / 100.0 * sorted.length) - 1);
+        return sorted[Math.max(0, index)] / 1e6;
+    }
 }
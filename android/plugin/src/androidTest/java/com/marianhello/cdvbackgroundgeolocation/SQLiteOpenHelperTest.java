@@ -3,14 +3,18 @@ package com.marianhello.cdvbackgroundgeolocation;
 import android.content.ContentValues;
 import android.content.Context;
 import android.database.Cursor;
+import android.database.DatabaseUtils;
 import android.database.sqlite.SQLiteDatabase;
 import android.location.Location;
+import android.os.Handler;
+import android.os.Looper;
 import android.support.test.InstrumentationRegistry;
 import android.support.test.runner.AndroidJUnit4;
 import android.test.suitebuilder.annotation.SmallTest;
 
 import com.marianhello.bgloc.Config;
 import com.marianhello.bgloc.data.BackgroundLocation;
+import com.marianhello.bgloc.data.sqlite.CompactionTask;
 import com.marianhello.bgloc.data.sqlite.SQLiteConfigurationContract;
 import com.marianhello.bgloc.data.sqlite.SQLiteLocationContract;
 import com.marianhello.bgloc.data.sqlite.SQLiteLocationDAO;
@@ -141,6 +145,37 @@ public class SQLiteOpenHelperTest {
 
         cursor.close();
 
+        // upgraded db is switched to incremental auto_vacuum mode by first compaction, not on open
+        Assert.assertEquals(0, DatabaseUtils.longForQuery(db, "PRAGMA auto_vacuum", null));
+        new CompactionTask(db, new Handler(Looper.getMainLooper())).run();
+        Assert.assertEquals(2, DatabaseUtils.longForQuery(db, "PRAGMA auto_vacuum", null));
+
+        // batch_id_idx is superseded by batch_idx and sync_queue_idx
+        String indexCountSql = "SELECT COUNT(*) FROM sqlite_master WHERE type = 'index' AND name = ?";
+        Assert.assertEquals(0, DatabaseUtils.longForQuery(db, indexCountSql, new String[]{ "batch_id_idx" }));
+        Assert.assertEquals(1, DatabaseUtils.longForQuery(db, indexCountSql, new String[]{ "batch_idx" }));
+        Assert.assertEquals(1, DatabaseUtils.longForQuery(db, indexCountSql, new String[]{ "sync_queue_idx" }));
+
+        String tableCountSql = "SELECT COUNT(*) FROM sqlite_master WHERE type = 'table' AND name = ?";
+        Assert.assertEquals(1, DatabaseUtils.longForQuery(db, tableCountSql, new String[]{ "tracking_session" }));
+        Assert.assertEquals(1, DatabaseUtils.longForQuery(db, tableCountSql, new String[]{ "geofence" }));
+        cursor = db.query(SQLiteLocationContract.TrackingSessionEntry.TABLE_NAME, null, null, null, null, null, null);
+        Assert.assertTrue(cursor.getColumnIndex(SQLiteLocationContract.TrackingSessionEntry.COLUMN_NAME_LAST_LOCATION_TIME) > -1);
+        cursor.close();
+        if (SQLiteOpenHelper.hasLocationRTree(db)) {
+            // existing locations are indexed on upgrade
+            Assert.assertEquals(DatabaseUtils.queryNumEntries(db, "location"), DatabaseUtils.queryNumEntries(db, "location_rtree"));
+            // id and latitude, longitude ranges (time is not indexed in R*Tree)
+            cursor = db.query(SQLiteLocationContract.LocationRTreeEntry.TABLE_NAME, null, null, null, null, null, null);
+            Assert.assertEquals(5, cursor.getColumnCount());
+            cursor.close();
+        }
+
+        // recreated config table gets version column too
+        cursor = db.query(SQLiteConfigurationContract.ConfigurationEntry.TABLE_NAME, null, null, null, null, null, null);
+        Assert.assertTrue(cursor.getColumnIndex(SQLiteConfigurationContract.ConfigurationEntry.COLUMN_NAME_VERSION) > -1);
+        cursor.close();
+
         // locations should survive db upgrade
         SQLiteLocationDAO dao = new SQLiteLocationDAO(db);
         ArrayList<BackgroundLocation> locations = new ArrayList(dao.getAllLocations());
@@ -184,6 +219,18 @@ public class SQLiteOpenHelperTest {
         Assert.assertTrue(columnNames.contains((SQLiteConfigurationContract.ConfigurationEntry.COLUMN_NAME_SYNC_THRESHOLD)));
         Assert.assertTrue(columnNames.contains((SQLiteConfigurationContract.ConfigurationEntry.COLUMN_NAME_HEADERS)));
         Assert.assertTrue(columnNames.contains((SQLiteConfigurationContract.ConfigurationEntry.COLUMN_NAME_MAX_LOCATIONS)));
+        Assert.assertTrue(columnNames.contains((SQLiteConfigurationContract.ConfigurationEntry.COLUMN_NAME_LOCATION_STORE)));
+        Assert.assertTrue(columnNames.contains((SQLiteConfigurationContract.ConfigurationEntry.COLUMN_NAME_WRITE_BUFFER_SIZE)));
+        Assert.assertTrue(columnNames.contains((SQLiteConfigurationContract.ConfigurationEntry.COLUMN_NAME_CRASH_SAFE_WRITES)));
+        Assert.assertTrue(columnNames.contains((SQLiteConfigurationContract.ConfigurationEntry.COLUMN_NAME_BATCH_ENCODING)));
+        Assert.assertTrue(columnNames.contains((SQLiteConfigurationContract.ConfigurationEntry.COLUMN_NAME_SYNC_CHUNK_SIZE)));
+        Assert.assertTrue(columnNames.contains((SQLiteConfigurationContract.ConfigurationEntry.COLUMN_NAME_MAX_ACCURACY)));
+        Assert.assertTrue(columnNames.contains((SQLiteConfigurationContract.ConfigurationEntry.COLUMN_NAME_THROTTLE_INTERVAL)));
+        Assert.assertTrue(columnNames.contains((SQLiteConfigurationContract.ConfigurationEntry.COLUMN_NAME_PIPELINE)));
+        Assert.assertTrue(columnNames.contains((SQLiteConfigurationContract.ConfigurationEntry.COLUMN_NAME_KALMAN_PROCESS_NOISE)));
+        Assert.assertTrue(columnNames.contains((SQLiteConfigurationContract.ConfigurationEntry.COLUMN_NAME_SIMPLIFY_TOLERANCE)));
+        Assert.assertTrue(columnNames.contains((SQLiteConfigurationContract.ConfigurationEntry.COLUMN_NAME_FUSION_WINDOW)));
+        Assert.assertTrue(columnNames.contains((SQLiteConfigurationContract.ConfigurationEntry.COLUMN_NAME_ADAPTIVE_SAMPLING)));
 
         cursor.close();
 
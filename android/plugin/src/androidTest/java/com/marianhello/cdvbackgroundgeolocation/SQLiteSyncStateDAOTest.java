@@ -0,0 +1,93 @@
+package com.marianhello.cdvbackgroundgeolocation;
+
+import android.content.Context;
+import android.database.sqlite.SQLiteDatabase;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import com.marianhello.bgloc.data.SyncState;
+import com.marianhello.bgloc.data.sqlite.SQLiteOpenHelper;
+import com.marianhello.bgloc.data.sqlite.SQLiteSyncStateDAO;
+
+import junit.framework.Assert;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+@RunWith(AndroidJUnit4.class)
+@SmallTest
+public class SQLiteSyncStateDAOTest {
+    @Before
+    public void deleteDatabase() {
+        Context ctx = InstrumentationRegistry.getTargetContext();
+        ctx.deleteDatabase(SQLiteOpenHelper.SQLITE_DATABASE_NAME);
+    }
+
+    private SQLiteSyncStateDAO createDAO() {
+        Context ctx = InstrumentationRegistry.getTargetContext();
+        SQLiteDatabase db = new SQLiteOpenHelper(ctx).getWritableDatabase();
+        return new SQLiteSyncStateDAO(db);
+    }
+
+    @Test
+    public void testInitialState() {
+        SyncState state = createDAO().getSyncState();
+        Assert.assertEquals(0, state.getAttempts());
+        Assert.assertEquals(0, state.getConsecutiveFailures());
+        Assert.assertEquals(0, state.getNextAttemptAt());
+        Assert.assertNull(state.getLastDecision());
+        Assert.assertNull(state.getLastSuccessAt());
+    }
+
+    @Test
+    public void testPersistDecision() {
+        SQLiteSyncStateDAO dao = createDAO();
+        dao.persistDecision("waitThreshold", 2000L, 5, 1000L);
+
+        SyncState state = dao.getSyncState();
+        Assert.assertEquals("waitThreshold", state.getLastDecision());
+        Assert.assertEquals(Long.valueOf(2000L), state.getLastDecisionAt());
+        Assert.assertEquals(5, state.getPendingCount());
+        Assert.assertEquals(Long.valueOf(1000L), state.getOldestPendingTime());
+    }
+
+    @Test
+    public void testFailuresAreResetBySuccess() {
+        SQLiteSyncStateDAO dao = createDAO();
+        dao.persistSyncAttempt(1000L);
+        dao.persistSyncFailure(1100L, 30000L, 3600000L);
+        dao.persistSyncAttempt(40000L);
+        dao.persistSyncFailure(40100L, 30000L, 3600000L);
+
+        SyncState state = dao.getSyncState();
+        Assert.assertEquals(2, state.getAttempts());
+        Assert.assertEquals(2, state.getFailures());
+        Assert.assertEquals(2, state.getConsecutiveFailures());
+        Assert.assertEquals(100100L, state.getNextAttemptAt());
+        Assert.assertEquals(Long.valueOf(40100L), state.getLastFailureAt());
+
+        dao.persistSyncAttempt(200000L);
+        dao.persistSyncSuccess(200100L);
+        state = dao.getSyncState();
+        Assert.assertEquals(3, state.getAttempts());
+        Assert.assertEquals(1, state.getSuccesses());
+        Assert.assertEquals(2, state.getFailures());
+        Assert.assertEquals(0, state.getConsecutiveFailures());
+        Assert.assertEquals(0, state.getNextAttemptAt());
+        Assert.assertEquals(Long.valueOf(200100L), state.getLastSuccessAt());
+    }
+
+    @Test
+    public void testBackoffIsCapped() {
+        SQLiteSyncStateDAO dao = createDAO();
+        for (int i = 0; i < 30; i++) {
+            dao.persistSyncFailure(1000L * i, 30000L, 3600000L);
+        }
+
+        SyncState state = dao.getSyncState();
+        Assert.assertEquals(30, state.getConsecutiveFailures());
+        Assert.assertEquals(29000L + 3600000L, state.getNextAttemptAt());
+    }
+}
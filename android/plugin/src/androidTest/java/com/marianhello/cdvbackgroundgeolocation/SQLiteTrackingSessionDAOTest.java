@@ -0,0 +1,99 @@
+package com.marianhello.cdvbackgroundgeolocation;
+
+import android.content.Context;
+import android.database.sqlite.SQLiteDatabase;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import com.marianhello.bgloc.data.BackgroundLocation;
+import com.marianhello.bgloc.data.TrackingSession;
+import com.marianhello.bgloc.data.sqlite.SQLiteOpenHelper;
+import com.marianhello.bgloc.data.sqlite.SQLiteTrackingSessionDAO;
+
+import junit.framework.Assert;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+@RunWith(AndroidJUnit4.class)
+@SmallTest
+public class SQLiteTrackingSessionDAOTest {
+    @Before
+    public void deleteDatabase() {
+        Context ctx = InstrumentationRegistry.getTargetContext();
+        ctx.deleteDatabase(SQLiteOpenHelper.SQLITE_DATABASE_NAME);
+    }
+
+    private SQLiteTrackingSessionDAO createDAO() {
+        Context ctx = InstrumentationRegistry.getTargetContext();
+        SQLiteDatabase db = new SQLiteOpenHelper(ctx).getWritableDatabase();
+        return new SQLiteTrackingSessionDAO(db);
+    }
+
+    private static BackgroundLocation createLocation(long time, double latitude, double longitude) {
+        BackgroundLocation location = new BackgroundLocation("test");
+        location.setTime(time);
+        location.setLatitude(latitude);
+        location.setLongitude(longitude);
+        return location;
+    }
+
+    @Test
+    public void testNoSession() {
+        Assert.assertNull(createDAO().getCurrentSession());
+    }
+
+    @Test
+    public void testPersistSession() {
+        SQLiteTrackingSessionDAO dao = createDAO();
+        TrackingSession session = dao.startSession(1000L);
+        session.addLocation(createLocation(1000L, 49.0, 17.0));
+        session.addLocation(createLocation(61000L, 49.001, 17.002));
+        dao.persistSession(session);
+
+        TrackingSession stored = dao.getCurrentSession();
+        Assert.assertEquals(session.getSessionId(), stored.getSessionId());
+        Assert.assertTrue(stored.isActive());
+        Assert.assertEquals(2, stored.getPointCount());
+        Assert.assertEquals(session.getDistance(), stored.getDistance(), 0);
+        Assert.assertEquals(60000, stored.getMovingTime());
+        Assert.assertEquals(49.0, stored.getMinLatitude(), 0);
+        Assert.assertEquals(17.002, stored.getMaxLongitude(), 0);
+
+        // aggregates continue from stored state
+        stored.addLocation(createLocation(121000L, 49.002, 17.004));
+        session.addLocation(createLocation(121000L, 49.002, 17.004));
+        Assert.assertEquals(session.getDistance(), stored.getDistance(), 1e-9);
+    }
+
+    @Test
+    public void testPersistLastLocationTime() {
+        SQLiteTrackingSessionDAO dao = createDAO();
+        TrackingSession session = dao.startSession(1000L);
+        session.addLocation(createLocation(1000L, 49.0, 17.0));
+        BackgroundLocation jitter = createLocation(61000L, 49.00001, 17.0);
+        jitter.setAccuracy(10);
+        session.addLocation(jitter);
+        dao.persistSession(session);
+
+        TrackingSession stored = dao.getCurrentSession();
+        Assert.assertEquals(Long.valueOf(1000L), stored.getLastTime());
+        Assert.assertEquals(Long.valueOf(61000L), stored.getLastLocationTime());
+        Assert.assertEquals(60000L, stored.getDuration());
+    }
+
+    @Test
+    public void testEndSession() {
+        SQLiteTrackingSessionDAO dao = createDAO();
+        TrackingSession first = dao.startSession(1000L);
+        dao.endSession(first, 5000L);
+        TrackingSession second = dao.startSession(6000L);
+
+        Assert.assertEquals(second.getSessionId(), dao.getCurrentSession().getSessionId());
+        TrackingSession ended = dao.getSession(first.getSessionId());
+        Assert.assertFalse(ended.isActive());
+        Assert.assertEquals(4000L, ended.getDuration());
+    }
+}
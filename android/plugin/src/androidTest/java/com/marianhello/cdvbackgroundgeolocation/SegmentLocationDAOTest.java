@@ -0,0 +1,118 @@
+package com.marianhello.cdvbackgroundgeolocation;
+
+import android.content.Context;
+import android.support.test.runner.AndroidJUnit4;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import com.marianhello.bgloc.data.BackgroundLocation;
+import com.marianhello.bgloc.data.LocationDAO;
+import com.marianhello.bgloc.data.segment.SegmentLocationDAO;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+@RunWith(AndroidJUnit4.class)
+@SmallTest
+public class SegmentLocationDAOTest extends LocationDAOTest {
+    private static final int SEGMENT_CAPACITY = 16;
+
+    private File directory;
+
+    static File createEmptyDirectory(Context ctx, String name) {
+        File directory = new File(ctx.getCacheDir(), name);
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        return directory;
+    }
+
+    @Override
+    protected LocationDAO createLocationDAO(Context ctx) {
+        directory = createEmptyDirectory(ctx, "segments");
+        return new SegmentLocationDAO(directory, SEGMENT_CAPACITY);
+    }
+
+    private void persistLocations(int count) {
+        for (int i = 0; i < count; i++) {
+            BackgroundLocation location = new BackgroundLocation("test");
+            location.setTime(1000 + i);
+            dao.persistLocation(location);
+        }
+    }
+
+    @Test
+    public void persistLocationWithRowLimitNeverReusesIds() {
+        for (int i = 0; i < 25; i++) {
+            dao.persistLocationWithLimit(new BackgroundLocation(), 20);
+        }
+
+        BackgroundLocation location = new BackgroundLocation();
+        location.setTime(2000);
+        Assert.assertEquals(Long.valueOf(26), dao.persistLocationWithLimit(location, 5));
+
+        ArrayList<BackgroundLocation> locations = new ArrayList(dao.getAllLocations());
+        Assert.assertEquals(5, locations.size());
+        Assert.assertEquals(Long.valueOf(22), locations.get(0).getLocationId());
+        Assert.assertEquals(2000, locations.get(4).getTime());
+    }
+
+    @Test
+    public void deleteSyncedSegments() {
+        SegmentLocationDAO segmentDAO = (SegmentLocationDAO) dao;
+        persistLocations(SEGMENT_CAPACITY * 3 + 1);
+        Assert.assertEquals(4, segmentDAO.getSegmentCount());
+
+        // segment is deleted only when all its locations are synced
+        for (long id = 1; id < SEGMENT_CAPACITY * 2; id++) {
+            dao.deleteLocation(id);
+        }
+        Assert.assertEquals(3, segmentDAO.getSegmentCount());
+
+        dao.deleteLocation((long) SEGMENT_CAPACITY * 2);
+        Assert.assertEquals(2, segmentDAO.getSegmentCount());
+
+        // last segment is kept to continue sequence of ids
+        dao.deleteAllLocations();
+        Assert.assertEquals(1, segmentDAO.getSegmentCount());
+        Assert.assertEquals(0, dao.getValidLocations().size());
+        Assert.assertEquals(Long.valueOf(SEGMENT_CAPACITY * 3 + 2), dao.persistLocation(new BackgroundLocation()));
+    }
+
+    @Test
+    public void syncBatchFromOtherInstance() {
+        persistLocations(30);
+
+        // sync process maps same segments
+        SegmentLocationDAO syncDAO = new SegmentLocationDAO(directory, SEGMENT_CAPACITY);
+        Assert.assertEquals(30, syncDAO.prepareBatch(5000L, 1, 7));
+        Assert.assertEquals(5, syncDAO.getChunkCount(5000L));
+
+        // locations persisted during sync do not join batch
+        persistLocations(2);
+        Assert.assertEquals(Long.valueOf(2L), dao.locationsForSyncCount(5000L));
+
+        syncDAO.setChunkCompleted(5000L, 0);
+        syncDAO.setChunkCompleted(5000L, 1);
+        Assert.assertEquals(Long.valueOf(5000L), syncDAO.getPendingBatchId());
+        Assert.assertEquals(Arrays.asList(2, 3, 4), syncDAO.getPendingChunks(5000L));
+        Assert.assertEquals(7, syncDAO.getChunkLocations(5000L, 2).size());
+        Assert.assertEquals(1014, syncDAO.getChunkLocations(5000L, 2).get(0).getTime());
+
+        for (int seq = 2; seq < 5; seq++) {
+            syncDAO.setChunkCompleted(5000L, seq);
+        }
+        Assert.assertNull(syncDAO.getPendingBatchId());
+        Assert.assertEquals(0, syncDAO.getChunkCount(5000L));
+        Assert.assertEquals(2, dao.getValidLocations().size());
+        Assert.assertEquals(1, ((SegmentLocationDAO) dao).getSegmentCount());
+    }
+}
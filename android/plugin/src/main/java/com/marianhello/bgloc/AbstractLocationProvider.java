@@ -21,6 +21,8 @@ import com.marianhello.cordova.JSONErrorFactory;
 
 import org.json.JSONObject;
 
+import java.util.Set;
+
 /**
  * AbstractLocationProvider
  */
@@ -57,6 +59,15 @@ public abstract class AbstractLocationProvider implements LocationProvider {
         toneGenerator = null;
     }
 
+    /**
+     * Options read from config on every location (debug, distanceFilter, stationaryRadius)
+     * take effect immediately. Providers override this to re-request location updates
+     * when their request parameters changed.
+     */
+    public void onConfigure(Config config, Set<String> changedOptions) {
+        this.config = config;
+    }
+
     /**
      * Register broadcast reciever
      * @param receiver
@@ -81,6 +92,14 @@ public abstract class AbstractLocationProvider implements LocationProvider {
         locationService.handleLocation(new BackgroundLocation(PROVIDER_ID, location));
     }
 
+    /**
+     * Handle activity detected by activity recognition
+     * @param activity DetectedActivity type
+     */
+    public void handleActivity (int activity) {
+        locationService.handleActivity(activity);
+    }
+
     /**
      * Handle stationary location with radius
      *
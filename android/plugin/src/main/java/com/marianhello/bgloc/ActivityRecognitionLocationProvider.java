@@ -27,6 +27,7 @@ import com.marianhello.logging.LoggerManager;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Set;
 
 public class ActivityRecognitionLocationProvider extends AbstractLocationProvider implements GoogleApiClient.ConnectionCallbacks,
   GoogleApiClient.OnConnectionFailedListener, LocationListener {
@@ -166,7 +167,8 @@ public class ActivityRecognitionLocationProvider extends AbstractLocationProvide
       Toast.makeText(locationService, "acy:" + location.getAccuracy() + ",v:" + location.getSpeed() + ",df:" + config.getDistanceFilter(), Toast.LENGTH_LONG).show();
     }
 
-     if (lastLocation != null && location.distanceTo(lastLocation) < config.getDistanceFilter()) {
+     if (lastLocation != null && Geodesy.distance(location.getLatitude(), location.getLongitude(),
+         lastLocation.getLatitude(), lastLocation.getLongitude()) < config.getDistanceFilter()) {
          return;
      }
 
@@ -226,6 +228,33 @@ public class ActivityRecognitionLocationProvider extends AbstractLocationProvide
     isTracking = false;
   }
 
+  /**
+   * Re-request location updates when their parameters changed and activity updates
+   * when activitiesInterval or stopOnStillActivity changed
+   */
+  @Override
+  public void onConfigure(Config config, Set<String> changedOptions) {
+    super.onConfigure(config, changedOptions);
+    this.minBatteryLevel = config.getMinBattery();
+
+    if (isTracking && (changedOptions.contains("interval") || changedOptions.contains("fastestInterval")
+        || changedOptions.contains("desiredAccuracy") || changedOptions.contains("distanceFilter"))) {
+      locationManager.removeUpdates(this);
+      if (mGpsListener != null) {
+        locationManager.removeGpsStatusListener(mGpsListener);
+      }
+      isTracking = false;
+      startTracking();
+    }
+
+    if (changedOptions.contains("activitiesInterval") || changedOptions.contains("stopOnStillActivity")) {
+      detachRecorder();
+      if (startRecordingOnConnect) {
+        attachRecorder();
+      }
+    }
+  }
+
   private void connectToPlayAPI() {
     log.debug("Connecting to Google Play Services");
     googleApiClient =  new GoogleApiClient.Builder(locationService)
@@ -365,6 +394,7 @@ public class ActivityRecognitionLocationProvider extends AbstractLocationProvide
       lastActivity = getProbableActivity(detectedActivities);
 
       log.debug("Detected activity={} confidence={}", getActivityString(lastActivity.getType()), lastActivity.getConfidence());
+      handleActivity(lastActivity.getType());
 
       if (lastActivity.getType() == DetectedActivity.STILL) {
         if (config.isDebugging()) {
@@ -18,8 +18,7 @@ import org.json.JSONException;
 
 import com.marianhello.bgloc.Config;
 import com.marianhello.bgloc.LocationService;
-import com.marianhello.bgloc.data.DAOFactory;
-import com.marianhello.bgloc.data.ConfigurationDAO;
+import com.marianhello.bgloc.data.ConfigRepository;
 /**
  * BootCompletedReceiver class
  */
@@ -29,11 +28,10 @@ public class BootCompletedReceiver extends BroadcastReceiver {
     @Override
      public void onReceive(Context context, Intent intent) {
         Log.d(TAG, "Received boot completed");
-        ConfigurationDAO dao = DAOFactory.createConfigurationDAO(context);
         Config config = null;
 
         try {
-            config = dao.retrieveConfiguration();
+            config = ConfigRepository.getInstance(context).getConfig();
         } catch (JSONException e) {
             //noop
         }
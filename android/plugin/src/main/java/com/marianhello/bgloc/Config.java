@@ -16,11 +16,19 @@ import android.os.Parcel;
 import android.os.Parcelable;
 import android.os.Bundle;
 
+import com.marianhello.bgloc.pipeline.AccuracyGateStage;
+import com.marianhello.bgloc.pipeline.DedupStage;
+import com.marianhello.bgloc.pipeline.ThrottleStage;
+
 import org.json.JSONObject;
 import org.json.JSONException;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.Set;
 
 /**
  * Config class
@@ -58,6 +66,24 @@ public class Config implements Parcelable
   private HashMap httpHeaders = new HashMap<String, String>();
   private Integer maxLocations = 10000;
   private Integer minBattery = 10;
+  private Integer writeBufferSize = 10;
+  private Integer writeBufferMaxAge = 30000;
+  private Boolean crashSafeWrites = false;
+  private Boolean httpCompression = false;
+  private String batchEncoding = "json";
+  private Integer httpQueueSize = 100;
+  private Integer syncMaxDelay = 0;
+  private Boolean syncUnmeteredOnly = false;
+  private Integer syncChunkSize = 0;
+  private String locationStore = "sqlite";
+  private Integer maxAccuracy = 0;
+  private Integer throttleInterval = 0;
+  private Float kalmanProcessNoise = 3f;
+  private Float simplifyTolerance = 10f;
+  private Integer fusionWindow = 500;
+  private Boolean adaptiveSampling = false;
+  private ArrayList<String> pipeline = new ArrayList<String>(Arrays.asList(
+    AccuracyGateStage.NAME, DedupStage.NAME, ThrottleStage.NAME));
 
   public Config () {
   }
@@ -90,6 +116,23 @@ public class Config implements Parcelable
     out.writeInt(getSyncThreshold());
     out.writeInt(getMaxLocations());
     out.writeInt(getMinBattery());
+    out.writeInt(getWriteBufferSize());
+    out.writeInt(getWriteBufferMaxAge());
+    out.writeValue(getCrashSafeWrites());
+    out.writeValue(getHttpCompression());
+    out.writeString(getBatchEncoding());
+    out.writeInt(getHttpQueueSize());
+    out.writeInt(getSyncMaxDelay());
+    out.writeValue(getSyncUnmeteredOnly());
+    out.writeInt(getSyncChunkSize());
+    out.writeString(getLocationStore());
+    out.writeInt(getMaxAccuracy());
+    out.writeInt(getThrottleInterval());
+    out.writeFloat(getKalmanProcessNoise());
+    out.writeFloat(getSimplifyTolerance());
+    out.writeInt(getFusionWindow());
+    out.writeValue(getAdaptiveSampling());
+    out.writeStringList(getPipeline());
     Bundle bundle = new Bundle();
     bundle.putSerializable("httpHeaders", getHttpHeaders());
     out.writeBundle(bundle);
@@ -129,6 +172,23 @@ public class Config implements Parcelable
     setSyncThreshold(in.readInt());
     setMaxLocations(in.readInt());
     setMinBattery(in.readInt());
+    setWriteBufferSize(in.readInt());
+    setWriteBufferMaxAge(in.readInt());
+    setCrashSafeWrites((Boolean) in.readValue(null));
+    setHttpCompression((Boolean) in.readValue(null));
+    setBatchEncoding(in.readString());
+    setHttpQueueSize(in.readInt());
+    setSyncMaxDelay(in.readInt());
+    setSyncUnmeteredOnly((Boolean) in.readValue(null));
+    setSyncChunkSize(in.readInt());
+    setLocationStore(in.readString());
+    setMaxAccuracy(in.readInt());
+    setThrottleInterval(in.readInt());
+    setKalmanProcessNoise(in.readFloat());
+    setSimplifyTolerance(in.readFloat());
+    setFusionWindow(in.readInt());
+    setAdaptiveSampling((Boolean) in.readValue(null));
+    setPipeline(in.createStringArrayList());
     Bundle bundle = in.readBundle();
     setHttpHeaders((HashMap<String, String>) bundle.getSerializable("httpHeaders"));
   }
@@ -341,6 +401,145 @@ public class Config implements Parcelable
     this.minBattery = minBattery;
   }
 
+  public Integer getWriteBufferSize() {
+    return writeBufferSize;
+  }
+
+  public void setWriteBufferSize(Integer writeBufferSize) {
+    this.writeBufferSize = writeBufferSize;
+  }
+
+  public Integer getWriteBufferMaxAge() {
+    return writeBufferMaxAge;
+  }
+
+  public void setWriteBufferMaxAge(Integer writeBufferMaxAge) {
+    this.writeBufferMaxAge = writeBufferMaxAge;
+  }
+
+  public Boolean getCrashSafeWrites() {
+    return crashSafeWrites;
+  }
+
+  public void setCrashSafeWrites(Boolean crashSafeWrites) {
+    this.crashSafeWrites = crashSafeWrites;
+  }
+
+  public Boolean getHttpCompression() {
+    return httpCompression;
+  }
+
+  public void setHttpCompression(Boolean httpCompression) {
+    this.httpCompression = httpCompression;
+  }
+
+  public String getBatchEncoding() {
+    return batchEncoding;
+  }
+
+  public void setBatchEncoding(String batchEncoding) {
+    this.batchEncoding = batchEncoding;
+  }
+
+  public Integer getHttpQueueSize() {
+    return httpQueueSize;
+  }
+
+  public void setHttpQueueSize(Integer httpQueueSize) {
+    this.httpQueueSize = httpQueueSize;
+  }
+
+  public Integer getSyncMaxDelay() {
+    return syncMaxDelay;
+  }
+
+  public void setSyncMaxDelay(Integer syncMaxDelay) {
+    this.syncMaxDelay = syncMaxDelay;
+  }
+
+  public Boolean getSyncUnmeteredOnly() {
+    return syncUnmeteredOnly;
+  }
+
+  public void setSyncUnmeteredOnly(Boolean syncUnmeteredOnly) {
+    this.syncUnmeteredOnly = syncUnmeteredOnly;
+  }
+
+  public Integer getSyncChunkSize() {
+    return syncChunkSize;
+  }
+
+  public void setSyncChunkSize(Integer syncChunkSize) {
+    this.syncChunkSize = syncChunkSize;
+  }
+
+  public String getLocationStore() {
+    return locationStore;
+  }
+
+  public void setLocationStore(String locationStore) {
+    this.locationStore = locationStore;
+  }
+
+  public Integer getMaxAccuracy() {
+    return maxAccuracy;
+  }
+
+  public void setMaxAccuracy(Integer maxAccuracy) {
+    this.maxAccuracy = maxAccuracy;
+  }
+
+  public Integer getThrottleInterval() {
+    return throttleInterval;
+  }
+
+  public void setThrottleInterval(Integer throttleInterval) {
+    this.throttleInterval = throttleInterval;
+  }
+
+  public Float getKalmanProcessNoise() {
+    return kalmanProcessNoise;
+  }
+
+  public void setKalmanProcessNoise(Float kalmanProcessNoise) {
+    this.kalmanProcessNoise = kalmanProcessNoise;
+  }
+
+  public Float getSimplifyTolerance() {
+    return simplifyTolerance;
+  }
+
+  public void setSimplifyTolerance(Float simplifyTolerance) {
+    this.simplifyTolerance = simplifyTolerance;
+  }
+
+  public Integer getFusionWindow() {
+    return fusionWindow;
+  }
+
+  public void setFusionWindow(Integer fusionWindow) {
+    this.fusionWindow = fusionWindow;
+  }
+
+  public Boolean getAdaptiveSampling() {
+    return adaptiveSampling;
+  }
+
+  public void setAdaptiveSampling(Boolean adaptiveSampling) {
+    this.adaptiveSampling = adaptiveSampling;
+  }
+
+  /**
+   * @return names of location pipeline stages in processing order
+   */
+  public ArrayList<String> getPipeline() {
+    return pipeline;
+  }
+
+  public void setPipeline(ArrayList<String> pipeline) {
+    this.pipeline = pipeline;
+  }
+
   @Override
   public String toString () {
     return new StringBuffer()
@@ -367,10 +566,82 @@ public class Config implements Parcelable
       .append(" httpHeaders=").append(getHttpHeaders().toString())
       .append(" maxLocations=").append(getMaxLocations())
       .append(" minBattery=").append(getMinBattery())
+      .append(" writeBufferSize=").append(getWriteBufferSize())
+      .append(" writeBufferMaxAge=").append(getWriteBufferMaxAge())
+      .append(" crashSafeWrites=").append(getCrashSafeWrites())
+      .append(" httpCompression=").append(getHttpCompression())
+      .append(" batchEncoding=").append(getBatchEncoding())
+      .append(" httpQueueSize=").append(getHttpQueueSize())
+      .append(" syncMaxDelay=").append(getSyncMaxDelay())
+      .append(" syncUnmeteredOnly=").append(getSyncUnmeteredOnly())
+      .append(" syncChunkSize=").append(getSyncChunkSize())
+      .append(" locationStore=").append(getLocationStore())
+      .append(" maxAccuracy=").append(getMaxAccuracy())
+      .append(" throttleInterval=").append(getThrottleInterval())
+      .append(" kalmanProcessNoise=").append(getKalmanProcessNoise())
+      .append(" simplifyTolerance=").append(getSimplifyTolerance())
+      .append(" fusionWindow=").append(getFusionWindow())
+      .append(" adaptiveSampling=").append(getAdaptiveSampling())
+      .append(" pipeline=").append(getPipeline())
       .append("]")
       .toString();
   }
 
+  /**
+   * @param other config to compare with
+   * @return names of options (as used by fromJSONObject) with different value in other config
+   */
+  public Set<String> diff(Config other) {
+    Set<String> changed = new HashSet<String>();
+    addIfChanged(changed, "stationaryRadius", getStationaryRadius(), other.getStationaryRadius());
+    addIfChanged(changed, "distanceFilter", getDistanceFilter(), other.getDistanceFilter());
+    addIfChanged(changed, "desiredAccuracy", getDesiredAccuracy(), other.getDesiredAccuracy());
+    addIfChanged(changed, "debug", isDebugging(), other.isDebugging());
+    addIfChanged(changed, "notificationTitle", getNotificationTitle(), other.getNotificationTitle());
+    addIfChanged(changed, "notificationText", getNotificationText(), other.getNotificationText());
+    addIfChanged(changed, "notificationIconLarge", getLargeNotificationIcon(), other.getLargeNotificationIcon());
+    addIfChanged(changed, "notificationIconSmall", getSmallNotificationIcon(), other.getSmallNotificationIcon());
+    addIfChanged(changed, "notificationIconColor", getNotificationIconColor(), other.getNotificationIconColor());
+    addIfChanged(changed, "stopOnTerminate", getStopOnTerminate(), other.getStopOnTerminate());
+    addIfChanged(changed, "startOnBoot", getStartOnBoot(), other.getStartOnBoot());
+    addIfChanged(changed, "startForeground", getStartForeground(), other.getStartForeground());
+    addIfChanged(changed, "locationProvider", getLocationProvider(), other.getLocationProvider());
+    addIfChanged(changed, "interval", getInterval(), other.getInterval());
+    addIfChanged(changed, "fastestInterval", getFastestInterval(), other.getFastestInterval());
+    addIfChanged(changed, "activitiesInterval", getActivitiesInterval(), other.getActivitiesInterval());
+    addIfChanged(changed, "stopOnStillActivity", getStopOnStillActivity(), other.getStopOnStillActivity());
+    addIfChanged(changed, "url", getUrl(), other.getUrl());
+    addIfChanged(changed, "syncUrl", getSyncUrl(), other.getSyncUrl());
+    addIfChanged(changed, "syncThreshold", getSyncThreshold(), other.getSyncThreshold());
+    addIfChanged(changed, "httpHeaders", getHttpHeaders(), other.getHttpHeaders());
+    addIfChanged(changed, "maxLocations", getMaxLocations(), other.getMaxLocations());
+    addIfChanged(changed, "minBattery", getMinBattery(), other.getMinBattery());
+    addIfChanged(changed, "writeBufferSize", getWriteBufferSize(), other.getWriteBufferSize());
+    addIfChanged(changed, "writeBufferMaxAge", getWriteBufferMaxAge(), other.getWriteBufferMaxAge());
+    addIfChanged(changed, "crashSafeWrites", getCrashSafeWrites(), other.getCrashSafeWrites());
+    addIfChanged(changed, "httpCompression", getHttpCompression(), other.getHttpCompression());
+    addIfChanged(changed, "batchEncoding", getBatchEncoding(), other.getBatchEncoding());
+    addIfChanged(changed, "httpQueueSize", getHttpQueueSize(), other.getHttpQueueSize());
+    addIfChanged(changed, "syncMaxDelay", getSyncMaxDelay(), other.getSyncMaxDelay());
+    addIfChanged(changed, "syncUnmeteredOnly", getSyncUnmeteredOnly(), other.getSyncUnmeteredOnly());
+    addIfChanged(changed, "syncChunkSize", getSyncChunkSize(), other.getSyncChunkSize());
+    addIfChanged(changed, "locationStore", getLocationStore(), other.getLocationStore());
+    addIfChanged(changed, "maxAccuracy", getMaxAccuracy(), other.getMaxAccuracy());
+    addIfChanged(changed, "throttleInterval", getThrottleInterval(), other.getThrottleInterval());
+    addIfChanged(changed, "kalmanProcessNoise", getKalmanProcessNoise(), other.getKalmanProcessNoise());
+    addIfChanged(changed, "simplifyTolerance", getSimplifyTolerance(), other.getSimplifyTolerance());
+    addIfChanged(changed, "fusionWindow", getFusionWindow(), other.getFusionWindow());
+    addIfChanged(changed, "adaptiveSampling", getAdaptiveSampling(), other.getAdaptiveSampling());
+    addIfChanged(changed, "pipeline", getPipeline(), other.getPipeline());
+    return changed;
+  }
+
+  private static void addIfChanged(Set<String> changed, String option, Object value, Object otherValue) {
+    if (value == null ? otherValue != null : !value.equals(otherValue)) {
+      changed.add(option);
+    }
+  }
+
   public Parcel toParcel () {
     Parcel parcel = Parcel.obtain();
     this.writeToParcel(parcel, 0);
@@ -410,6 +681,30 @@ public class Config implements Parcelable
     config.setHttpHeaders(jObject.optJSONObject("httpHeaders"));
     config.setMaxLocations(jObject.optInt("maxLocations", config.getMaxLocations()));
     config.setMinBattery(jObject.optInt("minBattery", config.getMinBattery()));
+    config.setWriteBufferSize(jObject.optInt("writeBufferSize", config.getWriteBufferSize()));
+    config.setWriteBufferMaxAge(jObject.optInt("writeBufferMaxAge", config.getWriteBufferMaxAge()));
+    config.setCrashSafeWrites(jObject.optBoolean("crashSafeWrites", config.getCrashSafeWrites()));
+    config.setHttpCompression(jObject.optBoolean("httpCompression", config.getHttpCompression()));
+    config.setBatchEncoding(jObject.optString("batchEncoding", config.getBatchEncoding()));
+    config.setHttpQueueSize(jObject.optInt("httpQueueSize", config.getHttpQueueSize()));
+    config.setSyncMaxDelay(jObject.optInt("syncMaxDelay", config.getSyncMaxDelay()));
+    config.setSyncUnmeteredOnly(jObject.optBoolean("syncUnmeteredOnly", config.getSyncUnmeteredOnly()));
+    config.setSyncChunkSize(jObject.optInt("syncChunkSize", config.getSyncChunkSize()));
+    config.setLocationStore(jObject.optString("locationStore", config.getLocationStore()));
+    config.setMaxAccuracy(jObject.optInt("maxAccuracy", config.getMaxAccuracy()));
+    config.setThrottleInterval(jObject.optInt("throttleInterval", config.getThrottleInterval()));
+    config.setKalmanProcessNoise((float) jObject.optDouble("kalmanProcessNoise", config.getKalmanProcessNoise()));
+    config.setSimplifyTolerance((float) jObject.optDouble("simplifyTolerance", config.getSimplifyTolerance()));
+    config.setFusionWindow(jObject.optInt("fusionWindow", config.getFusionWindow()));
+    config.setAdaptiveSampling(jObject.optBoolean("adaptiveSampling", config.getAdaptiveSampling()));
+    JSONArray pipeline = jObject.optJSONArray("pipeline");
+    if (pipeline != null) {
+      ArrayList<String> stages = new ArrayList<String>(pipeline.length());
+      for (int i = 0; i < pipeline.length(); i++) {
+        stages.add(pipeline.getString(i));
+      }
+      config.setPipeline(stages);
+    }
     return config;
   }
 
@@ -438,6 +733,23 @@ public class Config implements Parcelable
     json.put("httpHeaders", new JSONObject(getHttpHeaders()));
     json.put("maxLocations", getMaxLocations());
     json.put("minBattery", getMinBattery());
+    json.put("writeBufferSize", getWriteBufferSize());
+    json.put("writeBufferMaxAge", getWriteBufferMaxAge());
+    json.put("crashSafeWrites", getCrashSafeWrites());
+    json.put("httpCompression", getHttpCompression());
+    json.put("batchEncoding", getBatchEncoding());
+    json.put("httpQueueSize", getHttpQueueSize());
+    json.put("syncMaxDelay", getSyncMaxDelay());
+    json.put("syncUnmeteredOnly", getSyncUnmeteredOnly());
+    json.put("syncChunkSize", getSyncChunkSize());
+    json.put("locationStore", getLocationStore());
+    json.put("maxAccuracy", getMaxAccuracy());
+    json.put("throttleInterval", getThrottleInterval());
+    json.put("kalmanProcessNoise", getKalmanProcessNoise());
+    json.put("simplifyTolerance", getSimplifyTolerance());
+    json.put("fusionWindow", getFusionWindow());
+    json.put("adaptiveSampling", getAdaptiveSampling());
+    json.put("pipeline", new JSONArray(getPipeline()));
     return json;
   }
 }
@@ -0,0 +1,110 @@
+package com.marianhello.bgloc;
+
+/**
+ * Geodesic math on primitive doubles (spherical earth, no allocation)
+ *
+ * Sphere of mean earth radius differs from WGS84 ellipsoid used by
+ * android.location.Location.distanceBetween by at most 0.5 %, which is well below
+ * accuracy of location fixes.
+ */
+public final class Geodesy {
+    /** mean earth radius in meters */
+    public static final double EARTH_RADIUS = 6371008.8;
+    /** length of one degree of latitude in meters */
+    public static final double METERS_PER_DEGREE = EARTH_RADIUS * Math.PI / 180;
+
+    /** equirectangular approximation is used by distance() up to this distance in meters */
+    public static final double EQUIRECTANGULAR_MAX_DISTANCE = 10000;
+    /** relative error of equirectangular approximation (to haversine) up to max distance and latitude */
+    public static final double EQUIRECTANGULAR_MAX_ERROR = 0.00001;
+    /** equirectangular approximation is used by distance() up to this latitude (both points) */
+    public static final double EQUIRECTANGULAR_MAX_LATITUDE = 80;
+
+    private static final double MAX_DEGREES = EQUIRECTANGULAR_MAX_DISTANCE / METERS_PER_DEGREE;
+
+    private Geodesy() {}
+
+    /**
+     * @return great circle distance in meters
+     */
+    public static double haversine(double lat1, double lon1, double lat2, double lon2) {
+        double sinLat = Math.sin(Math.toRadians(lat2 - lat1) / 2);
+        double sinLon = Math.sin(Math.toRadians(lon2 - lon1) / 2);
+        double a = sinLat * sinLat
+                + Math.cos(Math.toRadians(lat1)) * Math.cos(Math.toRadians(lat2)) * sinLon * sinLon;
+        return 2 * EARTH_RADIUS * Math.asin(Math.min(1, Math.sqrt(a)));
+    }
+
+    /**
+     * Fast distance approximation (single cosine) treating area around points as plane,
+     * relative error is below EQUIRECTANGULAR_MAX_ERROR for points closer than
+     * EQUIRECTANGULAR_MAX_DISTANCE and within EQUIRECTANGULAR_MAX_LATITUDE
+     *
+     * @return distance in meters
+     */
+    public static double equirectangular(double lat1, double lon1, double lat2, double lon2) {
+        double dLon = lon2 - lon1;
+        if (dLon > 180) {
+            dLon -= 360;
+        } else if (dLon < -180) {
+            dLon += 360;
+        }
+        double x = dLon * Math.cos(Math.toRadians((lat1 + lat2) / 2));
+        double y = lat2 - lat1;
+        return Math.sqrt(x * x + y * y) * METERS_PER_DEGREE;
+    }
+
+    /**
+     * Distance using equirectangular approximation where its error is bounded, haversine otherwise
+     *
+     * @return distance in meters
+     */
+    public static double distance(double lat1, double lon1, double lat2, double lon2) {
+        if (Math.abs(lat2 - lat1) < MAX_DEGREES
+                && Math.abs(lat1) < EQUIRECTANGULAR_MAX_LATITUDE && Math.abs(lat2) < EQUIRECTANGULAR_MAX_LATITUDE) {
+            double distance = equirectangular(lat1, lon1, lat2, lon2);
+            if (distance < EQUIRECTANGULAR_MAX_DISTANCE) {
+                return distance;
+            }
+        }
+        return haversine(lat1, lon1, lat2, lon2);
+    }
+
+    /**
+     * @return initial bearing from first to second point in degrees (0 to 360, clockwise from north)
+     */
+    public static double bearing(double lat1, double lon1, double lat2, double lon2) {
+        double phi1 = Math.toRadians(lat1);
+        double phi2 = Math.toRadians(lat2);
+        double dLon = Math.toRadians(lon2 - lon1);
+        double y = Math.sin(dLon) * Math.cos(phi2);
+        double x = Math.cos(phi1) * Math.sin(phi2) - Math.sin(phi1) * Math.cos(phi2) * Math.cos(dLon);
+        double bearing = Math.toDegrees(Math.atan2(y, x));
+        return bearing < 0 ? bearing + 360 : bearing;
+    }
+
+    /**
+     * Point reached by travelling given distance along great circle with given initial bearing
+     *
+     * @param result array of at least 2 elements receiving latitude and longitude (reused by caller)
+     */
+    public static void destination(double lat, double lon, double bearing, double distance, double[] result) {
+        double phi1 = Math.toRadians(lat);
+        double theta = Math.toRadians(bearing);
+        double delta = distance / EARTH_RADIUS;
+        double sinPhi2 = Math.sin(phi1) * Math.cos(delta) + Math.cos(phi1) * Math.sin(delta) * Math.cos(theta);
+        double phi2 = Math.asin(sinPhi2);
+        double lambda = Math.atan2(Math.sin(theta) * Math.sin(delta) * Math.cos(phi1),
+                Math.cos(delta) - Math.sin(phi1) * sinPhi2);
+        double lon2 = lon + Math.toDegrees(lambda);
+        result[0] = Math.toDegrees(phi2);
+        result[1] = lon2 > 180 ? lon2 - 360 : (lon2 < -180 ? lon2 + 360 : lon2);
+    }
+
+    /**
+     * @return length of one degree of longitude in meters at given latitude
+     */
+    public static double metersPerDegreeLongitude(double latitude) {
+        return METERS_PER_DEGREE * Math.cos(Math.toRadians(latitude));
+    }
+}
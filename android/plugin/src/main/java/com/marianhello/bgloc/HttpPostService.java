@@ -5,14 +5,17 @@ import android.util.Log;
 
 import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.DataOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.PrintWriter;
 import java.util.Map;
 import java.util.Iterator;
+import java.util.zip.GZIPOutputStream;
 
 import org.json.JSONArray;
 import org.json.JSONObject;
@@ -22,39 +25,109 @@ import java.net.HttpURLConnection;
 import java.io.OutputStreamWriter;
 
 public class HttpPostService {
+    private static final int BUFFER_SIZE = 16 * 1024;
+    private static final long PROGRESS_INTERVAL_MILLIS = 500;
 
     public static int postJSON(String url, Object json, Map headers) throws IOException {
-        String jsonString = json.toString();
+        return postJSON(url, json, headers, false);
+    }
+
+    /**
+     * Post json body
+     *
+     * @param url
+     * @param json
+     * @param headers
+     * @param gzip compress body and set Content-Encoding: gzip
+     * @return http response code
+     * @throws IOException
+     */
+    public static int postJSON(String url, Object json, Map headers, boolean gzip) throws IOException {
+        byte[] body = json.toString().getBytes("UTF-8");
+        if (gzip) {
+            ByteArrayOutputStream bos = new ByteArrayOutputStream(body.length / 4 + 64);
+            GZIPOutputStream gos = new GZIPOutputStream(bos);
+            gos.write(body);
+            gos.close();
+            body = bos.toByteArray();
+        }
+
         HttpURLConnection conn = (HttpURLConnection) new URL(url).openConnection();
         conn.setDoOutput(true);
-        conn.setFixedLengthStreamingMode(jsonString.length());
+        conn.setFixedLengthStreamingMode(body.length);
         conn.setRequestMethod("POST");
         conn.setRequestProperty("Content-Type", "application/json");
+        if (gzip) {
+            conn.setRequestProperty("Content-Encoding", "gzip");
+        }
         Iterator<Map.Entry<String, String>> it = headers.entrySet().iterator();
         while (it.hasNext()) {
             Map.Entry<String, String> pair = it.next();
             conn.setRequestProperty(pair.getKey(), pair.getValue());
         }
 
-        OutputStreamWriter os = null;
+        OutputStream os = null;
         try {
-            os = new OutputStreamWriter(conn.getOutputStream());
-            os.write(json.toString());
-
+            os = conn.getOutputStream();
+            os.write(body);
         } finally {
             if (os != null) {
-                os.flush();
                 os.close();
             }
         }
 
-        return conn.getResponseCode();
+        int responseCode = conn.getResponseCode();
+        discardResponse(conn, responseCode);
+        return responseCode;
+    }
+
+    /**
+     * Read response body to the end, so underlying keep-alive connection
+     * is returned to connection pool and reused by next request
+     */
+    private static void discardResponse(HttpURLConnection conn, int responseCode) {
+        InputStream is = null;
+        try {
+            is = responseCode < HttpURLConnection.HTTP_BAD_REQUEST ? conn.getInputStream() : conn.getErrorStream();
+            if (is == null) {
+                return;
+            }
+            byte[] buffer = new byte[1024];
+            while (is.read(buffer) != -1) {
+                // discard
+            }
+        } catch (IOException e) {
+            conn.disconnect();
+        } finally {
+            if (is != null) {
+                try {
+                    is.close();
+                } catch (IOException e) {
+                    // ignore
+                }
+            }
+        }
     }
 
     public static int postFile(String url, File file, Map headers, UploadingCallback callback) throws IOException {
+        return postFile(url, file, "application/json", headers, callback);
+    }
+
+    /**
+     * Post file content as request body
+     *
+     * @param url
+     * @param file
+     * @param contentType value of Content-Type header
+     * @param headers
+     * @param callback upload progress callback or null
+     * @return http response code
+     * @throws IOException
+     */
+    public static int postFile(String url, File file, String contentType, Map headers, UploadingCallback callback) throws IOException {
         HttpURLConnection conn = (HttpURLConnection) new URL(url).openConnection();
 
-        conn.setDoInput(false);
+        conn.setDoInput(true);
         conn.setDoOutput(true);
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
             conn.setFixedLengthStreamingMode(file.length());
@@ -62,7 +135,7 @@ public class HttpPostService {
             conn.setChunkedStreamingMode(0);
         }
         conn.setRequestMethod("POST");
-        conn.setRequestProperty("Content-Type", "application/json");
+        conn.setRequestProperty("Content-Type", contentType);
         Iterator<Map.Entry<String, String>> it = headers.entrySet().iterator();
         while (it.hasNext()) {
             Map.Entry<String, String> pair = it.next();
@@ -70,21 +143,31 @@ public class HttpPostService {
         }
 
         long progress = 0;
+        long fileLength = file.length();
         int bytesRead = -1;
-        byte[] buffer = new byte[1024];
+        int lastPercentage = -1;
+        long lastProgressMillis = 0;
+        byte[] buffer = new byte[BUFFER_SIZE];
 
         BufferedInputStream is = null;
         BufferedOutputStream os = null;
         try {
-            is = new BufferedInputStream(new FileInputStream(file));
-            os = new BufferedOutputStream(conn.getOutputStream());
+            is = new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE);
+            os = new BufferedOutputStream(conn.getOutputStream(), BUFFER_SIZE);
             while ((bytesRead = is.read(buffer)) != -1) {
                 os.write(buffer, 0, bytesRead);
-                os.flush();
                 progress += bytesRead;
-                int percentage = (int) ((progress * 100L) / file.length());
-                if (callback != null) {
+                if (callback == null) {
+                    continue;
+                }
+                // throttle progress reporting, every call updates notification
+                int percentage = (int) ((progress * 100L) / fileLength);
+                long now = System.currentTimeMillis();
+                if (percentage > lastPercentage
+                        && (percentage == 100 || now - lastProgressMillis >= PROGRESS_INTERVAL_MILLIS)) {
                     callback.uploadListener(percentage);
+                    lastPercentage = percentage;
+                    lastProgressMillis = now;
                 }
             }
         } finally {
@@ -97,6 +180,8 @@ public class HttpPostService {
             }
         }
 
-        return conn.getResponseCode();
+        int responseCode = conn.getResponseCode();
+        discardResponse(conn, responseCode);
+        return responseCode;
     }
 }
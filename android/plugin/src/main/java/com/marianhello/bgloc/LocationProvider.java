@@ -11,6 +11,8 @@ package com.marianhello.bgloc;
 
 import android.location.Location;
 
+import java.util.Set;
+
 /**
  * DummyContentProvider
  */
@@ -20,4 +22,12 @@ public interface LocationProvider {
     void onDestroy();
     void startRecording();
     void stopRecording();
+
+    /**
+     * Apply changed config to running provider without recreating it
+     *
+     * @param config new config
+     * @param changedOptions names of changed options (see Config.diff)
+     */
+    void onConfigure(Config config, Set<String> changedOptions);
 }
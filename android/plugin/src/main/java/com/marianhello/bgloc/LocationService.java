@@ -22,7 +22,6 @@ import android.graphics.BitmapFactory;
 import android.graphics.Color;
 import android.net.ConnectivityManager;
 import android.net.NetworkInfo;
-import android.os.AsyncTask;
 import android.os.Build;
 import android.os.Bundle;
 import android.os.Handler;
@@ -31,24 +30,39 @@ import android.os.IBinder;
 import android.os.Looper;
 import android.os.Message;
 import android.os.Messenger;
+import android.os.Process;
 import android.os.RemoteException;
 import android.support.v4.app.NotificationCompat;
 
 import com.marianhello.bgloc.data.BackgroundLocation;
-import com.marianhello.bgloc.data.ConfigurationDAO;
+import com.marianhello.bgloc.data.ConfigRepository;
 import com.marianhello.bgloc.data.DAOFactory;
+import com.marianhello.bgloc.data.GeofenceDAO;
 import com.marianhello.bgloc.data.LocationDAO;
+import com.marianhello.bgloc.data.TrackingSession;
+import com.marianhello.bgloc.data.TrackingSessionDAO;
+import com.marianhello.bgloc.data.sqlite.SQLiteOpenHelper;
+import com.marianhello.bgloc.data.sqlite.CompactionTask;
+import com.marianhello.bgloc.data.sqlite.SQLiteLocationDAO;
+import com.marianhello.bgloc.geofence.GeofenceEngine;
+import com.marianhello.bgloc.geofence.GeofenceEvent;
+import com.marianhello.bgloc.pipeline.LocationPipeline;
+import com.marianhello.bgloc.pipeline.LocationPipelineFactory;
+import com.marianhello.bgloc.pipeline.LocationStage;
+import com.marianhello.bgloc.pipeline.OutlierStage;
+import com.marianhello.bgloc.pipeline.StageStats;
 import com.marianhello.bgloc.sync.AccountHelper;
 import com.marianhello.bgloc.sync.AuthenticatorService;
+import com.marianhello.bgloc.sync.SyncScheduler;
 import com.marianhello.bgloc.sync.SyncService;
 import com.marianhello.logging.LoggerManager;
 
-import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
-import java.net.HttpURLConnection;
 import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
 
 public class LocationService extends Service {
 
@@ -94,6 +108,17 @@ public class LocationService extends Service {
      */
     public static final int MSG_SWITCH_MODE = 6;
 
+    /**
+     * Command sent by the service to
+     * any registered clients whenever geofence transition occurs
+     */
+    public static final int MSG_ON_GEOFENCE = 7;
+
+    /**
+     * Command to the service to reload geofences after they have been changed in db
+     */
+    public static final int MSG_RELOAD_GEOFENCES = 8;
+
 
     /** background operation mode of location provider */
     public static final int BACKGROUND_MODE = 0;
@@ -101,12 +126,38 @@ public class LocationService extends Service {
     /** foreground operation mode of location provider */
     public static final int FOREGROUND_MODE = 1;
 
+    /** location provider has been created as there was none running */
+    public static final String RECONFIGURE_START = "start";
+
+    /** location provider has been recreated as locationProvider option changed */
+    public static final String RECONFIGURE_RESTART = "restart";
+
+    /** changed options have been applied to running location provider */
+    public static final String RECONFIGURE_UPDATE = "update";
+
+    /** config has not changed */
+    public static final String RECONFIGURE_NONE = "none";
+
     private static final int ONE_MINUTE = 1000 * 60;
     private static final int FIVE_MINUTES = 1000 * 60 * 5;
+    private static final int THIRTY_MINUTES = 1000 * 60 * 30;
 
     private LocationDAO dao;
+    private LocationWriter locationWriter;
+    private LocationUploader locationUploader;
+    private SyncScheduler syncScheduler;
+    private CompactionTask compactionTask;
+    private TrackingSessionDAO sessionDAO;
+    private TrackingSession session;
+    private boolean sessionPersistPending = false;
+    private GeofenceDAO geofenceDAO;
+    private GeofenceEngine geofenceEngine;
     private Config config;
     private LocationProvider provider;
+    private LocationPipeline pipeline;
+    // location time pipeline expiry is scheduled for
+    private long pipelineDeadline = Long.MAX_VALUE;
+    private int notificationId;
     private Account syncAccount;
     private Boolean hasConnectivity = true;
 
@@ -114,6 +165,8 @@ public class LocationService extends Service {
 
     private volatile HandlerThread handlerThread;
     private ServiceHandler serviceHandler;
+    private HandlerThread compactionThread;
+    private Handler compactionHandler;
 
     private class ServiceHandler extends Handler {
         public ServiceHandler(Looper looper) {
@@ -141,6 +194,13 @@ public class LocationService extends Service {
                 case MSG_SWITCH_MODE:
                     switchMode(msg.arg1);
                     break;
+                case MSG_RELOAD_GEOFENCES:
+                    serviceHandler.post(new Runnable() {
+                        public void run() {
+                            loadGeofences();
+                        }
+                    });
+                    break;
                 default:
                     super.handleMessage(msg);
             }
@@ -174,22 +234,57 @@ public class LocationService extends Service {
         serviceHandler = new ServiceHandler(handlerThread.getLooper());
 
         dao = (DAOFactory.createLocationDAO(this));
+        locationWriter = new LocationWriter(dao, serviceHandler);
+        locationUploader = new LocationUploader(uploadListener);
+        syncScheduler = new SyncScheduler(this, dao, DAOFactory.createSyncStateDAO(this));
+        sessionDAO = DAOFactory.createTrackingSessionDAO(this);
+        geofenceDAO = DAOFactory.createGeofenceDAO(this);
+        geofenceEngine = new GeofenceEngine();
+        serviceHandler.post(new Runnable() {
+            public void run() {
+                loadGeofences();
+            }
+        });
+        if (dao instanceof SQLiteLocationDAO) {
+            // compaction (including VACUUM of database created before incremental auto_vacuum)
+            // has own thread, so it never delays locations handled by service thread
+            compactionThread = new HandlerThread("LocationService.CompactionThread", Process.THREAD_PRIORITY_BACKGROUND);
+            compactionThread.start();
+            compactionHandler = new Handler(compactionThread.getLooper());
+            compactionTask = new CompactionTask(SQLiteOpenHelper.getHelper(this), compactionHandler, THIRTY_MINUTES);
+        }
         syncAccount = AccountHelper.CreateSyncAccount(this,
                 AuthenticatorService.getAccount(getStringResource(Config.ACCOUNT_TYPE_RESOURCE)));
 
         registerReceiver(connectivityChangeReceiver, new IntentFilter(ConnectivityManager.CONNECTIVITY_ACTION));
+        registerReceiver(powerConnectedReceiver, new IntentFilter(Intent.ACTION_POWER_CONNECTED));
+        ConfigRepository.getInstance(this).addListener(configChangeListener);
     }
 
     @Override
     public void onDestroy() {
         log.info("Destroying LocationService");
         provider.onDestroy();
+        serviceHandler.removeCallbacks(pipelineExpiryTask);
+        if (pipeline != null) {
+            pipeline.flush();
+            logPipelineStats();
+        }
+        locationUploader.close();
+        locationWriter.close();
+        endSession();
+        if (compactionTask != null) {
+            compactionHandler.removeCallbacks(compactionTask);
+            compactionThread.quit();
+        }
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2) {
             handlerThread.quitSafely();
         } else {
             handlerThread.quit(); //sorry
         }
         unregisterReceiver(connectivityChangeReceiver);
+        unregisterReceiver(powerConnectedReceiver);
+        ConfigRepository.getInstance(this).removeListener(configChangeListener);
         super.onDestroy();
     }
 
@@ -209,32 +304,106 @@ public class LocationService extends Service {
     public int onStartCommand(Intent intent, int flags, int startId) {
         log.info("Received start startId: {} intent: {}", startId, intent);
 
-        if (provider != null) {
-            provider.onDestroy();
-        }
-
+        Config newConfig = null;
         if (intent == null) {
             //service has been probably restarted so we need to load config from db
-            ConfigurationDAO dao = DAOFactory.createConfigurationDAO(this);
             try {
-                config = dao.retrieveConfiguration();
+                newConfig = ConfigRepository.getInstance(this).getConfig();
             } catch (JSONException e) {
                 log.error("Config exception: {}", e.getMessage());
-                config = new Config(); //using default config
+            }
+            if (newConfig == null) {
+                newConfig = new Config(); //using default config
             }
         } else {
             if (intent.hasExtra("config")) {
-                config = intent.getParcelableExtra("config");
+                newConfig = intent.getParcelableExtra("config");
             } else {
-                config = new Config(); //using default config
+                newConfig = new Config(); //using default config
             }
         }
 
-        log.debug("Will start service with: {}", config.toString());
+        log.debug("Will start service with: {}", newConfig.toString());
+
+        if (session == null) {
+            // service restarted by system continues in running session
+            startSession(intent == null);
+        }
+
+        reconfigure(newConfig);
+        // purge synced locations and reclaim space freed by ring buffer resize (maxLocations change)
+        // once service settles, then periodically
+        if (compactionTask != null) {
+            compactionHandler.removeCallbacks(compactionTask);
+            compactionHandler.postDelayed(compactionTask, FIVE_MINUTES);
+        }
 
-        LocationProviderFactory spf = new LocationProviderFactory(this);
-        provider = spf.getInstance(config.getLocationProvider());
+        notificationId = startId;
+        startForeground();
+
+        //We want this service to continue running until it is explicitly stopped
+        return START_STICKY;
+    }
+
+    /**
+     * Apply config to running service
+     *
+     * Location provider is created only when there is none or when locationProvider option changed.
+     * Other changes are applied in place to running provider, writer and uploader, so provider keeps
+     * its receivers, wake lock and acquired fix.
+     *
+     * @param newConfig
+     * @return one of RECONFIGURE_* constants describing taken path
+     */
+    public String reconfigure(Config newConfig) {
+        Set<String> changedOptions = config != null ? config.diff(newConfig) : null;
+        String path = reconfigurePath(provider != null, changedOptions);
+        log.info("Reconfigure path: {} changed options: {}", path, changedOptions);
+
+        config = newConfig;
+        locationWriter.setConfig(config);
+        locationUploader.setConfig(config);
+        if (pipeline == null || changedOptions == null || LocationPipelineFactory.isAffected(changedOptions)) {
+            if (pipeline != null) {
+                pipeline.flush();
+                logPipelineStats();
+            }
+            pipeline = LocationPipelineFactory.createPipeline(config, pipelineSink);
+            schedulePipelineExpiry(System.currentTimeMillis());
+        }
+
+        if (RECONFIGURE_START.equals(path) || RECONFIGURE_RESTART.equals(path)) {
+            if (provider != null) {
+                provider.onDestroy();
+            }
+            LocationProviderFactory spf = new LocationProviderFactory(this);
+            provider = spf.getInstance(config.getLocationProvider());
+            provider.startRecording();
+        } else if (RECONFIGURE_UPDATE.equals(path)) {
+            provider.onConfigure(config, changedOptions);
+        }
+        return path;
+    }
+
+    /**
+     * @param hasProvider true when location provider is running
+     * @param changedOptions options changed since last config (see Config.diff)
+     * @return one of RECONFIGURE_* constants
+     */
+    public static String reconfigurePath(boolean hasProvider, Set<String> changedOptions) {
+        if (!hasProvider || changedOptions == null) {
+            return RECONFIGURE_START;
+        }
+        if (changedOptions.contains("locationProvider")) {
+            return RECONFIGURE_RESTART;
+        }
+        if (changedOptions.isEmpty()) {
+            return RECONFIGURE_NONE;
+        }
+        return RECONFIGURE_UPDATE;
+    }
 
+    private void startForeground() {
         if (config.getStartForeground()) {
             // Build a Notification required for running service in foreground.
             NotificationCompat.Builder builder = new NotificationCompat.Builder(this);
@@ -262,13 +431,8 @@ public class LocationService extends Service {
 
             Notification notification = builder.build();
             notification.flags |= Notification.FLAG_ONGOING_EVENT | Notification.FLAG_FOREGROUND_SERVICE | Notification.FLAG_NO_CLEAR;
-            startForeground(startId, notification);
+            startForeground(notificationId, notification);
         }
-
-        provider.startRecording();
-
-        //We want this service to continue running until it is explicitly stopped
-        return START_STICKY;
     }
 
     protected int getAppResource(String name, String type) {
@@ -307,6 +471,9 @@ public class LocationService extends Service {
     /**
      * Handle location from location location provider
      *
+     * Location is passed through location pipeline (option.pipeline) first,
+     * only locations passing all its stages are handled as follows.
+     *
      * All locations updates are recorded in local db at all times.
      * Also location is also send to all messenger clients.
      *
@@ -322,19 +489,92 @@ public class LocationService extends Service {
      * @param PROVIDER_ID
      */
     public void handleLocation(BackgroundLocation location) {
+        if (pipeline != null) {
+            pipeline.process(location);
+            schedulePipelineExpiry(location.getTime());
+        } else {
+            acceptLocation(location);
+        }
+    }
+
+    /**
+     * Handle activity detected by location provider (passed to location pipeline stages)
+     *
+     * @param activity DetectedActivity type
+     */
+    public void handleActivity(int activity) {
+        if (pipeline != null) {
+            pipeline.onActivity(activity);
+        }
+    }
+
+    /**
+     * @return per stage counters and timings of current location pipeline
+     */
+    public List<StageStats> getPipelineStats() {
+        return pipeline != null ? pipeline.getStats() : new ArrayList<StageStats>();
+    }
+
+    private void logPipelineStats() {
+        for (StageStats stats : pipeline.getStats()) {
+            log.info("Pipeline {}", stats);
+        }
+        for (LocationStage stage : pipeline.getStages()) {
+            if (stage instanceof OutlierStage) {
+                OutlierStage outlierStage = (OutlierStage) stage;
+                log.info("Pipeline outliers rejected by speed={} by acceleration={}",
+                        outlierStage.getRejectedBySpeed(), outlierStage.getRejectedByAcceleration());
+                for (BackgroundLocation location : outlierStage.getRejected()) {
+                    log.debug("Rejected outlier {}", location);
+                }
+            }
+        }
+    }
+
+    /**
+     * Schedule release of locations held back by pipeline stages when no location arrives
+     * until their deadline
+     *
+     * @param time location time corresponding to now
+     */
+    private synchronized void schedulePipelineExpiry(long time) {
+        serviceHandler.removeCallbacks(pipelineExpiryTask);
+        pipelineDeadline = pipeline != null ? pipeline.getHoldDeadline() : Long.MAX_VALUE;
+        if (pipelineDeadline != Long.MAX_VALUE) {
+            serviceHandler.postDelayed(pipelineExpiryTask, Math.max(0, pipelineDeadline - time));
+        }
+    }
+
+    private Runnable pipelineExpiryTask = new Runnable() {
+        @Override
+        public void run() {
+            long deadline;
+            synchronized (LocationService.this) {
+                deadline = pipelineDeadline;
+            }
+            if (pipeline != null && deadline != Long.MAX_VALUE) {
+                pipeline.expire(deadline);
+                schedulePipelineExpiry(deadline);
+            }
+        }
+    };
+
+    private LocationPipeline.Sink pipelineSink = new LocationPipeline.Sink() {
+        @Override
+        public void onLocation(BackgroundLocation location) {
+            acceptLocation(location);
+        }
+    };
+
+    private void acceptLocation(BackgroundLocation location) {
         log.debug("New location {}", location.toString());
 
         location.setBatchStartMillis(System.currentTimeMillis() + ONE_MINUTE); // prevent sync of not yet posted location
         persistLocation(location);
+        updateSession(location);
+        processGeofences(location);
 
-        if (config.hasUrl() || config.hasSyncUrl()) {
-            Long locationsCount = dao.locationsForSyncCount(System.currentTimeMillis());
-            log.debug("Location to sync: {} threshold: {}", locationsCount, config.getSyncThreshold());
-            if (locationsCount >= config.getSyncThreshold()) {
-                log.debug("Attempt to sync locations: {} threshold: {}", locationsCount, config.getSyncThreshold());
-                SyncService.sync(syncAccount, getStringResource(Config.CONTENT_AUTHORITY_RESOURCE));
-            }
-        }
+        scheduleSync(false);
 
         if (hasConnectivity && config.hasUrl()) {
             postLocationAsync(location);
@@ -348,6 +588,131 @@ public class LocationService extends Service {
         sendClientMessage(msg);
     }
 
+    /**
+     * Start new tracking session
+     *
+     * Session left running by killed process is ended at time of its last location.
+     *
+     * @param resume continue in running session instead of starting new one
+     */
+    private void startSession(boolean resume) {
+        try {
+            TrackingSession current = sessionDAO.getCurrentSession();
+            if (current != null && current.isActive()) {
+                if (resume) {
+                    session = current;
+                    log.debug("Resuming {}", session);
+                    return;
+                }
+                Long lastTime = current.getLastLocationTime();
+                sessionDAO.endSession(current, lastTime != null ? lastTime : current.getStartedAt());
+            }
+            session = sessionDAO.startSession(System.currentTimeMillis());
+            log.debug("Starting {}", session);
+        } catch (SQLException e) {
+            log.error("Starting tracking session failed: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Add location to session aggregates
+     *
+     * Session is persisted on service thread after every accepted location, so location
+     * callback does not wait for db write and stored summary is never behind by more than
+     * pending write. Locations added while write is pending are persisted by that write.
+     */
+    private synchronized void updateSession(BackgroundLocation location) {
+        if (session == null) {
+            return;
+        }
+        session.addLocation(location);
+        if (!sessionPersistPending) {
+            sessionPersistPending = true;
+            serviceHandler.post(sessionPersistTask);
+        }
+    }
+
+    private Runnable sessionPersistTask = new Runnable() {
+        @Override
+        public void run() {
+            synchronized (LocationService.this) {
+                sessionPersistPending = false;
+                if (session == null) {
+                    return;
+                }
+                try {
+                    sessionDAO.persistSession(session);
+                } catch (SQLException e) {
+                    log.error("Updating tracking session failed: {}", e.getMessage());
+                }
+            }
+        }
+    };
+
+    private synchronized void endSession() {
+        if (session == null) {
+            return;
+        }
+        serviceHandler.removeCallbacks(sessionPersistTask);
+        sessionPersistPending = false;
+        try {
+            sessionDAO.endSession(session, System.currentTimeMillis());
+        } catch (SQLException e) {
+            log.error("Ending tracking session failed: {}", e.getMessage());
+        }
+        session = null;
+    }
+
+    /**
+     * Replace geofences of engine by geofences persisted in db
+     */
+    private void loadGeofences() {
+        try {
+            geofenceEngine.setGeofences(geofenceDAO.getAllGeofences());
+            log.debug("Loaded {} geofences", geofenceEngine.size());
+        } catch (SQLException e) {
+            log.error("Loading geofences failed: {}", e.getMessage());
+        }
+    }
+
+    private void processGeofences(BackgroundLocation location) {
+        List<GeofenceEvent> events = new ArrayList<GeofenceEvent>();
+        geofenceEngine.process(location, events);
+        for (GeofenceEvent event : events) {
+            handleGeofenceEvent(event);
+        }
+    }
+
+    public void handleGeofenceEvent(GeofenceEvent event) {
+        log.debug("New {}", event.toString());
+
+        Bundle bundle = new Bundle();
+        bundle.putParcelable("location", event.getLocation());
+        bundle.putString("geofenceId", event.getGeofence().getId());
+        bundle.putInt("transition", event.getTransition());
+        Message msg = Message.obtain(null, MSG_ON_GEOFENCE);
+        msg.setData(bundle);
+
+        sendClientMessage(msg);
+    }
+
+    /**
+     * Request sync when sync scheduler decides so
+     *
+     * @param force evaluate immediately (otherwise evaluation is rate limited)
+     */
+    private void scheduleSync(boolean force) {
+        if (config == null || !(config.hasUrl() || config.hasSyncUrl())) {
+            return;
+        }
+        String decision = syncScheduler.evaluate(config, force);
+        if (SyncScheduler.isSync(decision)) {
+            log.debug("Attempt to sync locations decision: {}", decision);
+            SyncService.sync(syncAccount, getStringResource(Config.CONTENT_AUTHORITY_RESOURCE),
+                    SyncScheduler.batchThreshold(decision, config));
+        }
+    }
+
     public void handleStationary(BackgroundLocation location) {
         log.debug("New stationary {}", location.toString());
 
@@ -396,32 +761,14 @@ public class LocationService extends Service {
     }
 
     // method will mutate location
+    // returns null when location was buffered and not yet persisted
     public Long persistLocation (BackgroundLocation location) {
-        Long locationId = -1L;
-        try {
-            locationId = dao.persistLocationWithLimit(location, config.getMaxLocations());
-            location.setLocationId(locationId);
-            log.debug("Persisted location: {}", location.toString());
-        } catch (SQLException e) {
-            log.error("Failed to persist location: {} error: {}", location.toString(), e.getMessage());
-        }
-
-        return locationId;
-    }
-
-    public void postLocation(BackgroundLocation location) {
-        PostLocationTask task = new LocationService.PostLocationTask();
-        task.doInBackground(location);
+        locationWriter.write(location);
+        return location.getLocationId();
     }
 
     public void postLocationAsync(BackgroundLocation location) {
-        PostLocationTask task = new LocationService.PostLocationTask();
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
-            task.executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR, location);
-        }
-        else {
-            task.execute(location);
-        }
+        locationUploader.upload(location);
     }
 
     public Config getConfig() {
@@ -432,49 +779,37 @@ public class LocationService extends Service {
         this.config = config;
     }
 
-    private class PostLocationTask extends AsyncTask<BackgroundLocation, Integer, Boolean> {
+    private ConfigRepository.ConfigChangeListener configChangeListener = new ConfigRepository.ConfigChangeListener() {
+        @Override
+        public void onConfigChanged(final Config changedConfig, final Set<String> changedOptions) {
+            // provider was created on main thread, so it has to be reconfigured there too
+            new Handler(Looper.getMainLooper()).post(new Runnable() {
+                public void run() {
+                    if (provider == null) {
+                        return; // not started yet, will get config from start intent
+                    }
+                    reconfigure(changedConfig);
+                    startForeground(); // notification options might have changed
+                }
+            });
+        }
+    };
 
+    private LocationUploader.UploadListener uploadListener = new LocationUploader.UploadListener() {
         @Override
-        protected Boolean doInBackground(BackgroundLocation... locations) {
-            log.debug("Executing PostLocationTask#doInBackground");
-            JSONArray jsonLocations = new JSONArray();
+        public void onUploadSuccess(List<BackgroundLocation> locations) {
             for (BackgroundLocation location : locations) {
-                try {
-                    JSONObject jsonLocation = location.toJSONObject();
-                    jsonLocations.put(jsonLocation);
-                } catch (JSONException e) {
-                    log.warn("Location to json failed: {}", location.toString());
-                    return false;
-                }
+                locationWriter.delete(location);
             }
+        }
 
-            String url = config.getUrl();
-            log.debug("Posting json to url: {} headers: {}", url, config.getHttpHeaders());
-            int responseCode;
-
-            try {
-                responseCode = HttpPostService.postJSON(url, jsonLocations, config.getHttpHeaders());
-            } catch (Exception e) {
+        @Override
+        public void onUploadFailure(List<BackgroundLocation> locations, int responseCode) {
+            if (responseCode < 0) {
                 hasConnectivity = isNetworkAvailable();
-                log.warn("Error while posting locations: {}", e.getMessage());
-                return false;
-            }
-
-            if (responseCode != HttpURLConnection.HTTP_OK) {
-                log.warn("Server error while posting locations responseCode: {}", responseCode);
-                return false;
-            }
-
-            for (BackgroundLocation location : locations) {
-                Long locationId = location.getLocationId();
-                if (locationId != null) {
-                    dao.deleteLocation(locationId);
-                }
             }
-
-            return true;
         }
-    }
+    };
 
     /**
      * Broadcast receiver which detects connectivity change condition
@@ -486,6 +821,20 @@ public class LocationService extends Service {
         public void onReceive(Context context, Intent intent) {
             hasConnectivity = isNetworkAvailable();
             log.info("Network condition changed hasConnectivity: {}", hasConnectivity);
+            if (hasConnectivity) {
+                scheduleSync(true);
+            }
+        }
+    };
+
+    /**
+     * Broadcast receiver which detects device was plugged in
+     */
+    private BroadcastReceiver powerConnectedReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            log.info("Power connected");
+            scheduleSync(true);
         }
     };
 
@@ -0,0 +1,170 @@
+package com.marianhello.bgloc;
+
+import com.marianhello.bgloc.data.BackgroundLocation;
+import com.marianhello.logging.LoggerManager;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+
+import java.net.HttpURLConnection;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Posts locations to config.url one request at a time
+ *
+ * Locations are queued and uploaded by single worker thread in order of arrival.
+ * Locations which arrive while request is in flight are coalesced into next request.
+ * Since requests are sequential, HttpURLConnection can reuse single keep-alive connection.
+ *
+ * Queue is bounded by httpQueueSize. When full, oldest location is dropped
+ * from queue. Dropped and failed locations stay persisted, so they are
+ * uploaded later by batch sync.
+ */
+public class LocationUploader {
+
+    public interface UploadListener {
+        /**
+         * Called on worker thread when locations were accepted by server
+         */
+        void onUploadSuccess(List<BackgroundLocation> locations);
+
+        /**
+         * Called on worker thread when request failed
+         * @param locations
+         * @param responseCode http response code or -1 on network error
+         */
+        void onUploadFailure(List<BackgroundLocation> locations, int responseCode);
+    }
+
+    private final UploadListener listener;
+    private final ArrayDeque<BackgroundLocation> queue = new ArrayDeque<BackgroundLocation>();
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+
+    private boolean draining = false;
+    private boolean closed = false;
+    private int maxQueueSize = 100;
+    private String url;
+    private Map<String, String> headers = new HashMap<String, String>();
+    private boolean gzip = false;
+
+    private org.slf4j.Logger log;
+
+    private final Runnable drainTask = new Runnable() {
+        @Override
+        public void run() {
+            drain();
+        }
+    };
+
+    public LocationUploader(UploadListener listener) {
+        this.listener = listener;
+        log = LoggerManager.getLogger(LocationUploader.class);
+    }
+
+    public synchronized void setConfig(Config config) {
+        url = config.getUrl();
+        headers = new HashMap<String, String>(config.getHttpHeaders());
+        gzip = config.getHttpCompression();
+        maxQueueSize = Math.max(1, config.getHttpQueueSize());
+        trimQueue(maxQueueSize);
+    }
+
+    /**
+     * Queue location for upload
+     * @param location
+     */
+    public synchronized void upload(BackgroundLocation location) {
+        if (closed) {
+            return;
+        }
+        trimQueue(maxQueueSize - 1);
+        queue.addLast(location);
+        if (!draining) {
+            draining = true;
+            executor.execute(drainTask);
+        }
+    }
+
+    /**
+     * @return number of locations waiting for upload
+     */
+    public synchronized int getQueueSize() {
+        return queue.size();
+    }
+
+    /**
+     * Stop accepting locations and discard queue
+     *
+     * Request in flight is allowed to finish.
+     */
+    public synchronized void close() {
+        closed = true;
+        queue.clear();
+        executor.shutdown();
+    }
+
+    private void trimQueue(int size) {
+        while (queue.size() > size) {
+            BackgroundLocation dropped = queue.pollFirst();
+            log.warn("Upload queue full, dropping location: {}", dropped.getLocationId());
+        }
+    }
+
+    private void drain() {
+        while (true) {
+            List<BackgroundLocation> locations;
+            String url;
+            Map<String, String> headers;
+            boolean gzip;
+
+            synchronized (this) {
+                if (queue.isEmpty() || closed) {
+                    draining = false;
+                    return;
+                }
+                locations = new ArrayList<BackgroundLocation>(queue);
+                queue.clear();
+                url = this.url;
+                headers = this.headers;
+                gzip = this.gzip;
+            }
+
+            post(locations, url, headers, gzip);
+        }
+    }
+
+    private void post(List<BackgroundLocation> locations, String url, Map<String, String> headers, boolean gzip) {
+        JSONArray jsonLocations = new JSONArray();
+        for (BackgroundLocation location : locations) {
+            try {
+                jsonLocations.put(location.toJSONObject());
+            } catch (JSONException e) {
+                log.warn("Location to json failed: {}", location.toString());
+            }
+        }
+
+        log.debug("Posting {} locations to url: {} headers: {}", locations.size(), url, headers);
+        int responseCode;
+        try {
+            responseCode = HttpPostService.postJSON(url, jsonLocations, headers, gzip);
+        } catch (Exception e) {
+            log.warn("Error while posting locations: {}", e.getMessage());
+            listener.onUploadFailure(locations, -1);
+            return;
+        }
+
+        if (responseCode != HttpURLConnection.HTTP_OK) {
+            log.warn("Server error while posting locations responseCode: {}", responseCode);
+            listener.onUploadFailure(locations, responseCode);
+            return;
+        }
+
+        listener.onUploadSuccess(locations);
+    }
+}
@@ -0,0 +1,145 @@
+package com.marianhello.bgloc;
+
+import android.database.SQLException;
+import android.os.Handler;
+
+import com.marianhello.bgloc.data.BackgroundLocation;
+import com.marianhello.bgloc.data.LocationDAO;
+import com.marianhello.logging.LoggerManager;
+
+import java.util.ArrayList;
+
+/**
+ * Write-behind buffer in front of LocationDAO
+ *
+ * Locations are accumulated in memory and persisted in single transaction
+ * when buffer reaches writeBufferSize, when oldest buffered location is older
+ * than writeBufferMaxAge or when writer is closed.
+ *
+ * In crashSafeWrites mode every location is written immediately,
+ * so no location can be lost when process is killed.
+ */
+public class LocationWriter {
+
+    private final LocationDAO dao;
+    private final Handler handler;
+    private final ArrayList<BackgroundLocation> buffer = new ArrayList<BackgroundLocation>();
+
+    private int bufferSize = 1;
+    private long bufferMaxAge = 0;
+    private boolean crashSafe = true;
+    private int maxLocations = Integer.MAX_VALUE;
+
+    private org.slf4j.Logger log;
+
+    private final Runnable flushTask = new Runnable() {
+        @Override
+        public void run() {
+            flush();
+        }
+    };
+
+    /**
+     * @param dao
+     * @param handler handler on which age based flush is executed
+     */
+    public LocationWriter(LocationDAO dao, Handler handler) {
+        this.dao = dao;
+        this.handler = handler;
+        log = LoggerManager.getLogger(LocationWriter.class);
+    }
+
+    public synchronized void setConfig(Config config) {
+        bufferSize = Math.max(1, config.getWriteBufferSize());
+        bufferMaxAge = Math.max(0, config.getWriteBufferMaxAge());
+        crashSafe = config.getCrashSafeWrites();
+        maxLocations = config.getMaxLocations();
+
+        if (crashSafe || buffer.size() >= bufferSize) {
+            flush();
+        }
+    }
+
+    /**
+     * Write location
+     *
+     * Method will mutate location. When location is written immediately
+     * its locationId is set, otherwise locationId is set on flush.
+     *
+     * @param location
+     */
+    public synchronized void write(BackgroundLocation location) {
+        if (crashSafe || bufferSize <= 1) {
+            flush();
+            persist(location);
+            return;
+        }
+
+        buffer.add(location);
+        if (buffer.size() >= bufferSize) {
+            flush();
+        } else if (buffer.size() == 1) {
+            handler.postDelayed(flushTask, bufferMaxAge);
+        }
+    }
+
+    /**
+     * Persist all buffered locations in single transaction
+     *
+     * When transaction fails, locations are persisted one by one, so single bad row
+     * does not drop whole buffer and buffer does not grow while database keeps failing.
+     */
+    public synchronized void flush() {
+        handler.removeCallbacks(flushTask);
+        if (buffer.isEmpty()) {
+            return;
+        }
+
+        try {
+            dao.persistLocations(buffer, maxLocations);
+            log.debug("Flushed {} buffered locations", buffer.size());
+        } catch (SQLException e) {
+            log.error("Failed to flush {} buffered locations error: {}", buffer.size(), e.getMessage());
+            for (BackgroundLocation location : buffer) {
+                persist(location);
+            }
+        }
+        buffer.clear();
+    }
+
+    /**
+     * Delete location which was either persisted or is still buffered
+     *
+     * Note: buffered location is only flagged as non valid and will be persisted as such
+     * @param location
+     */
+    public synchronized void delete(BackgroundLocation location) {
+        if (buffer.contains(location)) {
+            location.setValid(false);
+            return;
+        }
+
+        Long locationId = location.getLocationId();
+        if (locationId != null) {
+            dao.deleteLocation(locationId);
+        }
+    }
+
+    /**
+     * Flush remaining locations and stop age based flushing
+     */
+    public synchronized void close() {
+        flush();
+    }
+
+    private void persist(BackgroundLocation location) {
+        try {
+            Long locationId = dao.persistLocationWithLimit(location, maxLocations);
+            location.setLocationId(locationId);
+            log.debug("Persisted location: {}", location.toString());
+        } catch (SQLException e) {
+            location.setLocationId(-1L);
+            log.error("Failed to persist location: {} error: {}", location.toString(), e.getMessage());
+        }
+    }
+}
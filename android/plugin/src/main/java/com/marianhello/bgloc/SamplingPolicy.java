@@ -0,0 +1,261 @@
+package com.marianhello.bgloc;
+
+import com.marianhello.bgloc.data.BackgroundLocation;
+
+/**
+ * Chooses location request interval from recent speed and heading change
+ *
+ * Locations are sampled to keep distance between consecutive locations around spacing
+ * (option.distanceFilter) regardless of speed. Speed is classified into tiers (still, slow,
+ * medium, fast), interval of tier is spacing divided by top speed of tier, bounded by
+ * option.fastestInterval and option.interval. While turning interval of next faster tier is used,
+ * as route shape changes there.
+ * Tier is raised as soon as speed exceeds tier boundary by HYSTERESIS, but lowered only after
+ * DOWNGRADE_LOCATIONS consecutive locations spanning DOWNGRADE_TIME below boundary by HYSTERESIS,
+ * so speed fluctuating around boundary or stops at crossings do not change request on every location.
+ * Locations less accurate than MAX_ACCURACY are not evaluated.
+ *
+ * Policy is plain state machine fed by locations (no android dependencies), provider
+ * requests location updates again only when update returns true.
+ */
+public class SamplingPolicy {
+    public static final int TIER_STILL = 0;
+    public static final int TIER_SLOW = 1;
+    public static final int TIER_MEDIUM = 2;
+    public static final int TIER_FAST = 3;
+
+    private static final String[] TIER_NAMES = { "still", "slow", "medium", "fast" };
+
+    /** upper speed boundary (m/s) of every tier but fastest */
+    private static final float[] TIER_BOUNDARIES = { 0.5f, 3, 12 };
+    /** speed (m/s) interval of tier is computed for */
+    private static final float[] TIER_SPEEDS = { 0.5f, 3, 12, 40 };
+
+    /** relative margin around tier boundary */
+    public static final float HYSTERESIS = 0.2f;
+    public static final int DOWNGRADE_LOCATIONS = 3;
+    public static final long DOWNGRADE_TIME = 60000;
+    /** locations less accurate than this (meters) are not evaluated */
+    public static final float MAX_ACCURACY = 50;
+    /** heading change (degrees) between consecutive locations considered as turn */
+    public static final float TURN_ANGLE = 30;
+    /** turn ends when heading changes less than this (degrees) */
+    public static final float STRAIGHT_ANGLE = 15;
+
+    private static final float MIN_SPACING = 10;
+    /** speed is derived from locations at least this far apart in time (millis) */
+    private static final long MIN_SPEED_TIME = 5000;
+
+    private final long maxInterval;
+    private final long minInterval;
+    private final float spacing;
+
+    private int tier = -1;
+    private boolean turning = false;
+    private int downgradeCount = 0;
+    private long downgradeSince;
+    private int straightCount = 0;
+    private long transitions = 0;
+
+    private boolean hasLast = false;
+    private long lastTime;
+    private double lastLatitude;
+    private double lastLongitude;
+    private float lastAccuracy;
+    private float lastHeading = -1;
+
+    /**
+     * @param interval longest interval in millis
+     * @param fastestInterval shortest interval in millis
+     * @param distanceFilter desired distance in meters between locations
+     */
+    public SamplingPolicy(long interval, long fastestInterval, float distanceFilter) {
+        this.maxInterval = interval;
+        this.minInterval = Math.min(fastestInterval, interval);
+        this.spacing = Math.max(MIN_SPACING, distanceFilter);
+    }
+
+    /**
+     * Evaluate location
+     *
+     * @param location
+     * @return true when interval or min distance changed and location updates should be requested again
+     */
+    public boolean update(BackgroundLocation location) {
+        return update(location.getTime(), location.getLatitude(), location.getLongitude(),
+                location.hasAccuracy() ? location.getAccuracy() : -1,
+                location.hasSpeed() ? location.getSpeed() : -1,
+                location.hasBearing() ? location.getBearing() : -1);
+    }
+
+    /**
+     * Evaluate location given by its values, so caller does not need to allocate location
+     *
+     * @param time location time in millis
+     * @param latitude
+     * @param longitude
+     * @param accuracy accuracy in meters or negative when unknown
+     * @param speed speed in m/s or negative when unknown
+     * @param bearing bearing in degrees or negative when unknown
+     * @return true when interval or min distance changed and location updates should be requested again
+     */
+    public boolean update(long time, double latitude, double longitude, float accuracy, float speed, float bearing) {
+        if (accuracy > MAX_ACCURACY) {
+            return false;
+        }
+        boolean hadTier = tier >= 0;
+        long interval = getInterval();
+        float minDistance = getMinDistance();
+
+        float heading = -1;
+        if (bearing >= 0 && speed > TIER_BOUNDARIES[TIER_STILL]) {
+            heading = bearing;
+        } else if (hasLast) {
+            double distance = Geodesy.distance(lastLatitude, lastLongitude, latitude, longitude);
+            double noise = Math.hypot(Math.max(0, lastAccuracy), Math.max(0, accuracy));
+            long elapsed = time - lastTime;
+            if (speed < 0 && elapsed >= MIN_SPEED_TIME) {
+                speed = (float) (Math.max(0, distance - noise) * 1000 / elapsed);
+            }
+            if (distance > 2 * noise) {
+                heading = (float) Geodesy.bearing(lastLatitude, lastLongitude, latitude, longitude);
+            }
+        }
+        hasLast = true;
+        lastTime = time;
+        lastLatitude = latitude;
+        lastLongitude = longitude;
+        lastAccuracy = accuracy;
+
+        if (heading >= 0) {
+            if (lastHeading >= 0) {
+                updateTurning(headingChange(lastHeading, heading));
+            }
+            lastHeading = heading;
+        }
+        if (speed >= 0) {
+            updateTier(speed, time);
+        }
+        return (!hadTier && tier >= 0) || interval != getInterval() || minDistance != getMinDistance();
+    }
+
+    private void updateTier(float speed, long time) {
+        if (tier < 0) {
+            tier = classify(speed);
+            transitions++;
+            return;
+        }
+        int upper = tier;
+        while (upper < TIER_FAST && speed > TIER_BOUNDARIES[upper] * (1 + HYSTERESIS)) {
+            upper++;
+        }
+        if (upper > tier) {
+            tier = upper;
+            downgradeCount = 0;
+            transitions++;
+            return;
+        }
+        int lower = tier;
+        while (lower > TIER_STILL && speed < TIER_BOUNDARIES[lower - 1] * (1 - HYSTERESIS)) {
+            lower--;
+        }
+        if (lower == tier) {
+            downgradeCount = 0;
+            return;
+        }
+        if (downgradeCount++ == 0) {
+            downgradeSince = time;
+        }
+        if (downgradeCount < DOWNGRADE_LOCATIONS || time - downgradeSince < DOWNGRADE_TIME) {
+            return;
+        }
+        tier = lower;
+        downgradeCount = 0;
+        if (tier == TIER_STILL) {
+            turning = false;
+        }
+        transitions++;
+    }
+
+    private void updateTurning(float headingChange) {
+        if (!turning) {
+            if (tier > TIER_STILL && headingChange > TURN_ANGLE) {
+                turning = true;
+                straightCount = 0;
+                transitions++;
+            }
+        } else if (headingChange >= STRAIGHT_ANGLE) {
+            straightCount = 0;
+        } else if (++straightCount >= DOWNGRADE_LOCATIONS) {
+            turning = false;
+            transitions++;
+        }
+    }
+
+    private static int classify(float speed) {
+        int tier = TIER_STILL;
+        while (tier < TIER_FAST && speed > TIER_BOUNDARIES[tier]) {
+            tier++;
+        }
+        return tier;
+    }
+
+    /**
+     * @return absolute difference of headings in degrees (0 to 180)
+     */
+    private static float headingChange(float from, float to) {
+        float change = Math.abs(to - from) % 360;
+        return change > 180 ? 360 - change : change;
+    }
+
+    /**
+     * @return current location request interval in millis
+     */
+    public long getInterval() {
+        if (tier < 0) {
+            return maxInterval;
+        }
+        int speedTier = turning ? Math.min(TIER_FAST, tier + 1) : tier;
+        long interval = (long) (spacing / TIER_SPEEDS[speedTier] * 1000);
+        return Math.max(minInterval, Math.min(maxInterval, interval));
+    }
+
+    /**
+     * Min distance is used only while still. Moving tiers need locations even when device
+     * stops, otherwise stop would never be detected.
+     *
+     * @return current location request min distance in meters
+     */
+    public float getMinDistance() {
+        return tier == TIER_STILL ? spacing : 0;
+    }
+
+    /**
+     * @return TIER_* constant or -1 before first evaluated location
+     */
+    public int getTier() {
+        return tier;
+    }
+
+    public boolean isTurning() {
+        return turning;
+    }
+
+    /**
+     * @return number of tier and turning changes
+     */
+    public long getTransitions() {
+        return transitions;
+    }
+
+    @Override
+    public String toString() {
+        return new StringBuilder()
+                .append("SamplingPolicy[tier=").append(tier < 0 ? "none" : TIER_NAMES[tier])
+                .append(" turning=").append(turning)
+                .append(" interval=").append(getInterval())
+                .append(" minDistance=").append(getMinDistance())
+                .append("]")
+                .toString();
+    }
+}
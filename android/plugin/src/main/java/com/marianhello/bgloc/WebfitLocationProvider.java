@@ -19,6 +19,7 @@ import com.google.android.gms.location.LocationRequest;
 import com.marianhello.logging.LoggerManager;
 
 import java.util.List;
+import java.util.Set;
 
 /**
  * Created by Nicolas on 26/06/2017.
@@ -34,6 +35,7 @@ public class WebfitLocationProvider extends AbstractLocationProvider implements
   private PowerManager.WakeLock wakeLock;
   private boolean isTracking;
   private  boolean aggressiveStart;
+  private SamplingPolicy samplingPolicy;
 
   protected WebfitLocationProvider(LocationService locationService) {
     super(locationService);
@@ -79,8 +81,11 @@ public class WebfitLocationProvider extends AbstractLocationProvider implements
     {
       if(location.getAccuracy() <  config.getDesiredAccuracy() || (config.getDesiredAccuracy() < 20 && location.getAccuracy() < 35 ))
       {
+        updateSamplingPolicy(location);
         this.aggressiveToReal();
       }
+    } else if (updateSamplingPolicy(location)) {
+      requestTrackingUpdates();
     }
 
 
@@ -88,7 +93,8 @@ public class WebfitLocationProvider extends AbstractLocationProvider implements
       Toast.makeText(locationService, "acy:" + location.getAccuracy() + ",v:" + location.getSpeed() + ",df:" + config.getDistanceFilter(), Toast.LENGTH_LONG).show();
     }
 
-    if (lastLocation != null && location.distanceTo(lastLocation) < config.getDistanceFilter()) {
+    if (lastLocation != null && Geodesy.distance(location.getLatitude(), location.getLongitude(),
+        lastLocation.getLatitude(), lastLocation.getLongitude()) < config.getDistanceFilter()) {
       return;
     }
 
@@ -100,6 +106,26 @@ public class WebfitLocationProvider extends AbstractLocationProvider implements
     handleLocation(location);
   }
 
+  /**
+   * Feed location to sampling policy and log its tier and turning transitions
+   *
+   * @return true when policy changed interval or min distance
+   */
+  private boolean updateSamplingPolicy(Location location) {
+    if (samplingPolicy == null) {
+      return false;
+    }
+    long transitions = samplingPolicy.getTransitions();
+    boolean changed = samplingPolicy.update(location.getTime(), location.getLatitude(), location.getLongitude(),
+        location.hasAccuracy() ? location.getAccuracy() : -1,
+        location.hasSpeed() ? location.getSpeed() : -1,
+        location.hasBearing() ? location.getBearing() : -1);
+    if (samplingPolicy.getTransitions() != transitions) {
+      Log.d("WF","Sampling policy transition to " + samplingPolicy);
+    }
+    return changed;
+  }
+
   public Location getLastBestLocation() {
     Location bestResult = null;
     String bestProvider = null;
@@ -157,24 +183,40 @@ public class WebfitLocationProvider extends AbstractLocationProvider implements
 
   public void aggressiveToReal() {
     aggressiveStart = false;
-    locationManager.removeUpdates(this);
     locationManagerConcurrent.removeUpdates(this);
-    try {
-
+    requestTrackingUpdates();
+    Log.d("WF","Start Real tracking with fastestInterval="+config.getFastestInterval()+" interval="+ config.getInterval()+" activitiesInterval="+config.getActivitiesInterval()+" stopOnStillActivity="+config.getStopOnStillActivity()+" samplingPolicy="+samplingPolicy);
+  }
 
-    locationManager.requestLocationUpdates(LocationManager.GPS_PROVIDER, config.getInterval(), config.getDistanceFilter(), this);
-      Log.d("WF","Start Real tracking with fastestInterval="+config.getFastestInterval()+" interval="+ config.getInterval()+" activitiesInterval="+config.getActivitiesInterval()+" stopOnStillActivity="+config.getStopOnStillActivity());
+  /**
+   * Request GPS updates with interval and min distance of sampling policy (option.adaptiveSampling)
+   * or with option.interval and option.distanceFilter
+   */
+  private void requestTrackingUpdates() {
+    long interval = samplingPolicy != null ? samplingPolicy.getInterval() : config.getInterval();
+    float minDistance = samplingPolicy != null ? samplingPolicy.getMinDistance() : config.getDistanceFilter();
+    try {
+      locationManager.removeUpdates(this);
+      locationManager.requestLocationUpdates(LocationManager.GPS_PROVIDER, interval, minDistance, this);
     } catch (SecurityException e) {
       Log.d("WF","Security exception: "+e.getMessage());
       this.handleSecurityException(e);
     }
   }
 
+  private SamplingPolicy createSamplingPolicy() {
+    if (!config.getAdaptiveSampling()) {
+      return null;
+    }
+    return new SamplingPolicy(config.getInterval(), config.getFastestInterval(), config.getDistanceFilter());
+  }
+
   public void startTracking() {
     if (isTracking) { return; }
 
     try {
 
+      samplingPolicy = createSamplingPolicy();
       this.aggressiveStart();
 
       isTracking = true;
@@ -211,6 +253,26 @@ public class WebfitLocationProvider extends AbstractLocationProvider implements
 
   }
 
+  @Override
+  public void onConfigure(Config config, Set<String> changedOptions) {
+    super.onConfigure(config, changedOptions);
+    this.minBatteryLevel = config.getMinBattery();
+
+    if (!isTracking) {
+      return;
+    }
+    if (changedOptions.contains("interval") || changedOptions.contains("distanceFilter")
+        || changedOptions.contains("fastestInterval") || changedOptions.contains("adaptiveSampling")) {
+      // policy starts over from next location
+      samplingPolicy = createSamplingPolicy();
+      // while starting aggressively new interval and distance filter are used once accurate fix is acquired
+      if (!aggressiveStart) {
+        requestTrackingUpdates();
+        Log.d("WF","Updated tracking with interval="+ config.getInterval()+" distanceFilter="+config.getDistanceFilter()+" samplingPolicy="+samplingPolicy);
+      }
+    }
+  }
+
   @Override
   public void startRecording() {
     this.startTracking();
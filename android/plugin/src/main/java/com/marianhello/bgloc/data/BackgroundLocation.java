@@ -112,9 +112,9 @@ public class BackgroundLocation implements Parcelable {
     }
 
     private BackgroundLocation(Parcel in) {
-        locationId = in.readLong();
-        locationProvider = in.readInt();
-        batchStartMillis = in.readLong();
+        locationId = (Long) in.readValue(null);
+        locationProvider = (Integer) in.readValue(null);
+        batchStartMillis = (Long) in.readValue(null);
         provider = in.readString();
         latitude = in.readDouble();
         longitude = in.readDouble();
@@ -142,9 +142,10 @@ public class BackgroundLocation implements Parcelable {
 
     @Override
     public void writeToParcel(Parcel dest, int flags) {
-        dest.writeLong(locationId);
-        dest.writeInt(locationProvider);
-        dest.writeLong(batchStartMillis);
+        // nullable, location may not be persisted yet (eg. buffered by LocationWriter)
+        dest.writeValue(locationId);
+        dest.writeValue(locationProvider);
+        dest.writeValue(batchStartMillis);
         dest.writeString(provider);
         dest.writeDouble(latitude);
         dest.writeDouble(longitude);
@@ -0,0 +1,76 @@
+package com.marianhello.bgloc.data;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Geographic bounding box (inclusive, in degrees)
+ *
+ * Boxes crossing antimeridian are not supported (minLongitude must not exceed maxLongitude).
+ */
+public class BoundingBox {
+    private final double minLatitude;
+    private final double minLongitude;
+    private final double maxLatitude;
+    private final double maxLongitude;
+
+    public BoundingBox(double minLatitude, double minLongitude, double maxLatitude, double maxLongitude) {
+        this.minLatitude = minLatitude;
+        this.minLongitude = minLongitude;
+        this.maxLatitude = maxLatitude;
+        this.maxLongitude = maxLongitude;
+    }
+
+    public double getMinLatitude() {
+        return minLatitude;
+    }
+
+    public double getMinLongitude() {
+        return minLongitude;
+    }
+
+    public double getMaxLatitude() {
+        return maxLatitude;
+    }
+
+    public double getMaxLongitude() {
+        return maxLongitude;
+    }
+
+    public boolean contains(double latitude, double longitude) {
+        return latitude >= minLatitude && latitude <= maxLatitude
+                && longitude >= minLongitude && longitude <= maxLongitude;
+    }
+
+    public static BoundingBox fromJSONObject(JSONObject jObject) throws JSONException {
+        BoundingBox bbox = new BoundingBox(
+                jObject.getDouble("minLatitude"),
+                jObject.getDouble("minLongitude"),
+                jObject.getDouble("maxLatitude"),
+                jObject.getDouble("maxLongitude"));
+        if (bbox.minLatitude > bbox.maxLatitude || bbox.minLongitude > bbox.maxLongitude) {
+            throw new JSONException("Invalid bbox " + bbox);
+        }
+        return bbox;
+    }
+
+    public JSONObject toJSONObject() throws JSONException {
+        JSONObject json = new JSONObject();
+        json.put("minLatitude", minLatitude);
+        json.put("minLongitude", minLongitude);
+        json.put("maxLatitude", maxLatitude);
+        json.put("maxLongitude", maxLongitude);
+        return json;
+    }
+
+    @Override
+    public String toString() {
+        return new StringBuilder()
+                .append("BoundingBox[minLatitude=").append(minLatitude)
+                .append(" minLongitude=").append(minLongitude)
+                .append(" maxLatitude=").append(maxLatitude)
+                .append(" maxLongitude=").append(maxLongitude)
+                .append("]")
+                .toString();
+    }
+}
@@ -0,0 +1,115 @@
+package com.marianhello.bgloc.data;
+
+import android.content.Context;
+
+import com.marianhello.bgloc.Config;
+
+import org.json.JSONException;
+
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Process wide cache of persisted configuration
+ *
+ * Configuration is hydrated only when its persisted version differs from cached one,
+ * so reading config costs single primary key lookup. Version is kept in database,
+ * therefore changes persisted by other process (sync adapter runs in :sync process)
+ * are picked up on next getConfig.
+ *
+ * Returned config is shared and must not be modified, use persistConfig instead.
+ */
+public class ConfigRepository {
+
+    public interface ConfigChangeListener {
+        /**
+         * Called on thread which persisted or reloaded changed config
+         *
+         * @param config new config
+         * @param changedOptions names of changed options (see Config.diff)
+         */
+        void onConfigChanged(Config config, Set<String> changedOptions);
+    }
+
+    private static ConfigRepository instance;
+
+    private final ConfigurationDAO dao;
+    private final CopyOnWriteArrayList<ConfigChangeListener> listeners = new CopyOnWriteArrayList<ConfigChangeListener>();
+    private Config config;
+    private long version = -1;
+
+    public ConfigRepository(ConfigurationDAO dao) {
+        this.dao = dao;
+    }
+
+    public static synchronized ConfigRepository getInstance(Context context) {
+        if (instance == null) {
+            instance = new ConfigRepository(DAOFactory.createConfigurationDAO(context.getApplicationContext()));
+        }
+        return instance;
+    }
+
+    /**
+     * @return persisted config or null when there is none
+     * @throws JSONException
+     */
+    public Config getConfig() throws JSONException {
+        Config previous;
+        Config current;
+        synchronized (this) {
+            long persistedVersion = dao.getConfigurationVersion();
+            if (persistedVersion == version) {
+                return config;
+            }
+            previous = config;
+            current = dao.retrieveConfiguration();
+            config = current;
+            version = persistedVersion;
+        }
+        // first load is not a change
+        if (previous != null && current != null) {
+            notifyListeners(previous, current);
+        }
+        return current;
+    }
+
+    /**
+     * Persist config and notify listeners about changed options
+     *
+     * @param config
+     * @return true when config was persisted
+     * @throws JSONException when previously persisted config cannot be read
+     */
+    public boolean persistConfig(Config config) throws JSONException {
+        Config previous = getConfig();
+        synchronized (this) {
+            if (!dao.persistConfiguration(config)) {
+                return false;
+            }
+            this.config = config;
+            version = dao.getConfigurationVersion();
+        }
+        if (previous != null) {
+            notifyListeners(previous, config);
+        }
+        return true;
+    }
+
+    public void addListener(ConfigChangeListener listener) {
+        listeners.addIfAbsent(listener);
+    }
+
+    public void removeListener(ConfigChangeListener listener) {
+        listeners.remove(listener);
+    }
+
+    private void notifyListeners(Config previous, Config current) {
+        Set<String> changedOptions = previous.diff(current);
+        if (changedOptions.isEmpty()) {
+            return;
+        }
+        for (ConfigChangeListener listener : listeners) {
+            listener.onConfigChanged(current, changedOptions);
+        }
+    }
+}
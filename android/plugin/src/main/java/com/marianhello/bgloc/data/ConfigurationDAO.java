@@ -10,4 +10,9 @@ import com.marianhello.bgloc.Config;
 public interface ConfigurationDAO {
     public boolean persistConfiguration(Config config) throws NullPointerException;
     public Config retrieveConfiguration() throws JSONException;
+
+    /**
+     * @return version incremented by every persistConfiguration or 0 when nothing was persisted yet
+     */
+    public long getConfigurationVersion();
 }
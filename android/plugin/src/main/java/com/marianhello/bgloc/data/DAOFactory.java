@@ -2,15 +2,55 @@ package com.marianhello.bgloc.data;
 
 import android.content.Context;
 
+import com.marianhello.bgloc.Config;
+import com.marianhello.bgloc.data.segment.SegmentLocationDAO;
 import com.marianhello.bgloc.data.sqlite.SQLiteLocationDAO;
 import com.marianhello.bgloc.data.sqlite.SQLiteConfigurationDAO;
+import com.marianhello.bgloc.data.sqlite.SQLiteGeofenceDAO;
+import com.marianhello.bgloc.data.sqlite.SQLiteSyncStateDAO;
+import com.marianhello.bgloc.data.sqlite.SQLiteTrackingSessionDAO;
+
+import org.json.JSONException;
 
 public abstract class DAOFactory {
+    /**
+     * Create location DAO of location store selected by persisted configuration
+     */
     public static LocationDAO createLocationDAO(Context context) {
+        Config config = null;
+        try {
+            config = ConfigRepository.getInstance(context).getConfig();
+        } catch (JSONException e) {
+            // fall back to default store
+        }
+        return createLocationDAO(context, config);
+    }
+
+    /**
+     * @param context
+     * @param config configuration or null for default (sqlite) store
+     * @return location DAO of store selected by locationStore config option
+     */
+    public static LocationDAO createLocationDAO(Context context, Config config) {
+        if (config != null && SegmentLocationDAO.NAME.equals(config.getLocationStore())) {
+            return SegmentLocationDAO.getInstance(context);
+        }
         return new SQLiteLocationDAO(context);
     }
 
     public static ConfigurationDAO createConfigurationDAO(Context context) {
         return new SQLiteConfigurationDAO(context);
     }
+
+    public static SyncStateDAO createSyncStateDAO(Context context) {
+        return new SQLiteSyncStateDAO(context);
+    }
+
+    public static TrackingSessionDAO createTrackingSessionDAO(Context context) {
+        return new SQLiteTrackingSessionDAO(context);
+    }
+
+    public static GeofenceDAO createGeofenceDAO(Context context) {
+        return new SQLiteGeofenceDAO(context);
+    }
 }
@@ -0,0 +1,115 @@
+package com.marianhello.bgloc.data;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Circular region defined by application
+ *
+ * Fence is identified by application supplied id, adding fence with existing id replaces it.
+ * Dwell transition is reported when device stays inside for dwellTime millis (0 disables dwell).
+ */
+public class Geofence {
+    private String id;
+    private double latitude;
+    private double longitude;
+    private float radius;
+    private long dwellTime = 0;
+
+    public Geofence() {}
+
+    public Geofence(String id, double latitude, double longitude, float radius, long dwellTime) {
+        this.id = id;
+        this.latitude = latitude;
+        this.longitude = longitude;
+        this.radius = radius;
+        this.dwellTime = dwellTime;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public double getLatitude() {
+        return latitude;
+    }
+
+    public void setLatitude(double latitude) {
+        this.latitude = latitude;
+    }
+
+    public double getLongitude() {
+        return longitude;
+    }
+
+    public void setLongitude(double longitude) {
+        this.longitude = longitude;
+    }
+
+    /**
+     * @return radius in meters
+     */
+    public float getRadius() {
+        return radius;
+    }
+
+    public void setRadius(float radius) {
+        this.radius = radius;
+    }
+
+    /**
+     * @return millis inside fence before dwell transition, 0 when dwell is not reported
+     */
+    public long getDwellTime() {
+        return dwellTime;
+    }
+
+    public void setDwellTime(long dwellTime) {
+        this.dwellTime = dwellTime;
+    }
+
+    public JSONObject toJSONObject() throws JSONException {
+        JSONObject json = new JSONObject();
+        json.put("id", id);
+        json.put("latitude", latitude);
+        json.put("longitude", longitude);
+        json.put("radius", radius);
+        json.put("dwellTime", dwellTime);
+        return json;
+    }
+
+    /**
+     * @throws JSONException when required property is missing or fence is invalid
+     */
+    public static Geofence fromJSONObject(JSONObject json) throws JSONException {
+        Geofence geofence = new Geofence(
+                json.getString("id"),
+                json.getDouble("latitude"),
+                json.getDouble("longitude"),
+                (float) json.getDouble("radius"),
+                json.optLong("dwellTime", 0));
+        if (geofence.radius <= 0) {
+            throw new JSONException("Geofence " + geofence.id + " radius must be positive");
+        }
+        if (Math.abs(geofence.latitude) > 90 || Math.abs(geofence.longitude) > 180) {
+            throw new JSONException("Geofence " + geofence.id + " has invalid coordinates");
+        }
+        return geofence;
+    }
+
+    @Override
+    public String toString() {
+        return new StringBuilder()
+                .append("Geofence[id=").append(id)
+                .append(" lat=").append(latitude)
+                .append(" lon=").append(longitude)
+                .append(" radius=").append(radius)
+                .append(" dwellTime=").append(dwellTime)
+                .append("]")
+                .toString();
+    }
+}
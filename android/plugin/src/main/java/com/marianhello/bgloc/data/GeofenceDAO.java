@@ -0,0 +1,11 @@
+package com.marianhello.bgloc.data;
+
+import java.util.Collection;
+import java.util.List;
+
+public interface GeofenceDAO {
+    public List<Geofence> getAllGeofences();
+    public void persistGeofences(Collection<Geofence> geofences);
+    public int deleteGeofences(Collection<String> ids);
+    public int deleteAllGeofences();
+}
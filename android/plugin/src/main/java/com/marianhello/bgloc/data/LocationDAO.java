@@ -5,9 +5,13 @@ import java.util.Collection;
 public interface LocationDAO {
     public Collection<BackgroundLocation> getAllLocations();
     public Collection<BackgroundLocation> getValidLocations();
+    public Collection<BackgroundLocation> getLocations(LocationQuery query);
+    public Collection<BackgroundLocation> queryLocations(BoundingBox bbox, Long fromTime, Long toTime, int limit);
     public Long locationsForSyncCount(Long millisSinceLastBatch);
+    public Long oldestLocationForSyncTime(Long millisSinceLastBatch);
     public Long persistLocation(BackgroundLocation location);
     public Long persistLocationWithLimit(BackgroundLocation location, Integer maxRows);
+    public void persistLocations(Collection<BackgroundLocation> locations, Integer maxRows);
     public void deleteLocation(Long locationId);
     public void deleteAllLocations();
 }
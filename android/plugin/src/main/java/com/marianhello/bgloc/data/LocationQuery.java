@@ -0,0 +1,174 @@
+package com.marianhello.bgloc.data;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Location query with keyset pagination
+ *
+ * Locations are ordered by (time, locationId). Next page starts after
+ * location identified by cursor (afterTime, afterId) of previous page.
+ */
+public class LocationQuery {
+    public static final int DEFAULT_LIMIT = 100;
+
+    private Long fromTime;
+    private Long toTime;
+    private BoundingBox boundingBox;
+    private Long afterTime;
+    private Long afterId;
+    private Integer limit = DEFAULT_LIMIT;
+    private Boolean validOnly = false;
+
+    public LocationQuery() {
+    }
+
+    /**
+     * Query of locations inside bounding box recorded between fromTime and toTime
+     *
+     * @param bbox bounding box or null
+     * @param fromTime millis since epoch or null
+     * @param toTime millis since epoch or null
+     * @param limit max number of locations
+     */
+    public LocationQuery(BoundingBox bbox, Long fromTime, Long toTime, int limit) {
+        this.boundingBox = bbox;
+        this.fromTime = fromTime;
+        this.toTime = toTime;
+        this.limit = limit;
+    }
+
+    public Long getFromTime() {
+        return fromTime;
+    }
+
+    /**
+     * Return only locations with time >= fromTime
+     * @param fromTime millis since epoch or null
+     */
+    public void setFromTime(Long fromTime) {
+        this.fromTime = fromTime;
+    }
+
+    public Long getToTime() {
+        return toTime;
+    }
+
+    /**
+     * Return only locations with time <= toTime
+     * @param toTime millis since epoch or null
+     */
+    public void setToTime(Long toTime) {
+        this.toTime = toTime;
+    }
+
+    public BoundingBox getBoundingBox() {
+        return boundingBox;
+    }
+
+    /**
+     * Return only locations inside bounding box
+     * @param boundingBox bounding box or null
+     */
+    public void setBoundingBox(BoundingBox boundingBox) {
+        this.boundingBox = boundingBox;
+    }
+
+    public Long getAfterTime() {
+        return afterTime;
+    }
+
+    public Long getAfterId() {
+        return afterId;
+    }
+
+    public boolean hasCursor() {
+        return afterTime != null && afterId != null;
+    }
+
+    /**
+     * Return only locations following given location
+     * @param afterTime time of last location of previous page
+     * @param afterId locationId of last location of previous page
+     */
+    public void setCursor(Long afterTime, Long afterId) {
+        this.afterTime = afterTime;
+        this.afterId = afterId;
+    }
+
+    /**
+     * Move cursor after given location
+     * @param location last location of previous page
+     */
+    public void setCursor(BackgroundLocation location) {
+        setCursor(location.getTime(), location.getLocationId());
+    }
+
+    public Integer getLimit() {
+        return limit;
+    }
+
+    public void setLimit(Integer limit) {
+        this.limit = limit;
+    }
+
+    public Boolean getValidOnly() {
+        return validOnly;
+    }
+
+    public void setValidOnly(Boolean validOnly) {
+        this.validOnly = validOnly;
+    }
+
+    public static LocationQuery fromJSONObject(JSONObject jObject) throws JSONException {
+        LocationQuery query = new LocationQuery();
+        if (jObject == null) {
+            return query;
+        }
+        if (jObject.has("fromTime")) {
+            query.setFromTime(jObject.getLong("fromTime"));
+        }
+        if (jObject.has("toTime")) {
+            query.setToTime(jObject.getLong("toTime"));
+        }
+        JSONObject bbox = jObject.optJSONObject("bbox");
+        if (bbox != null) {
+            query.setBoundingBox(BoundingBox.fromJSONObject(bbox));
+        }
+        JSONObject cursor = jObject.optJSONObject("cursor");
+        if (cursor != null) {
+            query.setCursor(cursor.getLong("time"), cursor.getLong("locationId"));
+        }
+        query.setLimit(Math.max(1, jObject.optInt("limit", query.getLimit())));
+        query.setValidOnly(jObject.optBoolean("validOnly", query.getValidOnly()));
+        return query;
+    }
+
+    /**
+     * Cursor pointing after given location
+     *
+     * @param location last location of page
+     * @return cursor json object
+     * @throws JSONException
+     */
+    public static JSONObject cursorToJSONObject(BackgroundLocation location) throws JSONException {
+        JSONObject cursor = new JSONObject();
+        cursor.put("time", location.getTime());
+        cursor.put("locationId", location.getLocationId());
+        return cursor;
+    }
+
+    @Override
+    public String toString() {
+        return new StringBuilder()
+                .append("LocationQuery[fromTime=").append(fromTime)
+                .append(" toTime=").append(toTime)
+                .append(" boundingBox=").append(boundingBox)
+                .append(" afterTime=").append(afterTime)
+                .append(" afterId=").append(afterId)
+                .append(" limit=").append(limit)
+                .append(" validOnly=").append(validOnly)
+                .append("]")
+                .toString();
+    }
+}
@@ -0,0 +1,160 @@
+package com.marianhello.bgloc.data;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Sync scheduler state and statistics
+ *
+ * All times are millis since epoch, null when event did not happen yet.
+ */
+public class SyncState {
+    private long attempts = 0;
+    private long successes = 0;
+    private long failures = 0;
+    private int consecutiveFailures = 0;
+    private Long lastAttemptAt;
+    private Long lastSuccessAt;
+    private Long lastFailureAt;
+    private long nextAttemptAt = 0;
+    private String lastDecision;
+    private Long lastDecisionAt;
+    private long pendingCount = 0;
+    private Long oldestPendingTime;
+
+    public long getAttempts() {
+        return attempts;
+    }
+
+    public void setAttempts(long attempts) {
+        this.attempts = attempts;
+    }
+
+    public long getSuccesses() {
+        return successes;
+    }
+
+    public void setSuccesses(long successes) {
+        this.successes = successes;
+    }
+
+    public long getFailures() {
+        return failures;
+    }
+
+    public void setFailures(long failures) {
+        this.failures = failures;
+    }
+
+    public int getConsecutiveFailures() {
+        return consecutiveFailures;
+    }
+
+    public void setConsecutiveFailures(int consecutiveFailures) {
+        this.consecutiveFailures = consecutiveFailures;
+    }
+
+    public Long getLastAttemptAt() {
+        return lastAttemptAt;
+    }
+
+    public void setLastAttemptAt(Long lastAttemptAt) {
+        this.lastAttemptAt = lastAttemptAt;
+    }
+
+    public Long getLastSuccessAt() {
+        return lastSuccessAt;
+    }
+
+    public void setLastSuccessAt(Long lastSuccessAt) {
+        this.lastSuccessAt = lastSuccessAt;
+    }
+
+    public Long getLastFailureAt() {
+        return lastFailureAt;
+    }
+
+    public void setLastFailureAt(Long lastFailureAt) {
+        this.lastFailureAt = lastFailureAt;
+    }
+
+    /**
+     * @return time before which no sync should be requested (backoff after failures)
+     */
+    public long getNextAttemptAt() {
+        return nextAttemptAt;
+    }
+
+    public void setNextAttemptAt(long nextAttemptAt) {
+        this.nextAttemptAt = nextAttemptAt;
+    }
+
+    public String getLastDecision() {
+        return lastDecision;
+    }
+
+    public void setLastDecision(String lastDecision) {
+        this.lastDecision = lastDecision;
+    }
+
+    public Long getLastDecisionAt() {
+        return lastDecisionAt;
+    }
+
+    public void setLastDecisionAt(Long lastDecisionAt) {
+        this.lastDecisionAt = lastDecisionAt;
+    }
+
+    /**
+     * @return number of locations waiting for sync at time of last decision
+     */
+    public long getPendingCount() {
+        return pendingCount;
+    }
+
+    public void setPendingCount(long pendingCount) {
+        this.pendingCount = pendingCount;
+    }
+
+    /**
+     * @return time of oldest location waiting for sync at time of last decision
+     */
+    public Long getOldestPendingTime() {
+        return oldestPendingTime;
+    }
+
+    public void setOldestPendingTime(Long oldestPendingTime) {
+        this.oldestPendingTime = oldestPendingTime;
+    }
+
+    public JSONObject toJSONObject() throws JSONException {
+        JSONObject json = new JSONObject();
+        json.put("attempts", attempts);
+        json.put("successes", successes);
+        json.put("failures", failures);
+        json.put("consecutiveFailures", consecutiveFailures);
+        json.put("lastAttemptAt", lastAttemptAt == null ? JSONObject.NULL : lastAttemptAt);
+        json.put("lastSuccessAt", lastSuccessAt == null ? JSONObject.NULL : lastSuccessAt);
+        json.put("lastFailureAt", lastFailureAt == null ? JSONObject.NULL : lastFailureAt);
+        json.put("nextAttemptAt", nextAttemptAt);
+        json.put("lastDecision", lastDecision == null ? JSONObject.NULL : lastDecision);
+        json.put("lastDecisionAt", lastDecisionAt == null ? JSONObject.NULL : lastDecisionAt);
+        json.put("pendingCount", pendingCount);
+        json.put("oldestPendingTime", oldestPendingTime == null ? JSONObject.NULL : oldestPendingTime);
+        return json;
+    }
+
+    @Override
+    public String toString() {
+        return new StringBuilder()
+                .append("SyncState[attempts=").append(attempts)
+                .append(" successes=").append(successes)
+                .append(" failures=").append(failures)
+                .append(" consecutiveFailures=").append(consecutiveFailures)
+                .append(" nextAttemptAt=").append(nextAttemptAt)
+                .append(" lastDecision=").append(lastDecision)
+                .append(" pendingCount=").append(pendingCount)
+                .append("]")
+                .toString();
+    }
+}
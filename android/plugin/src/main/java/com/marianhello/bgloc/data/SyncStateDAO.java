@@ -0,0 +1,13 @@
+package com.marianhello.bgloc.data;
+
+public interface SyncStateDAO {
+    public SyncState getSyncState();
+    public void persistDecision(String decision, long decidedAt, long pendingCount, Long oldestPendingTime);
+    public void persistSyncAttempt(long attemptAt);
+    public void persistSyncSuccess(long successAt);
+    /**
+     * Record failed sync and postpone next attempt by backoffBaseMillis doubled with every
+     * consecutive failure (up to backoffMaxMillis), atomically as sync state is shared by processes
+     */
+    public void persistSyncFailure(long failureAt, long backoffBaseMillis, long backoffMaxMillis);
+}
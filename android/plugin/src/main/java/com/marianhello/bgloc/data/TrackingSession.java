@@ -0,0 +1,271 @@
+package com.marianhello.bgloc.data;
+
+import com.marianhello.bgloc.Geodesy;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Aggregates of single tracking session (from service start to service stop)
+ *
+ * Aggregates are maintained incrementally by addLocation, so summary of session
+ * is available without reading its locations.
+ * Segment shorter than accuracy of its end location is GPS jitter rather than movement,
+ * so it is not counted and next location is measured from same start.
+ * All times are millis since epoch, distance in meters, speed in meters per second.
+ */
+public class TrackingSession {
+    /** segment slower than this is not counted into moving time */
+    public static final float MOVING_SPEED_THRESHOLD = 0.5f;
+
+    private Long sessionId;
+    private long startedAt;
+    private Long endedAt;
+    private long pointCount = 0;
+    private double distance = 0;
+    private long movingTime = 0;
+    private float maxSpeed = 0;
+    private Double minLatitude;
+    private Double maxLatitude;
+    private Double minLongitude;
+    private Double maxLongitude;
+    // last location counted into distance (start of next segment)
+    private Long lastTime;
+    private Double lastLatitude;
+    private Double lastLongitude;
+    private Long lastLocationTime;
+
+    public TrackingSession() {}
+
+    public TrackingSession(long startedAt) {
+        this.startedAt = startedAt;
+    }
+
+    /**
+     * Update aggregates with next accepted location
+     *
+     * Locations older than last counted location are counted into point count and bounding box only.
+     *
+     * @param location
+     */
+    public void addLocation(BackgroundLocation location) {
+        double latitude = location.getLatitude();
+        double longitude = location.getLongitude();
+        long time = location.getTime();
+
+        if (pointCount == 0) {
+            minLatitude = maxLatitude = latitude;
+            minLongitude = maxLongitude = longitude;
+        } else {
+            minLatitude = Math.min(minLatitude, latitude);
+            maxLatitude = Math.max(maxLatitude, latitude);
+            minLongitude = Math.min(minLongitude, longitude);
+            maxLongitude = Math.max(maxLongitude, longitude);
+        }
+        pointCount++;
+
+        float speed = location.hasSpeed() ? location.getSpeed() : 0;
+        boolean counted = lastTime == null || time > lastTime;
+        if (lastTime != null && time > lastTime) {
+            double segmentDistance = Geodesy.distance(lastLatitude, lastLongitude, latitude, longitude);
+            if (location.hasAccuracy() && segmentDistance < location.getAccuracy()) {
+                counted = false;
+            } else {
+                long elapsed = time - lastTime;
+                float segmentSpeed = (float) (segmentDistance * 1000 / elapsed);
+
+                distance += segmentDistance;
+                if (segmentSpeed >= MOVING_SPEED_THRESHOLD) {
+                    movingTime += elapsed;
+                }
+                if (!location.hasSpeed()) {
+                    speed = segmentSpeed;
+                }
+            }
+        }
+        maxSpeed = Math.max(maxSpeed, speed);
+
+        if (counted) {
+            lastTime = time;
+            lastLatitude = latitude;
+            lastLongitude = longitude;
+        }
+        if (lastLocationTime == null || time > lastLocationTime) {
+            lastLocationTime = time;
+        }
+    }
+
+    public Long getSessionId() {
+        return sessionId;
+    }
+
+    public void setSessionId(Long sessionId) {
+        this.sessionId = sessionId;
+    }
+
+    public long getStartedAt() {
+        return startedAt;
+    }
+
+    public void setStartedAt(long startedAt) {
+        this.startedAt = startedAt;
+    }
+
+    /**
+     * @return time when session was ended or null for running session
+     */
+    public Long getEndedAt() {
+        return endedAt;
+    }
+
+    public void setEndedAt(Long endedAt) {
+        this.endedAt = endedAt;
+    }
+
+    public boolean isActive() {
+        return endedAt == null;
+    }
+
+    public long getPointCount() {
+        return pointCount;
+    }
+
+    public void setPointCount(long pointCount) {
+        this.pointCount = pointCount;
+    }
+
+    public double getDistance() {
+        return distance;
+    }
+
+    public void setDistance(double distance) {
+        this.distance = distance;
+    }
+
+    /**
+     * @return time spent moving faster than MOVING_SPEED_THRESHOLD in millis
+     */
+    public long getMovingTime() {
+        return movingTime;
+    }
+
+    public void setMovingTime(long movingTime) {
+        this.movingTime = movingTime;
+    }
+
+    public float getMaxSpeed() {
+        return maxSpeed;
+    }
+
+    public void setMaxSpeed(float maxSpeed) {
+        this.maxSpeed = maxSpeed;
+    }
+
+    /**
+     * @return average speed while moving or 0 when session has no moving time
+     */
+    public double getAverageSpeed() {
+        return movingTime > 0 ? distance * 1000 / movingTime : 0;
+    }
+
+    /**
+     * @return session duration until end or until last location of running session
+     */
+    public long getDuration() {
+        if (endedAt != null) {
+            return endedAt - startedAt;
+        }
+        Long lastLocationTime = getLastLocationTime();
+        return lastLocationTime != null ? Math.max(0, lastLocationTime - startedAt) : 0;
+    }
+
+    public Double getMinLatitude() {
+        return minLatitude;
+    }
+
+    public Double getMaxLatitude() {
+        return maxLatitude;
+    }
+
+    public Double getMinLongitude() {
+        return minLongitude;
+    }
+
+    public Double getMaxLongitude() {
+        return maxLongitude;
+    }
+
+    public void setBoundingBox(Double minLatitude, Double minLongitude, Double maxLatitude, Double maxLongitude) {
+        this.minLatitude = minLatitude;
+        this.minLongitude = minLongitude;
+        this.maxLatitude = maxLatitude;
+        this.maxLongitude = maxLongitude;
+    }
+
+    public Long getLastTime() {
+        return lastTime;
+    }
+
+    public Double getLastLatitude() {
+        return lastLatitude;
+    }
+
+    public Double getLastLongitude() {
+        return lastLongitude;
+    }
+
+    public void setLastLocation(Long lastTime, Double lastLatitude, Double lastLongitude) {
+        this.lastTime = lastTime;
+        this.lastLatitude = lastLatitude;
+        this.lastLongitude = lastLongitude;
+    }
+
+    /**
+     * @return time of most recent location including ones not counted into distance
+     */
+    public Long getLastLocationTime() {
+        return lastLocationTime != null ? lastLocationTime : lastTime;
+    }
+
+    public void setLastLocationTime(Long lastLocationTime) {
+        this.lastLocationTime = lastLocationTime;
+    }
+
+    public JSONObject toJSONObject() throws JSONException {
+        JSONObject json = new JSONObject();
+        json.put("sessionId", sessionId);
+        json.put("startedAt", startedAt);
+        json.put("endedAt", endedAt == null ? JSONObject.NULL : endedAt);
+        json.put("duration", getDuration());
+        json.put("pointCount", pointCount);
+        json.put("distance", distance);
+        json.put("movingTime", movingTime);
+        json.put("maxSpeed", maxSpeed);
+        json.put("averageSpeed", getAverageSpeed());
+        if (pointCount > 0) {
+            JSONObject bbox = new JSONObject();
+            bbox.put("minLatitude", minLatitude);
+            bbox.put("minLongitude", minLongitude);
+            bbox.put("maxLatitude", maxLatitude);
+            bbox.put("maxLongitude", maxLongitude);
+            json.put("bbox", bbox);
+        } else {
+            json.put("bbox", JSONObject.NULL);
+        }
+        return json;
+    }
+
+    @Override
+    public String toString() {
+        return new StringBuilder()
+                .append("TrackingSession[id=").append(sessionId)
+                .append(" startedAt=").append(startedAt)
+                .append(" endedAt=").append(endedAt)
+                .append(" pointCount=").append(pointCount)
+                .append(" distance=").append(distance)
+                .append(" movingTime=").append(movingTime)
+                .append(" maxSpeed=").append(maxSpeed)
+                .append("]")
+                .toString();
+    }
+}
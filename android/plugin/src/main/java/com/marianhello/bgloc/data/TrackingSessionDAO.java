@@ -0,0 +1,9 @@
+package com.marianhello.bgloc.data;
+
+public interface TrackingSessionDAO {
+    public TrackingSession getCurrentSession();
+    public TrackingSession getSession(long sessionId);
+    public TrackingSession startSession(long startedAt);
+    public void persistSession(TrackingSession session);
+    public void endSession(TrackingSession session, long endedAt);
+}
@@ -0,0 +1,166 @@
+package com.marianhello.bgloc.data.segment;
+
+import com.marianhello.bgloc.data.BackgroundLocation;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+/**
+ * Fixed width binary location record of segment file
+ *
+ * Record is written with absolute puts, id last. Slot with id 0 is empty,
+ * so partially written record is never visible. Only valid flag and batch fields
+ * are changed after record was written.
+ */
+class LocationRecord {
+    public static final int SIZE = 96;
+
+    private static final int ID = 0;
+    private static final int TIME = 8;
+    private static final int LATITUDE = 16;
+    private static final int LONGITUDE = 24;
+    private static final int ALTITUDE = 32;
+    private static final int ACCURACY = 40;
+    private static final int SPEED = 44;
+    private static final int BEARING = 48;
+    private static final int RADIUS = 52;
+    private static final int BATCH_START = 56; // 0 when not in batch
+    private static final int BATCH_SEQ = 64;
+    private static final int LOCATION_PROVIDER = 68;
+    private static final int VALID = 72;
+    private static final int FLAGS = 73;
+    private static final int PROVIDER_LENGTH = 74;
+    private static final int PROVIDER = 75;
+    private static final int MAX_PROVIDER_LENGTH = SIZE - PROVIDER;
+
+    private static final int HAS_ACCURACY = 1;
+    private static final int HAS_SPEED = 1 << 1;
+    private static final int HAS_BEARING = 1 << 2;
+    private static final int HAS_ALTITUDE = 1 << 3;
+    private static final int HAS_RADIUS = 1 << 4;
+    private static final int HAS_LOCATION_PROVIDER = 1 << 5;
+    private static final int HAS_PROVIDER = 1 << 6;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private LocationRecord() {}
+
+    public static void write(ByteBuffer buffer, int offset, long id, BackgroundLocation location) {
+        int flags = 0;
+        buffer.putLong(offset + TIME, location.getTime());
+        buffer.putDouble(offset + LATITUDE, location.getLatitude());
+        buffer.putDouble(offset + LONGITUDE, location.getLongitude());
+        buffer.putDouble(offset + ALTITUDE, location.getAltitude());
+        buffer.putFloat(offset + ACCURACY, location.getAccuracy());
+        buffer.putFloat(offset + SPEED, location.getSpeed());
+        buffer.putFloat(offset + BEARING, location.getBearing());
+        buffer.putFloat(offset + RADIUS, location.getRadius());
+        Long batchStart = location.getBatchStartMillis();
+        buffer.putLong(offset + BATCH_START, batchStart != null ? batchStart : 0);
+        buffer.putInt(offset + BATCH_SEQ, 0);
+        Integer locationProvider = location.getLocationProvider();
+        buffer.putInt(offset + LOCATION_PROVIDER, locationProvider != null ? locationProvider : 0);
+        buffer.put(offset + VALID, (byte) (location.isValid() ? 1 : 0));
+
+        if (location.hasAccuracy()) flags |= HAS_ACCURACY;
+        if (location.hasSpeed()) flags |= HAS_SPEED;
+        if (location.hasBearing()) flags |= HAS_BEARING;
+        if (location.hasAltitude()) flags |= HAS_ALTITUDE;
+        if (location.hasRadius()) flags |= HAS_RADIUS;
+        if (locationProvider != null) flags |= HAS_LOCATION_PROVIDER;
+
+        int providerLength = 0;
+        if (location.getProvider() != null) {
+            flags |= HAS_PROVIDER;
+            byte[] provider = location.getProvider().getBytes(UTF_8);
+            providerLength = Math.min(provider.length, MAX_PROVIDER_LENGTH);
+            for (int i = 0; i < providerLength; i++) {
+                buffer.put(offset + PROVIDER + i, provider[i]);
+            }
+        }
+        buffer.put(offset + PROVIDER_LENGTH, (byte) providerLength);
+        buffer.put(offset + FLAGS, (byte) flags);
+
+        buffer.putLong(offset + ID, id);
+    }
+
+    public static BackgroundLocation read(ByteBuffer buffer, int offset) {
+        int flags = buffer.get(offset + FLAGS);
+        String provider = null;
+        if ((flags & HAS_PROVIDER) != 0) {
+            byte[] bytes = new byte[buffer.get(offset + PROVIDER_LENGTH)];
+            for (int i = 0; i < bytes.length; i++) {
+                bytes[i] = buffer.get(offset + PROVIDER + i);
+            }
+            provider = new String(bytes, UTF_8);
+        }
+
+        BackgroundLocation l = new BackgroundLocation(provider);
+        l.setLocationId(getId(buffer, offset));
+        l.setTime(getTime(buffer, offset));
+        l.setLatitude(buffer.getDouble(offset + LATITUDE));
+        l.setLongitude(buffer.getDouble(offset + LONGITUDE));
+        if ((flags & HAS_ACCURACY) != 0) {
+            l.setAccuracy(buffer.getFloat(offset + ACCURACY));
+        }
+        if ((flags & HAS_SPEED) != 0) {
+            l.setSpeed(buffer.getFloat(offset + SPEED));
+        }
+        if ((flags & HAS_BEARING) != 0) {
+            l.setBearing(buffer.getFloat(offset + BEARING));
+        }
+        if ((flags & HAS_ALTITUDE) != 0) {
+            l.setAltitude(buffer.getDouble(offset + ALTITUDE));
+        }
+        if ((flags & HAS_RADIUS) != 0) {
+            l.setRadius(buffer.getFloat(offset + RADIUS));
+        }
+        if ((flags & HAS_LOCATION_PROVIDER) != 0) {
+            l.setLocationProvider(buffer.getInt(offset + LOCATION_PROVIDER));
+        }
+        long batchStart = getBatchStart(buffer, offset);
+        if (batchStart != 0) {
+            l.setBatchStartMillis(batchStart);
+        }
+        l.setValid(isValid(buffer, offset));
+
+        return l;
+    }
+
+    public static long getId(ByteBuffer buffer, int offset) {
+        return buffer.getLong(offset + ID);
+    }
+
+    public static long getTime(ByteBuffer buffer, int offset) {
+        return buffer.getLong(offset + TIME);
+    }
+
+    public static double getLatitude(ByteBuffer buffer, int offset) {
+        return buffer.getDouble(offset + LATITUDE);
+    }
+
+    public static double getLongitude(ByteBuffer buffer, int offset) {
+        return buffer.getDouble(offset + LONGITUDE);
+    }
+
+    public static boolean isValid(ByteBuffer buffer, int offset) {
+        return buffer.get(offset + VALID) == 1;
+    }
+
+    public static void setValid(ByteBuffer buffer, int offset, boolean valid) {
+        buffer.put(offset + VALID, (byte) (valid ? 1 : 0));
+    }
+
+    public static long getBatchStart(ByteBuffer buffer, int offset) {
+        return buffer.getLong(offset + BATCH_START);
+    }
+
+    public static int getBatchSeq(ByteBuffer buffer, int offset) {
+        return buffer.getInt(offset + BATCH_SEQ);
+    }
+
+    public static void setBatch(ByteBuffer buffer, int offset, long batchStart, int seq) {
+        buffer.putInt(offset + BATCH_SEQ, seq);
+        buffer.putLong(offset + BATCH_START, batchStart);
+    }
+}
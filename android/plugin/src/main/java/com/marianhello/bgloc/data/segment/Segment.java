@@ -0,0 +1,151 @@
+package com.marianhello.bgloc.data.segment;
+
+import com.marianhello.bgloc.data.BackgroundLocation;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Locale;
+
+/**
+ * Segment file of fixed number of location records mapped into memory
+ *
+ * Records are appended with consecutive ids starting at firstId, so record of id
+ * is found at offset (id - firstId) * LocationRecord.SIZE. File name is zero padded
+ * firstId, segments are therefore listed in id order.
+ */
+class Segment {
+    public static final String SUFFIX = ".seg";
+
+    private final File file;
+    private final long firstId;
+    private final int capacity;
+    private final MappedByteBuffer buffer;
+    private int count = 0;
+
+    private Segment(File file, long firstId, int capacity, MappedByteBuffer buffer) {
+        this.file = file;
+        this.firstId = firstId;
+        this.capacity = capacity;
+        this.buffer = buffer;
+    }
+
+    /**
+     * Map existing segment file or create new one
+     *
+     * Capacity of existing file is given by its length.
+     *
+     * @param file
+     * @param firstId id of first record
+     * @param capacity number of records of new file
+     * @return segment
+     * @throws IOException
+     */
+    public static Segment open(File file, long firstId, int capacity) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            long length = raf.length();
+            if (length < LocationRecord.SIZE) {
+                length = (long) capacity * LocationRecord.SIZE;
+                raf.setLength(length);
+            }
+            // mapping stays valid after channel is closed
+            MappedByteBuffer buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, length);
+            Segment segment = new Segment(file, firstId, (int) (length / LocationRecord.SIZE), buffer);
+            segment.refresh();
+            return segment;
+        } finally {
+            raf.close();
+        }
+    }
+
+    public static String fileName(long firstId) {
+        return String.format(Locale.US, "%019d%s", firstId, SUFFIX);
+    }
+
+    /**
+     * @param fileName
+     * @return firstId of segment or null if fileName is not segment file name
+     */
+    public static Long parseFirstId(String fileName) {
+        if (!fileName.endsWith(SUFFIX)) {
+            return null;
+        }
+        try {
+            return Long.parseLong(fileName.substring(0, fileName.length() - SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Count records appended since last refresh (possibly by other process)
+     */
+    public void refresh() {
+        while (count < capacity && LocationRecord.getId(buffer, offsetOfSlot(count)) != 0) {
+            count++;
+        }
+    }
+
+    public long append(BackgroundLocation location) {
+        long id = firstId + count;
+        LocationRecord.write(buffer, offsetOfSlot(count), id, location);
+        count++;
+        return id;
+    }
+
+    public boolean isFull() {
+        return count == capacity;
+    }
+
+    public long getFirstId() {
+        return firstId;
+    }
+
+    /**
+     * @return id of last record or firstId - 1 if segment is empty
+     */
+    public long getLastId() {
+        return firstId + count - 1;
+    }
+
+    /**
+     * @return id next record of full segment would have
+     */
+    public long getEndId() {
+        return firstId + capacity;
+    }
+
+    public boolean contains(long id) {
+        return id >= firstId && id < firstId + count;
+    }
+
+    public MappedByteBuffer getBuffer() {
+        return buffer;
+    }
+
+    public int offsetOf(long id) {
+        return offsetOfSlot((int) (id - firstId));
+    }
+
+    /**
+     * Flush written records to storage
+     *
+     * Without flush, records survive process death (pages are owned by kernel),
+     * but not power loss.
+     */
+    public void force() {
+        buffer.force();
+    }
+
+    public boolean delete() {
+        // mapping is released by garbage collector, file is removed immediately
+        return file.delete();
+    }
+
+    private static int offsetOfSlot(int slot) {
+        return slot * LocationRecord.SIZE;
+    }
+}
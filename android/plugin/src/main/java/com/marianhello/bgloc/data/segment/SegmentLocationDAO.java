@@ -0,0 +1,688 @@
+package com.marianhello.bgloc.data.segment;
+
+import android.content.Context;
+
+import com.marianhello.bgloc.data.BackgroundLocation;
+import com.marianhello.bgloc.data.BoundingBox;
+import com.marianhello.bgloc.data.LocationDAO;
+import com.marianhello.bgloc.data.LocationQuery;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Location DAO storing locations in append only log of memory mapped segment files
+ *
+ * Locations are appended as fixed width records (see LocationRecord) with consecutive ids.
+ * Segments are indexed by id of their first record, so location of given id is found
+ * without any lookup table. Deleted and synced locations are only flagged as not valid.
+ *
+ * Small state file (mapped as well) holds next id, row limit floor (records below
+ * floor are dropped), sync cursor (all records up to cursor are not valid) and
+ * batch being synced. Segment is deleted once all its records are below floor or cursor.
+ *
+ * Locations are written by service process and synced from sync process, so every
+ * operation holds file lock and picks up segments created or deleted by other process.
+ */
+public class SegmentLocationDAO implements LocationDAO {
+    public static final String NAME = "segment";
+    public static final String DIRECTORY_NAME = "locations";
+    public static final int DEFAULT_SEGMENT_CAPACITY = 4096; // 384 KB segment
+
+    private static final String STATE_FILE_NAME = "state";
+    private static final String LOCK_FILE_NAME = "lock";
+
+    private static final int STATE_SIZE = 64;
+    private static final int STATE_GENERATION = 0; // incremented when segment is created or deleted
+    private static final int STATE_NEXT_ID = 8;
+    private static final int STATE_FLOOR_ID = 16;
+    private static final int STATE_SYNCED_ID = 24;
+    private static final int STATE_BATCH_ID = 32;
+    private static final int STATE_CHUNK_COUNT = 40;
+
+    // FileLock is held by whole process, threads are serialized before acquiring it
+    private static final ReentrantLock processLock = new ReentrantLock();
+
+    private static SegmentLocationDAO instance;
+
+    private final File directory;
+    private final int segmentCapacity;
+    private final MappedByteBuffer state;
+    private final FileChannel lockChannel;
+    private final TreeMap<Long, Segment> segments = new TreeMap<Long, Segment>();
+    private long generation = -1;
+
+    private interface RecordVisitor {
+        /**
+         * @return false to stop scanning
+         */
+        boolean visit(ByteBuffer buffer, int offset, long id);
+    }
+
+    private static final Comparator<long[]> TIME_ID_ORDER = new Comparator<long[]>() {
+        @Override
+        public int compare(long[] a, long[] b) {
+            if (a[0] != b[0]) {
+                return a[0] < b[0] ? -1 : 1;
+            }
+            return a[1] < b[1] ? -1 : (a[1] == b[1] ? 0 : 1);
+        }
+    };
+
+    /**
+     * Get SegmentLocationDAO instance (singleton)
+     *
+     * @param context
+     * @return
+     */
+    public static synchronized SegmentLocationDAO getInstance(Context context) {
+        if (instance == null) {
+            File directory = new File(context.getApplicationContext().getFilesDir(), DIRECTORY_NAME);
+            instance = new SegmentLocationDAO(directory, DEFAULT_SEGMENT_CAPACITY);
+        }
+        return instance;
+    }
+
+    /**
+     * @param directory directory of segment files
+     * @param segmentCapacity number of records of new segment
+     */
+    public SegmentLocationDAO(File directory, int segmentCapacity) {
+        this.directory = directory;
+        this.segmentCapacity = segmentCapacity;
+        try {
+            if (!directory.isDirectory() && !directory.mkdirs()) {
+                throw new IOException("Cannot create directory: " + directory);
+            }
+            lockChannel = new RandomAccessFile(new File(directory, LOCK_FILE_NAME), "rw").getChannel();
+            RandomAccessFile raf = new RandomAccessFile(new File(directory, STATE_FILE_NAME), "rw");
+            try {
+                raf.setLength(Math.max(raf.length(), STATE_SIZE));
+                state = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, STATE_SIZE);
+            } finally {
+                raf.close();
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot open location segments: " + e.getMessage(), e);
+        }
+
+        FileLock lock = beginAccess();
+        try {
+            if (state.getLong(STATE_NEXT_ID) == 0) {
+                state.putLong(STATE_NEXT_ID, 1);
+                state.putLong(STATE_FLOOR_ID, 1);
+            }
+        } finally {
+            endAccess(lock);
+        }
+    }
+
+    public Collection<BackgroundLocation> getAllLocations() {
+        FileLock lock = beginAccess();
+        try {
+            return readSorted(collect(null, false), Integer.MAX_VALUE);
+        } finally {
+            endAccess(lock);
+        }
+    }
+
+    public Collection<BackgroundLocation> getValidLocations() {
+        FileLock lock = beginAccess();
+        try {
+            return readSorted(collect(null, true), Integer.MAX_VALUE);
+        } finally {
+            endAccess(lock);
+        }
+    }
+
+    public Collection<BackgroundLocation> getLocations(LocationQuery query) {
+        FileLock lock = beginAccess();
+        try {
+            return readSorted(collect(query, query.getValidOnly()), query.getLimit());
+        } finally {
+            endAccess(lock);
+        }
+    }
+
+    /**
+     * Get locations inside bounding box recorded between fromTime and toTime
+     *
+     * Segments are scanned sequentially (store has no spatial index).
+     */
+    public Collection<BackgroundLocation> queryLocations(BoundingBox bbox, Long fromTime, Long toTime, int limit) {
+        return getLocations(new LocationQuery(bbox, fromTime, toTime, limit));
+    }
+
+    public Long locationsForSyncCount(final Long millisSinceLastBatch) {
+        FileLock lock = beginAccess();
+        try {
+            final long[] count = { 0 };
+            scan(getPendingFromId(), new RecordVisitor() {
+                @Override
+                public boolean visit(ByteBuffer buffer, int offset, long id) {
+                    if (isWaitingForSync(buffer, offset, millisSinceLastBatch)) {
+                        count[0]++;
+                    }
+                    return true;
+                }
+            });
+            return count[0];
+        } finally {
+            endAccess(lock);
+        }
+    }
+
+    public Long oldestLocationForSyncTime(final Long millisSinceLastBatch) {
+        FileLock lock = beginAccess();
+        try {
+            final Long[] oldest = { null };
+            scan(getPendingFromId(), new RecordVisitor() {
+                @Override
+                public boolean visit(ByteBuffer buffer, int offset, long id) {
+                    if (isWaitingForSync(buffer, offset, millisSinceLastBatch)) {
+                        long time = LocationRecord.getTime(buffer, offset);
+                        if (oldest[0] == null || time < oldest[0]) {
+                            oldest[0] = time;
+                        }
+                    }
+                    return true;
+                }
+            });
+            return oldest[0];
+        } finally {
+            endAccess(lock);
+        }
+    }
+
+    public Long persistLocation(BackgroundLocation location) {
+        FileLock lock = beginAccess();
+        try {
+            return append(location);
+        } finally {
+            endAccess(lock);
+        }
+    }
+
+    public Long persistLocationWithLimit(BackgroundLocation location, Integer maxRows) {
+        persistLocations(Collections.singletonList(location), maxRows);
+        return location.getLocationId();
+    }
+
+    /**
+     * Persist locations keeping at most maxRows newest records
+     *
+     * Older records are dropped by moving floor, not by overwriting them,
+     * so ids are never reused.
+     *
+     * @param locations
+     * @param maxRows
+     */
+    public void persistLocations(Collection<BackgroundLocation> locations, Integer maxRows) {
+        if (locations.isEmpty()) {
+            return;
+        }
+
+        FileLock lock = beginAccess();
+        try {
+            for (BackgroundLocation location : locations) {
+                location.setLocationId(append(location));
+            }
+            long floorId = state.getLong(STATE_NEXT_ID) - Math.max(1, maxRows);
+            if (floorId > getFloorId()) {
+                state.putLong(STATE_FLOOR_ID, floorId);
+                deleteObsoleteSegments();
+            }
+        } finally {
+            endAccess(lock);
+        }
+    }
+
+    public void deleteLocation(Long locationId) {
+        FileLock lock = beginAccess();
+        try {
+            Segment segment = segmentOf(locationId);
+            if (segment != null && locationId >= getFloorId()) {
+                LocationRecord.setValid(segment.getBuffer(), segment.offsetOf(locationId), false);
+                advanceSyncedId();
+            }
+        } finally {
+            endAccess(lock);
+        }
+    }
+
+    public void deleteAllLocations() {
+        FileLock lock = beginAccess();
+        try {
+            scan(getFloorId(), new RecordVisitor() {
+                @Override
+                public boolean visit(ByteBuffer buffer, int offset, long id) {
+                    LocationRecord.setValid(buffer, offset, false);
+                    return true;
+                }
+            });
+            advanceSyncedId();
+        } finally {
+            endAccess(lock);
+        }
+    }
+
+    /**
+     * @return id of batch having not acknowledged chunks or null
+     */
+    public Long getPendingBatchId() {
+        FileLock lock = beginAccess();
+        try {
+            long batchId = state.getLong(STATE_BATCH_ID);
+            if (batchId == 0) {
+                return null;
+            }
+            if (getPendingChunkSeqs(batchId).isEmpty()) {
+                // all locations of batch were deleted meanwhile
+                clearBatch();
+                return null;
+            }
+            return batchId;
+        } finally {
+            endAccess(lock);
+        }
+    }
+
+    /**
+     * Assign locations waiting for sync to new batch split into chunks
+     *
+     * @param batchId batch id (batchStartMillis)
+     * @param syncThreshold minimal number of locations in batch
+     * @param chunkSize maximum number of locations in chunk, 0 for single chunk
+     * @return number of locations in batch, 0 if there are less locations than syncThreshold
+     */
+    public int prepareBatch(final long batchId, int syncThreshold, int chunkSize) {
+        FileLock lock = beginAccess();
+        try {
+            final List<long[]> pending = new ArrayList<long[]>();
+            scan(getPendingFromId(), new RecordVisitor() {
+                @Override
+                public boolean visit(ByteBuffer buffer, int offset, long id) {
+                    if (isWaitingForSync(buffer, offset, batchId)) {
+                        pending.add(new long[] { LocationRecord.getTime(buffer, offset), id });
+                    }
+                    return true;
+                }
+            });
+
+            int count = pending.size();
+            if (count == 0 || count < syncThreshold) {
+                return 0;
+            }
+
+            Collections.sort(pending, TIME_ID_ORDER);
+            int rowsPerChunk = chunkSize > 0 ? chunkSize : count;
+            for (int row = 0; row < count; row++) {
+                long id = pending.get(row)[1];
+                Segment segment = segmentOf(id);
+                LocationRecord.setBatch(segment.getBuffer(), segment.offsetOf(id), batchId, row / rowsPerChunk);
+            }
+            state.putInt(STATE_CHUNK_COUNT, (count + rowsPerChunk - 1) / rowsPerChunk);
+            state.putLong(STATE_BATCH_ID, batchId);
+
+            return count;
+        } finally {
+            endAccess(lock);
+        }
+    }
+
+    /**
+     * @param batchId
+     * @return total number of chunks of batch, 0 when batch was completed
+     */
+    public int getChunkCount(long batchId) {
+        FileLock lock = beginAccess();
+        try {
+            return state.getLong(STATE_BATCH_ID) == batchId ? state.getInt(STATE_CHUNK_COUNT) : 0;
+        } finally {
+            endAccess(lock);
+        }
+    }
+
+    /**
+     * @param batchId
+     * @return sequence numbers of not acknowledged chunks in ascending order
+     */
+    public List<Integer> getPendingChunks(long batchId) {
+        FileLock lock = beginAccess();
+        try {
+            return new ArrayList<Integer>(getPendingChunkSeqs(batchId));
+        } finally {
+            endAccess(lock);
+        }
+    }
+
+    /**
+     * @param batchId
+     * @param seq
+     * @return not yet acknowledged locations of chunk ordered by time
+     */
+    public List<BackgroundLocation> getChunkLocations(final long batchId, final int seq) {
+        FileLock lock = beginAccess();
+        try {
+            final List<long[]> chunk = new ArrayList<long[]>();
+            scan(getPendingFromId(), new RecordVisitor() {
+                @Override
+                public boolean visit(ByteBuffer buffer, int offset, long id) {
+                    if (isInChunk(buffer, offset, batchId, seq)) {
+                        chunk.add(new long[] { LocationRecord.getTime(buffer, offset), id });
+                    }
+                    return true;
+                }
+            });
+            return readSorted(chunk, Integer.MAX_VALUE);
+        } finally {
+            endAccess(lock);
+        }
+    }
+
+    /**
+     * Mark locations of chunk acknowledged by server as synced
+     *
+     * @param batchId
+     * @param seq
+     */
+    public void setChunkCompleted(final long batchId, final int seq) {
+        FileLock lock = beginAccess();
+        try {
+            scan(getPendingFromId(), new RecordVisitor() {
+                @Override
+                public boolean visit(ByteBuffer buffer, int offset, long id) {
+                    if (isInChunk(buffer, offset, batchId, seq)) {
+                        LocationRecord.setValid(buffer, offset, false);
+                    }
+                    return true;
+                }
+            });
+            if (state.getLong(STATE_BATCH_ID) == batchId && getPendingChunkSeqs(batchId).isEmpty()) {
+                clearBatch();
+            }
+            advanceSyncedId();
+        } finally {
+            endAccess(lock);
+        }
+    }
+
+    /**
+     * @return number of segment files
+     */
+    public int getSegmentCount() {
+        FileLock lock = beginAccess();
+        try {
+            return segments.size();
+        } finally {
+            endAccess(lock);
+        }
+    }
+
+    private long append(BackgroundLocation location) {
+        Map.Entry<Long, Segment> last = segments.lastEntry();
+        Segment segment = last != null ? last.getValue() : null;
+        if (segment == null || segment.isFull()) {
+            if (segment != null) {
+                segment.force();
+            }
+            segment = createSegment(state.getLong(STATE_NEXT_ID));
+        }
+        long id = segment.append(location);
+        state.putLong(STATE_NEXT_ID, id + 1);
+        return id;
+    }
+
+    private Segment createSegment(long firstId) {
+        try {
+            Segment segment = Segment.open(new File(directory, Segment.fileName(firstId)), firstId, segmentCapacity);
+            segments.put(firstId, segment);
+            incrementGeneration();
+            return segment;
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot create location segment: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Move sync cursor past records not waiting for sync and delete segments behind it
+     */
+    private void advanceSyncedId() {
+        final long[] syncedId = { Math.max(getSyncedId(), getFloorId() - 1) };
+        scan(syncedId[0] + 1, new RecordVisitor() {
+            @Override
+            public boolean visit(ByteBuffer buffer, int offset, long id) {
+                if (LocationRecord.isValid(buffer, offset)) {
+                    return false;
+                }
+                syncedId[0] = id;
+                return true;
+            }
+        });
+        state.putLong(STATE_SYNCED_ID, syncedId[0]);
+        deleteObsoleteSegments();
+    }
+
+    /**
+     * Delete full segments having all records below floor or sync cursor
+     */
+    private void deleteObsoleteSegments() {
+        long obsoleteId = Math.max(getFloorId() - 1, getSyncedId());
+        boolean deleted = false;
+        while (segments.size() > 1) {
+            Segment segment = segments.firstEntry().getValue();
+            if (!segment.isFull() || segment.getLastId() > obsoleteId) {
+                break;
+            }
+            segment.delete();
+            segments.remove(segment.getFirstId());
+            deleted = true;
+        }
+        if (deleted) {
+            incrementGeneration();
+        }
+    }
+
+    private TreeSet<Integer> getPendingChunkSeqs(final long batchId) {
+        final TreeSet<Integer> seqs = new TreeSet<Integer>();
+        scan(getPendingFromId(), new RecordVisitor() {
+            @Override
+            public boolean visit(ByteBuffer buffer, int offset, long id) {
+                if (LocationRecord.isValid(buffer, offset) && LocationRecord.getBatchStart(buffer, offset) == batchId) {
+                    seqs.add(LocationRecord.getBatchSeq(buffer, offset));
+                }
+                return true;
+            }
+        });
+        return seqs;
+    }
+
+    private void clearBatch() {
+        state.putLong(STATE_BATCH_ID, 0);
+        state.putInt(STATE_CHUNK_COUNT, 0);
+    }
+
+    /**
+     * Collect time and id of visible records matching query
+     *
+     * @param query query or null for all records
+     * @param validOnly
+     * @return list of {time, id} pairs
+     */
+    private List<long[]> collect(LocationQuery query, final boolean validOnly) {
+        final List<long[]> matches = new ArrayList<long[]>();
+        final long fromTime = query != null && query.getFromTime() != null ? query.getFromTime() : Long.MIN_VALUE;
+        final long toTime = query != null && query.getToTime() != null ? query.getToTime() : Long.MAX_VALUE;
+        final boolean hasCursor = query != null && query.hasCursor();
+        final long afterTime = hasCursor ? query.getAfterTime() : 0;
+        final long afterId = hasCursor ? query.getAfterId() : 0;
+        final BoundingBox bbox = query != null ? query.getBoundingBox() : null;
+
+        scan(getFloorId(), new RecordVisitor() {
+            @Override
+            public boolean visit(ByteBuffer buffer, int offset, long id) {
+                if (validOnly && !LocationRecord.isValid(buffer, offset)) {
+                    return true;
+                }
+                long time = LocationRecord.getTime(buffer, offset);
+                if (time < fromTime || time > toTime) {
+                    return true;
+                }
+                if (hasCursor && (time < afterTime || (time == afterTime && id <= afterId))) {
+                    return true;
+                }
+                if (bbox != null && !bbox.contains(LocationRecord.getLatitude(buffer, offset),
+                        LocationRecord.getLongitude(buffer, offset))) {
+                    return true;
+                }
+                matches.add(new long[] { time, id });
+                return true;
+            }
+        });
+        return matches;
+    }
+
+    /**
+     * Read records of at most limit first {time, id} pairs in time and id order
+     */
+    private List<BackgroundLocation> readSorted(List<long[]> entries, int limit) {
+        Collections.sort(entries, TIME_ID_ORDER);
+        int size = Math.min(limit, entries.size());
+        List<BackgroundLocation> locations = new ArrayList<BackgroundLocation>(size);
+        for (int i = 0; i < size; i++) {
+            long id = entries.get(i)[1];
+            Segment segment = segmentOf(id);
+            locations.add(LocationRecord.read(segment.getBuffer(), segment.offsetOf(id)));
+        }
+        return locations;
+    }
+
+    /**
+     * Visit records with id >= fromId in id order
+     */
+    private void scan(long fromId, RecordVisitor visitor) {
+        Long firstKey = segments.floorKey(fromId);
+        Collection<Segment> tail = firstKey != null ? segments.tailMap(firstKey).values() : segments.values();
+        for (Segment segment : tail) {
+            ByteBuffer buffer = segment.getBuffer();
+            for (long id = Math.max(fromId, segment.getFirstId()); id <= segment.getLastId(); id++) {
+                if (!visitor.visit(buffer, segment.offsetOf(id), id)) {
+                    return;
+                }
+            }
+        }
+    }
+
+    private Segment segmentOf(long id) {
+        Map.Entry<Long, Segment> entry = segments.floorEntry(id);
+        if (entry == null || !entry.getValue().contains(id)) {
+            return null;
+        }
+        return entry.getValue();
+    }
+
+    private static boolean isWaitingForSync(ByteBuffer buffer, int offset, long millisSinceLastBatch) {
+        if (!LocationRecord.isValid(buffer, offset)) {
+            return false;
+        }
+        long batchStart = LocationRecord.getBatchStart(buffer, offset);
+        return batchStart == 0 || batchStart < millisSinceLastBatch;
+    }
+
+    private static boolean isInChunk(ByteBuffer buffer, int offset, long batchId, int seq) {
+        return LocationRecord.isValid(buffer, offset)
+                && LocationRecord.getBatchStart(buffer, offset) == batchId
+                && LocationRecord.getBatchSeq(buffer, offset) == seq;
+    }
+
+    /**
+     * @return id of first record possibly waiting for sync
+     */
+    private long getPendingFromId() {
+        return Math.max(getFloorId(), getSyncedId() + 1);
+    }
+
+    private long getFloorId() {
+        return state.getLong(STATE_FLOOR_ID);
+    }
+
+    private long getSyncedId() {
+        return state.getLong(STATE_SYNCED_ID);
+    }
+
+    private void incrementGeneration() {
+        generation = state.getLong(STATE_GENERATION) + 1;
+        state.putLong(STATE_GENERATION, generation);
+    }
+
+    /**
+     * Lock segments and pick up changes made by other process
+     */
+    private FileLock beginAccess() {
+        processLock.lock();
+        FileLock lock = null;
+        try {
+            lock = lockChannel.lock();
+            refresh();
+            return lock;
+        } catch (IOException e) {
+            endAccess(lock);
+            throw new IllegalStateException("Cannot lock location segments: " + e.getMessage(), e);
+        }
+    }
+
+    private void endAccess(FileLock lock) {
+        try {
+            if (lock != null) {
+                lock.release();
+            }
+        } catch (IOException e) {
+            // lock is released when channel is closed
+        } finally {
+            processLock.unlock();
+        }
+    }
+
+    private void refresh() throws IOException {
+        long currentGeneration = state.getLong(STATE_GENERATION);
+        if (currentGeneration != generation) {
+            TreeMap<Long, Segment> current = new TreeMap<Long, Segment>();
+            File[] files = directory.listFiles();
+            for (File file : files != null ? files : new File[0]) {
+                Long firstId = Segment.parseFirstId(file.getName());
+                if (firstId == null) {
+                    continue;
+                }
+                Segment segment = segments.get(firstId);
+                if (segment != null) {
+                    segment.refresh();
+                } else {
+                    segment = Segment.open(file, firstId, segmentCapacity);
+                }
+                current.put(firstId, segment);
+            }
+            segments.clear();
+            segments.putAll(current);
+            generation = currentGeneration;
+        }
+
+        Map.Entry<Long, Segment> last = segments.lastEntry();
+        if (last != null) {
+            last.getValue().refresh();
+        }
+    }
+}
@@ -0,0 +1,212 @@
+package com.marianhello.bgloc.data.sqlite;
+
+import android.database.DatabaseUtils;
+import android.database.SQLException;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.os.Handler;
+import android.util.Log;
+
+import com.marianhello.bgloc.data.sqlite.SQLiteLocationContract.LocationEntry;
+
+/**
+ * Background job purging synced locations and reclaiming free database pages
+ *
+ * Synced and deleted locations are only flagged as non valid. Compaction physically
+ * deletes them in small chunks, so database size tracks number of not yet synced locations.
+ * When database is in incremental auto_vacuum mode, pages freed by deletes are released
+ * in small chunks too. Every chunk is posted to handler separately, so other work
+ * (eg. location writes) can proceed in between.
+ * Otherwise one full VACUUM is executed, but only when free pages
+ * make significant part of database file.
+ *
+ * Database created before incremental auto_vacuum was introduced is switched
+ * to it (by one full VACUUM) when first compaction starts, so migration runs
+ * on handler thread rather than on thread opening database.
+ *
+ * When interval is set, compaction is rescheduled after it completes.
+ */
+public class CompactionTask implements Runnable {
+    private static final String TAG = CompactionTask.class.getName();
+
+    private static final int AUTO_VACUUM_INCREMENTAL = 2;
+    private static final long ROWS_PER_CHUNK = 500;
+    private static final long PAGES_PER_CHUNK = 64;
+    private static final long CHUNK_DELAY_MILLIS = 100;
+    private static final long FULL_VACUUM_FREE_PAGES_RATIO = 4; // 1/4 of db file
+
+    public static final String SQL_PURGE_CHUNK = new StringBuilder("DELETE FROM ")
+            .append(LocationEntry.TABLE_NAME).append(" WHERE ").append(LocationEntry._ID)
+            .append(" IN (SELECT ").append(LocationEntry._ID)
+            .append(" FROM ").append(LocationEntry.TABLE_NAME)
+            .append(" WHERE ").append(LocationEntry.COLUMN_NAME_VALID).append(" = 0")
+            .append(" LIMIT ").append(ROWS_PER_CHUNK).append(")")
+            .toString();
+
+    private final SQLiteOpenHelper helper;
+    private SQLiteDatabase db;
+    private final Handler handler;
+    private final long intervalMillis;
+
+    private boolean running = false;
+    private boolean purging = false;
+    private long startPageCount;
+    private long purgedRows;
+    private long lastPurgedRows = 0;
+    private long lastReclaimedPages = 0;
+
+    public CompactionTask(SQLiteDatabase db, Handler handler) {
+        this(db, handler, 0);
+    }
+
+    /**
+     * @param db
+     * @param handler handler running compaction chunks
+     * @param intervalMillis delay of next compaction after one completes, 0 to run once
+     */
+    public CompactionTask(SQLiteDatabase db, Handler handler, long intervalMillis) {
+        this.helper = null;
+        this.db = db;
+        this.handler = handler;
+        this.intervalMillis = intervalMillis;
+    }
+
+    /**
+     * Database is opened when compaction first runs
+     *
+     * @param helper
+     * @param handler handler running compaction chunks
+     * @param intervalMillis delay of next compaction after one completes, 0 to run once
+     */
+    public CompactionTask(SQLiteOpenHelper helper, Handler handler, long intervalMillis) {
+        this.helper = helper;
+        this.handler = handler;
+        this.intervalMillis = intervalMillis;
+    }
+
+    @Override
+    public void run() {
+        try {
+            if (db == null) {
+                db = helper.getWritableDatabase();
+            }
+
+            if (!running) {
+                running = true;
+                purging = true;
+                purgedRows = 0;
+                startPageCount = pragma("page_count");
+                enableIncrementalVacuum();
+            }
+
+            if (purging) {
+                long deleted = purgeChunk();
+                purgedRows += deleted;
+                if (deleted == ROWS_PER_CHUNK) {
+                    handler.postDelayed(this, CHUNK_DELAY_MILLIS);
+                    return;
+                }
+                purging = false;
+            }
+
+            if (vacuumChunk()) {
+                handler.postDelayed(this, CHUNK_DELAY_MILLIS);
+                return;
+            }
+        } catch (SQLException e) {
+            Log.e(TAG, "Compaction failed: " + e.getMessage());
+        }
+
+        finish();
+    }
+
+    /**
+     * @return number of locations deleted by last completed compaction
+     */
+    public synchronized long getLastPurgedRows() {
+        return lastPurgedRows;
+    }
+
+    /**
+     * @return number of database pages released to file system by last completed compaction
+     */
+    public synchronized long getLastReclaimedPages() {
+        return lastReclaimedPages;
+    }
+
+    /**
+     * Switch database into incremental auto_vacuum mode
+     *
+     * Mode of existing database is changed only by VACUUM, which cannot run
+     * inside transaction of onCreate or onUpgrade.
+     */
+    private void enableIncrementalVacuum() {
+        if (pragma("auto_vacuum") != AUTO_VACUUM_INCREMENTAL) {
+            Log.d(TAG, "Enabling incremental auto_vacuum");
+            db.execSQL("PRAGMA auto_vacuum = INCREMENTAL");
+            db.execSQL("VACUUM");
+        }
+    }
+
+    /**
+     * @return true if there are more pages to release
+     */
+    private boolean vacuumChunk() {
+        long freePages = pragma("freelist_count");
+        if (freePages == 0) {
+            return false;
+        }
+
+        if (pragma("auto_vacuum") == AUTO_VACUUM_INCREMENTAL) {
+            Log.d(TAG, "Incremental vacuum free pages: " + freePages);
+            db.execSQL("PRAGMA incremental_vacuum(" + PAGES_PER_CHUNK + ")");
+            return freePages > PAGES_PER_CHUNK;
+        }
+
+        if (freePages * FULL_VACUUM_FREE_PAGES_RATIO > pragma("page_count")) {
+            Log.d(TAG, "Full vacuum free pages: " + freePages);
+            db.execSQL("VACUUM");
+        }
+        return false;
+    }
+
+    private long purgeChunk() {
+        db.beginTransactionNonExclusive();
+        SQLiteStatement stmt = db.compileStatement(SQL_PURGE_CHUNK);
+        try {
+            long deleted = stmt.executeUpdateDelete();
+            db.setTransactionSuccessful();
+            return deleted;
+        } finally {
+            stmt.close();
+            db.endTransaction();
+        }
+    }
+
+    private void finish() {
+        long reclaimedPages = 0;
+        try {
+            if (db != null) {
+                reclaimedPages = Math.max(0, startPageCount - pragma("page_count"));
+            }
+        } catch (SQLException e) {
+            Log.e(TAG, "Compaction failed: " + e.getMessage());
+        }
+
+        synchronized (this) {
+            lastPurgedRows = purgedRows;
+            lastReclaimedPages = reclaimedPages;
+        }
+        running = false;
+        purging = false;
+        Log.i(TAG, "Compaction purged locations: " + purgedRows + " reclaimed pages: " + reclaimedPages);
+
+        if (intervalMillis > 0) {
+            handler.postDelayed(this, intervalMillis);
+        }
+    }
+
+    private long pragma(String name) {
+        return DatabaseUtils.longForQuery(db, "PRAGMA " + name, null);
+    }
+}
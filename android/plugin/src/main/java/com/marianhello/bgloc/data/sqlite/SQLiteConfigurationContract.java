@@ -33,5 +33,23 @@ public final class SQLiteConfigurationContract {
         public static final String COLUMN_NAME_SYNC_THRESHOLD = "sync_threshold";
         public static final String COLUMN_NAME_HEADERS = "http_headers";
         public static final String COLUMN_NAME_MAX_LOCATIONS = "max_locations";
+        public static final String COLUMN_NAME_LOCATION_STORE = "location_store";
+        public static final String COLUMN_NAME_VERSION = "version";
+        public static final String COLUMN_NAME_WRITE_BUFFER_SIZE = "write_buffer_size";
+        public static final String COLUMN_NAME_WRITE_BUFFER_MAX_AGE = "write_buffer_max_age";
+        public static final String COLUMN_NAME_CRASH_SAFE_WRITES = "crash_safe_writes";
+        public static final String COLUMN_NAME_HTTP_COMPRESSION = "http_compression";
+        public static final String COLUMN_NAME_BATCH_ENCODING = "batch_encoding";
+        public static final String COLUMN_NAME_HTTP_QUEUE_SIZE = "http_queue_size";
+        public static final String COLUMN_NAME_SYNC_MAX_DELAY = "sync_max_delay";
+        public static final String COLUMN_NAME_SYNC_UNMETERED_ONLY = "sync_unmetered_only";
+        public static final String COLUMN_NAME_SYNC_CHUNK_SIZE = "sync_chunk_size";
+        public static final String COLUMN_NAME_MAX_ACCURACY = "max_accuracy";
+        public static final String COLUMN_NAME_THROTTLE_INTERVAL = "throttle_interval";
+        public static final String COLUMN_NAME_PIPELINE = "pipeline";
+        public static final String COLUMN_NAME_KALMAN_PROCESS_NOISE = "kalman_process_noise";
+        public static final String COLUMN_NAME_SIMPLIFY_TOLERANCE = "simplify_tolerance";
+        public static final String COLUMN_NAME_FUSION_WINDOW = "fusion_window";
+        public static final String COLUMN_NAME_ADAPTIVE_SAMPLING = "adaptive_sampling";
     }
 }
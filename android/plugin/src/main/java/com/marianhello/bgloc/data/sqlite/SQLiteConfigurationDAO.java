@@ -3,12 +3,17 @@ package com.marianhello.bgloc.data.sqlite;
 import android.content.ContentValues;
 import android.content.Context;
 import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDoneException;
 import android.database.sqlite.SQLiteDatabase;
 import android.util.Log;
 
+import org.json.JSONArray;
 import org.json.JSONObject;
 import org.json.JSONException;
 
+import java.util.ArrayList;
+
 import com.marianhello.bgloc.Config;
 import com.marianhello.bgloc.data.ConfigurationDAO;
 import com.marianhello.bgloc.data.sqlite.SQLiteConfigurationContract.ConfigurationEntry;
@@ -53,7 +58,24 @@ public class SQLiteConfigurationDAO implements ConfigurationDAO {
       ConfigurationEntry.COLUMN_NAME_SYNC_URL,
       ConfigurationEntry.COLUMN_NAME_SYNC_THRESHOLD,
       ConfigurationEntry.COLUMN_NAME_HEADERS,
-      ConfigurationEntry.COLUMN_NAME_MAX_LOCATIONS
+      ConfigurationEntry.COLUMN_NAME_MAX_LOCATIONS,
+      ConfigurationEntry.COLUMN_NAME_LOCATION_STORE,
+      ConfigurationEntry.COLUMN_NAME_WRITE_BUFFER_SIZE,
+      ConfigurationEntry.COLUMN_NAME_WRITE_BUFFER_MAX_AGE,
+      ConfigurationEntry.COLUMN_NAME_CRASH_SAFE_WRITES,
+      ConfigurationEntry.COLUMN_NAME_HTTP_COMPRESSION,
+      ConfigurationEntry.COLUMN_NAME_BATCH_ENCODING,
+      ConfigurationEntry.COLUMN_NAME_HTTP_QUEUE_SIZE,
+      ConfigurationEntry.COLUMN_NAME_SYNC_MAX_DELAY,
+      ConfigurationEntry.COLUMN_NAME_SYNC_UNMETERED_ONLY,
+      ConfigurationEntry.COLUMN_NAME_SYNC_CHUNK_SIZE,
+      ConfigurationEntry.COLUMN_NAME_MAX_ACCURACY,
+      ConfigurationEntry.COLUMN_NAME_THROTTLE_INTERVAL,
+      ConfigurationEntry.COLUMN_NAME_PIPELINE,
+      ConfigurationEntry.COLUMN_NAME_KALMAN_PROCESS_NOISE,
+      ConfigurationEntry.COLUMN_NAME_SIMPLIFY_TOLERANCE,
+      ConfigurationEntry.COLUMN_NAME_FUSION_WINDOW,
+      ConfigurationEntry.COLUMN_NAME_ADAPTIVE_SAMPLING
     };
 
     String whereClause = null;
@@ -85,7 +107,16 @@ public class SQLiteConfigurationDAO implements ConfigurationDAO {
   }
 
   public boolean persistConfiguration(Config config) throws NullPointerException {
-    long rowId = db.replace(ConfigurationEntry.TABLE_NAME, ConfigurationEntry.COLUMN_NAME_NULLABLE, getContentValues(config));
+    ContentValues values = getContentValues(config);
+    long rowId;
+    db.beginTransaction();
+    try {
+      values.put(ConfigurationEntry.COLUMN_NAME_VERSION, getConfigurationVersion() + 1);
+      rowId = db.replace(ConfigurationEntry.TABLE_NAME, ConfigurationEntry.COLUMN_NAME_NULLABLE, values);
+      db.setTransactionSuccessful();
+    } finally {
+      db.endTransaction();
+    }
     Log.d(TAG, "Configuration persisted with rowId = " + rowId);
     if (rowId > -1) {
       return true;
@@ -94,6 +125,18 @@ public class SQLiteConfigurationDAO implements ConfigurationDAO {
     }
   }
 
+  /**
+   * Single column lookup by primary key, cheap enough to be called before every config use
+   */
+  public long getConfigurationVersion() {
+    try {
+      return DatabaseUtils.longForQuery(db, "SELECT " + ConfigurationEntry.COLUMN_NAME_VERSION +
+          " FROM " + ConfigurationEntry.TABLE_NAME + " WHERE " + ConfigurationEntry._ID + " = 1", null);
+    } catch (SQLiteDoneException e) {
+      return 0;
+    }
+  }
+
   private Config hydrate(Cursor c) throws JSONException {
     Config config = new Config();
     config.setStationaryRadius(c.getFloat(c.getColumnIndex(ConfigurationEntry.COLUMN_NAME_RADIUS)));
@@ -118,10 +161,74 @@ public class SQLiteConfigurationDAO implements ConfigurationDAO {
     config.setSyncThreshold(c.getInt(c.getColumnIndex(ConfigurationEntry.COLUMN_NAME_SYNC_THRESHOLD)));
     config.setHttpHeaders(new JSONObject(c.getString(c.getColumnIndex(ConfigurationEntry.COLUMN_NAME_HEADERS))));
     config.setMaxLocations(c.getInt(c.getColumnIndex(ConfigurationEntry.COLUMN_NAME_MAX_LOCATIONS)));
+    // columns added by upgrade are null until config is persisted again, keep defaults then
+    if (hasValue(c, ConfigurationEntry.COLUMN_NAME_LOCATION_STORE)) {
+      config.setLocationStore(c.getString(c.getColumnIndex(ConfigurationEntry.COLUMN_NAME_LOCATION_STORE)));
+    }
+    if (hasValue(c, ConfigurationEntry.COLUMN_NAME_WRITE_BUFFER_SIZE)) {
+      config.setWriteBufferSize(c.getInt(c.getColumnIndex(ConfigurationEntry.COLUMN_NAME_WRITE_BUFFER_SIZE)));
+    }
+    if (hasValue(c, ConfigurationEntry.COLUMN_NAME_WRITE_BUFFER_MAX_AGE)) {
+      config.setWriteBufferMaxAge(c.getInt(c.getColumnIndex(ConfigurationEntry.COLUMN_NAME_WRITE_BUFFER_MAX_AGE)));
+    }
+    if (hasValue(c, ConfigurationEntry.COLUMN_NAME_CRASH_SAFE_WRITES)) {
+      config.setCrashSafeWrites(c.getInt(c.getColumnIndex(ConfigurationEntry.COLUMN_NAME_CRASH_SAFE_WRITES)) == 1);
+    }
+    if (hasValue(c, ConfigurationEntry.COLUMN_NAME_HTTP_COMPRESSION)) {
+      config.setHttpCompression(c.getInt(c.getColumnIndex(ConfigurationEntry.COLUMN_NAME_HTTP_COMPRESSION)) == 1);
+    }
+    if (hasValue(c, ConfigurationEntry.COLUMN_NAME_BATCH_ENCODING)) {
+      config.setBatchEncoding(c.getString(c.getColumnIndex(ConfigurationEntry.COLUMN_NAME_BATCH_ENCODING)));
+    }
+    if (hasValue(c, ConfigurationEntry.COLUMN_NAME_HTTP_QUEUE_SIZE)) {
+      config.setHttpQueueSize(c.getInt(c.getColumnIndex(ConfigurationEntry.COLUMN_NAME_HTTP_QUEUE_SIZE)));
+    }
+    if (hasValue(c, ConfigurationEntry.COLUMN_NAME_SYNC_MAX_DELAY)) {
+      config.setSyncMaxDelay(c.getInt(c.getColumnIndex(ConfigurationEntry.COLUMN_NAME_SYNC_MAX_DELAY)));
+    }
+    if (hasValue(c, ConfigurationEntry.COLUMN_NAME_SYNC_UNMETERED_ONLY)) {
+      config.setSyncUnmeteredOnly(c.getInt(c.getColumnIndex(ConfigurationEntry.COLUMN_NAME_SYNC_UNMETERED_ONLY)) == 1);
+    }
+    if (hasValue(c, ConfigurationEntry.COLUMN_NAME_SYNC_CHUNK_SIZE)) {
+      config.setSyncChunkSize(c.getInt(c.getColumnIndex(ConfigurationEntry.COLUMN_NAME_SYNC_CHUNK_SIZE)));
+    }
+    if (hasValue(c, ConfigurationEntry.COLUMN_NAME_MAX_ACCURACY)) {
+      config.setMaxAccuracy(c.getInt(c.getColumnIndex(ConfigurationEntry.COLUMN_NAME_MAX_ACCURACY)));
+    }
+    if (hasValue(c, ConfigurationEntry.COLUMN_NAME_THROTTLE_INTERVAL)) {
+      config.setThrottleInterval(c.getInt(c.getColumnIndex(ConfigurationEntry.COLUMN_NAME_THROTTLE_INTERVAL)));
+    }
+    if (hasValue(c, ConfigurationEntry.COLUMN_NAME_PIPELINE)) {
+      config.setPipeline(toStringList(new JSONArray(c.getString(c.getColumnIndex(ConfigurationEntry.COLUMN_NAME_PIPELINE)))));
+    }
+    if (hasValue(c, ConfigurationEntry.COLUMN_NAME_KALMAN_PROCESS_NOISE)) {
+      config.setKalmanProcessNoise(c.getFloat(c.getColumnIndex(ConfigurationEntry.COLUMN_NAME_KALMAN_PROCESS_NOISE)));
+    }
+    if (hasValue(c, ConfigurationEntry.COLUMN_NAME_SIMPLIFY_TOLERANCE)) {
+      config.setSimplifyTolerance(c.getFloat(c.getColumnIndex(ConfigurationEntry.COLUMN_NAME_SIMPLIFY_TOLERANCE)));
+    }
+    if (hasValue(c, ConfigurationEntry.COLUMN_NAME_FUSION_WINDOW)) {
+      config.setFusionWindow(c.getInt(c.getColumnIndex(ConfigurationEntry.COLUMN_NAME_FUSION_WINDOW)));
+    }
+    if (hasValue(c, ConfigurationEntry.COLUMN_NAME_ADAPTIVE_SAMPLING)) {
+      config.setAdaptiveSampling(c.getInt(c.getColumnIndex(ConfigurationEntry.COLUMN_NAME_ADAPTIVE_SAMPLING)) == 1);
+    }
 
     return config;
   }
 
+  private static boolean hasValue(Cursor c, String column) {
+    return !c.isNull(c.getColumnIndex(column));
+  }
+
+  private static ArrayList<String> toStringList(JSONArray array) throws JSONException {
+    ArrayList<String> list = new ArrayList<String>(array.length());
+    for (int i = 0; i < array.length(); i++) {
+      list.add(array.getString(i));
+    }
+    return list;
+  }
+
   private ContentValues getContentValues(Config config) throws NullPointerException {
     ContentValues values = new ContentValues();
     values.put(ConfigurationEntry._ID, 1);
@@ -147,6 +254,23 @@ public class SQLiteConfigurationDAO implements ConfigurationDAO {
     values.put(ConfigurationEntry.COLUMN_NAME_SYNC_THRESHOLD, config.getSyncThreshold());
     values.put(ConfigurationEntry.COLUMN_NAME_HEADERS, new JSONObject(config.getHttpHeaders()).toString());
     values.put(ConfigurationEntry.COLUMN_NAME_MAX_LOCATIONS, config.getMaxLocations());
+    values.put(ConfigurationEntry.COLUMN_NAME_LOCATION_STORE, config.getLocationStore());
+    values.put(ConfigurationEntry.COLUMN_NAME_WRITE_BUFFER_SIZE, config.getWriteBufferSize());
+    values.put(ConfigurationEntry.COLUMN_NAME_WRITE_BUFFER_MAX_AGE, config.getWriteBufferMaxAge());
+    values.put(ConfigurationEntry.COLUMN_NAME_CRASH_SAFE_WRITES, config.getCrashSafeWrites() ? 1 : 0);
+    values.put(ConfigurationEntry.COLUMN_NAME_HTTP_COMPRESSION, config.getHttpCompression() ? 1 : 0);
+    values.put(ConfigurationEntry.COLUMN_NAME_BATCH_ENCODING, config.getBatchEncoding());
+    values.put(ConfigurationEntry.COLUMN_NAME_HTTP_QUEUE_SIZE, config.getHttpQueueSize());
+    values.put(ConfigurationEntry.COLUMN_NAME_SYNC_MAX_DELAY, config.getSyncMaxDelay());
+    values.put(ConfigurationEntry.COLUMN_NAME_SYNC_UNMETERED_ONLY, config.getSyncUnmeteredOnly() ? 1 : 0);
+    values.put(ConfigurationEntry.COLUMN_NAME_SYNC_CHUNK_SIZE, config.getSyncChunkSize());
+    values.put(ConfigurationEntry.COLUMN_NAME_MAX_ACCURACY, config.getMaxAccuracy());
+    values.put(ConfigurationEntry.COLUMN_NAME_THROTTLE_INTERVAL, config.getThrottleInterval());
+    values.put(ConfigurationEntry.COLUMN_NAME_PIPELINE, new JSONArray(config.getPipeline()).toString());
+    values.put(ConfigurationEntry.COLUMN_NAME_KALMAN_PROCESS_NOISE, config.getKalmanProcessNoise());
+    values.put(ConfigurationEntry.COLUMN_NAME_SIMPLIFY_TOLERANCE, config.getSimplifyTolerance());
+    values.put(ConfigurationEntry.COLUMN_NAME_FUSION_WINDOW, config.getFusionWindow());
+    values.put(ConfigurationEntry.COLUMN_NAME_ADAPTIVE_SAMPLING, config.getAdaptiveSampling() ? 1 : 0);
 
     return values;
   }
@@ -0,0 +1,103 @@
+package com.marianhello.bgloc.data.sqlite;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import com.marianhello.bgloc.data.Geofence;
+import com.marianhello.bgloc.data.GeofenceDAO;
+import com.marianhello.bgloc.data.sqlite.SQLiteLocationContract.GeofenceEntry;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Fences are written in single transaction, so bulk add of thousands of fences
+ * costs one commit. Fence with existing id is replaced.
+ */
+public class SQLiteGeofenceDAO implements GeofenceDAO {
+  private SQLiteDatabase db;
+
+  public SQLiteGeofenceDAO(Context context) {
+    SQLiteOpenHelper helper = SQLiteOpenHelper.getHelper(context);
+    this.db = helper.getWritableDatabase();
+  }
+
+  public SQLiteGeofenceDAO(SQLiteDatabase db) {
+    this.db = db;
+  }
+
+  public List<Geofence> getAllGeofences() {
+    List<Geofence> geofences = new ArrayList<Geofence>();
+    Cursor cursor = null;
+    try {
+      cursor = db.query(GeofenceEntry.TABLE_NAME, null, null, null, null, null, GeofenceEntry._ID);
+      while (cursor.moveToNext()) {
+        geofences.add(hydrate(cursor));
+      }
+    } finally {
+      if (cursor != null) {
+        cursor.close();
+      }
+    }
+    return geofences;
+  }
+
+  public void persistGeofences(Collection<Geofence> geofences) {
+    db.beginTransaction();
+    try {
+      for (Geofence geofence : geofences) {
+        db.replaceOrThrow(GeofenceEntry.TABLE_NAME, null, getContentValues(geofence));
+      }
+      db.setTransactionSuccessful();
+    } finally {
+      db.endTransaction();
+    }
+  }
+
+  /**
+   * @return number of deleted fences
+   */
+  public int deleteGeofences(Collection<String> ids) {
+    int deleted = 0;
+    db.beginTransaction();
+    try {
+      for (String id : ids) {
+        deleted += db.delete(GeofenceEntry.TABLE_NAME, GeofenceEntry.COLUMN_NAME_FENCE_ID + " = ?", new String[] { id });
+      }
+      db.setTransactionSuccessful();
+    } finally {
+      db.endTransaction();
+    }
+    return deleted;
+  }
+
+  /**
+   * @return number of deleted fences
+   */
+  public int deleteAllGeofences() {
+    return db.delete(GeofenceEntry.TABLE_NAME, "1", null);
+  }
+
+  private Geofence hydrate(Cursor c) {
+    Geofence geofence = new Geofence();
+    geofence.setId(c.getString(c.getColumnIndex(GeofenceEntry.COLUMN_NAME_FENCE_ID)));
+    geofence.setLatitude(c.getDouble(c.getColumnIndex(GeofenceEntry.COLUMN_NAME_LATITUDE)));
+    geofence.setLongitude(c.getDouble(c.getColumnIndex(GeofenceEntry.COLUMN_NAME_LONGITUDE)));
+    geofence.setRadius(c.getFloat(c.getColumnIndex(GeofenceEntry.COLUMN_NAME_RADIUS)));
+    geofence.setDwellTime(c.getLong(c.getColumnIndex(GeofenceEntry.COLUMN_NAME_DWELL_TIME)));
+    return geofence;
+  }
+
+  private ContentValues getContentValues(Geofence geofence) {
+    ContentValues values = new ContentValues();
+    values.put(GeofenceEntry.COLUMN_NAME_FENCE_ID, geofence.getId());
+    values.put(GeofenceEntry.COLUMN_NAME_LATITUDE, geofence.getLatitude());
+    values.put(GeofenceEntry.COLUMN_NAME_LONGITUDE, geofence.getLongitude());
+    values.put(GeofenceEntry.COLUMN_NAME_RADIUS, geofence.getRadius());
+    values.put(GeofenceEntry.COLUMN_NAME_DWELL_TIME, geofence.getDwellTime());
+    return values;
+  }
+}
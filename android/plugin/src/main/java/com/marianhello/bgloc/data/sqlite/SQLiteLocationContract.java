@@ -28,5 +28,76 @@ public final class SQLiteLocationContract {
         public static final String COLUMN_NAME_LOCATION_PROVIDER = "service_provider";
         public static final String COLUMN_NAME_VALID = "valid";
         public static final String COLUMN_NAME_BATCH_START_MILLIS = "batch_start";
+        public static final String COLUMN_NAME_BATCH_SEQ = "batch_seq";
+    }
+
+    /* R*Tree index of location table (latitude and longitude ranges), kept in sync by triggers */
+    public static abstract class LocationRTreeEntry implements BaseColumns {
+        public static final String TABLE_NAME = "location_rtree";
+        public static final String COLUMN_NAME_MIN_LATITUDE = "min_lat";
+        public static final String COLUMN_NAME_MAX_LATITUDE = "max_lat";
+        public static final String COLUMN_NAME_MIN_LONGITUDE = "min_lon";
+        public static final String COLUMN_NAME_MAX_LONGITUDE = "max_lon";
+    }
+
+    /* Chunks of batch being synced, chunk is removed when whole batch is acknowledged */
+    public static abstract class BatchChunkEntry implements BaseColumns {
+        public static final String TABLE_NAME = "batch_chunk";
+        public static final String COLUMN_NAME_BATCH_ID = "batch_id";
+        public static final String COLUMN_NAME_SEQ = "seq";
+        public static final String COLUMN_NAME_ROW_COUNT = "row_count";
+        public static final String COLUMN_NAME_ACKED_AT = "acked_at";
+    }
+
+    /* Last id assigned to location by ring buffer (single row) */
+    public static abstract class LocationMetaEntry implements BaseColumns {
+        public static final String TABLE_NAME = "location_meta";
+        public static final String COLUMN_NAME_HEAD = "head";
+    }
+
+    /* Sync scheduler state and statistics (single row) */
+    public static abstract class SyncStateEntry implements BaseColumns {
+        public static final String TABLE_NAME = "sync_state";
+        public static final String COLUMN_NAME_ATTEMPTS = "attempts";
+        public static final String COLUMN_NAME_SUCCESSES = "successes";
+        public static final String COLUMN_NAME_FAILURES = "failures";
+        public static final String COLUMN_NAME_CONSECUTIVE_FAILURES = "consecutive_failures";
+        public static final String COLUMN_NAME_LAST_ATTEMPT_AT = "last_attempt_at";
+        public static final String COLUMN_NAME_LAST_SUCCESS_AT = "last_success_at";
+        public static final String COLUMN_NAME_LAST_FAILURE_AT = "last_failure_at";
+        public static final String COLUMN_NAME_NEXT_ATTEMPT_AT = "next_attempt_at";
+        public static final String COLUMN_NAME_LAST_DECISION = "last_decision";
+        public static final String COLUMN_NAME_LAST_DECISION_AT = "last_decision_at";
+        public static final String COLUMN_NAME_PENDING_COUNT = "pending_count";
+        public static final String COLUMN_NAME_OLDEST_PENDING_TIME = "oldest_pending_time";
+    }
+
+    /* Incrementally maintained aggregates of tracking sessions */
+    public static abstract class TrackingSessionEntry implements BaseColumns {
+        public static final String TABLE_NAME = "tracking_session";
+        public static final String COLUMN_NAME_STARTED_AT = "started_at";
+        public static final String COLUMN_NAME_ENDED_AT = "ended_at";
+        public static final String COLUMN_NAME_POINT_COUNT = "point_count";
+        public static final String COLUMN_NAME_DISTANCE = "distance";
+        public static final String COLUMN_NAME_MOVING_TIME = "moving_time";
+        public static final String COLUMN_NAME_MAX_SPEED = "max_speed";
+        public static final String COLUMN_NAME_MIN_LATITUDE = "min_latitude";
+        public static final String COLUMN_NAME_MAX_LATITUDE = "max_latitude";
+        public static final String COLUMN_NAME_MIN_LONGITUDE = "min_longitude";
+        public static final String COLUMN_NAME_MAX_LONGITUDE = "max_longitude";
+        public static final String COLUMN_NAME_LAST_TIME = "last_time";
+        public static final String COLUMN_NAME_LAST_LATITUDE = "last_latitude";
+        public static final String COLUMN_NAME_LAST_LONGITUDE = "last_longitude";
+        public static final String COLUMN_NAME_LAST_LOCATION_TIME = "last_location_time";
+    }
+
+    /* Application defined geofences */
+    public static abstract class GeofenceEntry implements BaseColumns {
+        public static final String TABLE_NAME = "geofence";
+        public static final String COLUMN_NAME_FENCE_ID = "fence_id";
+        public static final String COLUMN_NAME_LATITUDE = "latitude";
+        public static final String COLUMN_NAME_LONGITUDE = "longitude";
+        public static final String COLUMN_NAME_RADIUS = "radius";
+        public static final String COLUMN_NAME_DWELL_TIME = "dwell_time";
     }
 }
@@ -5,25 +5,124 @@ import android.content.Context;
 import android.database.Cursor;
 import android.database.DatabaseUtils;
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteQueryBuilder;
+import android.database.sqlite.SQLiteStatement;
 import android.text.TextUtils;
 
 import com.marianhello.bgloc.data.BackgroundLocation;
+import com.marianhello.bgloc.data.BoundingBox;
 import com.marianhello.bgloc.data.LocationDAO;
+import com.marianhello.bgloc.data.LocationQuery;
 import com.marianhello.bgloc.data.sqlite.SQLiteLocationContract.LocationEntry;
+import com.marianhello.bgloc.data.sqlite.SQLiteLocationContract.LocationMetaEntry;
+import com.marianhello.bgloc.data.sqlite.SQLiteLocationContract.LocationRTreeEntry;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
 
 public class SQLiteLocationDAO implements LocationDAO {
+  private static final String SQL_INSERT_LOCATION = new StringBuilder("INSERT INTO ")
+          .append(LocationEntry.TABLE_NAME).append(" (")
+          .append(LocationEntry._ID).append(",")
+          .append(LocationEntry.COLUMN_NAME_PROVIDER).append(",")
+          .append(LocationEntry.COLUMN_NAME_TIME).append(",")
+          .append(LocationEntry.COLUMN_NAME_ACCURACY).append(",")
+          .append(LocationEntry.COLUMN_NAME_SPEED).append(",")
+          .append(LocationEntry.COLUMN_NAME_BEARING).append(",")
+          .append(LocationEntry.COLUMN_NAME_ALTITUDE).append(",")
+          .append(LocationEntry.COLUMN_NAME_RADIUS).append(",")
+          .append(LocationEntry.COLUMN_NAME_LATITUDE).append(",")
+          .append(LocationEntry.COLUMN_NAME_LONGITUDE).append(",")
+          .append(LocationEntry.COLUMN_NAME_HAS_ACCURACY).append(",")
+          .append(LocationEntry.COLUMN_NAME_HAS_SPEED).append(",")
+          .append(LocationEntry.COLUMN_NAME_HAS_BEARING).append(",")
+          .append(LocationEntry.COLUMN_NAME_HAS_ALTITUDE).append(",")
+          .append(LocationEntry.COLUMN_NAME_HAS_RADIUS).append(",")
+          .append(LocationEntry.COLUMN_NAME_LOCATION_PROVIDER).append(",")
+          .append(LocationEntry.COLUMN_NAME_BATCH_START_MILLIS).append(",")
+          .append(LocationEntry.COLUMN_NAME_VALID)
+          .append(") VALUES (?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?)")
+          .toString();
+
+  private static final String[] LOCATION_COLUMNS = {
+    LocationEntry._ID,
+    LocationEntry.COLUMN_NAME_PROVIDER,
+    LocationEntry.COLUMN_NAME_TIME,
+    LocationEntry.COLUMN_NAME_ACCURACY,
+    LocationEntry.COLUMN_NAME_SPEED,
+    LocationEntry.COLUMN_NAME_BEARING,
+    LocationEntry.COLUMN_NAME_ALTITUDE,
+    LocationEntry.COLUMN_NAME_RADIUS,
+    LocationEntry.COLUMN_NAME_LATITUDE,
+    LocationEntry.COLUMN_NAME_LONGITUDE,
+    LocationEntry.COLUMN_NAME_HAS_ACCURACY,
+    LocationEntry.COLUMN_NAME_HAS_SPEED,
+    LocationEntry.COLUMN_NAME_HAS_BEARING,
+    LocationEntry.COLUMN_NAME_HAS_ALTITUDE,
+    LocationEntry.COLUMN_NAME_HAS_RADIUS,
+    LocationEntry.COLUMN_NAME_LOCATION_PROVIDER,
+    LocationEntry.COLUMN_NAME_VALID,
+    LocationEntry.COLUMN_NAME_BATCH_START_MILLIS
+  };
+
+  private static final String LOCATIONS_ORDER_BY =
+          LocationEntry.COLUMN_NAME_TIME + " ASC," + LocationEntry._ID + " ASC";
+
+  /**
+   * Locations waiting for sync: valid and not assigned to batch being synced
+   * (args: valid, batchStartMillis). Covered by sync_queue_idx.
+   */
+  public static final String SYNC_QUEUE_WHERE_CLAUSE = TextUtils.join("", new String[]{
+          LocationEntry.COLUMN_NAME_VALID, " = ? AND ( ",
+          LocationEntry.COLUMN_NAME_BATCH_START_MILLIS, " IS NULL OR ",
+          LocationEntry.COLUMN_NAME_BATCH_START_MILLIS, " < ? )"
+  });
+
+  public static final String SQL_SYNC_QUEUE_COUNT = TextUtils.join("", new String[]{
+          "SELECT COUNT(*) FROM ", LocationEntry.TABLE_NAME, " WHERE ", SYNC_QUEUE_WHERE_CLAUSE
+  });
+
+  public static final String SQL_SYNC_QUEUE_OLDEST_TIME = TextUtils.join("", new String[]{
+          "SELECT MIN(", LocationEntry.COLUMN_NAME_TIME, ") FROM ", LocationEntry.TABLE_NAME,
+          " WHERE ", SYNC_QUEUE_WHERE_CLAUSE
+  });
+
+  /**
+   * Ids of locations whose R*Tree box intersects query box (args: minLat, maxLat, minLon, maxLon).
+   * Boxes are stored as 32 bit floats rounded outwards, so exact bounds must be checked on location table too.
+   * Time range is not part of R*Tree (float can't hold epoch millis), it's matched on location table.
+   */
+  private static final String SPATIAL_INDEX_WHERE_CLAUSE = TextUtils.join("", new String[]{
+          LocationEntry._ID, " IN (SELECT ", LocationRTreeEntry._ID, " FROM ", LocationRTreeEntry.TABLE_NAME,
+          " WHERE ", LocationRTreeEntry.COLUMN_NAME_MAX_LATITUDE, " >= ? AND ",
+          LocationRTreeEntry.COLUMN_NAME_MIN_LATITUDE, " <= ? AND ",
+          LocationRTreeEntry.COLUMN_NAME_MAX_LONGITUDE, " >= ? AND ",
+          LocationRTreeEntry.COLUMN_NAME_MIN_LONGITUDE, " <= ?)"
+  });
+
   private SQLiteDatabase db;
+  private SQLiteDatabase readerDb;
+  private Boolean spatialIndex;
 
   public SQLiteLocationDAO(Context context) {
     SQLiteOpenHelper helper = SQLiteOpenHelper.getHelper(context);
     this.db = helper.getWritableDatabase();
+    this.readerDb = helper.getReaderDatabase();
   }
 
   public SQLiteLocationDAO(SQLiteDatabase db) {
+    this(db, db);
+  }
+
+  /**
+   * @param db writable database
+   * @param readerDb database used by queries (can be read only connection in WAL mode)
+   */
+  public SQLiteLocationDAO(SQLiteDatabase db, SQLiteDatabase readerDb) {
     this.db = db;
+    this.readerDb = readerDb;
   }
 
   public long getLastInsertRowId(SQLiteDatabase db) {
@@ -39,47 +138,15 @@ public class SQLiteLocationDAO implements LocationDAO {
    *
    * @param whereClause
    * @param whereArgs
+   * @param limit max number of locations or null
    * @return collection of locations
      */
-  private Collection<BackgroundLocation> getLocations(String whereClause, String[] whereArgs) {
+  private Collection<BackgroundLocation> getLocations(String whereClause, String[] whereArgs, String limit) {
     Collection<BackgroundLocation> locations = new ArrayList<BackgroundLocation>();
-
-    String[] columns = {
-      LocationEntry._ID,
-      LocationEntry.COLUMN_NAME_PROVIDER,
-      LocationEntry.COLUMN_NAME_TIME,
-      LocationEntry.COLUMN_NAME_ACCURACY,
-      LocationEntry.COLUMN_NAME_SPEED,
-      LocationEntry.COLUMN_NAME_BEARING,
-      LocationEntry.COLUMN_NAME_ALTITUDE,
-      LocationEntry.COLUMN_NAME_RADIUS,
-      LocationEntry.COLUMN_NAME_LATITUDE,
-      LocationEntry.COLUMN_NAME_LONGITUDE,
-      LocationEntry.COLUMN_NAME_HAS_ACCURACY,
-      LocationEntry.COLUMN_NAME_HAS_SPEED,
-      LocationEntry.COLUMN_NAME_HAS_BEARING,
-      LocationEntry.COLUMN_NAME_HAS_ALTITUDE,
-      LocationEntry.COLUMN_NAME_HAS_RADIUS,
-      LocationEntry.COLUMN_NAME_LOCATION_PROVIDER,
-      LocationEntry.COLUMN_NAME_VALID,
-      LocationEntry.COLUMN_NAME_BATCH_START_MILLIS
-    };
-
-    String groupBy = null;
-    String having = null;
-    String orderBy = LocationEntry.COLUMN_NAME_TIME + " ASC";
     Cursor cursor = null;
 
     try {
-      cursor = db.query(
-          LocationEntry.TABLE_NAME,  // The table to query
-          columns,                   // The columns to return
-          whereClause,               // The columns for the WHERE clause
-          whereArgs,                 // The values for the WHERE clause
-          groupBy,                   // don't group the rows
-          having,                    // don't filter by row groups
-          orderBy                    // The sort order
-      );
+      cursor = readerDb.rawQuery(buildLocationsQuery(whereClause, limit), whereArgs);
       while (cursor.moveToNext()) {
         locations.add(hydrate(cursor));
       }
@@ -91,26 +158,156 @@ public class SQLiteLocationDAO implements LocationDAO {
 
     return locations;
   }
+
+  /**
+   * Build query of locations matching whereClause ordered by time and id
+   *
+   * @param whereClause or null for all locations
+   * @param limit max number of locations or null
+   * @return sql
+   */
+  public static String buildLocationsQuery(String whereClause, String limit) {
+    return SQLiteQueryBuilder.buildQueryString(false, LocationEntry.TABLE_NAME, LOCATION_COLUMNS,
+            whereClause, null, null, LOCATIONS_ORDER_BY, limit);
+  }
+
   public Collection<BackgroundLocation> getAllLocations() {
-    return getLocations(null, null);
+    return getLocations(null, null, null);
   }
 
   public Collection<BackgroundLocation> getValidLocations() {
     String whereClause = LocationEntry.COLUMN_NAME_VALID + " = ?";
     String[] whereArgs = { "1" };
 
-    return getLocations(whereClause, whereArgs);
+    return getLocations(whereClause, whereArgs, null);
+  }
+
+  /**
+   * Get single page of locations matching query
+   *
+   * Locations are ordered by time and id, so cursor of last returned location
+   * can be used to query next page (keyset pagination).
+   *
+   * @param query
+   * @return collection of at most query.limit locations
+   */
+  public Collection<BackgroundLocation> getLocations(LocationQuery query) {
+    ArrayList<String> whereArgs = new ArrayList<String>();
+    String whereClause = buildWhereClause(query, whereArgs, hasSpatialIndex());
+    return getLocations(whereClause, whereArgs.toArray(new String[whereArgs.size()]), String.valueOf(query.getLimit()));
+  }
+
+  /**
+   * Get locations inside bounding box recorded between fromTime and toTime
+   *
+   * Bounding box is looked up in R*Tree index, so cost depends on number of matching locations
+   * rather than on number of stored locations. Without R*Tree support time index is used.
+   *
+   * @param bbox bounding box or null
+   * @param fromTime millis since epoch or null
+   * @param toTime millis since epoch or null
+   * @param limit max number of locations
+   * @return locations ordered by time and id
+   */
+  public Collection<BackgroundLocation> queryLocations(BoundingBox bbox, Long fromTime, Long toTime, int limit) {
+    return getLocations(new LocationQuery(bbox, fromTime, toTime, limit));
+  }
+
+  private boolean hasSpatialIndex() {
+    if (spatialIndex == null) {
+      spatialIndex = SQLiteOpenHelper.hasLocationRTree(readerDb);
+    }
+    return spatialIndex;
+  }
+
+  /**
+   * Build where clause of locations matching query without use of R*Tree index
+   *
+   * @see #buildWhereClause(LocationQuery, List, boolean)
+   */
+  public static String buildWhereClause(LocationQuery query, List<String> whereArgs) {
+    return buildWhereClause(query, whereArgs, false);
+  }
+
+  /**
+   * Build where clause of locations matching query
+   *
+   * @param query
+   * @param whereArgs list arguments of where clause are added to
+   * @param spatialIndex lookup bounding box of query in R*Tree index
+   * @return where clause or null when query matches all locations
+   */
+  public static String buildWhereClause(LocationQuery query, List<String> whereArgs, boolean spatialIndex) {
+    ArrayList<String> where = new ArrayList<String>();
+    BoundingBox bbox = query.getBoundingBox();
+
+    if (query.getValidOnly()) {
+      where.add(LocationEntry.COLUMN_NAME_VALID + " = ?");
+      whereArgs.add("1");
+    }
+    if (query.getFromTime() != null) {
+      where.add(LocationEntry.COLUMN_NAME_TIME + " >= ?");
+      whereArgs.add(String.valueOf(query.getFromTime()));
+    }
+    if (query.getToTime() != null) {
+      where.add(LocationEntry.COLUMN_NAME_TIME + " <= ?");
+      whereArgs.add(String.valueOf(query.getToTime()));
+    }
+    if (query.hasCursor()) {
+      where.add(TextUtils.join("", new String[]{
+              "(", LocationEntry.COLUMN_NAME_TIME, " > ? OR (",
+              LocationEntry.COLUMN_NAME_TIME, " = ? AND ", LocationEntry._ID, " > ?))"
+      }));
+      whereArgs.add(String.valueOf(query.getAfterTime()));
+      whereArgs.add(String.valueOf(query.getAfterTime()));
+      whereArgs.add(String.valueOf(query.getAfterId()));
+    }
+    if (bbox != null) {
+      where.add(LocationEntry.COLUMN_NAME_LATITUDE + " BETWEEN ? AND ?");
+      whereArgs.add(String.valueOf(bbox.getMinLatitude()));
+      whereArgs.add(String.valueOf(bbox.getMaxLatitude()));
+      where.add(LocationEntry.COLUMN_NAME_LONGITUDE + " BETWEEN ? AND ?");
+      whereArgs.add(String.valueOf(bbox.getMinLongitude()));
+      whereArgs.add(String.valueOf(bbox.getMaxLongitude()));
+      if (spatialIndex) {
+        where.add(SPATIAL_INDEX_WHERE_CLAUSE);
+        whereArgs.add(String.valueOf(bbox.getMinLatitude()));
+        whereArgs.add(String.valueOf(bbox.getMaxLatitude()));
+        whereArgs.add(String.valueOf(bbox.getMinLongitude()));
+        whereArgs.add(String.valueOf(bbox.getMaxLongitude()));
+      }
+    }
+
+    return where.isEmpty() ? null : TextUtils.join(" AND ", where);
   }
 
   public Long locationsForSyncCount(Long millisSinceLastBatch) {
-    String whereClause = TextUtils.join("", new String[]{
-            SQLiteLocationContract.LocationEntry.COLUMN_NAME_VALID + " = ? AND ( ",
-            SQLiteLocationContract.LocationEntry.COLUMN_NAME_BATCH_START_MILLIS + " IS NULL OR ",
-            SQLiteLocationContract.LocationEntry.COLUMN_NAME_BATCH_START_MILLIS + " < ? )",
-    });
     String[] whereArgs = { "1", String.valueOf(millisSinceLastBatch) };
 
-    return DatabaseUtils.queryNumEntries(db, LocationEntry.TABLE_NAME, whereClause, whereArgs);
+    return DatabaseUtils.longForQuery(readerDb, SQL_SYNC_QUEUE_COUNT, whereArgs);
+  }
+
+  /**
+   * Time of oldest location waiting for sync
+   *
+   * @param millisSinceLastBatch
+   * @return time or null when there is no location to sync
+   */
+  public Long oldestLocationForSyncTime(Long millisSinceLastBatch) {
+    String[] whereArgs = { "1", String.valueOf(millisSinceLastBatch) };
+
+    Cursor cursor = null;
+    try {
+      cursor = readerDb.rawQuery(SQL_SYNC_QUEUE_OLDEST_TIME, whereArgs);
+      if (cursor.moveToFirst() && !cursor.isNull(0)) {
+        return cursor.getLong(0);
+      }
+      return null;
+    } finally {
+      if (cursor != null) {
+        cursor.close();
+      }
+    }
   }
 
   /**
@@ -130,98 +327,79 @@ public class SQLiteLocationDAO implements LocationDAO {
    * Persist location into database with maximum row limit
    *
    * Method will ensure that there will be no more records than maxRows.
-   * Instead old records will be replaced with newer ones.
-   * If maxRows will change in time, method will delete excess records and vacuum table.
+   * Location table is used as ring buffer of ids (head - maxRows, head], where location
+   * gets next id and locations with ids at or below head - maxRows are deleted (primary key
+   * range delete). Cost of insert is independent of maxRows.
+   * Ids are never reused, so stale id (eg. of location posted before it was evicted)
+   * never refers to newer location.
    *
    * @param location
    * @param maxRows
-   * @return rowId or -1 when error occured
+   * @return rowId
    */
   public Long persistLocationWithLimit(BackgroundLocation location, Integer maxRows) {
-    Long rowId = null;
-    String sql = null;
-    Boolean shouldVacuum = false;
-
-    long rowCount = DatabaseUtils.queryNumEntries(db, LocationEntry.TABLE_NAME);
-
-    if (rowCount < maxRows) {
-      ContentValues values = getContentValues(location);
-      rowId = db.insertOrThrow(LocationEntry.TABLE_NAME, LocationEntry.COLUMN_NAME_NULLABLE, values);
+    persistLocations(Collections.singletonList(location), maxRows);
+    return location.getLocationId();
+  }
 
-      return rowId;
+  /**
+   * Persist multiple locations in single transaction with maximum row limit
+   *
+   * All locations are inserted into ring buffer with one precompiled statement.
+   * Method will mutate locations by setting their locationId.
+   *
+   * @see #persistLocationWithLimit(BackgroundLocation, Integer)
+   * @param locations
+   * @param maxRows
+   */
+  public void persistLocations(Collection<BackgroundLocation> locations, Integer maxRows) {
+    if (locations.isEmpty()) {
+      return;
     }
 
+    long capacity = Math.max(1, maxRows);
+
     db.beginTransactionNonExclusive();
+    SQLiteStatement stmt = db.compileStatement(SQL_INSERT_LOCATION);
+    try {
+      // head is kept in meta table, so ids of purged newest locations are not reused,
+      // max id covers locations inserted without limit and those of database upgraded to ring buffer
+      long head = Math.max(getHead(), DatabaseUtils.longForQuery(db,
+              "SELECT IFNULL(MAX(" + LocationEntry._ID + "), 0) FROM " + LocationEntry.TABLE_NAME, null));
+      for (BackgroundLocation location : locations) {
+        head++;
+        bindLocation(stmt, head, location);
+        stmt.executeInsert();
+        location.setLocationId(head);
+      }
 
-    if (rowCount > maxRows) {
-      sql = new StringBuilder("DELETE FROM ")
-              .append(LocationEntry.TABLE_NAME)
-              .append(" WHERE ").append(LocationEntry._ID)
-              .append(" IN (SELECT ").append(LocationEntry._ID)
-              .append(" FROM ").append(LocationEntry.TABLE_NAME)
-              .append(" ORDER BY ").append(LocationEntry.COLUMN_NAME_TIME)
-              .append(" LIMIT ?)")
-              .toString();
-      db.execSQL(sql, new Object[] {(rowCount - maxRows)});
-      shouldVacuum = true;
-    }
+      db.delete(LocationEntry.TABLE_NAME, LocationEntry._ID + " <= ?", new String[] { String.valueOf(head - capacity) });
 
-    sql = new StringBuilder("UPDATE ")
-            .append(LocationEntry.TABLE_NAME).append(" SET ")
-            .append(LocationEntry.COLUMN_NAME_PROVIDER).append("= ?,")
-            .append(LocationEntry.COLUMN_NAME_TIME).append("= ?,")
-            .append(LocationEntry.COLUMN_NAME_ACCURACY).append("= ?,")
-            .append(LocationEntry.COLUMN_NAME_SPEED).append("= ?,")
-            .append(LocationEntry.COLUMN_NAME_BEARING).append("= ?,")
-            .append(LocationEntry.COLUMN_NAME_ALTITUDE).append("= ?,")
-            .append(LocationEntry.COLUMN_NAME_RADIUS).append("= ?,")
-            .append(LocationEntry.COLUMN_NAME_LATITUDE).append("= ?,")
-            .append(LocationEntry.COLUMN_NAME_LONGITUDE).append("= ?,")
-            .append(LocationEntry.COLUMN_NAME_HAS_ACCURACY).append("= ?,")
-            .append(LocationEntry.COLUMN_NAME_HAS_SPEED).append("= ?,")
-            .append(LocationEntry.COLUMN_NAME_HAS_BEARING).append("= ?,")
-            .append(LocationEntry.COLUMN_NAME_HAS_ALTITUDE).append("= ?,")
-            .append(LocationEntry.COLUMN_NAME_HAS_RADIUS).append("= ?,")
-            .append(LocationEntry.COLUMN_NAME_LOCATION_PROVIDER).append("= ?,")
-            .append(LocationEntry.COLUMN_NAME_BATCH_START_MILLIS).append("= ?,")
-            .append(LocationEntry.COLUMN_NAME_VALID).append("= ?")
-            .append(" WHERE ").append(LocationEntry.COLUMN_NAME_TIME)
-            .append("= (SELECT min(").append(LocationEntry.COLUMN_NAME_TIME).append(") FROM ")
-            .append(LocationEntry.TABLE_NAME).append(")")
-            .toString();
-    db.execSQL(sql, new Object[] {
-            location.getProvider(),
-            location.getTime(),
-            location.getAccuracy(),
-            location.getSpeed(),
-            location.getBearing(),
-            location.getAltitude(),
-            location.getRadius(),
-            location.getLatitude(),
-            location.getLongitude(),
-            location.hasAccuracy() ? 1 : 0,
-            location.hasSpeed() ? 1 : 0,
-            location.hasBearing() ? 1 : 0,
-            location.hasAltitude() ? 1 : 0,
-            location.hasRadius() ? 1 : 0,
-            location.getLocationProvider(),
-            location.getBatchStartMillis(),
-            location.isValid() ? 1 : 0
-    });
-
-    rowId = getLastInsertRowId(db);
-    db.setTransactionSuccessful();
-    db.endTransaction();
-
-    if (shouldVacuum) { db.execSQL("VACUUM"); }
+      ContentValues values = new ContentValues();
+      values.put(LocationMetaEntry._ID, 1);
+      values.put(LocationMetaEntry.COLUMN_NAME_HEAD, head);
+      db.replace(LocationMetaEntry.TABLE_NAME, null, values);
 
-    return rowId;
+      db.setTransactionSuccessful();
+    } finally {
+      stmt.close();
+      db.endTransaction();
+    }
+  }
+
+  /**
+   * @return last id assigned by ring buffer or 0 if there is none
+   */
+  private long getHead() {
+    return DatabaseUtils.longForQuery(db,
+            "SELECT IFNULL(MAX(" + LocationMetaEntry.COLUMN_NAME_HEAD + "), 0) FROM " + LocationMetaEntry.TABLE_NAME, null);
   }
 
   /**
    * Delete location by given locationId
    *
-   * Note: location is not actually deleted only flagged as non valid
+   * Note: location is not actually deleted only flagged as non valid,
+   * it's physically deleted later by CompactionTask
    * @param locationId
    */
   public void deleteLocation(Long locationId) {
@@ -274,6 +452,34 @@ public class SQLiteLocationDAO implements LocationDAO {
     return l;
   }
 
+  private void bindLocation(SQLiteStatement stmt, long rowId, BackgroundLocation l) {
+    stmt.clearBindings();
+    stmt.bindLong(1, rowId);
+    if (l.getProvider() != null) {
+      stmt.bindString(2, l.getProvider());
+    }
+    stmt.bindLong(3, l.getTime());
+    stmt.bindDouble(4, l.getAccuracy());
+    stmt.bindDouble(5, l.getSpeed());
+    stmt.bindDouble(6, l.getBearing());
+    stmt.bindDouble(7, l.getAltitude());
+    stmt.bindDouble(8, l.getRadius());
+    stmt.bindDouble(9, l.getLatitude());
+    stmt.bindDouble(10, l.getLongitude());
+    stmt.bindLong(11, l.hasAccuracy() ? 1 : 0);
+    stmt.bindLong(12, l.hasSpeed() ? 1 : 0);
+    stmt.bindLong(13, l.hasBearing() ? 1 : 0);
+    stmt.bindLong(14, l.hasAltitude() ? 1 : 0);
+    stmt.bindLong(15, l.hasRadius() ? 1 : 0);
+    if (l.getLocationProvider() != null) {
+      stmt.bindLong(16, l.getLocationProvider());
+    }
+    if (l.getBatchStartMillis() != null) {
+      stmt.bindLong(17, l.getBatchStartMillis());
+    }
+    stmt.bindLong(18, l.isValid() ? 1 : 0);
+  }
+
   private ContentValues getContentValues(BackgroundLocation l) {
     ContentValues values = new ContentValues();
     values.put(LocationEntry.COLUMN_NAME_PROVIDER, l.getProvider());
@@ -2,19 +2,31 @@ package com.marianhello.bgloc.data.sqlite;
 
 
 import android.content.Context;
+import android.database.DatabaseUtils;
 import android.database.SQLException;
 import android.database.sqlite.SQLiteDatabase;
+import android.os.Build;
 import android.util.Log;
 
+import com.marianhello.bgloc.data.sqlite.SQLiteLocationContract.BatchChunkEntry;
+import com.marianhello.bgloc.data.sqlite.SQLiteLocationContract.GeofenceEntry;
 import com.marianhello.bgloc.data.sqlite.SQLiteLocationContract.LocationEntry;
+import com.marianhello.bgloc.data.sqlite.SQLiteLocationContract.LocationMetaEntry;
+import com.marianhello.bgloc.data.sqlite.SQLiteLocationContract.LocationRTreeEntry;
+import com.marianhello.bgloc.data.sqlite.SQLiteLocationContract.SyncStateEntry;
+import com.marianhello.bgloc.data.sqlite.SQLiteLocationContract.TrackingSessionEntry;
 import com.marianhello.bgloc.data.sqlite.SQLiteConfigurationContract.ConfigurationEntry;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 
 public class SQLiteOpenHelper extends android.database.sqlite.SQLiteOpenHelper {
     private static final String TAG = SQLiteOpenHelper.class.getName();
     public static final String SQLITE_DATABASE_NAME = "cordova_bg_geolocation.db";
-    public static final int DATABASE_VERSION = 12;
+    public static final int DATABASE_VERSION = 26;
+    public static final String JOURNAL_MODE_RESOURCE = "db_journal_mode";
+    public static final String JOURNAL_MODE_WAL = "wal";
+    public static final String JOURNAL_MODE_DEFAULT = "default";
 
     private static final String TEXT_TYPE = " TEXT";
     private static final String INTEGER_TYPE = " INTEGER";
@@ -40,7 +52,8 @@ public class SQLiteOpenHelper extends android.database.sqlite.SQLiteOpenHelper {
         LocationEntry.COLUMN_NAME_PROVIDER + TEXT_TYPE + COMMA_SEP +
         LocationEntry.COLUMN_NAME_LOCATION_PROVIDER + INTEGER_TYPE + COMMA_SEP +
         LocationEntry.COLUMN_NAME_VALID + INTEGER_TYPE + COMMA_SEP +
-        LocationEntry.COLUMN_NAME_BATCH_START_MILLIS + INTEGER_TYPE +
+        LocationEntry.COLUMN_NAME_BATCH_START_MILLIS + INTEGER_TYPE + COMMA_SEP +
+        LocationEntry.COLUMN_NAME_BATCH_SEQ + INTEGER_TYPE +
         " )";
 
     private static final String SQL_CREATE_CONFIG_TABLE =
@@ -70,20 +83,207 @@ public class SQLiteOpenHelper extends android.database.sqlite.SQLiteOpenHelper {
         ConfigurationEntry.COLUMN_NAME_MAX_LOCATIONS + INTEGER_TYPE +
         " )";
 
+    private static final String SQL_ALTER_CONFIG_TABLE_ADD_LOCATION_STORE =
+        "ALTER TABLE " + ConfigurationEntry.TABLE_NAME +
+        " ADD COLUMN " + ConfigurationEntry.COLUMN_NAME_LOCATION_STORE + TEXT_TYPE;
+
+    // not part of SQL_CREATE_CONFIG_TABLE as that one is also used by upgrade from version 10
+    private static final String SQL_ALTER_CONFIG_TABLE_ADD_VERSION =
+        "ALTER TABLE " + ConfigurationEntry.TABLE_NAME +
+        " ADD COLUMN " + ConfigurationEntry.COLUMN_NAME_VERSION + INTEGER_TYPE + " DEFAULT 0";
+
+    // config written by older version keeps these null
+    private static final String[] SQL_ALTER_CONFIG_TABLE_ADD_OPTIONS = {
+        "ALTER TABLE " + ConfigurationEntry.TABLE_NAME + " ADD COLUMN " + ConfigurationEntry.COLUMN_NAME_WRITE_BUFFER_SIZE + INTEGER_TYPE,
+        "ALTER TABLE " + ConfigurationEntry.TABLE_NAME + " ADD COLUMN " + ConfigurationEntry.COLUMN_NAME_WRITE_BUFFER_MAX_AGE + INTEGER_TYPE,
+        "ALTER TABLE " + ConfigurationEntry.TABLE_NAME + " ADD COLUMN " + ConfigurationEntry.COLUMN_NAME_CRASH_SAFE_WRITES + INTEGER_TYPE,
+        "ALTER TABLE " + ConfigurationEntry.TABLE_NAME + " ADD COLUMN " + ConfigurationEntry.COLUMN_NAME_HTTP_COMPRESSION + INTEGER_TYPE,
+        "ALTER TABLE " + ConfigurationEntry.TABLE_NAME + " ADD COLUMN " + ConfigurationEntry.COLUMN_NAME_BATCH_ENCODING + TEXT_TYPE,
+        "ALTER TABLE " + ConfigurationEntry.TABLE_NAME + " ADD COLUMN " + ConfigurationEntry.COLUMN_NAME_HTTP_QUEUE_SIZE + INTEGER_TYPE,
+        "ALTER TABLE " + ConfigurationEntry.TABLE_NAME + " ADD COLUMN " + ConfigurationEntry.COLUMN_NAME_SYNC_MAX_DELAY + INTEGER_TYPE,
+        "ALTER TABLE " + ConfigurationEntry.TABLE_NAME + " ADD COLUMN " + ConfigurationEntry.COLUMN_NAME_SYNC_UNMETERED_ONLY + INTEGER_TYPE,
+        "ALTER TABLE " + ConfigurationEntry.TABLE_NAME + " ADD COLUMN " + ConfigurationEntry.COLUMN_NAME_SYNC_CHUNK_SIZE + INTEGER_TYPE
+    };
+
+    private static final String[] SQL_ALTER_CONFIG_TABLE_ADD_PIPELINE_OPTIONS = {
+        "ALTER TABLE " + ConfigurationEntry.TABLE_NAME + " ADD COLUMN " + ConfigurationEntry.COLUMN_NAME_MAX_ACCURACY + INTEGER_TYPE,
+        "ALTER TABLE " + ConfigurationEntry.TABLE_NAME + " ADD COLUMN " + ConfigurationEntry.COLUMN_NAME_THROTTLE_INTERVAL + INTEGER_TYPE,
+        "ALTER TABLE " + ConfigurationEntry.TABLE_NAME + " ADD COLUMN " + ConfigurationEntry.COLUMN_NAME_PIPELINE + TEXT_TYPE
+    };
+
+    private static final String SQL_ALTER_CONFIG_TABLE_ADD_KALMAN_PROCESS_NOISE =
+        "ALTER TABLE " + ConfigurationEntry.TABLE_NAME +
+        " ADD COLUMN " + ConfigurationEntry.COLUMN_NAME_KALMAN_PROCESS_NOISE + REAL_TYPE;
+
+    private static final String SQL_ALTER_CONFIG_TABLE_ADD_SIMPLIFY_TOLERANCE =
+        "ALTER TABLE " + ConfigurationEntry.TABLE_NAME +
+        " ADD COLUMN " + ConfigurationEntry.COLUMN_NAME_SIMPLIFY_TOLERANCE + REAL_TYPE;
+
+    private static final String SQL_ALTER_CONFIG_TABLE_ADD_FUSION_WINDOW =
+        "ALTER TABLE " + ConfigurationEntry.TABLE_NAME +
+        " ADD COLUMN " + ConfigurationEntry.COLUMN_NAME_FUSION_WINDOW + INTEGER_TYPE;
+
+    private static final String SQL_ALTER_CONFIG_TABLE_ADD_ADAPTIVE_SAMPLING =
+        "ALTER TABLE " + ConfigurationEntry.TABLE_NAME +
+        " ADD COLUMN " + ConfigurationEntry.COLUMN_NAME_ADAPTIVE_SAMPLING + INTEGER_TYPE;
+
+    private static final String SQL_CREATE_LOCATION_META_TABLE =
+        "CREATE TABLE " + LocationMetaEntry.TABLE_NAME + " (" +
+        LocationMetaEntry._ID + " INTEGER PRIMARY KEY," +
+        LocationMetaEntry.COLUMN_NAME_HEAD + INTEGER_TYPE +
+        " )";
+
+    // head 0 makes first write continue after ids of existing locations
+    private static final String SQL_INSERT_LOCATION_META =
+        "INSERT INTO " + LocationMetaEntry.TABLE_NAME + " VALUES (1, 0)";
+
+    private static final String SQL_CREATE_SYNC_STATE_TABLE =
+        "CREATE TABLE " + SyncStateEntry.TABLE_NAME + " (" +
+        SyncStateEntry._ID + " INTEGER PRIMARY KEY," +
+        SyncStateEntry.COLUMN_NAME_ATTEMPTS + INTEGER_TYPE + " DEFAULT 0" + COMMA_SEP +
+        SyncStateEntry.COLUMN_NAME_SUCCESSES + INTEGER_TYPE + " DEFAULT 0" + COMMA_SEP +
+        SyncStateEntry.COLUMN_NAME_FAILURES + INTEGER_TYPE + " DEFAULT 0" + COMMA_SEP +
+        SyncStateEntry.COLUMN_NAME_CONSECUTIVE_FAILURES + INTEGER_TYPE + " DEFAULT 0" + COMMA_SEP +
+        SyncStateEntry.COLUMN_NAME_LAST_ATTEMPT_AT + INTEGER_TYPE + COMMA_SEP +
+        SyncStateEntry.COLUMN_NAME_LAST_SUCCESS_AT + INTEGER_TYPE + COMMA_SEP +
+        SyncStateEntry.COLUMN_NAME_LAST_FAILURE_AT + INTEGER_TYPE + COMMA_SEP +
+        SyncStateEntry.COLUMN_NAME_NEXT_ATTEMPT_AT + INTEGER_TYPE + " DEFAULT 0" + COMMA_SEP +
+        SyncStateEntry.COLUMN_NAME_LAST_DECISION + TEXT_TYPE + COMMA_SEP +
+        SyncStateEntry.COLUMN_NAME_LAST_DECISION_AT + INTEGER_TYPE + COMMA_SEP +
+        SyncStateEntry.COLUMN_NAME_PENDING_COUNT + INTEGER_TYPE + " DEFAULT 0" + COMMA_SEP +
+        SyncStateEntry.COLUMN_NAME_OLDEST_PENDING_TIME + INTEGER_TYPE +
+        " )";
+
+    private static final String SQL_INSERT_SYNC_STATE =
+        "INSERT INTO " + SyncStateEntry.TABLE_NAME + " (" + SyncStateEntry._ID + ") VALUES (1)";
+
+    private static final String SQL_CREATE_BATCH_CHUNK_TABLE =
+        "CREATE TABLE " + BatchChunkEntry.TABLE_NAME + " (" +
+        BatchChunkEntry._ID + " INTEGER PRIMARY KEY," +
+        BatchChunkEntry.COLUMN_NAME_BATCH_ID + INTEGER_TYPE + COMMA_SEP +
+        BatchChunkEntry.COLUMN_NAME_SEQ + INTEGER_TYPE + COMMA_SEP +
+        BatchChunkEntry.COLUMN_NAME_ROW_COUNT + INTEGER_TYPE + COMMA_SEP +
+        BatchChunkEntry.COLUMN_NAME_ACKED_AT + INTEGER_TYPE + COMMA_SEP +
+        "UNIQUE (" + BatchChunkEntry.COLUMN_NAME_BATCH_ID + COMMA_SEP + BatchChunkEntry.COLUMN_NAME_SEQ + ")" +
+        " )";
+
+    private static final String SQL_CREATE_TRACKING_SESSION_TABLE =
+        "CREATE TABLE " + TrackingSessionEntry.TABLE_NAME + " (" +
+        TrackingSessionEntry._ID + " INTEGER PRIMARY KEY," +
+        TrackingSessionEntry.COLUMN_NAME_STARTED_AT + INTEGER_TYPE + COMMA_SEP +
+        TrackingSessionEntry.COLUMN_NAME_ENDED_AT + INTEGER_TYPE + COMMA_SEP +
+        TrackingSessionEntry.COLUMN_NAME_POINT_COUNT + INTEGER_TYPE + " DEFAULT 0" + COMMA_SEP +
+        TrackingSessionEntry.COLUMN_NAME_DISTANCE + REAL_TYPE + " DEFAULT 0" + COMMA_SEP +
+        TrackingSessionEntry.COLUMN_NAME_MOVING_TIME + INTEGER_TYPE + " DEFAULT 0" + COMMA_SEP +
+        TrackingSessionEntry.COLUMN_NAME_MAX_SPEED + REAL_TYPE + " DEFAULT 0" + COMMA_SEP +
+        TrackingSessionEntry.COLUMN_NAME_MIN_LATITUDE + REAL_TYPE + COMMA_SEP +
+        TrackingSessionEntry.COLUMN_NAME_MAX_LATITUDE + REAL_TYPE + COMMA_SEP +
+        TrackingSessionEntry.COLUMN_NAME_MIN_LONGITUDE + REAL_TYPE + COMMA_SEP +
+        TrackingSessionEntry.COLUMN_NAME_MAX_LONGITUDE + REAL_TYPE + COMMA_SEP +
+        TrackingSessionEntry.COLUMN_NAME_LAST_TIME + INTEGER_TYPE + COMMA_SEP +
+        TrackingSessionEntry.COLUMN_NAME_LAST_LATITUDE + REAL_TYPE + COMMA_SEP +
+        TrackingSessionEntry.COLUMN_NAME_LAST_LONGITUDE + REAL_TYPE + COMMA_SEP +
+        TrackingSessionEntry.COLUMN_NAME_LAST_LOCATION_TIME + INTEGER_TYPE +
+        " )";
+
+    private static final String SQL_CREATE_GEOFENCE_TABLE =
+        "CREATE TABLE " + GeofenceEntry.TABLE_NAME + " (" +
+        GeofenceEntry._ID + " INTEGER PRIMARY KEY," +
+        GeofenceEntry.COLUMN_NAME_FENCE_ID + TEXT_TYPE + " NOT NULL UNIQUE" + COMMA_SEP +
+        GeofenceEntry.COLUMN_NAME_LATITUDE + REAL_TYPE + COMMA_SEP +
+        GeofenceEntry.COLUMN_NAME_LONGITUDE + REAL_TYPE + COMMA_SEP +
+        GeofenceEntry.COLUMN_NAME_RADIUS + REAL_TYPE + COMMA_SEP +
+        GeofenceEntry.COLUMN_NAME_DWELL_TIME + INTEGER_TYPE + " DEFAULT 0" +
+        " )";
+
     private static final String SQL_DROP_CONFIG_TABLE =
             "DROP TABLE IF EXISTS " + ConfigurationEntry.TABLE_NAME;
 
     private static final String SQL_DROP_LOCATION_TABLE =
             "DROP TABLE IF EXISTS " + LocationEntry.TABLE_NAME;
 
+    private static final String SQL_DROP_LOCATION_META_TABLE =
+            "DROP TABLE IF EXISTS " + LocationMetaEntry.TABLE_NAME;
+
+    private static final String SQL_DROP_SYNC_STATE_TABLE =
+            "DROP TABLE IF EXISTS " + SyncStateEntry.TABLE_NAME;
+
+    private static final String SQL_DROP_BATCH_CHUNK_TABLE =
+            "DROP TABLE IF EXISTS " + BatchChunkEntry.TABLE_NAME;
+
+    private static final String SQL_DROP_TRACKING_SESSION_TABLE =
+            "DROP TABLE IF EXISTS " + TrackingSessionEntry.TABLE_NAME;
+
+    private static final String SQL_DROP_GEOFENCE_TABLE =
+            "DROP TABLE IF EXISTS " + GeofenceEntry.TABLE_NAME;
+
     private static final String SQL_CREATE_LOCATION_TABLE_TIME_IDX =
             "CREATE INDEX time_idx ON " + LocationEntry.TABLE_NAME + " (" + LocationEntry.COLUMN_NAME_TIME + ")";
 
     private static final String SQL_CREATE_LOCATION_TABLE_BATCH_ID_IDX =
             "CREATE INDEX batch_id_idx ON " + LocationEntry.TABLE_NAME + " (" + LocationEntry.COLUMN_NAME_BATCH_START_MILLIS + ")";
 
+    private static final String SQL_DROP_LOCATION_TABLE_BATCH_ID_IDX = "DROP INDEX IF EXISTS batch_id_idx";
+
+    // chunk lookups of batch
+    private static final String SQL_CREATE_LOCATION_TABLE_BATCH_IDX =
+            "CREATE INDEX batch_idx ON " + LocationEntry.TABLE_NAME + " (" +
+            LocationEntry.COLUMN_NAME_BATCH_START_MILLIS + "," + LocationEntry.COLUMN_NAME_BATCH_SEQ + ")";
+
+    // covers sync queue queries (valid = 1 AND batch_start ...) ordered by time,
+    // so they are answered from index without touching location rows
+    private static final String SQL_CREATE_LOCATION_TABLE_SYNC_QUEUE_IDX =
+            "CREATE INDEX sync_queue_idx ON " + LocationEntry.TABLE_NAME + " (" +
+            LocationEntry.COLUMN_NAME_VALID + "," + LocationEntry.COLUMN_NAME_TIME + "," +
+            LocationEntry.COLUMN_NAME_BATCH_START_MILLIS + ")";
+
+    private static final String SQL_CREATE_LOCATION_RTREE_TABLE =
+        "CREATE VIRTUAL TABLE " + LocationRTreeEntry.TABLE_NAME + " USING rtree(" +
+        LocationRTreeEntry._ID + COMMA_SEP +
+        LocationRTreeEntry.COLUMN_NAME_MIN_LATITUDE + COMMA_SEP +
+        LocationRTreeEntry.COLUMN_NAME_MAX_LATITUDE + COMMA_SEP +
+        LocationRTreeEntry.COLUMN_NAME_MIN_LONGITUDE + COMMA_SEP +
+        LocationRTreeEntry.COLUMN_NAME_MAX_LONGITUDE +
+        ")";
+
+    private static final String SQL_DROP_LOCATION_RTREE_TABLE =
+            "DROP TABLE IF EXISTS " + LocationRTreeEntry.TABLE_NAME;
+
+    // location is indexed as point (min = max)
+    private static final String SQL_INDEX_NEW_LOCATION =
+        "INSERT OR REPLACE INTO " + LocationRTreeEntry.TABLE_NAME + " VALUES (new." + LocationEntry._ID + COMMA_SEP +
+        "new." + LocationEntry.COLUMN_NAME_LATITUDE + COMMA_SEP + "new." + LocationEntry.COLUMN_NAME_LATITUDE + COMMA_SEP +
+        "new." + LocationEntry.COLUMN_NAME_LONGITUDE + COMMA_SEP + "new." + LocationEntry.COLUMN_NAME_LONGITUDE + ");";
+
+    private static final String SQL_UNINDEX_OLD_LOCATION =
+        "DELETE FROM " + LocationRTreeEntry.TABLE_NAME + " WHERE " + LocationRTreeEntry._ID + " = old." + LocationEntry._ID + ";";
+
+    private static final String SQL_CREATE_LOCATION_RTREE_INSERT_TRIGGER =
+        "CREATE TRIGGER location_rtree_insert AFTER INSERT ON " + LocationEntry.TABLE_NAME +
+        " BEGIN " + SQL_INDEX_NEW_LOCATION + " END";
+
+    private static final String SQL_CREATE_LOCATION_RTREE_UPDATE_TRIGGER =
+        "CREATE TRIGGER location_rtree_update AFTER UPDATE OF " +
+        LocationEntry._ID + COMMA_SEP +
+        LocationEntry.COLUMN_NAME_LATITUDE + COMMA_SEP + LocationEntry.COLUMN_NAME_LONGITUDE +
+        " ON " + LocationEntry.TABLE_NAME +
+        " BEGIN " + SQL_UNINDEX_OLD_LOCATION + " " + SQL_INDEX_NEW_LOCATION + " END";
+
+    private static final String SQL_CREATE_LOCATION_RTREE_DELETE_TRIGGER =
+        "CREATE TRIGGER location_rtree_delete AFTER DELETE ON " + LocationEntry.TABLE_NAME +
+        " BEGIN " + SQL_UNINDEX_OLD_LOCATION + " END";
+
+    private static final String SQL_POPULATE_LOCATION_RTREE =
+        "INSERT INTO " + LocationRTreeEntry.TABLE_NAME + " SELECT " + LocationEntry._ID + COMMA_SEP +
+        LocationEntry.COLUMN_NAME_LATITUDE + COMMA_SEP + LocationEntry.COLUMN_NAME_LATITUDE + COMMA_SEP +
+        LocationEntry.COLUMN_NAME_LONGITUDE + COMMA_SEP + LocationEntry.COLUMN_NAME_LONGITUDE +
+        " FROM " + LocationEntry.TABLE_NAME;
+
     private static SQLiteOpenHelper instance;
 
+    private final boolean writeAheadLogging;
+    private SQLiteDatabase readerDatabase;
+
     /**
      * Get SqliteOpenHelper instance (singleton)
      *
@@ -110,16 +310,107 @@ public class SQLiteOpenHelper extends android.database.sqlite.SQLiteOpenHelper {
      * @param context
      */
     public SQLiteOpenHelper(Context context) {
+        this(context, getJournalMode(context));
+    }
+
+    /**
+     * Constructor
+     *
+     * NOTE: Intended to use only for testing purposes.
+     * Use factory method getHelper instead.
+     *
+     * @param context
+     * @param journalMode JOURNAL_MODE_WAL or JOURNAL_MODE_DEFAULT
+     */
+    public SQLiteOpenHelper(Context context, String journalMode) {
         super(context, SQLITE_DATABASE_NAME, null, DATABASE_VERSION);
+        this.writeAheadLogging = JOURNAL_MODE_WAL.equalsIgnoreCase(journalMode);
+    }
+
+    /**
+     * Journal mode configured by db_journal_mode string resource (DB_JOURNAL_MODE plugin variable)
+     *
+     * Mode is persistent property of database file, so it must be same in all processes
+     * (service and sync adapter) and that's why it's not part of Config.
+     */
+    private static String getJournalMode(Context context) {
+        int id = context.getResources().getIdentifier(JOURNAL_MODE_RESOURCE, "string", context.getPackageName());
+        return id != 0 ? context.getString(id) : JOURNAL_MODE_WAL;
+    }
+
+    /**
+     * @return true when database is in write-ahead logging mode
+     */
+    public boolean isWriteAheadLogging() {
+        return writeAheadLogging;
+    }
+
+    /**
+     * Get database for readers (queries and batch export)
+     *
+     * In WAL mode, dedicated read only connection is returned. Readers on it see last committed
+     * snapshot, so long reads (eg. writing batch file) and writes don't block each other.
+     * Single writable connection remains shared by all writers.
+     * Otherwise writable database is returned.
+     *
+     * Returned database is owned by helper and must not be closed.
+     */
+    public synchronized SQLiteDatabase getReaderDatabase() {
+        SQLiteDatabase writer = getWritableDatabase();
+        if (!writeAheadLogging) {
+            return writer;
+        }
+        if (readerDatabase == null || !readerDatabase.isOpen()) {
+            int flags = SQLiteDatabase.OPEN_READONLY;
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+                // pool of read only connections, so readers don't wait for each other
+                flags |= SQLiteDatabase.ENABLE_WRITE_AHEAD_LOGGING;
+            }
+            readerDatabase = SQLiteDatabase.openDatabase(writer.getPath(), null, flags);
+        }
+        return readerDatabase;
+    }
+
+    @Override
+    public synchronized void close() {
+        if (readerDatabase != null) {
+            readerDatabase.close();
+            readerDatabase = null;
+        }
+        super.close();
     }
 
     @Override
     public void onCreate(SQLiteDatabase db) {
         Log.d(TAG, "Creating db: " + this.getDatabaseName());
+        // takes effect only before first table is created,
+        // existing databases are switched by CompactionTask
+        execAndLogSql(db, "PRAGMA auto_vacuum = INCREMENTAL");
         execAndLogSql(db, SQL_CREATE_LOCATION_TABLE);
         execAndLogSql(db, SQL_CREATE_CONFIG_TABLE);
+        execAndLogSql(db, SQL_ALTER_CONFIG_TABLE_ADD_LOCATION_STORE);
+        execAndLogSql(db, SQL_ALTER_CONFIG_TABLE_ADD_VERSION);
+        for (String sql : SQL_ALTER_CONFIG_TABLE_ADD_OPTIONS) {
+            execAndLogSql(db, sql);
+        }
+        for (String sql : SQL_ALTER_CONFIG_TABLE_ADD_PIPELINE_OPTIONS) {
+            execAndLogSql(db, sql);
+        }
+        execAndLogSql(db, SQL_ALTER_CONFIG_TABLE_ADD_KALMAN_PROCESS_NOISE);
+        execAndLogSql(db, SQL_ALTER_CONFIG_TABLE_ADD_SIMPLIFY_TOLERANCE);
+        execAndLogSql(db, SQL_ALTER_CONFIG_TABLE_ADD_FUSION_WINDOW);
+        execAndLogSql(db, SQL_ALTER_CONFIG_TABLE_ADD_ADAPTIVE_SAMPLING);
         execAndLogSql(db, SQL_CREATE_LOCATION_TABLE_TIME_IDX);
-        execAndLogSql(db, SQL_CREATE_LOCATION_TABLE_BATCH_ID_IDX);
+        execAndLogSql(db, SQL_CREATE_LOCATION_TABLE_BATCH_IDX);
+        execAndLogSql(db, SQL_CREATE_LOCATION_TABLE_SYNC_QUEUE_IDX);
+        execAndLogSql(db, SQL_CREATE_LOCATION_META_TABLE);
+        execAndLogSql(db, SQL_INSERT_LOCATION_META);
+        execAndLogSql(db, SQL_CREATE_SYNC_STATE_TABLE);
+        execAndLogSql(db, SQL_INSERT_SYNC_STATE);
+        execAndLogSql(db, SQL_CREATE_BATCH_CHUNK_TABLE);
+        execAndLogSql(db, SQL_CREATE_TRACKING_SESSION_TABLE);
+        execAndLogSql(db, SQL_CREATE_GEOFENCE_TABLE);
+        createLocationRTree(db);
     }
 
     @Override
@@ -127,6 +418,7 @@ public class SQLiteOpenHelper extends android.database.sqlite.SQLiteOpenHelper {
         Log.d(this.getClass().getName(), "Upgrading database oldVersion: " + oldVersion + " newVersion: " + newVersion);
 
         ArrayList<String> alterSql = new ArrayList<String>();
+        boolean createLocationRTree = false;
         switch (oldVersion) {
             case 10:
                 alterSql.add("ALTER TABLE " + LocationEntry.TABLE_NAME +
@@ -157,6 +449,41 @@ public class SQLiteOpenHelper extends android.database.sqlite.SQLiteOpenHelper {
                         LocationEntry.COLUMN_NAME_HAS_ALTITUDE + "= 1," +
                         LocationEntry.COLUMN_NAME_HAS_RADIUS + "= 1"
                 );
+            case 12:
+                alterSql.add(SQL_CREATE_LOCATION_META_TABLE);
+                alterSql.add(SQL_INSERT_LOCATION_META);
+            case 13:
+                alterSql.add(SQL_CREATE_SYNC_STATE_TABLE);
+                alterSql.add(SQL_INSERT_SYNC_STATE);
+            case 14:
+                alterSql.add("ALTER TABLE " + LocationEntry.TABLE_NAME +
+                        " ADD COLUMN " + LocationEntry.COLUMN_NAME_BATCH_SEQ + INTEGER_TYPE);
+                alterSql.add(SQL_CREATE_BATCH_CHUNK_TABLE);
+            case 15:
+                alterSql.add(SQL_DROP_LOCATION_TABLE_BATCH_ID_IDX);
+                alterSql.add(SQL_CREATE_LOCATION_TABLE_BATCH_IDX);
+                alterSql.add(SQL_CREATE_LOCATION_TABLE_SYNC_QUEUE_IDX);
+            case 16:
+                alterSql.add(SQL_ALTER_CONFIG_TABLE_ADD_LOCATION_STORE);
+            case 17:
+                alterSql.add(SQL_CREATE_TRACKING_SESSION_TABLE);
+            case 18:
+                createLocationRTree = true;
+            case 19:
+                alterSql.add(SQL_ALTER_CONFIG_TABLE_ADD_VERSION);
+                alterSql.addAll(Arrays.asList(SQL_ALTER_CONFIG_TABLE_ADD_OPTIONS));
+            case 20:
+                alterSql.addAll(Arrays.asList(SQL_ALTER_CONFIG_TABLE_ADD_PIPELINE_OPTIONS));
+            case 21:
+                alterSql.add(SQL_ALTER_CONFIG_TABLE_ADD_KALMAN_PROCESS_NOISE);
+            case 22:
+                alterSql.add(SQL_ALTER_CONFIG_TABLE_ADD_SIMPLIFY_TOLERANCE);
+            case 23:
+                alterSql.add(SQL_ALTER_CONFIG_TABLE_ADD_FUSION_WINDOW);
+            case 24:
+                alterSql.add(SQL_CREATE_GEOFENCE_TABLE);
+            case 25:
+                alterSql.add(SQL_ALTER_CONFIG_TABLE_ADD_ADAPTIVE_SAMPLING);
 
                 break;
             default:
@@ -167,12 +494,56 @@ public class SQLiteOpenHelper extends android.database.sqlite.SQLiteOpenHelper {
         for (String sql : alterSql) {
             execAndLogSql(db, sql);
         }
+        if (createLocationRTree) {
+            createLocationRTree(db);
+        }
+    }
+
+    /**
+     * Create R*Tree index of locations with triggers keeping it in sync with location table
+     *
+     * R*Tree module is optional part of SQLite. When it's not available,
+     * index is not created and spatial queries fall back to time index.
+     */
+    private void createLocationRTree(SQLiteDatabase db) {
+        try {
+            db.execSQL(SQL_CREATE_LOCATION_RTREE_TABLE);
+        } catch (SQLException e) {
+            Log.w(TAG, "R*Tree index not available: " + e.getMessage());
+            return;
+        }
+        execAndLogSql(db, SQL_POPULATE_LOCATION_RTREE);
+        execAndLogSql(db, SQL_CREATE_LOCATION_RTREE_INSERT_TRIGGER);
+        execAndLogSql(db, SQL_CREATE_LOCATION_RTREE_UPDATE_TRIGGER);
+        execAndLogSql(db, SQL_CREATE_LOCATION_RTREE_DELETE_TRIGGER);
+    }
+
+    /**
+     * @return true when database has R*Tree index of locations
+     */
+    public static boolean hasLocationRTree(SQLiteDatabase db) {
+        return DatabaseUtils.longForQuery(db, "SELECT COUNT(*) FROM sqlite_master WHERE type = 'table' AND name = ?",
+                new String[] { LocationRTreeEntry.TABLE_NAME }) > 0;
+    }
+
+    @Override
+    public void onOpen(SQLiteDatabase db) {
+        super.onOpen(db);
+        if (!db.isReadOnly() && writeAheadLogging) {
+            db.enableWriteAheadLogging();
+        }
     }
 
     @Override
     public void onDowngrade(SQLiteDatabase db, int oldVersion, int newVersion) {
         // we don't support db downgrade yet, instead we drop table and start over
         execAndLogSql(db, SQL_DROP_LOCATION_TABLE);
+        execAndLogSql(db, SQL_DROP_LOCATION_RTREE_TABLE);
+        execAndLogSql(db, SQL_DROP_LOCATION_META_TABLE);
+        execAndLogSql(db, SQL_DROP_SYNC_STATE_TABLE);
+        execAndLogSql(db, SQL_DROP_BATCH_CHUNK_TABLE);
+        execAndLogSql(db, SQL_DROP_TRACKING_SESSION_TABLE);
+        execAndLogSql(db, SQL_DROP_GEOFENCE_TABLE);
         execAndLogSql(db, SQL_DROP_CONFIG_TABLE);
         onCreate(db);
     }
@@ -0,0 +1,100 @@
+package com.marianhello.bgloc.data.sqlite;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import com.marianhello.bgloc.data.SyncState;
+import com.marianhello.bgloc.data.SyncStateDAO;
+import com.marianhello.bgloc.data.sqlite.SQLiteLocationContract.SyncStateEntry;
+
+/**
+ * Sync state is stored in single row, so it can be shared between
+ * service process (scheduling) and sync process (sync results)
+ */
+public class SQLiteSyncStateDAO implements SyncStateDAO {
+  private static final String STATE_ROW_WHERE = SyncStateEntry._ID + " = 1";
+
+  private SQLiteDatabase db;
+
+  public SQLiteSyncStateDAO(Context context) {
+    SQLiteOpenHelper helper = SQLiteOpenHelper.getHelper(context);
+    this.db = helper.getWritableDatabase();
+  }
+
+  public SQLiteSyncStateDAO(SQLiteDatabase db) {
+    this.db = db;
+  }
+
+  public SyncState getSyncState() {
+    SyncState state = new SyncState();
+    Cursor cursor = null;
+    try {
+      cursor = db.query(SyncStateEntry.TABLE_NAME, null, STATE_ROW_WHERE, null, null, null, null);
+      if (cursor.moveToFirst()) {
+        state.setAttempts(cursor.getLong(cursor.getColumnIndex(SyncStateEntry.COLUMN_NAME_ATTEMPTS)));
+        state.setSuccesses(cursor.getLong(cursor.getColumnIndex(SyncStateEntry.COLUMN_NAME_SUCCESSES)));
+        state.setFailures(cursor.getLong(cursor.getColumnIndex(SyncStateEntry.COLUMN_NAME_FAILURES)));
+        state.setConsecutiveFailures(cursor.getInt(cursor.getColumnIndex(SyncStateEntry.COLUMN_NAME_CONSECUTIVE_FAILURES)));
+        state.setLastAttemptAt(getLong(cursor, SyncStateEntry.COLUMN_NAME_LAST_ATTEMPT_AT));
+        state.setLastSuccessAt(getLong(cursor, SyncStateEntry.COLUMN_NAME_LAST_SUCCESS_AT));
+        state.setLastFailureAt(getLong(cursor, SyncStateEntry.COLUMN_NAME_LAST_FAILURE_AT));
+        state.setNextAttemptAt(cursor.getLong(cursor.getColumnIndex(SyncStateEntry.COLUMN_NAME_NEXT_ATTEMPT_AT)));
+        state.setLastDecision(cursor.getString(cursor.getColumnIndex(SyncStateEntry.COLUMN_NAME_LAST_DECISION)));
+        state.setLastDecisionAt(getLong(cursor, SyncStateEntry.COLUMN_NAME_LAST_DECISION_AT));
+        state.setPendingCount(cursor.getLong(cursor.getColumnIndex(SyncStateEntry.COLUMN_NAME_PENDING_COUNT)));
+        state.setOldestPendingTime(getLong(cursor, SyncStateEntry.COLUMN_NAME_OLDEST_PENDING_TIME));
+      }
+    } finally {
+      if (cursor != null) {
+        cursor.close();
+      }
+    }
+    return state;
+  }
+
+  public void persistDecision(String decision, long decidedAt, long pendingCount, Long oldestPendingTime) {
+    ContentValues values = new ContentValues();
+    values.put(SyncStateEntry.COLUMN_NAME_LAST_DECISION, decision);
+    values.put(SyncStateEntry.COLUMN_NAME_LAST_DECISION_AT, decidedAt);
+    values.put(SyncStateEntry.COLUMN_NAME_PENDING_COUNT, pendingCount);
+    values.put(SyncStateEntry.COLUMN_NAME_OLDEST_PENDING_TIME, oldestPendingTime);
+    db.update(SyncStateEntry.TABLE_NAME, values, STATE_ROW_WHERE, null);
+  }
+
+  public void persistSyncAttempt(long attemptAt) {
+    db.execSQL("UPDATE " + SyncStateEntry.TABLE_NAME + " SET " +
+            SyncStateEntry.COLUMN_NAME_ATTEMPTS + " = " + SyncStateEntry.COLUMN_NAME_ATTEMPTS + " + 1, " +
+            SyncStateEntry.COLUMN_NAME_LAST_ATTEMPT_AT + " = ? WHERE " + STATE_ROW_WHERE,
+            new Object[] { attemptAt });
+  }
+
+  public void persistSyncSuccess(long successAt) {
+    db.execSQL("UPDATE " + SyncStateEntry.TABLE_NAME + " SET " +
+            SyncStateEntry.COLUMN_NAME_SUCCESSES + " = " + SyncStateEntry.COLUMN_NAME_SUCCESSES + " + 1, " +
+            SyncStateEntry.COLUMN_NAME_CONSECUTIVE_FAILURES + " = 0, " +
+            SyncStateEntry.COLUMN_NAME_NEXT_ATTEMPT_AT + " = 0, " +
+            SyncStateEntry.COLUMN_NAME_LAST_SUCCESS_AT + " = ? WHERE " + STATE_ROW_WHERE,
+            new Object[] { successAt });
+  }
+
+  /**
+   * Backoff is computed from consecutive failures in same UPDATE (right hand side sees values
+   * before update), so concurrent failures of service and sync process are not lost.
+   * Delay is same as SyncScheduler.backoffDelay.
+   */
+  public void persistSyncFailure(long failureAt, long backoffBaseMillis, long backoffMaxMillis) {
+    db.execSQL("UPDATE " + SyncStateEntry.TABLE_NAME + " SET " +
+            SyncStateEntry.COLUMN_NAME_FAILURES + " = " + SyncStateEntry.COLUMN_NAME_FAILURES + " + 1, " +
+            SyncStateEntry.COLUMN_NAME_CONSECUTIVE_FAILURES + " = " + SyncStateEntry.COLUMN_NAME_CONSECUTIVE_FAILURES + " + 1, " +
+            SyncStateEntry.COLUMN_NAME_NEXT_ATTEMPT_AT + " = ? + MIN(? << MIN(" + SyncStateEntry.COLUMN_NAME_CONSECUTIVE_FAILURES + ", 20), ?), " +
+            SyncStateEntry.COLUMN_NAME_LAST_FAILURE_AT + " = ? WHERE " + STATE_ROW_WHERE,
+            new Object[] { failureAt, backoffBaseMillis, backoffMaxMillis, failureAt });
+  }
+
+  private static Long getLong(Cursor cursor, String column) {
+    int index = cursor.getColumnIndex(column);
+    return cursor.isNull(index) ? null : cursor.getLong(index);
+  }
+}
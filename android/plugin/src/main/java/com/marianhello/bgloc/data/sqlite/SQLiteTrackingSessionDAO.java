@@ -0,0 +1,122 @@
+package com.marianhello.bgloc.data.sqlite;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import com.marianhello.bgloc.data.TrackingSession;
+import com.marianhello.bgloc.data.TrackingSessionDAO;
+import com.marianhello.bgloc.data.sqlite.SQLiteLocationContract.TrackingSessionEntry;
+
+/**
+ * Every session is single row updated in place as locations are accepted,
+ * so reading session summary costs same regardless of number of its locations.
+ */
+public class SQLiteTrackingSessionDAO implements TrackingSessionDAO {
+  private SQLiteDatabase db;
+
+  public SQLiteTrackingSessionDAO(Context context) {
+    SQLiteOpenHelper helper = SQLiteOpenHelper.getHelper(context);
+    this.db = helper.getWritableDatabase();
+  }
+
+  public SQLiteTrackingSessionDAO(SQLiteDatabase db) {
+    this.db = db;
+  }
+
+  /**
+   * @return most recently started session (running or ended) or null when there is no session
+   */
+  public TrackingSession getCurrentSession() {
+    return querySession(null, null, TrackingSessionEntry._ID + " DESC");
+  }
+
+  public TrackingSession getSession(long sessionId) {
+    return querySession(TrackingSessionEntry._ID + " = ?", new String[] { String.valueOf(sessionId) }, null);
+  }
+
+  public TrackingSession startSession(long startedAt) {
+    TrackingSession session = new TrackingSession(startedAt);
+    ContentValues values = new ContentValues();
+    values.put(TrackingSessionEntry.COLUMN_NAME_STARTED_AT, startedAt);
+    session.setSessionId(db.insertOrThrow(TrackingSessionEntry.TABLE_NAME, null, values));
+    return session;
+  }
+
+  public void persistSession(TrackingSession session) {
+    db.update(TrackingSessionEntry.TABLE_NAME, getContentValues(session),
+            TrackingSessionEntry._ID + " = ?", new String[] { String.valueOf(session.getSessionId()) });
+  }
+
+  public void endSession(TrackingSession session, long endedAt) {
+    session.setEndedAt(endedAt);
+    persistSession(session);
+  }
+
+  private TrackingSession querySession(String whereClause, String[] whereArgs, String orderBy) {
+    Cursor cursor = null;
+    try {
+      cursor = db.query(TrackingSessionEntry.TABLE_NAME, null, whereClause, whereArgs, null, null, orderBy, "1");
+      if (cursor.moveToFirst()) {
+        return hydrate(cursor);
+      }
+    } finally {
+      if (cursor != null) {
+        cursor.close();
+      }
+    }
+    return null;
+  }
+
+  private TrackingSession hydrate(Cursor c) {
+    TrackingSession session = new TrackingSession();
+    session.setSessionId(c.getLong(c.getColumnIndex(TrackingSessionEntry._ID)));
+    session.setStartedAt(c.getLong(c.getColumnIndex(TrackingSessionEntry.COLUMN_NAME_STARTED_AT)));
+    session.setEndedAt(getLong(c, TrackingSessionEntry.COLUMN_NAME_ENDED_AT));
+    session.setPointCount(c.getLong(c.getColumnIndex(TrackingSessionEntry.COLUMN_NAME_POINT_COUNT)));
+    session.setDistance(c.getDouble(c.getColumnIndex(TrackingSessionEntry.COLUMN_NAME_DISTANCE)));
+    session.setMovingTime(c.getLong(c.getColumnIndex(TrackingSessionEntry.COLUMN_NAME_MOVING_TIME)));
+    session.setMaxSpeed(c.getFloat(c.getColumnIndex(TrackingSessionEntry.COLUMN_NAME_MAX_SPEED)));
+    session.setBoundingBox(
+            getDouble(c, TrackingSessionEntry.COLUMN_NAME_MIN_LATITUDE),
+            getDouble(c, TrackingSessionEntry.COLUMN_NAME_MIN_LONGITUDE),
+            getDouble(c, TrackingSessionEntry.COLUMN_NAME_MAX_LATITUDE),
+            getDouble(c, TrackingSessionEntry.COLUMN_NAME_MAX_LONGITUDE));
+    session.setLastLocation(
+            getLong(c, TrackingSessionEntry.COLUMN_NAME_LAST_TIME),
+            getDouble(c, TrackingSessionEntry.COLUMN_NAME_LAST_LATITUDE),
+            getDouble(c, TrackingSessionEntry.COLUMN_NAME_LAST_LONGITUDE));
+    session.setLastLocationTime(getLong(c, TrackingSessionEntry.COLUMN_NAME_LAST_LOCATION_TIME));
+    return session;
+  }
+
+  private ContentValues getContentValues(TrackingSession session) {
+    ContentValues values = new ContentValues();
+    values.put(TrackingSessionEntry.COLUMN_NAME_STARTED_AT, session.getStartedAt());
+    values.put(TrackingSessionEntry.COLUMN_NAME_ENDED_AT, session.getEndedAt());
+    values.put(TrackingSessionEntry.COLUMN_NAME_POINT_COUNT, session.getPointCount());
+    values.put(TrackingSessionEntry.COLUMN_NAME_DISTANCE, session.getDistance());
+    values.put(TrackingSessionEntry.COLUMN_NAME_MOVING_TIME, session.getMovingTime());
+    values.put(TrackingSessionEntry.COLUMN_NAME_MAX_SPEED, session.getMaxSpeed());
+    values.put(TrackingSessionEntry.COLUMN_NAME_MIN_LATITUDE, session.getMinLatitude());
+    values.put(TrackingSessionEntry.COLUMN_NAME_MAX_LATITUDE, session.getMaxLatitude());
+    values.put(TrackingSessionEntry.COLUMN_NAME_MIN_LONGITUDE, session.getMinLongitude());
+    values.put(TrackingSessionEntry.COLUMN_NAME_MAX_LONGITUDE, session.getMaxLongitude());
+    values.put(TrackingSessionEntry.COLUMN_NAME_LAST_TIME, session.getLastTime());
+    values.put(TrackingSessionEntry.COLUMN_NAME_LAST_LATITUDE, session.getLastLatitude());
+    values.put(TrackingSessionEntry.COLUMN_NAME_LAST_LONGITUDE, session.getLastLongitude());
+    values.put(TrackingSessionEntry.COLUMN_NAME_LAST_LOCATION_TIME, session.getLastLocationTime());
+    return values;
+  }
+
+  private static Long getLong(Cursor cursor, String column) {
+    int index = cursor.getColumnIndex(column);
+    return cursor.isNull(index) ? null : cursor.getLong(index);
+  }
+
+  private static Double getDouble(Cursor cursor, String column) {
+    int index = cursor.getColumnIndex(column);
+    return cursor.isNull(index) ? null : cursor.getDouble(index);
+  }
+}
@@ -0,0 +1,246 @@
+package com.marianhello.bgloc.geofence;
+
+import com.marianhello.bgloc.Geodesy;
+import com.marianhello.bgloc.data.BackgroundLocation;
+import com.marianhello.bgloc.data.Geofence;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Evaluates enter, exit and dwell transitions of many geofences on every location
+ *
+ * Fences are indexed in grid of CELL_SIZE degree cells, every fence is registered in all cells
+ * its bounding box overlaps. Location is then tested only against fences of its own cell
+ * and fences device is inside, so cost per location does not grow with number of fences.
+ * Fences overlapping more than MAX_CELLS_PER_FENCE cells (huge radius or near poles) are
+ * tested on every location.
+ * Fence is entered when location is within radius and exited when location is farther than
+ * radius plus exit margin (EXIT_HYSTERESIS of radius, at least MIN_EXIT_MARGIN meters),
+ * so location noise on the boundary does not produce enter/exit storms.
+ * Dwell is reported once per stay, when device is inside for fence dwell time.
+ * State of fences (inside, entered at) is kept in memory only.
+ */
+public class GeofenceEngine {
+    /** grid cell size in degrees (~1.1 km of latitude) */
+    public static final double CELL_SIZE = 0.01;
+    public static final int MAX_CELLS_PER_FENCE = 1024;
+    public static final double EXIT_HYSTERESIS = 0.1;
+    public static final double MIN_EXIT_MARGIN = 10;
+
+    private static final int LON_CELLS = (int) Math.round(360 / CELL_SIZE);
+
+    private static class Entry {
+        final Geofence geofence;
+        final double latitude;
+        final double longitude;
+        final double radius;
+        final double exitRadius;
+        final long dwellTime;
+        boolean inside = false;
+        boolean dwellReported = false;
+        long enteredAt;
+
+        Entry(Geofence geofence) {
+            this.geofence = geofence;
+            this.latitude = geofence.getLatitude();
+            this.longitude = geofence.getLongitude();
+            this.radius = geofence.getRadius();
+            this.exitRadius = radius + Math.max(radius * EXIT_HYSTERESIS, MIN_EXIT_MARGIN);
+            this.dwellTime = geofence.getDwellTime();
+        }
+    }
+
+    private Map<Long, List<Entry>> cells = new HashMap<Long, List<Entry>>();
+    private List<Entry> large = new ArrayList<Entry>();
+    private Map<String, Entry> entries = new HashMap<String, Entry>();
+    private final List<Entry> inside = new ArrayList<Entry>();
+
+    public GeofenceEngine() {}
+
+    public GeofenceEngine(Collection<Geofence> geofences) {
+        setGeofences(geofences);
+    }
+
+    /**
+     * Replace all fences and rebuild index
+     *
+     * Device remains inside fences with same id without new enter transition.
+     * Removed fences are dropped without exit transition.
+     */
+    public synchronized void setGeofences(Collection<Geofence> geofences) {
+        Map<Long, List<Entry>> newCells = new HashMap<Long, List<Entry>>();
+        List<Entry> newLarge = new ArrayList<Entry>();
+        Map<String, Entry> newEntries = new HashMap<String, Entry>(geofences.size() * 2);
+
+        for (Geofence geofence : geofences) {
+            Entry entry = new Entry(geofence);
+            Entry old = entries.get(geofence.getId());
+            if (old != null && old.inside) {
+                entry.inside = true;
+                entry.enteredAt = old.enteredAt;
+                entry.dwellReported = old.dwellReported;
+            }
+            Entry replaced = newEntries.put(geofence.getId(), entry);
+            if (replaced != null) {
+                unregister(replaced, newCells, newLarge);
+            }
+            register(entry, newCells, newLarge);
+        }
+
+        cells = newCells;
+        large = newLarge;
+        entries = newEntries;
+        inside.clear();
+        for (Entry entry : newEntries.values()) {
+            if (entry.inside) {
+                inside.add(entry);
+            }
+        }
+    }
+
+    /**
+     * Evaluate transitions triggered by location
+     *
+     * @param location
+     * @param out receives triggered transitions (exits first)
+     */
+    public synchronized void process(BackgroundLocation location, List<GeofenceEvent> out) {
+        double latitude = location.getLatitude();
+        double longitude = location.getLongitude();
+        long time = location.getTime();
+
+        for (int i = inside.size() - 1; i >= 0; i--) {
+            Entry entry = inside.get(i);
+            if (Geodesy.distance(entry.latitude, entry.longitude, latitude, longitude) > entry.exitRadius) {
+                entry.inside = false;
+                // order of inside fences does not matter
+                inside.set(i, inside.get(inside.size() - 1));
+                inside.remove(inside.size() - 1);
+                out.add(new GeofenceEvent(entry.geofence, GeofenceEvent.EXIT, location));
+            } else if (entry.dwellTime > 0 && !entry.dwellReported && time - entry.enteredAt >= entry.dwellTime) {
+                entry.dwellReported = true;
+                out.add(new GeofenceEvent(entry.geofence, GeofenceEvent.DWELL, location));
+            }
+        }
+
+        List<Entry> candidates = cells.get(cellKey(latIndex(latitude), lonIndex(longitude)));
+        if (candidates != null) {
+            enter(candidates, location, out);
+        }
+        enter(large, location, out);
+    }
+
+    private void enter(List<Entry> candidates, BackgroundLocation location, List<GeofenceEvent> out) {
+        double latitude = location.getLatitude();
+        double longitude = location.getLongitude();
+        for (int i = 0, size = candidates.size(); i < size; i++) {
+            Entry entry = candidates.get(i);
+            if (entry.inside) {
+                continue;
+            }
+            if (Geodesy.distance(entry.latitude, entry.longitude, latitude, longitude) <= entry.radius) {
+                entry.inside = true;
+                entry.enteredAt = location.getTime();
+                entry.dwellReported = false;
+                inside.add(entry);
+                out.add(new GeofenceEvent(entry.geofence, GeofenceEvent.ENTER, location));
+            }
+        }
+    }
+
+    /**
+     * @return number of fences
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * @return true when device is inside fence with given id
+     */
+    public synchronized boolean isInside(String id) {
+        Entry entry = entries.get(id);
+        return entry != null && entry.inside;
+    }
+
+    private static void register(Entry entry, Map<Long, List<Entry>> cells, List<Entry> large) {
+        int[] range = cellRange(entry);
+        if (range == null) {
+            large.add(entry);
+            return;
+        }
+        for (int lat = range[0]; lat <= range[1]; lat++) {
+            for (int lon = range[2]; lon <= range[3]; lon++) {
+                Long key = cellKey(lat, lon);
+                List<Entry> cell = cells.get(key);
+                if (cell == null) {
+                    cell = new ArrayList<Entry>(2);
+                    cells.put(key, cell);
+                }
+                cell.add(entry);
+            }
+        }
+    }
+
+    private static void unregister(Entry entry, Map<Long, List<Entry>> cells, List<Entry> large) {
+        int[] range = cellRange(entry);
+        if (range == null) {
+            large.remove(entry);
+            return;
+        }
+        for (int lat = range[0]; lat <= range[1]; lat++) {
+            for (int lon = range[2]; lon <= range[3]; lon++) {
+                List<Entry> cell = cells.get(cellKey(lat, lon));
+                if (cell != null) {
+                    cell.remove(entry);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return min and max latitude index, min and max longitude index (may exceed LON_CELLS,
+     *         wrapped by cellKey) of cells overlapped by fence bounding box, null when fence is large
+     */
+    private static int[] cellRange(Entry entry) {
+        double latDelta = entry.radius / Geodesy.METERS_PER_DEGREE;
+        double minLat = entry.latitude - latDelta;
+        double maxLat = entry.latitude + latDelta;
+        if (minLat <= -90 || maxLat >= 90) {
+            return null;
+        }
+        double lonDelta = entry.radius / Geodesy.metersPerDegreeLongitude(Math.max(Math.abs(minLat), Math.abs(maxLat)));
+        if (lonDelta >= 180) {
+            return null;
+        }
+        int minLatIndex = latIndex(minLat);
+        int maxLatIndex = latIndex(maxLat);
+        int minLonIndex = (int) Math.floor((entry.longitude - lonDelta + 180) / CELL_SIZE);
+        int maxLonIndex = (int) Math.floor((entry.longitude + lonDelta + 180) / CELL_SIZE);
+        long count = (long) (maxLatIndex - minLatIndex + 1) * (maxLonIndex - minLonIndex + 1);
+        if (count > MAX_CELLS_PER_FENCE) {
+            return null;
+        }
+        return new int[] { minLatIndex, maxLatIndex, minLonIndex, maxLonIndex };
+    }
+
+    private static int latIndex(double latitude) {
+        return (int) Math.floor((latitude + 90) / CELL_SIZE);
+    }
+
+    private static int lonIndex(double longitude) {
+        return (int) Math.floor((longitude + 180) / CELL_SIZE);
+    }
+
+    private static Long cellKey(int latIndex, int lonIndex) {
+        int lon = lonIndex % LON_CELLS;
+        if (lon < 0) {
+            lon += LON_CELLS;
+        }
+        return (long) latIndex * LON_CELLS + lon;
+    }
+}
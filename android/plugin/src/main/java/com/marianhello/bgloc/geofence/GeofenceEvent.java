@@ -0,0 +1,56 @@
+package com.marianhello.bgloc.geofence;
+
+import com.marianhello.bgloc.data.BackgroundLocation;
+import com.marianhello.bgloc.data.Geofence;
+
+/**
+ * Geofence transition triggered by location
+ */
+public class GeofenceEvent {
+    public static final int ENTER = 1;
+    public static final int EXIT = 2;
+    public static final int DWELL = 4;
+
+    private final Geofence geofence;
+    private final int transition;
+    private final BackgroundLocation location;
+
+    public GeofenceEvent(Geofence geofence, int transition, BackgroundLocation location) {
+        this.geofence = geofence;
+        this.transition = transition;
+        this.location = location;
+    }
+
+    public Geofence getGeofence() {
+        return geofence;
+    }
+
+    /**
+     * @return ENTER, EXIT or DWELL
+     */
+    public int getTransition() {
+        return transition;
+    }
+
+    public BackgroundLocation getLocation() {
+        return location;
+    }
+
+    public static String transitionToString(int transition) {
+        switch (transition) {
+            case ENTER:
+                return "ENTER";
+            case EXIT:
+                return "EXIT";
+            case DWELL:
+                return "DWELL";
+            default:
+                return "UNKNOWN";
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "GeofenceEvent[" + transitionToString(transition) + " " + geofence.getId() + "]";
+    }
+}
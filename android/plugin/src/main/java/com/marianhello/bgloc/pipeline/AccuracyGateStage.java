@@ -0,0 +1,32 @@
+package com.marianhello.bgloc.pipeline;
+
+import com.marianhello.bgloc.data.BackgroundLocation;
+
+import java.util.List;
+
+/**
+ * Drops locations less accurate than maxAccuracy (locations without accuracy are passed)
+ */
+public class AccuracyGateStage extends LocationStage {
+    public static final String NAME = "accuracy";
+
+    private final float maxAccuracy;
+
+    /**
+     * @param maxAccuracy max accepted accuracy in meters, 0 to accept all locations
+     */
+    public AccuracyGateStage(float maxAccuracy) {
+        this.maxAccuracy = maxAccuracy;
+    }
+
+    public String getName() {
+        return NAME;
+    }
+
+    public void process(BackgroundLocation location, List<BackgroundLocation> out) {
+        if (maxAccuracy > 0 && location.hasAccuracy() && location.getAccuracy() > maxAccuracy) {
+            return;
+        }
+        out.add(location);
+    }
+}
@@ -0,0 +1,36 @@
+package com.marianhello.bgloc.pipeline;
+
+import com.marianhello.bgloc.data.BackgroundLocation;
+
+import java.util.List;
+
+/**
+ * Drops location with same time and position as previous passed location
+ *
+ * Providers report same fix more than once (eg. last known location on start
+ * followed by same fix from location updates, or same fix through two location managers).
+ */
+public class DedupStage extends LocationStage {
+    public static final String NAME = "dedup";
+
+    private boolean hasLast = false;
+    private long lastTime;
+    private double lastLatitude;
+    private double lastLongitude;
+
+    public String getName() {
+        return NAME;
+    }
+
+    public void process(BackgroundLocation location, List<BackgroundLocation> out) {
+        if (hasLast && location.getTime() == lastTime
+                && location.getLatitude() == lastLatitude && location.getLongitude() == lastLongitude) {
+            return;
+        }
+        hasLast = true;
+        lastTime = location.getTime();
+        lastLatitude = location.getLatitude();
+        lastLongitude = location.getLongitude();
+        out.add(location);
+    }
+}
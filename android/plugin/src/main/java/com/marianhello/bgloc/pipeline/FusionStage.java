@@ -0,0 +1,107 @@
+package com.marianhello.bgloc.pipeline;
+
+import com.marianhello.bgloc.Geodesy;
+import com.marianhello.bgloc.data.BackgroundLocation;
+
+import java.util.List;
+
+/**
+ * Fuses locations of multiple providers arriving within time window into single location
+ *
+ * Window starts with first location and spans given time (by location time). Better location
+ * of window (BackgroundLocation.isBetterLocation, but never less accurate one) is kept. When location of other provider
+ * is consistent with it (distance within sum of accuracies), their positions are merged weighted
+ * by inverse accuracy variance and accuracy of kept location is improved accordingly.
+ * Locations of same provider are not merged, they are taken at different positions when moving.
+ * Window is emitted when first location after it arrives, when its deadline passes (see expire)
+ * or on flush, so at most one location is held back for at most window length.
+ */
+public class FusionStage extends LocationStage {
+    public static final String NAME = "fusion";
+
+    private final long window;
+    private BackgroundLocation best;
+    private long windowStart;
+
+    /**
+     * @param window window length in millis, 0 to pass all locations
+     */
+    public FusionStage(long window) {
+        this.window = window;
+    }
+
+    public String getName() {
+        return NAME;
+    }
+
+    public void process(BackgroundLocation location, List<BackgroundLocation> out) {
+        if (window <= 0) {
+            out.add(location);
+            return;
+        }
+        if (best != null && location.getTime() - windowStart < window) {
+            if (isBetterInWindow(location, best)) {
+                merge(location, best);
+                best = location;
+            } else {
+                merge(best, location);
+            }
+            return;
+        }
+        if (best != null) {
+            out.add(best);
+        }
+        best = location;
+        windowStart = location.getTime();
+    }
+
+    public long getHoldDeadline() {
+        return best != null ? windowStart + window : Long.MAX_VALUE;
+    }
+
+    public void flush(List<BackgroundLocation> out) {
+        if (best != null) {
+            out.add(best);
+            best = null;
+        }
+    }
+
+    /**
+     * Within short window being newer is no advantage, so less accurate location never wins
+     */
+    private static boolean isBetterInWindow(BackgroundLocation location, BackgroundLocation best) {
+        if (location.hasAccuracy() && best.hasAccuracy() && location.getAccuracy() > best.getAccuracy()) {
+            return false;
+        }
+        return BackgroundLocation.isBetterLocation(location, best);
+    }
+
+    /**
+     * Move target towards other location when both are consistent
+     *
+     * @param target location to be updated
+     * @param other
+     */
+    private static void merge(BackgroundLocation target, BackgroundLocation other) {
+        if (!target.hasAccuracy() || !other.hasAccuracy()) {
+            return;
+        }
+        if (target.getProvider() == null ? other.getProvider() == null : target.getProvider().equals(other.getProvider())) {
+            return;
+        }
+        double targetAccuracy = Math.max(1, target.getAccuracy());
+        double otherAccuracy = Math.max(1, other.getAccuracy());
+        double distance = Geodesy.distance(target.getLatitude(), target.getLongitude(),
+                other.getLatitude(), other.getLongitude());
+        if (distance > targetAccuracy + otherAccuracy) {
+            return; // disagree, keep better location as is
+        }
+
+        double targetWeight = 1 / (targetAccuracy * targetAccuracy);
+        double otherWeight = 1 / (otherAccuracy * otherAccuracy);
+        double ratio = otherWeight / (targetWeight + otherWeight);
+        target.setLatitude(target.getLatitude() + ratio * (other.getLatitude() - target.getLatitude()));
+        target.setLongitude(target.getLongitude() + ratio * (other.getLongitude() - target.getLongitude()));
+        target.setAccuracy((float) Math.sqrt(1 / (targetWeight + otherWeight)));
+    }
+}
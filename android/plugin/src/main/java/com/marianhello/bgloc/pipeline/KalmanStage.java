@@ -0,0 +1,146 @@
+package com.marianhello.bgloc.pipeline;
+
+import com.marianhello.bgloc.Geodesy;
+import com.marianhello.bgloc.data.BackgroundLocation;
+
+import java.util.List;
+
+/**
+ * Smooths locations with constant velocity Kalman filter
+ *
+ * Position is filtered in local plane (meters east and north of reference point) with
+ * independent filter per axis, state is position and velocity. Reported accuracy is used
+ * as measurement noise, so inaccurate fixes move estimate less than accurate ones.
+ * Filtered position, speed and bearing are written into passed location (no allocation).
+ * Locations without accuracy or older than previous one pass unchanged.
+ */
+public class KalmanStage extends LocationStage {
+    public static final String NAME = "kalman";
+
+    /** filter restarts when there was no location for longer time */
+    public static final long MAX_GAP_MILLIS = 5 * 60 * 1000;
+    /** bearing is reported only when estimated speed is at least this (m/s) */
+    public static final float MIN_BEARING_SPEED = 0.5f;
+
+    /** reference point is moved when estimate gets further, keeps local plane approximation exact enough */
+    private static final double MAX_REFERENCE_DISTANCE = 10000;
+    /** initial velocity variance (m/s)^2 */
+    private static final double INITIAL_VELOCITY_VARIANCE = 100;
+
+    private final double accelerationVariance;
+
+    private boolean initialized = false;
+    private long lastTime;
+    private double referenceLatitude;
+    private double referenceLongitude;
+    private double metersPerDegreeLongitude;
+
+    // east axis: position, velocity, covariance
+    private double x, vx, pxx, pxv, pvvx;
+    // north axis
+    private double y, vy, pyy, pyv, pvvy;
+
+    /**
+     * @param processNoise standard deviation of acceleration in m/s^2 (higher follows turns faster, smooths less)
+     */
+    public KalmanStage(float processNoise) {
+        this.accelerationVariance = (double) processNoise * processNoise;
+    }
+
+    public String getName() {
+        return NAME;
+    }
+
+    public void process(BackgroundLocation location, List<BackgroundLocation> out) {
+        out.add(location);
+        if (!location.hasAccuracy()) {
+            return;
+        }
+
+        long time = location.getTime();
+        double variance = Math.max(1, (double) location.getAccuracy() * location.getAccuracy());
+        if (!initialized || time - lastTime > MAX_GAP_MILLIS) {
+            reset(location, variance);
+            return;
+        }
+        if (time <= lastTime) {
+            return;
+        }
+
+        double dt = (time - lastTime) / 1000d;
+        lastTime = time;
+        double zx = (location.getLongitude() - referenceLongitude) * metersPerDegreeLongitude;
+        double zy = (location.getLatitude() - referenceLatitude) * Geodesy.METERS_PER_DEGREE;
+
+        // predict
+        double dt2 = dt * dt;
+        double q00 = accelerationVariance * dt2 * dt2 / 4;
+        double q01 = accelerationVariance * dt2 * dt / 2;
+        double q11 = accelerationVariance * dt2;
+
+        x += vx * dt;
+        pxx += 2 * dt * pxv + dt2 * pvvx + q00;
+        pxv += dt * pvvx + q01;
+        pvvx += q11;
+
+        y += vy * dt;
+        pyy += 2 * dt * pyv + dt2 * pvvy + q00;
+        pyv += dt * pvvy + q01;
+        pvvy += q11;
+
+        // update
+        double s = pxx + variance;
+        double k0 = pxx / s;
+        double k1 = pxv / s;
+        double residual = zx - x;
+        x += k0 * residual;
+        vx += k1 * residual;
+        pvvx -= k1 * pxv;
+        pxv -= k0 * pxv;
+        pxx -= k0 * pxx;
+
+        s = pyy + variance;
+        k0 = pyy / s;
+        k1 = pyv / s;
+        residual = zy - y;
+        y += k0 * residual;
+        vy += k1 * residual;
+        pvvy -= k1 * pyv;
+        pyv -= k0 * pyv;
+        pyy -= k0 * pyy;
+
+        location.setLatitude(referenceLatitude + y / Geodesy.METERS_PER_DEGREE);
+        location.setLongitude(referenceLongitude + x / metersPerDegreeLongitude);
+        float speed = (float) Math.sqrt(vx * vx + vy * vy);
+        location.setSpeed(speed);
+        if (speed >= MIN_BEARING_SPEED) {
+            float bearing = (float) Math.toDegrees(Math.atan2(vx, vy));
+            location.setBearing(bearing < 0 ? bearing + 360 : bearing);
+        }
+
+        if (Math.abs(x) > MAX_REFERENCE_DISTANCE || Math.abs(y) > MAX_REFERENCE_DISTANCE) {
+            setReference(location.getLatitude(), location.getLongitude());
+            x = 0;
+            y = 0;
+        }
+    }
+
+    private void reset(BackgroundLocation location, double variance) {
+        initialized = true;
+        lastTime = location.getTime();
+        setReference(location.getLatitude(), location.getLongitude());
+        x = 0;
+        y = 0;
+        vx = 0;
+        vy = 0;
+        pxx = pyy = variance;
+        pxv = pyv = 0;
+        pvvx = pvvy = INITIAL_VELOCITY_VARIANCE;
+    }
+
+    private void setReference(double latitude, double longitude) {
+        referenceLatitude = latitude;
+        referenceLongitude = longitude;
+        metersPerDegreeLongitude = Geodesy.metersPerDegreeLongitude(latitude);
+    }
+}
@@ -0,0 +1,152 @@
+package com.marianhello.bgloc.pipeline;
+
+import com.marianhello.bgloc.data.BackgroundLocation;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Chain of location stages between location providers and location service
+ *
+ * Every location recorded by provider passes all stages before it is persisted, uploaded
+ * and posted to clients, so filtering is done once for all providers.
+ * Stages pass locations through lists reused for every location, so processing location
+ * allocates nothing once lists have grown. Time spent in each stage is measured separately
+ * (excluding following stages).
+ *
+ * Stages holding locations back (eg. fusion window) report deadline, owner of pipeline
+ * calls expire when no location arrived until then, so held back locations are not delayed
+ * until next location.
+ */
+public class LocationPipeline {
+
+    public interface Sink {
+        /**
+         * @param location location which passed all stages
+         */
+        void onLocation(BackgroundLocation location);
+    }
+
+    private static final int RUN_PROCESS = 0;
+    private static final int RUN_FLUSH = 1;
+    private static final int RUN_EXPIRE = 2;
+
+    private final LocationStage[] stages;
+    private final StageStats[] stats;
+    private final List<List<BackgroundLocation>> buffers;
+    private final ArrayList<BackgroundLocation> input = new ArrayList<BackgroundLocation>(1);
+    private final Sink sink;
+
+    public LocationPipeline(List<LocationStage> stages, Sink sink) {
+        this.stages = stages.toArray(new LocationStage[stages.size()]);
+        this.stats = new StageStats[this.stages.length];
+        this.buffers = new ArrayList<List<BackgroundLocation>>(this.stages.length);
+        for (int i = 0; i < this.stages.length; i++) {
+            stats[i] = new StageStats(this.stages[i].getName());
+            buffers.add(new ArrayList<BackgroundLocation>(4));
+        }
+        this.sink = sink;
+    }
+
+    /**
+     * Pass location through all stages to sink
+     *
+     * @param location
+     */
+    public synchronized void process(BackgroundLocation location) {
+        input.add(location);
+        run(0, input, RUN_PROCESS);
+        input.clear();
+    }
+
+    /**
+     * Pass locations held back by stages to sink, stages are flushed in order,
+     * so output of flushed stage is processed by following stages before they are flushed
+     */
+    public synchronized void flush() {
+        for (int i = 0; i < stages.length; i++) {
+            run(i, input, RUN_FLUSH);
+        }
+    }
+
+    /**
+     * @return earliest hold deadline (location time) of stages, Long.MAX_VALUE when no location is held back
+     */
+    public synchronized long getHoldDeadline() {
+        long deadline = Long.MAX_VALUE;
+        for (LocationStage stage : stages) {
+            deadline = Math.min(deadline, stage.getHoldDeadline());
+        }
+        return deadline;
+    }
+
+    /**
+     * Pass locations held back by stages past their deadline to sink
+     *
+     * @param time current location time
+     */
+    public synchronized void expire(long time) {
+        for (int i = 0; i < stages.length; i++) {
+            if (stages[i].getHoldDeadline() <= time) {
+                run(i, input, RUN_EXPIRE);
+            }
+        }
+    }
+
+    private void run(int from, List<BackgroundLocation> locations, int mode) {
+        List<BackgroundLocation> current = locations;
+        for (int i = from; i < stages.length; i++) {
+            List<BackgroundLocation> out = buffers.get(i);
+            out.clear();
+            long start = System.nanoTime();
+            for (int j = 0, size = current.size(); j < size; j++) {
+                stages[i].process(current.get(j), out);
+            }
+            if (i == from && mode == RUN_FLUSH) {
+                stages[i].flush(out);
+            } else if (i == from && mode == RUN_EXPIRE) {
+                stages[i].expire(out);
+            }
+            stats[i].record(current.size(), out.size(), System.nanoTime() - start);
+            if (current != locations) {
+                current.clear();
+            }
+            current = out;
+            if (current.isEmpty()) {
+                return; // dropped, following stages are not called at all
+            }
+        }
+        for (int j = 0, size = current.size(); j < size; j++) {
+            sink.onLocation(current.get(j));
+        }
+        if (current != locations) {
+            current.clear();
+        }
+    }
+
+    /**
+     * Pass detected activity to all stages
+     *
+     * @param activity DetectedActivity type
+     */
+    public synchronized void onActivity(int activity) {
+        for (LocationStage stage : stages) {
+            stage.onActivity(activity);
+        }
+    }
+
+    public LocationStage[] getStages() {
+        return stages.clone();
+    }
+
+    /**
+     * @return snapshot of per stage stats in stage order
+     */
+    public synchronized List<StageStats> getStats() {
+        List<StageStats> snapshot = new ArrayList<StageStats>(stats.length);
+        for (StageStats stageStats : stats) {
+            snapshot.add(new StageStats(stageStats));
+        }
+        return snapshot;
+    }
+}
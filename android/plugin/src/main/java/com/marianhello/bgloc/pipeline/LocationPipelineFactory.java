@@ -0,0 +1,74 @@
+package com.marianhello.bgloc.pipeline;
+
+import com.marianhello.bgloc.Config;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+public abstract class LocationPipelineFactory {
+    /** config options pipeline is created from */
+    public static final List<String> OPTIONS = Collections.unmodifiableList(Arrays.asList(
+            "pipeline", "maxAccuracy", "throttleInterval", "kalmanProcessNoise", "simplifyTolerance", "fusionWindow"));
+
+    /**
+     * @param config
+     * @param sink receiver of processed locations
+     * @return pipeline of stages listed by pipeline config option (unknown stages are skipped)
+     */
+    public static LocationPipeline createPipeline(Config config, LocationPipeline.Sink sink) {
+        List<LocationStage> stages = new ArrayList<LocationStage>();
+        for (String name : config.getPipeline()) {
+            LocationStage stage = createStage(name, config);
+            if (stage != null) {
+                stages.add(stage);
+            }
+        }
+        return new LocationPipeline(stages, sink);
+    }
+
+    /**
+     * @param name stage name
+     * @param config
+     * @return stage or null for unknown stage name
+     */
+    public static LocationStage createStage(String name, Config config) {
+        if (AccuracyGateStage.NAME.equals(name)) {
+            return new AccuracyGateStage(config.getMaxAccuracy());
+        }
+        if (DedupStage.NAME.equals(name)) {
+            return new DedupStage();
+        }
+        if (ThrottleStage.NAME.equals(name)) {
+            return new ThrottleStage(config.getThrottleInterval());
+        }
+        if (KalmanStage.NAME.equals(name)) {
+            return new KalmanStage(config.getKalmanProcessNoise());
+        }
+        if (SimplifyStage.NAME.equals(name)) {
+            return new SimplifyStage(config.getSimplifyTolerance());
+        }
+        if (OutlierStage.NAME.equals(name)) {
+            return new OutlierStage();
+        }
+        if (FusionStage.NAME.equals(name)) {
+            return new FusionStage(config.getFusionWindow());
+        }
+        return null;
+    }
+
+    /**
+     * @param changedOptions options changed since pipeline was created (see Config.diff)
+     * @return true when pipeline has to be recreated
+     */
+    public static boolean isAffected(Set<String> changedOptions) {
+        for (String option : OPTIONS) {
+            if (changedOptions.contains(option)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,60 @@
+package com.marianhello.bgloc.pipeline;
+
+import com.marianhello.bgloc.data.BackgroundLocation;
+
+import java.util.List;
+
+/**
+ * Single step of location pipeline
+ *
+ * Stage receives locations one by one and adds locations it accepts (or derives) to output list.
+ * Output list is owned and reused by pipeline, so stages must not keep reference to it.
+ * Stages are called from single thread and should not allocate per location.
+ */
+public abstract class LocationStage {
+
+    /**
+     * @return stage name as used in pipeline config option
+     */
+    public abstract String getName();
+
+    /**
+     * @param location location from previous stage
+     * @param out locations to pass to next stage (none when location is dropped)
+     */
+    public abstract void process(BackgroundLocation location, List<BackgroundLocation> out);
+
+    /**
+     * Add locations held back by stage (if any) to output, called when tracking stops
+     *
+     * @param out locations to pass to next stage
+     */
+    public void flush(List<BackgroundLocation> out) {
+    }
+
+    /**
+     * @return location time until which stage may hold back locations it holds now,
+     *         Long.MAX_VALUE when it holds none
+     */
+    public long getHoldDeadline() {
+        return Long.MAX_VALUE;
+    }
+
+    /**
+     * Add locations held back past hold deadline to output, called when no location
+     * arrived to release them in time. Same as flush by default.
+     *
+     * @param out locations to pass to next stage
+     */
+    public void expire(List<BackgroundLocation> out) {
+        flush(out);
+    }
+
+    /**
+     * Called when activity recognition detects new activity
+     *
+     * @param activity DetectedActivity type
+     */
+    public void onActivity(int activity) {
+    }
+}
@@ -0,0 +1,185 @@
+package com.marianhello.bgloc.pipeline;
+
+import com.google.android.gms.location.DetectedActivity;
+import com.marianhello.bgloc.Geodesy;
+import com.marianhello.bgloc.data.BackgroundLocation;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Drops locations implying physically implausible movement
+ *
+ * Location is compared with short window of recently accepted locations. Implied speed
+ * is distance reduced by ACCURACY_FACTOR times combined accuracy of both locations divided
+ * by time between them, so location noise alone almost never exceeds limits.
+ * Location is rejected when implied speed exceeds limit of detected activity for majority
+ * of window, or when it implies acceleration over limit from speed over the window
+ * (catches network provider "teleports" into GPS track).
+ * After MAX_CONSECUTIVE_REJECTS rejections in row the window is restarted from rejected
+ * location, so single bad accepted location cannot lock the stage out.
+ * Last MAX_REJECTED rejected locations are kept for diagnostics.
+ */
+public class OutlierStage extends LocationStage {
+    public static final String NAME = "outlier";
+
+    public static final int WINDOW = 5;
+    public static final int MAX_CONSECUTIVE_REJECTS = 5;
+    public static final int MAX_REJECTED = 20;
+
+    /** distance within this multiple of combined accuracy can be noise (exceeded with probability exp(-factor^2)) */
+    private static final double ACCURACY_FACTOR = 3;
+    /** locations closer in time are compared as if they were this far apart (seconds) */
+    private static final double MIN_TIME_DELTA = 1;
+
+    // accepted locations, ring buffer
+    private final double[] latitudes = new double[WINDOW];
+    private final double[] longitudes = new double[WINDOW];
+    private final double[] accuracies = new double[WINDOW];
+    private final long[] times = new long[WINDOW];
+    private int head = 0; // index of newest
+    private int size = 0;
+    private double windowSpeed = 0;
+    private int consecutiveRejects = 0;
+
+    private float maxSpeed;
+    private float maxAcceleration;
+
+    private final BackgroundLocation[] rejected = new BackgroundLocation[MAX_REJECTED];
+    private int rejectedHead = 0;
+    private long rejectedBySpeed = 0;
+    private long rejectedByAcceleration = 0;
+
+    public OutlierStage() {
+        onActivity(DetectedActivity.UNKNOWN);
+    }
+
+    public String getName() {
+        return NAME;
+    }
+
+    /**
+     * Set speed (m/s) and acceleration (m/s^2) limits for detected activity.
+     * Unknown and still activities get vehicle limits, as activity detection lags behind.
+     */
+    @Override
+    public void onActivity(int activity) {
+        switch (activity) {
+            case DetectedActivity.ON_FOOT:
+            case DetectedActivity.WALKING:
+                maxSpeed = 7;
+                maxAcceleration = 3;
+                break;
+            case DetectedActivity.RUNNING:
+                maxSpeed = 12;
+                maxAcceleration = 5;
+                break;
+            case DetectedActivity.ON_BICYCLE:
+                maxSpeed = 25;
+                maxAcceleration = 4;
+                break;
+            case DetectedActivity.IN_VEHICLE:
+                maxSpeed = 70;
+                maxAcceleration = 8;
+                break;
+            default:
+                maxSpeed = 70;
+                maxAcceleration = 10;
+        }
+    }
+
+    public void process(BackgroundLocation location, List<BackgroundLocation> out) {
+        double latitude = location.getLatitude();
+        double longitude = location.getLongitude();
+        double accuracy = location.hasAccuracy() ? location.getAccuracy() : 0;
+        long time = location.getTime();
+
+        if (size > 0 && consecutiveRejects < MAX_CONSECUTIVE_REJECTS) {
+            int implausible = 0;
+            double newestSpeed = 0;
+            for (int i = 0; i < size; i++) {
+                int index = (head - i + WINDOW) % WINDOW;
+                double speed = impliedSpeed(index, latitude, longitude, accuracy, time);
+                if (speed > maxSpeed) {
+                    implausible++;
+                }
+                if (i == 0) {
+                    newestSpeed = speed;
+                }
+            }
+            if (implausible * 2 > size) {
+                reject(location, true);
+                return;
+            }
+            if (size > 1) {
+                double dt = Math.max(MIN_TIME_DELTA, (time - times[head]) / 1000d);
+                if ((newestSpeed - windowSpeed) / dt > maxAcceleration) {
+                    reject(location, false);
+                    return;
+                }
+            }
+        } else if (size > 0) {
+            size = 0; // restart from this location
+        }
+
+        consecutiveRejects = 0;
+        head = (head + 1) % WINDOW;
+        latitudes[head] = latitude;
+        longitudes[head] = longitude;
+        accuracies[head] = accuracy;
+        times[head] = time;
+        if (size < WINDOW) {
+            size++;
+        }
+        if (size > 1) {
+            int oldest = (head - size + 1 + WINDOW) % WINDOW;
+            windowSpeed = impliedSpeed(oldest, latitude, longitude, accuracy, time);
+        }
+        out.add(location);
+    }
+
+    /**
+     * @return speed in m/s from accepted location at index to given position (at least 0)
+     */
+    private double impliedSpeed(int index, double latitude, double longitude, double accuracy, long time) {
+        double margin = ACCURACY_FACTOR * Math.sqrt(accuracy * accuracy + accuracies[index] * accuracies[index]);
+        double distance = Geodesy.distance(latitudes[index], longitudes[index], latitude, longitude) - margin;
+        if (distance <= 0) {
+            return 0;
+        }
+        return distance / Math.max(MIN_TIME_DELTA, (time - times[index]) / 1000d);
+    }
+
+    private synchronized void reject(BackgroundLocation location, boolean bySpeed) {
+        if (bySpeed) {
+            rejectedBySpeed++;
+        } else {
+            rejectedByAcceleration++;
+        }
+        consecutiveRejects++;
+        rejected[rejectedHead] = location;
+        rejectedHead = (rejectedHead + 1) % MAX_REJECTED;
+    }
+
+    /**
+     * @return last rejected locations, oldest first
+     */
+    public synchronized List<BackgroundLocation> getRejected() {
+        List<BackgroundLocation> locations = new ArrayList<BackgroundLocation>(MAX_REJECTED);
+        for (int i = 0; i < MAX_REJECTED; i++) {
+            BackgroundLocation location = rejected[(rejectedHead + i) % MAX_REJECTED];
+            if (location != null) {
+                locations.add(location);
+            }
+        }
+        return locations;
+    }
+
+    public synchronized long getRejectedBySpeed() {
+        return rejectedBySpeed;
+    }
+
+    public synchronized long getRejectedByAcceleration() {
+        return rejectedByAcceleration;
+    }
+}
@@ -0,0 +1,156 @@
+package com.marianhello.bgloc.pipeline;
+
+import com.marianhello.bgloc.Geodesy;
+import com.marianhello.bgloc.data.BackgroundLocation;
+
+import java.util.List;
+
+/**
+ * Drops locations which do not change route shape (streaming sliding window simplification)
+ *
+ * Last passed location is anchor. Following locations are held in window as long as all of them
+ * are within tolerance of straight segment from anchor to newest location. When newest location
+ * does not fit, location before it is passed and becomes new anchor. Every dropped location is
+ * within tolerance of segment between passed locations surrounding it.
+ * Window is limited to MAX_WINDOW locations and maxHoldMillis (see expire), so location is held back
+ * at most that many fixes and that long. Newest held location is then passed and becomes new anchor.
+ */
+public class SimplifyStage extends LocationStage {
+    public static final String NAME = "simplify";
+
+    /** max number of held back locations */
+    public static final int MAX_WINDOW = 64;
+
+    /** default max time location is held back */
+    public static final long MAX_HOLD_MILLIS = 10000;
+
+    private final double tolerance;
+    private final long maxHoldMillis;
+
+    private BackgroundLocation anchor;
+    private double anchorLatitude;
+    private double anchorLongitude;
+    private double metersPerDegreeLongitude;
+    // held back locations and their position in meters east and north of anchor
+    private final BackgroundLocation[] window = new BackgroundLocation[MAX_WINDOW];
+    private final double[] xs = new double[MAX_WINDOW];
+    private final double[] ys = new double[MAX_WINDOW];
+    private int size = 0;
+
+    /**
+     * @param tolerance max distance in meters of dropped location from simplified route, 0 to pass all locations
+     */
+    public SimplifyStage(float tolerance) {
+        this(tolerance, MAX_HOLD_MILLIS);
+    }
+
+    /**
+     * @param tolerance max distance in meters of dropped location from simplified route, 0 to pass all locations
+     * @param maxHoldMillis max time in millis location is held back, 0 for no limit
+     */
+    public SimplifyStage(float tolerance, long maxHoldMillis) {
+        this.tolerance = tolerance;
+        this.maxHoldMillis = maxHoldMillis;
+    }
+
+    public String getName() {
+        return NAME;
+    }
+
+    public void process(BackgroundLocation location, List<BackgroundLocation> out) {
+        if (tolerance <= 0) {
+            out.add(location);
+            return;
+        }
+        if (anchor == null) {
+            setAnchor(location, out);
+            return;
+        }
+        if (location.getTime() >= getHoldDeadline()) {
+            expire(out);
+        }
+
+        double x = (location.getLongitude() - anchorLongitude) * metersPerDegreeLongitude;
+        double y = (location.getLatitude() - anchorLatitude) * Geodesy.METERS_PER_DEGREE;
+        if (!fits(x, y)) {
+            // size > 0, otherwise nothing to check against
+            BackgroundLocation last = window[size - 1];
+            clearWindow();
+            setAnchor(last, out);
+            x = (location.getLongitude() - anchorLongitude) * metersPerDegreeLongitude;
+            y = (location.getLatitude() - anchorLatitude) * Geodesy.METERS_PER_DEGREE;
+        }
+
+        window[size] = location;
+        xs[size] = x;
+        ys[size] = y;
+        size++;
+
+        if (size == MAX_WINDOW) {
+            clearWindow();
+            setAnchor(location, out);
+        }
+    }
+
+    public long getHoldDeadline() {
+        return size > 0 && maxHoldMillis > 0 ? window[0].getTime() + maxHoldMillis : Long.MAX_VALUE;
+    }
+
+    /**
+     * Pass newest held location as new anchor, all held locations are within tolerance
+     * of segment from anchor to it
+     */
+    public void expire(List<BackgroundLocation> out) {
+        if (size > 0) {
+            BackgroundLocation last = window[size - 1];
+            clearWindow();
+            setAnchor(last, out);
+        }
+    }
+
+    public void flush(List<BackgroundLocation> out) {
+        if (size > 0) {
+            out.add(window[size - 1]);
+        }
+        clearWindow();
+        anchor = null;
+    }
+
+    /**
+     * @return true when all held back locations are within tolerance of segment from anchor to x, y
+     */
+    private boolean fits(double x, double y) {
+        double lengthSquared = x * x + y * y;
+        for (int i = 0; i < size; i++) {
+            double px = xs[i];
+            double py = ys[i];
+            double t = lengthSquared == 0 ? 0 : (px * x + py * y) / lengthSquared;
+            if (t < 0) {
+                t = 0;
+            } else if (t > 1) {
+                t = 1;
+            }
+            double dx = px - t * x;
+            double dy = py - t * y;
+            if (dx * dx + dy * dy > tolerance * tolerance) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void setAnchor(BackgroundLocation location, List<BackgroundLocation> out) {
+        anchor = location;
+        anchorLatitude = location.getLatitude();
+        anchorLongitude = location.getLongitude();
+        metersPerDegreeLongitude = Geodesy.metersPerDegreeLongitude(anchorLatitude);
+        out.add(location);
+    }
+
+    private void clearWindow() {
+        for (int i = 0; i < size; i++) {
+            window[i] = null;
+        }
+        size = 0;
+    }
+}
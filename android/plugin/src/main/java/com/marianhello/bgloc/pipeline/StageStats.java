@@ -0,0 +1,91 @@
+package com.marianhello.bgloc.pipeline;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Counters and timings of single pipeline stage
+ */
+public class StageStats {
+    private final String name;
+    private long received = 0;
+    private long emitted = 0;
+    private long totalNanos = 0;
+    private long maxNanos = 0;
+
+    public StageStats(String name) {
+        this.name = name;
+    }
+
+    public StageStats(StageStats stats) {
+        this.name = stats.name;
+        this.received = stats.received;
+        this.emitted = stats.emitted;
+        this.totalNanos = stats.totalNanos;
+        this.maxNanos = stats.maxNanos;
+    }
+
+    void record(int received, int emitted, long nanos) {
+        this.received += received;
+        this.emitted += emitted;
+        this.totalNanos += nanos;
+        if (nanos > maxNanos) {
+            maxNanos = nanos;
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public long getReceived() {
+        return received;
+    }
+
+    public long getEmitted() {
+        return emitted;
+    }
+
+    /**
+     * @return number of dropped locations (negative when stage emits more than receives)
+     */
+    public long getDropped() {
+        return received - emitted;
+    }
+
+    public long getTotalNanos() {
+        return totalNanos;
+    }
+
+    public long getMaxNanos() {
+        return maxNanos;
+    }
+
+    public long getAverageNanos() {
+        return received > 0 ? totalNanos / received : 0;
+    }
+
+    public JSONObject toJSONObject() throws JSONException {
+        JSONObject json = new JSONObject();
+        json.put("name", name);
+        json.put("received", received);
+        json.put("emitted", emitted);
+        json.put("dropped", getDropped());
+        json.put("totalNanos", totalNanos);
+        json.put("averageNanos", getAverageNanos());
+        json.put("maxNanos", maxNanos);
+        return json;
+    }
+
+    @Override
+    public String toString() {
+        return new StringBuilder()
+                .append("StageStats[name=").append(name)
+                .append(" received=").append(received)
+                .append(" emitted=").append(emitted)
+                .append(" averageNanos=").append(getAverageNanos())
+                .append(" maxNanos=").append(maxNanos)
+                .append("]")
+                .toString();
+    }
+}
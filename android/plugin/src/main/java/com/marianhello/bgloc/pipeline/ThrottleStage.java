@@ -0,0 +1,36 @@
+package com.marianhello.bgloc.pipeline;
+
+import com.marianhello.bgloc.data.BackgroundLocation;
+
+import java.util.List;
+
+/**
+ * Passes at most one location per interval (by location time)
+ */
+public class ThrottleStage extends LocationStage {
+    public static final String NAME = "throttle";
+
+    private final long minInterval;
+    private boolean hasLast = false;
+    private long lastTime;
+
+    /**
+     * @param minInterval min time between passed locations in millis, 0 to pass all locations
+     */
+    public ThrottleStage(long minInterval) {
+        this.minInterval = minInterval;
+    }
+
+    public String getName() {
+        return NAME;
+    }
+
+    public void process(BackgroundLocation location, List<BackgroundLocation> out) {
+        if (minInterval > 0 && hasLast && location.getTime() - lastTime < minInterval) {
+            return;
+        }
+        hasLast = true;
+        lastTime = location.getTime();
+        out.add(location);
+    }
+}
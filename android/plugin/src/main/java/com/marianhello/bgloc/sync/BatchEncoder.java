@@ -0,0 +1,35 @@
+package com.marianhello.bgloc.sync;
+
+import android.database.Cursor;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Encodes location rows of cursor into batch file content
+ *
+ * Cursor must contain columns of LocationEntry as queried by BatchManager.
+ */
+public interface BatchEncoder {
+    /**
+     * @return value of Content-Type header of uploaded batch
+     */
+    String getContentType();
+
+    /**
+     * @return batch file name suffix (eg. ".json")
+     */
+    String getFileExtension();
+
+    /**
+     * Encode all remaining rows of cursor into stream
+     *
+     * Stream is flushed, but not closed.
+     *
+     * @param cursor
+     * @param out
+     * @return number of encoded rows
+     * @throws IOException
+     */
+    int encode(Cursor cursor, OutputStream out) throws IOException;
+}
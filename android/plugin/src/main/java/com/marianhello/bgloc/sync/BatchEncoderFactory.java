@@ -0,0 +1,14 @@
+package com.marianhello.bgloc.sync;
+
+public abstract class BatchEncoderFactory {
+    /**
+     * @param encoding batchEncoding config option ("json" or "binary")
+     * @return batch encoder, json encoder for unknown encoding
+     */
+    public static BatchEncoder createEncoder(String encoding) {
+        if (BinaryBatchEncoder.NAME.equals(encoding)) {
+            return new BinaryBatchEncoder();
+        }
+        return new JsonBatchEncoder();
+    }
+}
@@ -3,23 +3,75 @@ package com.marianhello.bgloc.sync;
 import android.content.ContentValues;
 import android.content.Context;
 import android.database.Cursor;
+import android.database.DatabaseUtils;
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteQueryBuilder;
+import android.database.sqlite.SQLiteStatement;
 import android.text.TextUtils;
-import android.util.JsonWriter;
 
 import com.marianhello.bgloc.data.sqlite.SQLiteLocationContract;
+import com.marianhello.bgloc.data.sqlite.SQLiteLocationContract.BatchChunkEntry;
+import com.marianhello.bgloc.data.sqlite.SQLiteLocationContract.LocationEntry;
+import com.marianhello.bgloc.data.sqlite.SQLiteLocationDAO;
 import com.marianhello.bgloc.data.sqlite.SQLiteOpenHelper;
 import com.marianhello.logging.LoggerManager;
 
+import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.OutputStreamWriter;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
 
 /**
  * Created by finch on 20/07/16.
  */
-public class BatchManager {
+public class BatchManager implements BatchStore {
+    private static final int BUFFER_SIZE = 16 * 1024;
+
+    static final String[] BATCH_COLUMNS = {
+            SQLiteLocationContract.LocationEntry._ID,
+            SQLiteLocationContract.LocationEntry.COLUMN_NAME_PROVIDER,
+            SQLiteLocationContract.LocationEntry.COLUMN_NAME_TIME,
+            SQLiteLocationContract.LocationEntry.COLUMN_NAME_LATITUDE,
+            SQLiteLocationContract.LocationEntry.COLUMN_NAME_LONGITUDE,
+            SQLiteLocationContract.LocationEntry.COLUMN_NAME_ACCURACY,
+            SQLiteLocationContract.LocationEntry.COLUMN_NAME_SPEED,
+            SQLiteLocationContract.LocationEntry.COLUMN_NAME_BEARING,
+            SQLiteLocationContract.LocationEntry.COLUMN_NAME_ALTITUDE,
+            SQLiteLocationContract.LocationEntry.COLUMN_NAME_RADIUS,
+            SQLiteLocationContract.LocationEntry.COLUMN_NAME_HAS_ACCURACY,
+            SQLiteLocationContract.LocationEntry.COLUMN_NAME_HAS_SPEED,
+            SQLiteLocationContract.LocationEntry.COLUMN_NAME_HAS_BEARING,
+            SQLiteLocationContract.LocationEntry.COLUMN_NAME_HAS_ALTITUDE,
+            SQLiteLocationContract.LocationEntry.COLUMN_NAME_HAS_RADIUS,
+            SQLiteLocationContract.LocationEntry.COLUMN_NAME_LOCATION_PROVIDER
+    };
+
+    // batch_seq of locations in batch created by createBatch (not split into chunks)
+    private static final int SINGLE_FILE_SEQ = -1;
+
+    // locations not yet synced nor assigned to batch being synced (args: valid, batchStartMillis)
+    private static final String PENDING_WHERE_CLAUSE = SQLiteLocationDAO.SYNC_QUEUE_WHERE_CLAUSE;
+
+    public static final String SQL_PENDING_LOCATION_IDS = TextUtils.join("", new String[]{
+            "SELECT ", LocationEntry._ID, " FROM ", LocationEntry.TABLE_NAME,
+            " WHERE ", PENDING_WHERE_CLAUSE, " ORDER BY ", LocationEntry.COLUMN_NAME_TIME, " ASC"
+    });
+
+    // locations of batch chunk (args: batchStartMillis, batchSeq)
+    public static final String CHUNK_WHERE_CLAUSE = LocationEntry.COLUMN_NAME_BATCH_START_MILLIS + " = ? AND " +
+            LocationEntry.COLUMN_NAME_BATCH_SEQ + " = ?";
+
+    // unary + keeps valid out of index selection, otherwise planner prefers
+    // sync_queue_idx (valid) over far more selective batch_idx (batch_start, batch_seq)
+    public static final String SQL_CHUNK_LOCATIONS = SQLiteQueryBuilder.buildQueryString(false,
+            LocationEntry.TABLE_NAME, BATCH_COLUMNS,
+            "+" + LocationEntry.COLUMN_NAME_VALID + " = 1 AND " + CHUNK_WHERE_CLAUSE,
+            null, null, LocationEntry.COLUMN_NAME_TIME + " ASC", null);
+
     private Context context;
     private org.slf4j.Logger log;
 
@@ -29,118 +81,59 @@ public class BatchManager {
     }
 
     public File createBatch(Long batchStartMillis, Integer syncThreshold) throws IOException {
-        log.info("Creating batch {}", batchStartMillis);
+        return createBatch(batchStartMillis, syncThreshold, false);
+    }
+
+    public File createBatch(Long batchStartMillis, Integer syncThreshold, boolean gzip) throws IOException {
+        return createBatch(batchStartMillis, syncThreshold, new JsonBatchEncoder(), gzip);
+    }
+
+    /**
+     * Create batch file of locations not yet synced
+     *
+     * Locations are first assigned to batch in short write transaction and then exported
+     * through reader connection, so file writing doesn't block location writes.
+     * If export fails, assigned locations are picked up by next batch.
+     *
+     * @param batchStartMillis batch id
+     * @param syncThreshold minimal number of locations in batch
+     * @param encoder batch file content encoder
+     * @param gzip compress file content while writing (file is then uploaded with Content-Encoding: gzip)
+     * @return batch file or null if there are no or less locations than syncThreshold
+     * @throws IOException
+     */
+    public File createBatch(Long batchStartMillis, Integer syncThreshold, BatchEncoder encoder, boolean gzip) throws IOException {
+        log.info("Creating batch {} encoder: {} gzip: {}", batchStartMillis, encoder.getClass().getSimpleName(), gzip);
 
         SQLiteOpenHelper helper = SQLiteOpenHelper.getHelper(context);
         SQLiteDatabase db = helper.getWritableDatabase();
 
-        String[] columns = {
-                SQLiteLocationContract.LocationEntry._ID,
-                SQLiteLocationContract.LocationEntry.COLUMN_NAME_PROVIDER,
-                SQLiteLocationContract.LocationEntry.COLUMN_NAME_TIME,
-                SQLiteLocationContract.LocationEntry.COLUMN_NAME_LATITUDE,
-                SQLiteLocationContract.LocationEntry.COLUMN_NAME_LONGITUDE,
-                SQLiteLocationContract.LocationEntry.COLUMN_NAME_ACCURACY,
-                SQLiteLocationContract.LocationEntry.COLUMN_NAME_SPEED,
-                SQLiteLocationContract.LocationEntry.COLUMN_NAME_BEARING,
-                SQLiteLocationContract.LocationEntry.COLUMN_NAME_ALTITUDE,
-                SQLiteLocationContract.LocationEntry.COLUMN_NAME_RADIUS,
-                SQLiteLocationContract.LocationEntry.COLUMN_NAME_HAS_ACCURACY,
-                SQLiteLocationContract.LocationEntry.COLUMN_NAME_HAS_SPEED,
-                SQLiteLocationContract.LocationEntry.COLUMN_NAME_HAS_BEARING,
-                SQLiteLocationContract.LocationEntry.COLUMN_NAME_HAS_ALTITUDE,
-                SQLiteLocationContract.LocationEntry.COLUMN_NAME_HAS_RADIUS,
-                SQLiteLocationContract.LocationEntry.COLUMN_NAME_LOCATION_PROVIDER
-        };
-
-        String whereClause = TextUtils.join("", new String[]{
-                SQLiteLocationContract.LocationEntry.COLUMN_NAME_VALID + " = ? AND ( ",
-                SQLiteLocationContract.LocationEntry.COLUMN_NAME_BATCH_START_MILLIS + " IS NULL OR ",
-                SQLiteLocationContract.LocationEntry.COLUMN_NAME_BATCH_START_MILLIS + " < ? )",
-        });
         String[] whereArgs = { "1", String.valueOf(batchStartMillis) };
-        String groupBy = null;
-        String having = null;
-        String orderBy = SQLiteLocationContract.LocationEntry.COLUMN_NAME_TIME + " ASC";
-
-        Cursor cursor = null;
-        JsonWriter writer = null;
 
+        db.beginTransactionNonExclusive();
         try {
-            db.beginTransactionNonExclusive();
-
-            cursor = db.query(
-                    SQLiteLocationContract.LocationEntry.TABLE_NAME,  // The table to query
-                    columns,                   // The columns to return
-                    whereClause,               // The columns for the WHERE clause
-                    whereArgs,                 // The values for the WHERE clause
-                    groupBy,                   // don't group the rows
-                    having,                    // don't filter by row groups
-                    orderBy                    // The sort order
-            );
-
-            if (cursor.getCount() < syncThreshold) {
+            long count = DatabaseUtils.queryNumEntries(db, LocationEntry.TABLE_NAME, PENDING_WHERE_CLAUSE, whereArgs);
+            if (count == 0 || count < syncThreshold) {
                 return null;
             }
 
-            File file = File.createTempFile("locations", ".json");
-            FileOutputStream fs = new FileOutputStream(file);
-            writer = new JsonWriter(new OutputStreamWriter(fs, "UTF-8"));
-            writer.beginArray();
-
-            while (cursor.moveToNext()) {
-                writer.beginObject();
-                String provider = cursor.getString(cursor.getColumnIndex(SQLiteLocationContract.LocationEntry.COLUMN_NAME_PROVIDER));
-                Long time = cursor.getLong(cursor.getColumnIndex(SQLiteLocationContract.LocationEntry.COLUMN_NAME_TIME));
-                Double latitude = cursor.getDouble(cursor.getColumnIndex(SQLiteLocationContract.LocationEntry.COLUMN_NAME_LATITUDE));
-                Double longitude = cursor.getDouble(cursor.getColumnIndex(SQLiteLocationContract.LocationEntry.COLUMN_NAME_LONGITUDE));
-                Integer locationProvider = cursor.getInt(cursor.getColumnIndex(SQLiteLocationContract.LocationEntry.COLUMN_NAME_LOCATION_PROVIDER));
-
-                if (provider != null) writer.name("provider").value(provider);
-                if (time != null) writer.name("time").value(time);
-                if (latitude != null) writer.name("latitude").value(latitude);
-                if (longitude != null) writer.name("longitude").value(longitude);
-                if (cursor.getInt(cursor.getColumnIndex(SQLiteLocationContract.LocationEntry.COLUMN_NAME_HAS_ACCURACY)) == 1) {
-                    writer.name("accuracy").value(cursor.getFloat(cursor.getColumnIndex(SQLiteLocationContract.LocationEntry.COLUMN_NAME_ACCURACY)));
-                }
-                if (cursor.getInt(cursor.getColumnIndex(SQLiteLocationContract.LocationEntry.COLUMN_NAME_HAS_SPEED)) == 1) {
-                    writer.name("speed").value(cursor.getFloat(cursor.getColumnIndex(SQLiteLocationContract.LocationEntry.COLUMN_NAME_SPEED)));
-                }
-                if (cursor.getInt(cursor.getColumnIndex(SQLiteLocationContract.LocationEntry.COLUMN_NAME_HAS_BEARING)) == 1) {
-                    writer.name("bearing").value(cursor.getFloat(cursor.getColumnIndex(SQLiteLocationContract.LocationEntry.COLUMN_NAME_BEARING)));
-                }
-                if (cursor.getInt(cursor.getColumnIndex(SQLiteLocationContract.LocationEntry.COLUMN_NAME_HAS_ALTITUDE)) == 1) {
-                    writer.name("altitude").value(cursor.getDouble(cursor.getColumnIndex(SQLiteLocationContract.LocationEntry.COLUMN_NAME_ALTITUDE)));
-                }
-                if (cursor.getInt(cursor.getColumnIndex(SQLiteLocationContract.LocationEntry.COLUMN_NAME_HAS_RADIUS)) == 1) {
-                    writer.name("radius").value(cursor.getFloat(cursor.getColumnIndex(SQLiteLocationContract.LocationEntry.COLUMN_NAME_RADIUS)));
-                }
-                if (locationProvider != null) writer.name("locationProvider").value(locationProvider);
-                writer.endObject();
-            }
-            writer.endArray();
-            writer.close();
-            fs.close();
-
             // set batchStartMillis for all synced locations
             ContentValues values = new ContentValues();
-            values.put(SQLiteLocationContract.LocationEntry.COLUMN_NAME_BATCH_START_MILLIS, batchStartMillis);
-            db.update(SQLiteLocationContract.LocationEntry.TABLE_NAME, values, whereClause, whereArgs);
+            values.put(LocationEntry.COLUMN_NAME_BATCH_START_MILLIS, batchStartMillis);
+            values.put(LocationEntry.COLUMN_NAME_BATCH_SEQ, SINGLE_FILE_SEQ);
+            db.update(LocationEntry.TABLE_NAME, values, PENDING_WHERE_CLAUSE, whereArgs);
 
             db.setTransactionSuccessful();
-
-            log.info("Batch file: {} created successfully", file.getName());
-
-            return file;
         } finally {
-            if (cursor != null) {
-                cursor.close();
-            }
-            if (writer != null) {
-                writer.close();
-            }
             db.endTransaction();
         }
+
+        File file = createChunkFile(batchStartMillis, SINGLE_FILE_SEQ, encoder, gzip);
+        if (file != null) {
+            log.info("Batch file: {} created successfully", file.getName());
+        }
+
+        return file;
     }
 
     public void setBatchCompleted(Long batchId) {
@@ -154,4 +147,204 @@ public class BatchManager {
         values.put(SQLiteLocationContract.LocationEntry.COLUMN_NAME_VALID, 0);
         db.update(SQLiteLocationContract.LocationEntry.TABLE_NAME, values, whereClause, whereArgs);
     }
+
+    /**
+     * Assign locations not yet synced to new batch split into chunks
+     *
+     * Each location is assigned batch id and sequence number of its chunk.
+     * Chunks are tracked in batch_chunk table until whole batch is acknowledged,
+     * so interrupted sync can be resumed (see getPendingBatchId).
+     *
+     * @param batchId batch id (batchStartMillis)
+     * @param syncThreshold minimal number of locations in batch
+     * @param chunkSize maximum number of locations in chunk, 0 for single chunk
+     * @return number of locations in batch, 0 if there are less locations than syncThreshold
+     */
+    public int prepareBatch(Long batchId, Integer syncThreshold, int chunkSize) {
+        SQLiteDatabase db = SQLiteOpenHelper.getHelper(context).getWritableDatabase();
+        String[] whereArgs = { "1", String.valueOf(batchId) };
+
+        Cursor cursor = null;
+        SQLiteStatement updateStmt = null;
+        try {
+            db.beginTransactionNonExclusive();
+            cursor = db.rawQuery(SQL_PENDING_LOCATION_IDS, whereArgs);
+            int count = cursor.getCount();
+            if (count == 0 || count < syncThreshold) {
+                return 0;
+            }
+
+            int rowsPerChunk = chunkSize > 0 ? chunkSize : count;
+            updateStmt = db.compileStatement("UPDATE " + LocationEntry.TABLE_NAME + " SET " +
+                    LocationEntry.COLUMN_NAME_BATCH_START_MILLIS + " = ?, " +
+                    LocationEntry.COLUMN_NAME_BATCH_SEQ + " = ? WHERE " + LocationEntry._ID + " = ?");
+            int row = 0;
+            while (cursor.moveToNext()) {
+                updateStmt.clearBindings();
+                updateStmt.bindLong(1, batchId);
+                updateStmt.bindLong(2, row / rowsPerChunk);
+                updateStmt.bindLong(3, cursor.getLong(0));
+                updateStmt.executeUpdateDelete();
+                row++;
+            }
+
+            for (int seq = 0; seq * rowsPerChunk < count; seq++) {
+                ContentValues values = new ContentValues();
+                values.put(BatchChunkEntry.COLUMN_NAME_BATCH_ID, batchId);
+                values.put(BatchChunkEntry.COLUMN_NAME_SEQ, seq);
+                values.put(BatchChunkEntry.COLUMN_NAME_ROW_COUNT, Math.min(rowsPerChunk, count - seq * rowsPerChunk));
+                db.insertOrThrow(BatchChunkEntry.TABLE_NAME, null, values);
+            }
+
+            db.setTransactionSuccessful();
+            log.info("Batch {} prepared locations: {} chunks: {}", batchId, count, (count + rowsPerChunk - 1) / rowsPerChunk);
+            return count;
+        } finally {
+            if (updateStmt != null) {
+                updateStmt.close();
+            }
+            if (cursor != null) {
+                cursor.close();
+            }
+            db.endTransaction();
+        }
+    }
+
+    /**
+     * @return id of oldest batch having not acknowledged chunks or null
+     */
+    public Long getPendingBatchId() {
+        SQLiteDatabase db = SQLiteOpenHelper.getHelper(context).getReaderDatabase();
+        Cursor cursor = null;
+        try {
+            cursor = db.query(BatchChunkEntry.TABLE_NAME,
+                    new String[] { BatchChunkEntry.COLUMN_NAME_BATCH_ID },
+                    BatchChunkEntry.COLUMN_NAME_ACKED_AT + " IS NULL", null, null, null,
+                    BatchChunkEntry.COLUMN_NAME_BATCH_ID + " ASC", "1");
+            return cursor.moveToFirst() ? cursor.getLong(0) : null;
+        } finally {
+            if (cursor != null) {
+                cursor.close();
+            }
+        }
+    }
+
+    /**
+     * @param batchId
+     * @return sequence numbers of not acknowledged chunks in ascending order
+     */
+    public List<Integer> getPendingChunks(Long batchId) {
+        SQLiteDatabase db = SQLiteOpenHelper.getHelper(context).getReaderDatabase();
+        List<Integer> chunks = new ArrayList<Integer>();
+        Cursor cursor = null;
+        try {
+            cursor = db.query(BatchChunkEntry.TABLE_NAME,
+                    new String[] { BatchChunkEntry.COLUMN_NAME_SEQ },
+                    BatchChunkEntry.COLUMN_NAME_BATCH_ID + " = ? AND " + BatchChunkEntry.COLUMN_NAME_ACKED_AT + " IS NULL",
+                    new String[] { String.valueOf(batchId) }, null, null,
+                    BatchChunkEntry.COLUMN_NAME_SEQ + " ASC");
+            while (cursor.moveToNext()) {
+                chunks.add(cursor.getInt(0));
+            }
+        } finally {
+            if (cursor != null) {
+                cursor.close();
+            }
+        }
+        return chunks;
+    }
+
+    /**
+     * @param batchId
+     * @return total number of chunks of batch (including acknowledged)
+     */
+    public int getChunkCount(Long batchId) {
+        SQLiteDatabase db = SQLiteOpenHelper.getHelper(context).getReaderDatabase();
+        return (int) DatabaseUtils.queryNumEntries(db, BatchChunkEntry.TABLE_NAME,
+                BatchChunkEntry.COLUMN_NAME_BATCH_ID + " = ?", new String[] { String.valueOf(batchId) });
+    }
+
+    /**
+     * Create file of chunk locations
+     *
+     * Locations deleted since batch was prepared (eg. posted individually or overwritten)
+     * are not included.
+     *
+     * @param batchId
+     * @param seq chunk sequence number
+     * @param encoder
+     * @param gzip
+     * @return chunk file or null when chunk has no locations left
+     * @throws IOException
+     */
+    public File createChunkFile(Long batchId, int seq, BatchEncoder encoder, boolean gzip) throws IOException {
+        SQLiteDatabase db = SQLiteOpenHelper.getHelper(context).getReaderDatabase();
+        String[] whereArgs = { String.valueOf(batchId), String.valueOf(seq) };
+
+        Cursor cursor = null;
+        try {
+            cursor = db.rawQuery(SQL_CHUNK_LOCATIONS, whereArgs);
+            if (cursor.getCount() == 0) {
+                return null;
+            }
+            return writeBatchFile(cursor, encoder, gzip);
+        } finally {
+            if (cursor != null) {
+                cursor.close();
+            }
+        }
+    }
+
+    /**
+     * Mark chunk as acknowledged by server and its locations as synced
+     *
+     * When last chunk of batch is acknowledged, batch is removed from batch_chunk table.
+     *
+     * @param batchId
+     * @param seq
+     */
+    public void setChunkCompleted(Long batchId, int seq) {
+        SQLiteDatabase db = SQLiteOpenHelper.getHelper(context).getWritableDatabase();
+        String[] chunkArgs = { String.valueOf(batchId), String.valueOf(seq) };
+        String[] batchArgs = { String.valueOf(batchId) };
+
+        db.beginTransactionNonExclusive();
+        try {
+            ContentValues locationValues = new ContentValues();
+            locationValues.put(LocationEntry.COLUMN_NAME_VALID, 0);
+            db.update(LocationEntry.TABLE_NAME, locationValues, CHUNK_WHERE_CLAUSE, chunkArgs);
+
+            ContentValues chunkValues = new ContentValues();
+            chunkValues.put(BatchChunkEntry.COLUMN_NAME_ACKED_AT, System.currentTimeMillis());
+            db.update(BatchChunkEntry.TABLE_NAME, chunkValues,
+                    BatchChunkEntry.COLUMN_NAME_BATCH_ID + " = ? AND " + BatchChunkEntry.COLUMN_NAME_SEQ + " = ?",
+                    chunkArgs);
+
+            long pending = DatabaseUtils.queryNumEntries(db, BatchChunkEntry.TABLE_NAME,
+                    BatchChunkEntry.COLUMN_NAME_BATCH_ID + " = ? AND " + BatchChunkEntry.COLUMN_NAME_ACKED_AT + " IS NULL",
+                    batchArgs);
+            if (pending == 0) {
+                db.delete(BatchChunkEntry.TABLE_NAME, BatchChunkEntry.COLUMN_NAME_BATCH_ID + " = ?", batchArgs);
+            }
+
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    static File writeBatchFile(Cursor cursor, BatchEncoder encoder, boolean gzip) throws IOException {
+        String suffix = encoder.getFileExtension();
+        File file = File.createTempFile("locations", gzip ? suffix + ".gz" : suffix);
+        OutputStream os = new BufferedOutputStream(new FileOutputStream(file), BUFFER_SIZE);
+        try {
+            if (gzip) {
+                os = new GZIPOutputStream(os, BUFFER_SIZE);
+            }
+            encoder.encode(cursor, os);
+        } finally {
+            os.close();
+        }
+        return file;
+    }
 }
@@ -0,0 +1,59 @@
+package com.marianhello.bgloc.sync;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Storage of locations being synced in batches split into chunks
+ *
+ * Implemented for every location store, so BatchUploader can sync either of them.
+ */
+public interface BatchStore {
+    /**
+     * @return id of batch having not acknowledged chunks or null
+     */
+    Long getPendingBatchId();
+
+    /**
+     * Assign locations not yet synced to new batch split into chunks
+     *
+     * @param batchId batch id (batchStartMillis)
+     * @param syncThreshold minimal number of locations in batch
+     * @param chunkSize maximum number of locations in chunk, 0 for single chunk
+     * @return number of locations in batch, 0 if there are less locations than syncThreshold
+     */
+    int prepareBatch(Long batchId, Integer syncThreshold, int chunkSize);
+
+    /**
+     * @param batchId
+     * @return total number of chunks of batch (including acknowledged)
+     */
+    int getChunkCount(Long batchId);
+
+    /**
+     * @param batchId
+     * @return sequence numbers of not acknowledged chunks in ascending order
+     */
+    List<Integer> getPendingChunks(Long batchId);
+
+    /**
+     * Create file of chunk locations
+     *
+     * @param batchId
+     * @param seq chunk sequence number
+     * @param encoder
+     * @param gzip
+     * @return chunk file or null when chunk has no locations left
+     * @throws IOException
+     */
+    File createChunkFile(Long batchId, int seq, BatchEncoder encoder, boolean gzip) throws IOException;
+
+    /**
+     * Mark chunk as acknowledged by server and its locations as synced
+     *
+     * @param batchId
+     * @param seq
+     */
+    void setChunkCompleted(Long batchId, int seq);
+}
@@ -0,0 +1,20 @@
+package com.marianhello.bgloc.sync;
+
+import android.content.Context;
+
+import com.marianhello.bgloc.Config;
+import com.marianhello.bgloc.data.segment.SegmentLocationDAO;
+
+public abstract class BatchStoreFactory {
+    /**
+     * @param context
+     * @param config
+     * @return batch store of configured location store (locationStore config option)
+     */
+    public static BatchStore createBatchStore(Context context, Config config) {
+        if (SegmentLocationDAO.NAME.equals(config.getLocationStore())) {
+            return new SegmentBatchStore(SegmentLocationDAO.getInstance(context));
+        }
+        return new BatchManager(context);
+    }
+}
@@ -0,0 +1,174 @@
+package com.marianhello.bgloc.sync;
+
+import com.marianhello.bgloc.Config;
+import com.marianhello.bgloc.HttpPostService;
+import com.marianhello.bgloc.UploadingCallback;
+import com.marianhello.logging.LoggerManager;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Uploads batch chunk by chunk, resuming interrupted batches
+ *
+ * Every chunk is posted with headers:
+ * <ul>
+ *   <li>x-batch-id - id of batch (same for all chunks and retries)</li>
+ *   <li>x-batch-seq - zero based sequence number of chunk</li>
+ *   <li>x-batch-seq-count - total number of chunks in batch</li>
+ * </ul>
+ * Chunk is acknowledged by server responding with 2xx or 409 (Conflict, chunk already received).
+ * Acknowledged chunks are recorded in database, so retry after failure only posts
+ * chunks not yet acknowledged. Server can deduplicate chunks by x-batch-id and x-batch-seq.
+ *
+ * Chunk rejected with other 4xx (except 408 and 429) is dropped, as retrying it would only
+ * block chunks behind it. Chunk of batch older than MAX_BATCH_AGE_MILLIS is also dropped
+ * when server responds with error. Network errors never drop chunks.
+ */
+public class BatchUploader {
+
+    public interface ProgressListener {
+        /**
+         * @param progress overall batch upload progress in percents
+         */
+        void onProgress(int progress);
+    }
+
+    // batch id is time when batch was prepared
+    public static final long MAX_BATCH_AGE_MILLIS = 3 * 24 * 3600 * 1000L;
+
+    private final BatchStore batchStore;
+    private org.slf4j.Logger log;
+
+    public BatchUploader(BatchStore batchStore) {
+        this.batchStore = batchStore;
+        log = LoggerManager.getLogger(BatchUploader.class);
+    }
+
+    /**
+     * Get batch to upload
+     *
+     * Interrupted batch is returned if there is one, otherwise new batch is prepared.
+     *
+     * @param syncThreshold minimal number of locations in new batch
+     * @param chunkSize maximum number of locations in chunk of new batch, 0 for single chunk
+     * @return batch id or null if there is nothing to sync
+     */
+    public Long prepare(int syncThreshold, int chunkSize) {
+        Long batchId = batchStore.getPendingBatchId();
+        if (batchId != null) {
+            log.info("Resuming batch: {}", batchId);
+            return batchId;
+        }
+
+        batchId = System.currentTimeMillis();
+        if (batchStore.prepareBatch(batchId, syncThreshold, chunkSize) == 0) {
+            return null;
+        }
+        return batchId;
+    }
+
+    /**
+     * Upload not yet acknowledged chunks of batch
+     *
+     * Upload stops on first failed chunk. Dropped chunks do not stop upload.
+     *
+     * @param batchId
+     * @param config
+     * @param listener progress listener or null
+     * @return true if all chunks of batch were acknowledged or dropped
+     */
+    public boolean upload(Long batchId, Config config, final ProgressListener listener) {
+        String url = config.hasSyncUrl() ? config.getSyncUrl() : config.getUrl();
+        BatchEncoder encoder = BatchEncoderFactory.createEncoder(config.getBatchEncoding());
+        boolean gzip = config.getHttpCompression();
+
+        final int chunkCount = batchStore.getChunkCount(batchId);
+        List<Integer> pendingChunks = batchStore.getPendingChunks(batchId);
+
+        HashMap<String, String> httpHeaders = new HashMap<String, String>();
+        httpHeaders.putAll(config.getHttpHeaders());
+        httpHeaders.put("x-batch-id", String.valueOf(batchId));
+        httpHeaders.put("x-batch-seq-count", String.valueOf(chunkCount));
+        if (gzip) {
+            httpHeaders.put("Content-Encoding", "gzip");
+        }
+
+        log.info("Uploading batch: {} pending chunks: {}/{}", batchId, pendingChunks.size(), chunkCount);
+        for (final Integer seq : pendingChunks) {
+            File file;
+            try {
+                file = batchStore.createChunkFile(batchId, seq, encoder, gzip);
+            } catch (IOException e) {
+                log.error("Failed to create chunk {} of batch {}: {}", seq, batchId, e.getMessage());
+                return false;
+            }
+
+            if (file == null) {
+                // all locations of chunk were removed meanwhile
+                batchStore.setChunkCompleted(batchId, seq);
+                continue;
+            }
+
+            httpHeaders.put("x-batch-seq", String.valueOf(seq));
+            UploadingCallback callback = null;
+            if (listener != null) {
+                callback = new UploadingCallback() {
+                    @Override
+                    public void uploadListener(int progress) {
+                        listener.onProgress((seq * 100 + progress) / chunkCount);
+                    }
+                };
+            }
+
+            int responseCode;
+            try {
+                responseCode = HttpPostService.postFile(url, file, encoder.getContentType(), httpHeaders, callback);
+            } catch (IOException e) {
+                log.warn("Error uploading chunk {} of batch {}: {}", seq, batchId, e.getMessage());
+                return false;
+            } finally {
+                if (!file.delete()) {
+                    log.warn("Chunk file has not been deleted: {}", file.getAbsolutePath());
+                }
+            }
+
+            if (!isAcknowledged(responseCode)) {
+                if (isRejected(responseCode)) {
+                    log.error("Chunk {} of batch {} rejected responseCode: {}, dropping", seq, batchId, responseCode);
+                } else if (System.currentTimeMillis() - batchId > MAX_BATCH_AGE_MILLIS) {
+                    log.error("Chunk {} of batch {} failed responseCode: {}, batch expired, dropping", seq, batchId, responseCode);
+                } else {
+                    log.warn("Chunk {} of batch {} failed responseCode: {}", seq, batchId, responseCode);
+                    return false;
+                }
+                batchStore.setChunkCompleted(batchId, seq);
+                continue;
+            }
+
+            batchStore.setChunkCompleted(batchId, seq);
+            log.debug("Chunk {} of batch {} acknowledged responseCode: {}", seq, batchId, responseCode);
+        }
+
+        return true;
+    }
+
+    public static boolean isAcknowledged(int responseCode) {
+        return (responseCode >= HttpURLConnection.HTTP_OK && responseCode < HttpURLConnection.HTTP_MULT_CHOICE)
+                || responseCode == HttpURLConnection.HTTP_CONFLICT;
+    }
+
+    /**
+     * @param responseCode
+     * @return true if server will not accept chunk on retry
+     */
+    public static boolean isRejected(int responseCode) {
+        return responseCode >= HttpURLConnection.HTTP_BAD_REQUEST && responseCode < HttpURLConnection.HTTP_INTERNAL_ERROR
+                && responseCode != HttpURLConnection.HTTP_CLIENT_TIMEOUT
+                && responseCode != HttpURLConnection.HTTP_CONFLICT
+                && responseCode != 429; // Too Many Requests
+    }
+}
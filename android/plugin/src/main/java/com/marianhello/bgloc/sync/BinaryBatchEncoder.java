@@ -0,0 +1,257 @@
+package com.marianhello.bgloc.sync;
+
+import android.database.Cursor;
+
+import com.marianhello.bgloc.data.sqlite.SQLiteLocationContract.LocationEntry;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * Encodes batch in compact columnar binary format
+ *
+ * Rows are read in single pass, each column is accumulated in its own buffer
+ * and columns are written one after another. Values of similar magnitude end up
+ * next to each other, which also helps when batch is gzip compressed.
+ *
+ * Format (version 1):
+ * <pre>
+ * batch    := 'B' 'G' 'L' version:byte
+ *             rowCount:varint
+ *             providerCount:varint (length:varint utf8Bytes)*
+ *             column{11}
+ * column   := byteLength:varint bytes
+ * </pre>
+ * Columns in order:
+ * <ol>
+ *   <li>flags - one byte per row, see FLAG_* constants</li>
+ *   <li>time - delta of millis since epoch to previous row</li>
+ *   <li>latitude - delta of fixed point E7 degrees to previous row</li>
+ *   <li>longitude - delta of fixed point E7 degrees to previous row</li>
+ *   <li>accuracy - decimeters</li>
+ *   <li>speed - centimeters per second</li>
+ *   <li>bearing - tenths of degree</li>
+ *   <li>altitude - delta of centimeters to previous row having altitude</li>
+ *   <li>radius - decimeters</li>
+ *   <li>provider - index into provider table</li>
+ *   <li>locationProvider - locationProvider config value</li>
+ * </ol>
+ * Optional columns contain values only for rows having respective flag set.
+ * Lengths, counts and provider indices are unsigned LEB128 varints,
+ * all other values are zigzag encoded signed varints. First row deltas are relative to 0.
+ */
+public class BinaryBatchEncoder implements BatchEncoder {
+    public static final String NAME = "binary";
+    public static final String CONTENT_TYPE = "application/vnd.bgloc.batch";
+    public static final byte VERSION = 1;
+
+    public static final int FLAG_HAS_ACCURACY = 1;
+    public static final int FLAG_HAS_SPEED = 1 << 1;
+    public static final int FLAG_HAS_BEARING = 1 << 2;
+    public static final int FLAG_HAS_ALTITUDE = 1 << 3;
+    public static final int FLAG_HAS_RADIUS = 1 << 4;
+    public static final int FLAG_HAS_PROVIDER = 1 << 5;
+    public static final int FLAG_HAS_LOCATION_PROVIDER = 1 << 6;
+
+    public static final double COORDINATE_SCALE = 1e7;
+    public static final double ACCURACY_SCALE = 10;
+    public static final double SPEED_SCALE = 100;
+    public static final double BEARING_SCALE = 10;
+    public static final double ALTITUDE_SCALE = 100;
+    public static final double RADIUS_SCALE = 10;
+
+    /**
+     * Growable byte buffer with varint writing
+     */
+    private static class ColumnBuffer {
+        private byte[] bytes;
+        private int length = 0;
+
+        ColumnBuffer(int capacity) {
+            bytes = new byte[capacity];
+        }
+
+        void writeByte(int value) {
+            ensureCapacity(1);
+            bytes[length++] = (byte) value;
+        }
+
+        void writeVarint(long value) {
+            ensureCapacity(10);
+            while ((value & ~0x7FL) != 0) {
+                bytes[length++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            bytes[length++] = (byte) value;
+        }
+
+        void writeSignedVarint(long value) {
+            writeVarint((value << 1) ^ (value >> 63));
+        }
+
+        void writeBytes(byte[] value) {
+            ensureCapacity(value.length);
+            System.arraycopy(value, 0, bytes, length, value.length);
+            length += value.length;
+        }
+
+        void writeTo(OutputStream out) throws IOException {
+            out.write(bytes, 0, length);
+        }
+
+        int length() {
+            return length;
+        }
+
+        void reset() {
+            length = 0;
+        }
+
+        private void ensureCapacity(int required) {
+            if (length + required > bytes.length) {
+                byte[] grown = new byte[Math.max(bytes.length * 2, length + required)];
+                System.arraycopy(bytes, 0, grown, 0, length);
+                bytes = grown;
+            }
+        }
+    }
+
+    @Override
+    public String getContentType() {
+        return CONTENT_TYPE;
+    }
+
+    @Override
+    public String getFileExtension() {
+        return ".bin";
+    }
+
+    @Override
+    public int encode(Cursor cursor, OutputStream out) throws IOException {
+        int providerIdx = cursor.getColumnIndexOrThrow(LocationEntry.COLUMN_NAME_PROVIDER);
+        int timeIdx = cursor.getColumnIndexOrThrow(LocationEntry.COLUMN_NAME_TIME);
+        int latitudeIdx = cursor.getColumnIndexOrThrow(LocationEntry.COLUMN_NAME_LATITUDE);
+        int longitudeIdx = cursor.getColumnIndexOrThrow(LocationEntry.COLUMN_NAME_LONGITUDE);
+        int accuracyIdx = cursor.getColumnIndexOrThrow(LocationEntry.COLUMN_NAME_ACCURACY);
+        int speedIdx = cursor.getColumnIndexOrThrow(LocationEntry.COLUMN_NAME_SPEED);
+        int bearingIdx = cursor.getColumnIndexOrThrow(LocationEntry.COLUMN_NAME_BEARING);
+        int altitudeIdx = cursor.getColumnIndexOrThrow(LocationEntry.COLUMN_NAME_ALTITUDE);
+        int radiusIdx = cursor.getColumnIndexOrThrow(LocationEntry.COLUMN_NAME_RADIUS);
+        int hasAccuracyIdx = cursor.getColumnIndexOrThrow(LocationEntry.COLUMN_NAME_HAS_ACCURACY);
+        int hasSpeedIdx = cursor.getColumnIndexOrThrow(LocationEntry.COLUMN_NAME_HAS_SPEED);
+        int hasBearingIdx = cursor.getColumnIndexOrThrow(LocationEntry.COLUMN_NAME_HAS_BEARING);
+        int hasAltitudeIdx = cursor.getColumnIndexOrThrow(LocationEntry.COLUMN_NAME_HAS_ALTITUDE);
+        int hasRadiusIdx = cursor.getColumnIndexOrThrow(LocationEntry.COLUMN_NAME_HAS_RADIUS);
+        int locationProviderIdx = cursor.getColumnIndexOrThrow(LocationEntry.COLUMN_NAME_LOCATION_PROVIDER);
+
+        int capacity = Math.max(16, cursor.getCount() - cursor.getPosition() - 1);
+        ColumnBuffer flags = new ColumnBuffer(capacity);
+        ColumnBuffer times = new ColumnBuffer(capacity * 2);
+        ColumnBuffer latitudes = new ColumnBuffer(capacity * 2);
+        ColumnBuffer longitudes = new ColumnBuffer(capacity * 2);
+        ColumnBuffer accuracies = new ColumnBuffer(capacity);
+        ColumnBuffer speeds = new ColumnBuffer(capacity);
+        ColumnBuffer bearings = new ColumnBuffer(capacity * 2);
+        ColumnBuffer altitudes = new ColumnBuffer(capacity);
+        ColumnBuffer radii = new ColumnBuffer(16);
+        ColumnBuffer providers = new ColumnBuffer(capacity);
+        ColumnBuffer locationProviders = new ColumnBuffer(capacity);
+        ColumnBuffer[] columns = {
+                flags, times, latitudes, longitudes, accuracies, speeds,
+                bearings, altitudes, radii, providers, locationProviders
+        };
+
+        HashMap<String, Integer> providerIndex = new HashMap<String, Integer>();
+        ArrayList<String> providerTable = new ArrayList<String>();
+
+        int rowCount = 0;
+        long lastTime = 0;
+        long lastLatitude = 0;
+        long lastLongitude = 0;
+        long lastAltitude = 0;
+
+        while (cursor.moveToNext()) {
+            int rowFlags = 0;
+
+            long time = cursor.getLong(timeIdx);
+            times.writeSignedVarint(time - lastTime);
+            lastTime = time;
+
+            long latitude = Math.round(cursor.getDouble(latitudeIdx) * COORDINATE_SCALE);
+            latitudes.writeSignedVarint(latitude - lastLatitude);
+            lastLatitude = latitude;
+
+            long longitude = Math.round(cursor.getDouble(longitudeIdx) * COORDINATE_SCALE);
+            longitudes.writeSignedVarint(longitude - lastLongitude);
+            lastLongitude = longitude;
+
+            if (cursor.getInt(hasAccuracyIdx) == 1) {
+                rowFlags |= FLAG_HAS_ACCURACY;
+                accuracies.writeSignedVarint(Math.round(cursor.getFloat(accuracyIdx) * ACCURACY_SCALE));
+            }
+            if (cursor.getInt(hasSpeedIdx) == 1) {
+                rowFlags |= FLAG_HAS_SPEED;
+                speeds.writeSignedVarint(Math.round(cursor.getFloat(speedIdx) * SPEED_SCALE));
+            }
+            if (cursor.getInt(hasBearingIdx) == 1) {
+                rowFlags |= FLAG_HAS_BEARING;
+                bearings.writeSignedVarint(Math.round(cursor.getFloat(bearingIdx) * BEARING_SCALE));
+            }
+            if (cursor.getInt(hasAltitudeIdx) == 1) {
+                rowFlags |= FLAG_HAS_ALTITUDE;
+                long altitude = Math.round(cursor.getDouble(altitudeIdx) * ALTITUDE_SCALE);
+                altitudes.writeSignedVarint(altitude - lastAltitude);
+                lastAltitude = altitude;
+            }
+            if (cursor.getInt(hasRadiusIdx) == 1) {
+                rowFlags |= FLAG_HAS_RADIUS;
+                radii.writeSignedVarint(Math.round(cursor.getFloat(radiusIdx) * RADIUS_SCALE));
+            }
+            if (!cursor.isNull(providerIdx)) {
+                rowFlags |= FLAG_HAS_PROVIDER;
+                String provider = cursor.getString(providerIdx);
+                Integer index = providerIndex.get(provider);
+                if (index == null) {
+                    index = providerTable.size();
+                    providerIndex.put(provider, index);
+                    providerTable.add(provider);
+                }
+                providers.writeVarint(index);
+            }
+            if (!cursor.isNull(locationProviderIdx)) {
+                rowFlags |= FLAG_HAS_LOCATION_PROVIDER;
+                locationProviders.writeSignedVarint(cursor.getInt(locationProviderIdx));
+            }
+
+            flags.writeByte(rowFlags);
+            rowCount++;
+        }
+
+        ColumnBuffer header = new ColumnBuffer(64);
+        header.writeByte('B');
+        header.writeByte('G');
+        header.writeByte('L');
+        header.writeByte(VERSION);
+        header.writeVarint(rowCount);
+        header.writeVarint(providerTable.size());
+        for (String provider : providerTable) {
+            byte[] bytes = provider.getBytes("UTF-8");
+            header.writeVarint(bytes.length);
+            header.writeBytes(bytes);
+        }
+        header.writeTo(out);
+
+        ColumnBuffer length = new ColumnBuffer(10);
+        for (ColumnBuffer column : columns) {
+            length.reset();
+            length.writeVarint(column.length());
+            length.writeTo(out);
+            column.writeTo(out);
+        }
+        out.flush();
+
+        return rowCount;
+    }
+}
@@ -0,0 +1,30 @@
+package com.marianhello.bgloc.sync;
+
+import android.database.Cursor;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+
+/**
+ * Encodes batch as JSON array of location objects
+ */
+public class JsonBatchEncoder implements BatchEncoder {
+    public static final String NAME = "json";
+    public static final String CONTENT_TYPE = "application/json";
+
+    @Override
+    public String getContentType() {
+        return CONTENT_TYPE;
+    }
+
+    @Override
+    public String getFileExtension() {
+        return ".json";
+    }
+
+    @Override
+    public int encode(Cursor cursor, OutputStream out) throws IOException {
+        return new LocationJsonSerializer(cursor, new OutputStreamWriter(out, "UTF-8")).writeAll();
+    }
+}
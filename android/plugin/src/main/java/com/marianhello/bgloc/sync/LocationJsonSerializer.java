@@ -0,0 +1,247 @@
+package com.marianhello.bgloc.sync;
+
+import android.database.Cursor;
+
+import com.marianhello.bgloc.data.sqlite.SQLiteLocationContract.LocationEntry;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Serializes location rows of cursor into JSON array
+ *
+ * Column indices are resolved once per cursor. Values are read as primitives
+ * and written into single reused char buffer, which is flushed to writer
+ * only when full. Except provider string (read from cursor), no objects
+ * are allocated per row.
+ *
+ * Output is compatible with android.util.JsonWriter output used before.
+ */
+public class LocationJsonSerializer {
+    private static final int BUFFER_SIZE = 8192;
+    private static final int MAX_NUMBER_LENGTH = 32;
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private final Cursor cursor;
+    private final Writer out;
+
+    private final int providerIdx;
+    private final int timeIdx;
+    private final int latitudeIdx;
+    private final int longitudeIdx;
+    private final int accuracyIdx;
+    private final int speedIdx;
+    private final int bearingIdx;
+    private final int altitudeIdx;
+    private final int radiusIdx;
+    private final int hasAccuracyIdx;
+    private final int hasSpeedIdx;
+    private final int hasBearingIdx;
+    private final int hasAltitudeIdx;
+    private final int hasRadiusIdx;
+    private final int locationProviderIdx;
+
+    private final StringBuilder number = new StringBuilder(MAX_NUMBER_LENGTH);
+    private char[] buffer = new char[BUFFER_SIZE];
+    private int position = 0;
+    private int rowCount = 0;
+
+    public LocationJsonSerializer(Cursor cursor, Writer out) {
+        this.cursor = cursor;
+        this.out = out;
+
+        providerIdx = cursor.getColumnIndexOrThrow(LocationEntry.COLUMN_NAME_PROVIDER);
+        timeIdx = cursor.getColumnIndexOrThrow(LocationEntry.COLUMN_NAME_TIME);
+        latitudeIdx = cursor.getColumnIndexOrThrow(LocationEntry.COLUMN_NAME_LATITUDE);
+        longitudeIdx = cursor.getColumnIndexOrThrow(LocationEntry.COLUMN_NAME_LONGITUDE);
+        accuracyIdx = cursor.getColumnIndexOrThrow(LocationEntry.COLUMN_NAME_ACCURACY);
+        speedIdx = cursor.getColumnIndexOrThrow(LocationEntry.COLUMN_NAME_SPEED);
+        bearingIdx = cursor.getColumnIndexOrThrow(LocationEntry.COLUMN_NAME_BEARING);
+        altitudeIdx = cursor.getColumnIndexOrThrow(LocationEntry.COLUMN_NAME_ALTITUDE);
+        radiusIdx = cursor.getColumnIndexOrThrow(LocationEntry.COLUMN_NAME_RADIUS);
+        hasAccuracyIdx = cursor.getColumnIndexOrThrow(LocationEntry.COLUMN_NAME_HAS_ACCURACY);
+        hasSpeedIdx = cursor.getColumnIndexOrThrow(LocationEntry.COLUMN_NAME_HAS_SPEED);
+        hasBearingIdx = cursor.getColumnIndexOrThrow(LocationEntry.COLUMN_NAME_HAS_BEARING);
+        hasAltitudeIdx = cursor.getColumnIndexOrThrow(LocationEntry.COLUMN_NAME_HAS_ALTITUDE);
+        hasRadiusIdx = cursor.getColumnIndexOrThrow(LocationEntry.COLUMN_NAME_HAS_RADIUS);
+        locationProviderIdx = cursor.getColumnIndexOrThrow(LocationEntry.COLUMN_NAME_LOCATION_PROVIDER);
+    }
+
+    /**
+     * Write all remaining rows of cursor as JSON array and flush writer
+     *
+     * @return number of written rows
+     * @throws IOException
+     */
+    public int writeAll() throws IOException {
+        write('[');
+        while (cursor.moveToNext()) {
+            writeRow();
+        }
+        write(']');
+        flush();
+        return rowCount;
+    }
+
+    /**
+     * Write current row of cursor as JSON object
+     *
+     * @throws IOException
+     */
+    public void writeRow() throws IOException {
+        if (rowCount > 0) {
+            write(',');
+        }
+        write('{');
+        boolean first = true;
+        if (!cursor.isNull(providerIdx)) {
+            name("provider", first);
+            string(cursor.getString(providerIdx));
+            first = false;
+        }
+        name("time", first);
+        number(cursor.getLong(timeIdx));
+        name("latitude", false);
+        number(cursor.getDouble(latitudeIdx));
+        name("longitude", false);
+        number(cursor.getDouble(longitudeIdx));
+        if (cursor.getInt(hasAccuracyIdx) == 1) {
+            name("accuracy", false);
+            number((double) cursor.getFloat(accuracyIdx));
+        }
+        if (cursor.getInt(hasSpeedIdx) == 1) {
+            name("speed", false);
+            number((double) cursor.getFloat(speedIdx));
+        }
+        if (cursor.getInt(hasBearingIdx) == 1) {
+            name("bearing", false);
+            number((double) cursor.getFloat(bearingIdx));
+        }
+        if (cursor.getInt(hasAltitudeIdx) == 1) {
+            name("altitude", false);
+            number(cursor.getDouble(altitudeIdx));
+        }
+        if (cursor.getInt(hasRadiusIdx) == 1) {
+            name("radius", false);
+            number((double) cursor.getFloat(radiusIdx));
+        }
+        // written even when null (as 0) like JsonWriter output used before
+        name("locationProvider", false);
+        number(cursor.getInt(locationProviderIdx));
+        write('}');
+        rowCount++;
+    }
+
+    /**
+     * Write buffered chars into writer and flush writer
+     *
+     * @throws IOException
+     */
+    public void flush() throws IOException {
+        flushBuffer();
+        out.flush();
+    }
+
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    private void name(String name, boolean first) throws IOException {
+        int length = name.length();
+        ensureCapacity(length + 4);
+        if (!first) {
+            buffer[position++] = ',';
+        }
+        buffer[position++] = '"';
+        name.getChars(0, length, buffer, position);
+        position += length;
+        buffer[position++] = '"';
+        buffer[position++] = ':';
+    }
+
+    private void string(String value) throws IOException {
+        int length = value.length();
+        ensureCapacity(length * 6 + 2);
+        buffer[position++] = '"';
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                buffer[position++] = '\\';
+                buffer[position++] = c;
+            } else if (c < 0x20) {
+                buffer[position++] = '\\';
+                buffer[position++] = 'u';
+                buffer[position++] = '0';
+                buffer[position++] = '0';
+                buffer[position++] = HEX[c >> 4];
+                buffer[position++] = HEX[c & 0xf];
+            } else {
+                buffer[position++] = c;
+            }
+        }
+        buffer[position++] = '"';
+    }
+
+    private void number(long value) throws IOException {
+        ensureCapacity(MAX_NUMBER_LENGTH);
+        if (value == Long.MIN_VALUE) {
+            number.setLength(0);
+            number.append(value);
+            copyNumber();
+            return;
+        }
+        if (value < 0) {
+            buffer[position++] = '-';
+            value = -value;
+        }
+        int start = position;
+        do {
+            buffer[position++] = (char) ('0' + (value % 10));
+            value /= 10;
+        } while (value > 0);
+        // digits were written in reverse order
+        for (int i = start, j = position - 1; i < j; i++, j--) {
+            char tmp = buffer[i];
+            buffer[i] = buffer[j];
+            buffer[j] = tmp;
+        }
+    }
+
+    private void number(double value) throws IOException {
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            throw new IllegalArgumentException("Numeric values must be finite, but was " + value);
+        }
+        ensureCapacity(MAX_NUMBER_LENGTH);
+        number.setLength(0);
+        number.append(value);
+        copyNumber();
+    }
+
+    private void copyNumber() {
+        int length = number.length();
+        number.getChars(0, length, buffer, position);
+        position += length;
+    }
+
+    private void write(char c) throws IOException {
+        ensureCapacity(1);
+        buffer[position++] = c;
+    }
+
+    private void ensureCapacity(int length) throws IOException {
+        if (position + length <= buffer.length) {
+            return;
+        }
+        flushBuffer();
+        if (length > buffer.length) {
+            buffer = new char[length];
+        }
+    }
+
+    private void flushBuffer() throws IOException {
+        if (position > 0) {
+            out.write(buffer, 0, position);
+            position = 0;
+        }
+    }
+}
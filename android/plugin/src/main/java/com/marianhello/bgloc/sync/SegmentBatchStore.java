@@ -0,0 +1,79 @@
+package com.marianhello.bgloc.sync;
+
+import android.database.MatrixCursor;
+
+import com.marianhello.bgloc.data.BackgroundLocation;
+import com.marianhello.bgloc.data.segment.SegmentLocationDAO;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Batch store of segment location store
+ *
+ * Chunk locations are presented to batch encoder as cursor with same columns
+ * as BatchManager queries, so both stores produce identical batch files.
+ */
+public class SegmentBatchStore implements BatchStore {
+    private final SegmentLocationDAO dao;
+
+    public SegmentBatchStore(SegmentLocationDAO dao) {
+        this.dao = dao;
+    }
+
+    public Long getPendingBatchId() {
+        return dao.getPendingBatchId();
+    }
+
+    public int prepareBatch(Long batchId, Integer syncThreshold, int chunkSize) {
+        return dao.prepareBatch(batchId, syncThreshold, chunkSize);
+    }
+
+    public int getChunkCount(Long batchId) {
+        return dao.getChunkCount(batchId);
+    }
+
+    public List<Integer> getPendingChunks(Long batchId) {
+        return dao.getPendingChunks(batchId);
+    }
+
+    public File createChunkFile(Long batchId, int seq, BatchEncoder encoder, boolean gzip) throws IOException {
+        List<BackgroundLocation> locations = dao.getChunkLocations(batchId, seq);
+        if (locations.isEmpty()) {
+            return null;
+        }
+
+        MatrixCursor cursor = new MatrixCursor(BatchManager.BATCH_COLUMNS, locations.size());
+        for (BackgroundLocation l : locations) {
+            cursor.addRow(new Object[] {
+                    l.getLocationId(),
+                    l.getProvider(),
+                    l.getTime(),
+                    l.getLatitude(),
+                    l.getLongitude(),
+                    l.getAccuracy(),
+                    l.getSpeed(),
+                    l.getBearing(),
+                    l.getAltitude(),
+                    l.getRadius(),
+                    l.hasAccuracy() ? 1 : 0,
+                    l.hasSpeed() ? 1 : 0,
+                    l.hasBearing() ? 1 : 0,
+                    l.hasAltitude() ? 1 : 0,
+                    l.hasRadius() ? 1 : 0,
+                    l.getLocationProvider()
+            });
+        }
+
+        try {
+            return BatchManager.writeBatchFile(cursor, encoder, gzip);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    public void setChunkCompleted(Long batchId, int seq) {
+        dao.setChunkCompleted(batchId, seq);
+    }
+}
@@ -13,31 +13,23 @@ import android.os.Looper;
 import android.support.v4.app.NotificationCompat;
 
 import com.marianhello.bgloc.Config;
-import com.marianhello.bgloc.HttpPostService;
-import com.marianhello.bgloc.UploadingCallback;
-import com.marianhello.bgloc.data.ConfigurationDAO;
-import com.marianhello.bgloc.data.DAOFactory;
+import com.marianhello.bgloc.data.ConfigRepository;
 import com.marianhello.logging.LoggerManager;
 
 import org.json.JSONException;
 
-import java.io.File;
-import java.io.IOException;
-import java.net.HttpURLConnection;
-import java.util.HashMap;
-
 /**
  * Handle the transfer of data between a server and an
  * app, using the Android sync adapter framework.
  */
-public class SyncAdapter extends AbstractThreadedSyncAdapter implements UploadingCallback {
+public class SyncAdapter extends AbstractThreadedSyncAdapter implements BatchUploader.ProgressListener {
 
     private static final int NOTIFICATION_ID = 666;
 
     ContentResolver contentResolver;
-    private ConfigurationDAO configDAO;
+    private ConfigRepository configRepository;
     private NotificationManager notifyManager;
-    private BatchManager batchManager;
+    private SyncScheduler syncScheduler;
 
     private org.slf4j.Logger log;
 
@@ -53,8 +45,8 @@ public class SyncAdapter extends AbstractThreadedSyncAdapter implements Uploadin
          * from the incoming Context
          */
         contentResolver = context.getContentResolver();
-        configDAO = DAOFactory.createConfigurationDAO(context);
-        batchManager = new BatchManager(this.getContext());
+        configRepository = ConfigRepository.getInstance(context);
+        syncScheduler = new SyncScheduler(this.getContext());
         notifyManager = (NotificationManager) getContext().getSystemService(Context.NOTIFICATION_SERVICE);
     }
 
@@ -77,8 +69,8 @@ public class SyncAdapter extends AbstractThreadedSyncAdapter implements Uploadin
          * from the incoming Context
          */
         contentResolver = context.getContentResolver();
-        configDAO = DAOFactory.createConfigurationDAO(context);
-        batchManager = new BatchManager(this.getContext());
+        configRepository = ConfigRepository.getInstance(context);
+        syncScheduler = new SyncScheduler(this.getContext());
         notifyManager = (NotificationManager) getContext().getSystemService(Context.NOTIFICATION_SERVICE);
     }
 
@@ -97,7 +89,7 @@ public class SyncAdapter extends AbstractThreadedSyncAdapter implements Uploadin
 
         Config config = null;
         try {
-            config = configDAO.retrieveConfiguration();
+            config = configRepository.getConfig();
         } catch (JSONException e) {
             log.error("Error retrieving config: {}", e.getMessage());
         }
@@ -106,42 +98,29 @@ public class SyncAdapter extends AbstractThreadedSyncAdapter implements Uploadin
 
         log.debug("Sync request: {}", config.toString());
         if (config.hasUrl() || config.hasSyncUrl()) {
-            Long batchStartMillis = System.currentTimeMillis();
-
-            File file = null;
-            try {
-                file = batchManager.createBatch(batchStartMillis, config.getSyncThreshold());
-            } catch (IOException e) {
-                log.error("Failed to create batch: {}", e.getMessage());
-            }
+            int syncThreshold = extras.getInt(SyncService.EXTRA_SYNC_THRESHOLD, config.getSyncThreshold());
+            BatchUploader batchUploader = new BatchUploader(BatchStoreFactory.createBatchStore(getContext(), config));
+            Long batchId = batchUploader.prepare(syncThreshold, config.getSyncChunkSize());
 
-            if (file == null) {
+            if (batchId == null) {
                 log.info("Nothing to sync");
                 return;
             }
 
-            log.info("Syncing startAt: {}", batchStartMillis);
-            String url = config.hasSyncUrl() ? config.getSyncUrl() : config.getUrl();
-            HashMap<String, String> httpHeaders = new HashMap<String, String>();
-            httpHeaders.putAll(config.getHttpHeaders());
-            httpHeaders.put("x-batch-id", String.valueOf(batchStartMillis));
-
-            if (uploadLocations(file, url, httpHeaders)) {
+            log.info("Syncing batch: {} startAt: {}", batchId, System.currentTimeMillis());
+            syncScheduler.onSyncStarted();
+            if (uploadLocations(batchUploader, batchId, config)) {
                 log.info("Batch sync successful");
-                batchManager.setBatchCompleted(batchStartMillis);
-                if (file.delete()) {
-                    log.info("Batch file has been deleted: {}", file.getAbsolutePath());
-                } else {
-                    log.warn("Batch file has not been deleted: {}", file.getAbsolutePath());
-                }
+                syncScheduler.onSyncSuccess();
             } else {
-                log.warn("Batch sync failed due server error");
+                log.warn("Batch sync failed, will resume from last acknowledged chunk");
+                syncScheduler.onSyncFailure();
                 syncResult.stats.numIoExceptions++;
             }
         }
     }
 
-    private boolean uploadLocations(File file, String url, HashMap httpHeaders) {
+    private boolean uploadLocations(BatchUploader batchUploader, Long batchId, Config config) {
         NotificationCompat.Builder builder = new NotificationCompat.Builder(getContext());
         builder.setOngoing(true);
         builder.setContentTitle("Syncing locations");
@@ -149,18 +128,14 @@ public class SyncAdapter extends AbstractThreadedSyncAdapter implements Uploadin
         builder.setSmallIcon(android.R.drawable.ic_dialog_info);
         notifyManager.notify(NOTIFICATION_ID, builder.build());
 
+        boolean success = false;
         try {
-            int responseCode = HttpPostService.postFile(url, file, httpHeaders, this);
-            if (responseCode == HttpURLConnection.HTTP_OK) {
+            success = batchUploader.upload(batchId, config, this);
+            if (success) {
                 builder.setContentText("Sync completed");
             } else {
-                builder.setContentText("Sync failed due server error");
+                builder.setContentText("Sync failed");
             }
-
-            return responseCode == HttpURLConnection.HTTP_OK;
-        } catch (IOException e) {
-            log.warn("Error uploading locations: {}", e.getMessage());
-            builder.setContentText("Sync failed: " + e.getMessage());
         } finally {
             log.info("Syncing endAt: {}", System.currentTimeMillis());
 
@@ -179,10 +154,11 @@ public class SyncAdapter extends AbstractThreadedSyncAdapter implements Uploadin
             }, delayInMilliseconds);
         }
 
-        return false;
+        return success;
     }
 
-    public void uploadListener(int progress) {
+    @Override
+    public void onProgress(int progress) {
         log.debug("Syncing progress: {} updatedAt: {}", progress, System.currentTimeMillis());
         NotificationCompat.Builder builder = new NotificationCompat.Builder(getContext());
         builder.setOngoing(true);
@@ -0,0 +1,201 @@
+package com.marianhello.bgloc.sync;
+
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.net.ConnectivityManager;
+import android.net.NetworkInfo;
+import android.os.BatteryManager;
+import android.support.v4.net.ConnectivityManagerCompat;
+
+import com.marianhello.bgloc.Config;
+import com.marianhello.bgloc.data.DAOFactory;
+import com.marianhello.bgloc.data.LocationDAO;
+import com.marianhello.bgloc.data.SyncState;
+import com.marianhello.bgloc.data.SyncStateDAO;
+import com.marianhello.logging.LoggerManager;
+
+/**
+ * Decides when locations should be synced
+ *
+ * Decision is based on number of locations waiting for sync, age of oldest of them,
+ * network (unmetered vs. metered), charging state and exponential backoff
+ * after failed syncs. Decision is persisted (when it differs from last one) together with
+ * sync results, so they can be inspected via getSyncStats.
+ *
+ * Evaluation queries database, so it's done at most once per EVALUATE_INTERVAL_MILLIS
+ * unless forced (eg. on connectivity change).
+ */
+public class SyncScheduler {
+    public static final String DECISION_SYNC_THRESHOLD = "syncThreshold";
+    public static final String DECISION_SYNC_MAX_DELAY = "syncMaxDelay";
+    public static final String DECISION_SYNC_CHARGING = "syncCharging";
+    public static final String DECISION_IDLE = "idle";
+    public static final String DECISION_WAIT_THRESHOLD = "waitThreshold";
+    public static final String DECISION_WAIT_UNMETERED = "waitUnmetered";
+    public static final String DECISION_NO_CONNECTIVITY = "noConnectivity";
+    public static final String DECISION_BACKOFF = "backoff";
+
+    public static final long EVALUATE_INTERVAL_MILLIS = 15 * 1000;
+    public static final long BACKOFF_BASE_MILLIS = 30 * 1000;
+    public static final long BACKOFF_MAX_MILLIS = 60 * 60 * 1000;
+
+    private final Context context;
+    private final LocationDAO locationDAO;
+    private final SyncStateDAO syncStateDAO;
+    private long lastEvaluatedAt = 0;
+
+    private org.slf4j.Logger log;
+
+    public SyncScheduler(Context context) {
+        this(context, DAOFactory.createLocationDAO(context), DAOFactory.createSyncStateDAO(context));
+    }
+
+    public SyncScheduler(Context context, LocationDAO locationDAO, SyncStateDAO syncStateDAO) {
+        this.context = context.getApplicationContext();
+        this.locationDAO = locationDAO;
+        this.syncStateDAO = syncStateDAO;
+        log = LoggerManager.getLogger(SyncScheduler.class);
+    }
+
+    /**
+     * Evaluate whether sync should be requested now
+     *
+     * @param config
+     * @param force evaluate even if last evaluation was less than EVALUATE_INTERVAL_MILLIS ago
+     * @return one of DECISION_* constants or null when evaluation was skipped
+     */
+    public synchronized String evaluate(Config config, boolean force) {
+        long now = System.currentTimeMillis();
+        if (!force && now - lastEvaluatedAt < EVALUATE_INTERVAL_MILLIS) {
+            return null;
+        }
+        lastEvaluatedAt = now;
+
+        long pendingCount = locationDAO.locationsForSyncCount(now);
+        Long oldestPendingTime = pendingCount > 0 ? locationDAO.oldestLocationForSyncTime(now) : null;
+        SyncState state = syncStateDAO.getSyncState();
+
+        ConnectivityManager cm = (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
+        NetworkInfo activeNetwork = cm.getActiveNetworkInfo();
+        boolean connected = activeNetwork != null && activeNetwork.isConnected();
+        boolean metered = connected && ConnectivityManagerCompat.isActiveNetworkMetered(cm);
+
+        String decision = decide(config, now, pendingCount, oldestPendingTime,
+                state.getNextAttemptAt(), connected, metered, isCharging());
+        if (!decision.equals(state.getLastDecision())) {
+            syncStateDAO.persistDecision(decision, now, pendingCount, oldestPendingTime);
+        }
+        log.debug("Sync decision: {} pending: {} oldest: {} metered: {}", decision, pendingCount, oldestPendingTime, metered);
+
+        return decision;
+    }
+
+    /**
+     * Record start of sync (called from sync adapter)
+     */
+    public void onSyncStarted() {
+        syncStateDAO.persistSyncAttempt(System.currentTimeMillis());
+    }
+
+    /**
+     * Record successful sync and reset backoff (called from sync adapter)
+     */
+    public void onSyncSuccess() {
+        syncStateDAO.persistSyncSuccess(System.currentTimeMillis());
+    }
+
+    /**
+     * Record failed sync and postpone next attempt (called from sync adapter)
+     */
+    public void onSyncFailure() {
+        syncStateDAO.persistSyncFailure(System.currentTimeMillis(), BACKOFF_BASE_MILLIS, BACKOFF_MAX_MILLIS);
+        SyncState state = syncStateDAO.getSyncState();
+        log.info("Sync failed {} times in row, next attempt at: {}", state.getConsecutiveFailures(), state.getNextAttemptAt());
+    }
+
+    /**
+     * @return persisted sync state with current number and age of pending locations
+     * (persisted ones are from time of last decision change)
+     */
+    public SyncState getSyncState() {
+        long now = System.currentTimeMillis();
+        SyncState state = syncStateDAO.getSyncState();
+        long pendingCount = locationDAO.locationsForSyncCount(now);
+        state.setPendingCount(pendingCount);
+        state.setOldestPendingTime(pendingCount > 0 ? locationDAO.oldestLocationForSyncTime(now) : null);
+        return state;
+    }
+
+    public static boolean isSync(String decision) {
+        return DECISION_SYNC_THRESHOLD.equals(decision)
+                || DECISION_SYNC_MAX_DELAY.equals(decision)
+                || DECISION_SYNC_CHARGING.equals(decision);
+    }
+
+    /**
+     * Minimal number of locations in batch for sync triggered by decision
+     *
+     * Syncs triggered by age or charging state upload any number of pending locations.
+     */
+    public static int batchThreshold(String decision, Config config) {
+        return DECISION_SYNC_THRESHOLD.equals(decision) ? config.getSyncThreshold() : 1;
+    }
+
+    /**
+     * Sync decision policy
+     *
+     * In order of precedence:
+     * nothing pending, no connectivity and backoff prevent sync;
+     * oldest location older than syncMaxDelay forces sync on any network;
+     * on charger with unmetered network all pending locations are synced;
+     * reaching syncThreshold triggers sync, unless syncUnmeteredOnly is set and network is metered.
+     *
+     * @return one of DECISION_* constants
+     */
+    public static String decide(Config config, long now, long pendingCount, Long oldestPendingTime,
+                                long nextAttemptAt, boolean connected, boolean metered, boolean charging) {
+        if (pendingCount == 0) {
+            return DECISION_IDLE;
+        }
+        if (!connected) {
+            return DECISION_NO_CONNECTIVITY;
+        }
+        if (now < nextAttemptAt) {
+            return DECISION_BACKOFF;
+        }
+        int maxDelay = config.getSyncMaxDelay();
+        if (maxDelay > 0 && oldestPendingTime != null && now - oldestPendingTime >= maxDelay) {
+            return DECISION_SYNC_MAX_DELAY;
+        }
+        if (charging && !metered) {
+            return DECISION_SYNC_CHARGING;
+        }
+        if (pendingCount < config.getSyncThreshold()) {
+            return DECISION_WAIT_THRESHOLD;
+        }
+        if (metered && config.getSyncUnmeteredOnly()) {
+            return DECISION_WAIT_UNMETERED;
+        }
+        return DECISION_SYNC_THRESHOLD;
+    }
+
+    /**
+     * @param consecutiveFailures number of failed syncs in row (>= 1)
+     * @return delay before next sync attempt, doubling with every failure up to BACKOFF_MAX_MILLIS
+     * (persisted by SyncStateDAO.persistSyncFailure)
+     */
+    public static long backoffDelay(int consecutiveFailures) {
+        if (consecutiveFailures <= 0) {
+            return 0;
+        }
+        int exponent = Math.min(consecutiveFailures - 1, 20);
+        return Math.min(BACKOFF_BASE_MILLIS << exponent, BACKOFF_MAX_MILLIS);
+    }
+
+    private boolean isCharging() {
+        // sticky broadcast, no receiver is actually registered
+        Intent battery = context.registerReceiver(null, new IntentFilter(Intent.ACTION_BATTERY_CHANGED));
+        return battery != null && battery.getIntExtra(BatteryManager.EXTRA_PLUGGED, 0) != 0;
+    }
+}
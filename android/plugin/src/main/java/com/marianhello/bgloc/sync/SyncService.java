@@ -14,6 +14,9 @@ import android.os.IBinder;
  */
 public class SyncService extends Service {
 
+    /** minimal number of locations in batch, overrides config.syncThreshold */
+    public static final String EXTRA_SYNC_THRESHOLD = "com.marianhello.bgloc.sync.SYNC_THRESHOLD";
+
     // Storage for an instance of the sync adapter
     private static SyncAdapter sSyncAdapter = null;
     // Object to use as a thread-safe lock
@@ -53,8 +56,22 @@ public class SyncService extends Service {
     }
 
     public static void sync(Account account, String authority) {
+        sync(account, authority, null);
+    }
+
+    /**
+     * Request sync
+     *
+     * @param account
+     * @param authority
+     * @param syncThreshold minimal number of locations in batch or null to use config.syncThreshold
+     */
+    public static void sync(Account account, String authority, Integer syncThreshold) {
         // Pass the settings flags by inserting them in a bundle
         Bundle settingsBundle = new Bundle();
+        if (syncThreshold != null) {
+            settingsBundle.putInt(EXTRA_SYNC_THRESHOLD, syncThreshold);
+        }
         settingsBundle.putBoolean(ContentResolver.SYNC_EXTRAS_MANUAL, true);
         settingsBundle.putBoolean(ContentResolver.SYNC_EXTRAS_EXPEDITED, false);
         settingsBundle.putBoolean(ContentResolver.SYNC_EXTRAS_DO_NOT_RETRY, false);
@@ -27,10 +27,13 @@ import android.os.PowerManager;
 import android.widget.Toast;
 
 import com.marianhello.bgloc.AbstractLocationProvider;
+import com.marianhello.bgloc.Config;
+import com.marianhello.bgloc.Geodesy;
 import com.marianhello.bgloc.LocationService;
 import com.marianhello.logging.LoggerManager;
 
 import java.util.List;
+import java.util.Set;
 
 import static java.lang.Math.abs;
 import static java.lang.Math.pow;
@@ -163,6 +166,30 @@ public class DistanceFilterLocationProvider extends AbstractLocationProvider imp
 
   }
 
+  @Override
+  public void onConfigure(Config config, Set<String> changedOptions) {
+    super.onConfigure(config, changedOptions);
+    this.minBatteryLevel = config.getMinBattery();
+
+    // speed and stationary location acquisition continue with new config once they end
+    if (!isMoving || isAcquiringSpeed) {
+      return;
+    }
+    if (changedOptions.contains("distanceFilter") || changedOptions.contains("interval")
+        || changedOptions.contains("desiredAccuracy")) {
+      scaledDistanceFilter = calculateDistanceFilter(lastLocation != null ? lastLocation.getSpeed() : 0f);
+      log.info("Updating location request: interval={} distanceFilter={}", config.getInterval(), scaledDistanceFilter);
+      try {
+        locationManager.removeUpdates(this);
+        criteria.setHorizontalAccuracy(translateDesiredAccuracy(config.getDesiredAccuracy()));
+        locationManager.requestLocationUpdates(locationManager.getBestProvider(criteria, true), config.getInterval(), scaledDistanceFilter, this);
+      } catch (SecurityException e) {
+        log.error("Security exception: {}", e.getMessage());
+        this.handleSecurityException(e);
+      }
+    }
+  }
+
   /**
    *
    * @param value set true to engage "aggressive", battery-consuming tracking, false for stationary-region tracking
@@ -362,7 +389,8 @@ public class DistanceFilterLocationProvider extends AbstractLocationProvider imp
         scaledDistanceFilter = newDistanceFilter;
         setPace(true);
       }
-      if (location.distanceTo(lastLocation) < config.getDistanceFilter()) {
+      if (Geodesy.distance(location.getLatitude(), location.getLongitude(),
+          lastLocation.getLatitude(), lastLocation.getLongitude()) < config.getDistanceFilter()) {
         return;
       }
 
@@ -419,7 +447,8 @@ public class DistanceFilterLocationProvider extends AbstractLocationProvider imp
         scaledDistanceFilter = newDistanceFilter;
         setPace(true);
       }
-      if (location.distanceTo(lastLocation) < config.getDistanceFilter()) {
+      if (Geodesy.distance(location.getLatitude(), location.getLongitude(),
+          lastLocation.getLatitude(), lastLocation.getLongitude()) < config.getDistanceFilter()) {
         return;
       }
     } else if (stationaryLocation != null) {
@@ -519,7 +548,9 @@ public class DistanceFilterLocationProvider extends AbstractLocationProvider imp
     if (config.isDebugging()) {
       startTone(Tone.BEEP);
     }
-    float distance = abs(location.distanceTo(stationaryLocation) - stationaryLocation.getAccuracy() - location.getAccuracy());
+    float distance = abs((float) Geodesy.distance(location.getLatitude(), location.getLongitude(),
+        stationaryLocation.getLatitude(), stationaryLocation.getLongitude())
+        - stationaryLocation.getAccuracy() - location.getAccuracy());
 
     if (config.isDebugging()) {
       Toast.makeText(locationService, "Stationary exit in " + (stationaryRadius-distance) + "m", Toast.LENGTH_LONG).show();
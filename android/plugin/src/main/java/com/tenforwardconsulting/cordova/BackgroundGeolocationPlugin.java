@@ -40,9 +40,17 @@ import com.marianhello.bgloc.Config;
 import com.marianhello.bgloc.LocationService;
 import com.marianhello.bgloc.ResourceResolver;
 import com.marianhello.bgloc.data.BackgroundLocation;
-import com.marianhello.bgloc.data.ConfigurationDAO;
+import com.marianhello.bgloc.data.BoundingBox;
+import com.marianhello.bgloc.data.ConfigRepository;
 import com.marianhello.bgloc.data.DAOFactory;
+import com.marianhello.bgloc.data.Geofence;
+import com.marianhello.bgloc.data.GeofenceDAO;
 import com.marianhello.bgloc.data.LocationDAO;
+import com.marianhello.bgloc.data.LocationQuery;
+import com.marianhello.bgloc.data.TrackingSession;
+import com.marianhello.bgloc.data.TrackingSessionDAO;
+import com.marianhello.bgloc.geofence.GeofenceEvent;
+import com.marianhello.bgloc.sync.SyncScheduler;
 import com.marianhello.cordova.JSONErrorFactory;
 import com.marianhello.cordova.PermissionHelper;
 import com.marianhello.logging.DBLogReader;
@@ -59,6 +67,7 @@ import org.json.JSONObject;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 
@@ -77,10 +86,20 @@ public class BackgroundGeolocationPlugin extends CordovaPlugin {
   public static final String ACTION_GET_STATIONARY = "getStationaryLocation";
   public static final String ACTION_GET_ALL_LOCATIONS = "getLocations";
   public static final String ACTION_GET_VALID_LOCATIONS = "getValidLocations";
+  public static final String ACTION_GET_LOCATIONS_PAGE = "getLocationsPage";
+  public static final String ACTION_STREAM_LOCATIONS = "streamLocations";
+  public static final String ACTION_QUERY_LOCATIONS = "queryLocations";
   public static final String ACTION_DELETE_LOCATION = "deleteLocation";
   public static final String ACTION_DELETE_ALL_LOCATIONS = "deleteAllLocations";
   public static final String ACTION_GET_CONFIG = "getConfig";
   public static final String ACTION_GET_LOG_ENTRIES = "getLogEntries";
+  public static final String ACTION_GET_SYNC_STATS = "getSyncStats";
+  public static final String ACTION_GET_CURRENT_SESSION = "getCurrentSession";
+  public static final String ACTION_ADD_GEOFENCES = "addGeofences";
+  public static final String ACTION_REMOVE_GEOFENCES = "removeGeofences";
+  public static final String ACTION_REMOVE_ALL_GEOFENCES = "removeAllGeofences";
+  public static final String ACTION_GET_GEOFENCES = "getGeofences";
+  public static final String ACTION_ADD_GEOFENCE_LISTENER = "addGeofenceListener";
 
   public static final int START_REQ_CODE = 0;
   public static final int PERMISSION_DENIED_ERROR_CODE = 2;
@@ -95,6 +114,7 @@ public class BackgroundGeolocationPlugin extends CordovaPlugin {
   private Config config;
   private CallbackContext callbackContext;
   private ArrayList<CallbackContext> stationaryContexts = new ArrayList<CallbackContext>();
+  private ArrayList<CallbackContext> geofenceContexts = new ArrayList<CallbackContext>();
   private CallbackContext actionStartCallbackContext;
   private CallbackContext locationModeChangeCallbackContext;
   private ExecutorService executorService;
@@ -157,6 +177,29 @@ public class BackgroundGeolocationPlugin extends CordovaPlugin {
             }
           }
           break;
+        case LocationService.MSG_ON_GEOFENCE:
+          if (!geofenceContexts.isEmpty()) {
+            PluginResult result;
+            try {
+              log.debug("Sending geofence event to webview");
+              Bundle bundle = msg.getData();
+              bundle.setClassLoader(LocationService.class.getClassLoader());
+              JSONObject event = new JSONObject();
+              event.put("id", bundle.getString("geofenceId"));
+              event.put("transition", GeofenceEvent.transitionToString(bundle.getInt("transition")));
+              event.put("location", ((BackgroundLocation) bundle.getParcelable("location")).toJSONObject());
+              result = new PluginResult(PluginResult.Status.OK, event);
+            } catch (JSONException e) {
+              log.warn("Error converting message to json");
+              result = new PluginResult(PluginResult.Status.JSON_EXCEPTION);
+            }
+            result.setKeepCallback(true);
+
+            for (CallbackContext ctx:geofenceContexts) {
+              ctx.sendPluginResult(result);
+            }
+          }
+          break;
         case LocationService.MSG_ERROR:
           try {
             log.debug("Sending error to webview");
@@ -386,6 +429,48 @@ public class BackgroundGeolocationPlugin extends CordovaPlugin {
         }
       });
 
+      return true;
+    } else if (ACTION_GET_LOCATIONS_PAGE.equals(action)) {
+      cordova.getThreadPool().execute(new Runnable() {
+        public void run() {
+          try {
+            LocationQuery query = LocationQuery.fromJSONObject(data.optJSONObject(0));
+            callbackContext.success(getLocationsPage(query));
+          } catch (JSONException e) {
+            log.error("Getting locations page failed: {}", e.getMessage());
+            callbackContext.error("Getting locations page failed: " + e.getMessage());
+          }
+        }
+      });
+
+      return true;
+    } else if (ACTION_STREAM_LOCATIONS.equals(action)) {
+      cordova.getThreadPool().execute(new Runnable() {
+        public void run() {
+          try {
+            LocationQuery query = LocationQuery.fromJSONObject(data.optJSONObject(0));
+            streamLocations(query, callbackContext);
+          } catch (JSONException e) {
+            log.error("Streaming locations failed: {}", e.getMessage());
+            callbackContext.error("Streaming locations failed: " + e.getMessage());
+          }
+        }
+      });
+
+      return true;
+    } else if (ACTION_QUERY_LOCATIONS.equals(action)) {
+      cordova.getThreadPool().execute(new Runnable() {
+        public void run() {
+          try {
+            LocationQuery query = LocationQuery.fromJSONObject(data.optJSONObject(0));
+            callbackContext.success(queryLocations(query.getBoundingBox(), query.getFromTime(), query.getToTime(), query.getLimit()));
+          } catch (JSONException e) {
+            log.error("Querying locations failed: {}", e.getMessage());
+            callbackContext.error("Querying locations failed: " + e.getMessage());
+          }
+        }
+      });
+
       return true;
     } else if (ACTION_DELETE_LOCATION.equals(action)) {
       cordova.getThreadPool().execute(new Runnable() {
@@ -423,6 +508,86 @@ public class BackgroundGeolocationPlugin extends CordovaPlugin {
         }
       });
 
+      return true;
+    } else if (ACTION_GET_SYNC_STATS.equals(action)) {
+      cordova.getThreadPool().execute(new Runnable() {
+        public void run() {
+          try {
+            callbackContext.success(getSyncStats());
+          } catch (JSONException e) {
+            log.error("Error getting sync stats: {}", e.getMessage());
+            callbackContext.error("Error getting sync stats: " + e.getMessage());
+          }
+        }
+      });
+
+      return true;
+    } else if (ACTION_GET_CURRENT_SESSION.equals(action)) {
+      cordova.getThreadPool().execute(new Runnable() {
+        public void run() {
+          try {
+            callbackContext.success(getCurrentSession());
+          } catch (JSONException e) {
+            log.error("Error getting current session: {}", e.getMessage());
+            callbackContext.error("Error getting current session: " + e.getMessage());
+          }
+        }
+      });
+
+      return true;
+    } else if (ACTION_ADD_GEOFENCES.equals(action)) {
+      cordova.getThreadPool().execute(new Runnable() {
+        public void run() {
+          try {
+            addGeofences(data.getJSONArray(0));
+            callbackContext.success();
+          } catch (JSONException e) {
+            log.error("Adding geofences failed: {}", e.getMessage());
+            callbackContext.error("Adding geofences failed: " + e.getMessage());
+          }
+        }
+      });
+
+      return true;
+    } else if (ACTION_REMOVE_GEOFENCES.equals(action)) {
+      cordova.getThreadPool().execute(new Runnable() {
+        public void run() {
+          try {
+            removeGeofences(data.getJSONArray(0));
+            callbackContext.success();
+          } catch (JSONException e) {
+            log.error("Removing geofences failed: {}", e.getMessage());
+            callbackContext.error("Removing geofences failed: " + e.getMessage());
+          }
+        }
+      });
+
+      return true;
+    } else if (ACTION_REMOVE_ALL_GEOFENCES.equals(action)) {
+      cordova.getThreadPool().execute(new Runnable() {
+        public void run() {
+          removeAllGeofences();
+          callbackContext.success();
+        }
+      });
+
+      return true;
+    } else if (ACTION_GET_GEOFENCES.equals(action)) {
+      cordova.getThreadPool().execute(new Runnable() {
+        public void run() {
+          try {
+            callbackContext.success(getGeofences());
+          } catch (JSONException e) {
+            log.error("Error getting geofences: {}", e.getMessage());
+            callbackContext.error("Error getting geofences: " + e.getMessage());
+          }
+        }
+      });
+
+      return true;
+    } else if (ACTION_ADD_GEOFENCE_LISTENER.equals(action)) {
+      geofenceContexts.add(callbackContext);
+
       return true;
     } else if (ACTION_GET_LOG_ENTRIES.equals(action)) {
       cordova.getThreadPool().execute(new Runnable() {
@@ -635,6 +800,85 @@ public class BackgroundGeolocationPlugin extends CordovaPlugin {
     return jsonLocationsArray;
   }
 
+  /**
+   * Get single page of locations
+   *
+   * @param query
+   * @return page with locations and cursor of next page (null when there are no more locations)
+   * @throws JSONException
+   */
+  public JSONObject getLocationsPage(LocationQuery query) throws JSONException {
+    LocationDAO dao = DAOFactory.createLocationDAO(getContext());
+    Collection<BackgroundLocation> locations = dao.getLocations(query);
+    BackgroundLocation lastLocation = null;
+    JSONArray jsonLocationsArray = new JSONArray();
+    for (BackgroundLocation location : locations) {
+      jsonLocationsArray.put(location.toJSONObjectWithId());
+      lastLocation = location;
+    }
+
+    JSONObject page = new JSONObject();
+    page.put("locations", jsonLocationsArray);
+    if (locations.size() < query.getLimit() || lastLocation == null) {
+      page.put("cursor", JSONObject.NULL);
+    } else {
+      page.put("cursor", LocationQuery.cursorToJSONObject(lastLocation));
+    }
+    return page;
+  }
+
+  /**
+   * Send all locations matching query in chunks of query.limit locations
+   *
+   * Every chunk is delivered as separate plugin result with kept callback,
+   * so only one chunk is held in memory at time. Last chunk has done flag set.
+   *
+   * @param query
+   * @param callbackContext
+   * @throws JSONException
+   */
+  public void streamLocations(LocationQuery query, CallbackContext callbackContext) throws JSONException {
+    LocationDAO dao = DAOFactory.createLocationDAO(getContext());
+    boolean done = false;
+    while (!done) {
+      Collection<BackgroundLocation> locations = dao.getLocations(query);
+      done = locations.size() < query.getLimit();
+
+      JSONArray jsonLocationsArray = new JSONArray();
+      for (BackgroundLocation location : locations) {
+        jsonLocationsArray.put(location.toJSONObjectWithId());
+        query.setCursor(location);
+      }
+
+      JSONObject chunk = new JSONObject();
+      chunk.put("locations", jsonLocationsArray);
+      chunk.put("done", done);
+      PluginResult result = new PluginResult(PluginResult.Status.OK, chunk);
+      result.setKeepCallback(!done);
+      callbackContext.sendPluginResult(result);
+    }
+  }
+
+  /**
+   * Get locations inside bounding box recorded between fromTime and toTime
+   *
+   * @param bbox bounding box or null
+   * @param fromTime millis since epoch or null
+   * @param toTime millis since epoch or null
+   * @param limit max number of locations
+   * @return locations ordered by time
+   * @throws JSONException
+   */
+  public JSONArray queryLocations(BoundingBox bbox, Long fromTime, Long toTime, int limit) throws JSONException {
+    JSONArray jsonLocationsArray = new JSONArray();
+    LocationDAO dao = DAOFactory.createLocationDAO(getContext());
+    Collection<BackgroundLocation> locations = dao.queryLocations(bbox, fromTime, toTime, limit);
+    for (BackgroundLocation location : locations) {
+      jsonLocationsArray.put(location.toJSONObjectWithId());
+    }
+    return jsonLocationsArray;
+  }
+
   public void deleteLocation(Long locationId) {
     LocationDAO dao = DAOFactory.createLocationDAO(getContext());
     dao.deleteLocation(locationId);
@@ -645,21 +889,87 @@ public class BackgroundGeolocationPlugin extends CordovaPlugin {
     dao.deleteAllLocations();
   }
 
-  public void persistConfiguration(Config config) throws NullPointerException {
-    ConfigurationDAO dao = DAOFactory.createConfigurationDAO(getContext());
-
-    dao.persistConfiguration(config);
+  public void persistConfiguration(Config config) throws JSONException, NullPointerException {
+    ConfigRepository.getInstance(getContext()).persistConfig(config);
   }
 
   public JSONObject retrieveConfiguration() throws JSONException {
-    ConfigurationDAO dao = DAOFactory.createConfigurationDAO(getContext());
-    Config config = dao.retrieveConfiguration();
+    Config config = ConfigRepository.getInstance(getContext()).getConfig();
     if (config != null) {
       return config.toJSONObject();
     }
     return null;
   }
 
+  public JSONObject getSyncStats() throws JSONException {
+    return new SyncScheduler(getContext()).getSyncState().toJSONObject();
+  }
+
+  /**
+   * @return summary of running or last tracking session or null when there is no session
+   * @throws JSONException
+   */
+  public JSONObject getCurrentSession() throws JSONException {
+    TrackingSessionDAO dao = DAOFactory.createTrackingSessionDAO(getContext());
+    TrackingSession session = dao.getCurrentSession();
+    if (session != null) {
+      return session.toJSONObject();
+    }
+    return null;
+  }
+
+  /**
+   * Persist geofences (fence with existing id is replaced) and reload them in running service
+   *
+   * @param jsonGeofences
+   * @throws JSONException when any fence is invalid (no fence is added then)
+   */
+  public void addGeofences(JSONArray jsonGeofences) throws JSONException {
+    List<Geofence> geofences = new ArrayList<Geofence>(jsonGeofences.length());
+    for (int i = 0; i < jsonGeofences.length(); i++) {
+      geofences.add(Geofence.fromJSONObject(jsonGeofences.getJSONObject(i)));
+    }
+    DAOFactory.createGeofenceDAO(getContext()).persistGeofences(geofences);
+    reloadGeofences();
+  }
+
+  public void removeGeofences(JSONArray jsonIds) throws JSONException {
+    List<String> ids = new ArrayList<String>(jsonIds.length());
+    for (int i = 0; i < jsonIds.length(); i++) {
+      ids.add(jsonIds.getString(i));
+    }
+    DAOFactory.createGeofenceDAO(getContext()).deleteGeofences(ids);
+    reloadGeofences();
+  }
+
+  public void removeAllGeofences() {
+    DAOFactory.createGeofenceDAO(getContext()).deleteAllGeofences();
+    reloadGeofences();
+  }
+
+  public JSONArray getGeofences() throws JSONException {
+    JSONArray jsonGeofencesArray = new JSONArray();
+    GeofenceDAO dao = DAOFactory.createGeofenceDAO(getContext());
+    for (Geofence geofence : dao.getAllGeofences()) {
+      jsonGeofencesArray.put(geofence.toJSONObject());
+    }
+    return jsonGeofencesArray;
+  }
+
+  /**
+   * Let running service reload geofences from db (service loads them on start otherwise)
+   */
+  private void reloadGeofences() {
+    if (!isBound || mService == null) {
+      return;
+    }
+    try {
+      mService.send(Message.obtain(null, LocationService.MSG_RELOAD_GEOFENCES));
+    } catch (RemoteException e) {
+      log.error("Reloading geofences failed: {}", e.getMessage());
+    }
+  }
+
   public JSONArray getLogs(Integer limit) throws Exception {
     JSONArray jsonLogsArray = new JSONArray();
     LogReader logReader = new DBLogReader();
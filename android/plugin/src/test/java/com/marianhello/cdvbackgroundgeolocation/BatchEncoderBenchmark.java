@@ -0,0 +1,75 @@
+package com.marianhello.cdvbackgroundgeolocation;
+
+import com.marianhello.bgloc.sync.BatchEncoder;
+import com.marianhello.bgloc.sync.BinaryBatchEncoder;
+import com.marianhello.bgloc.sync.JsonBatchEncoder;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Size and throughput comparison of batch encoders
+ *
+ * Encodes 100k generated rows with every encoder and reports rows/sec
+ * and bytes per row, both plain and gzip compressed.
+ *
+ * Run with: ./gradlew test -Pbenchmark --tests '*BatchEncoderBenchmark' -i
+ */
+public class BatchEncoderBenchmark {
+    private static final int ROWS = 100000;
+    private static final int WARMUP_ROUNDS = 3;
+    private static final int ROUNDS = 5;
+
+    private static byte[] encode(BatchEncoder encoder, boolean gzip) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(ROWS * 16);
+        if (gzip) {
+            GZIPOutputStream out = new GZIPOutputStream(bytes);
+            encoder.encode(new InMemoryLocationCursor(ROWS), out);
+            out.close();
+        } else {
+            encoder.encode(new InMemoryLocationCursor(ROWS), bytes);
+        }
+        return bytes.toByteArray();
+    }
+
+    private long run(BatchEncoder encoder) throws IOException {
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            encode(encoder, false);
+        }
+
+        long bestNanos = Long.MAX_VALUE;
+        int size = 0;
+        for (int i = 0; i < ROUNDS; i++) {
+            long start = System.nanoTime();
+            size = encode(encoder, false).length;
+            bestNanos = Math.min(bestNanos, System.nanoTime() - start);
+        }
+        int gzipSize = encode(encoder, true).length;
+
+        System.out.println(String.format(
+                "%s rows: %d rows/sec: %.0f bytes/row: %.1f gzip bytes/row: %.1f",
+                encoder.getClass().getSimpleName(),
+                ROWS,
+                ROWS / (bestNanos / 1e9),
+                size / (double) ROWS,
+                gzipSize / (double) ROWS));
+
+        return size;
+    }
+
+    @Test
+    public void compareEncoders() throws IOException {
+        long json = run(new JsonBatchEncoder());
+        long binary = run(new BinaryBatchEncoder());
+        Assert.assertTrue(binary < json);
+    }
+
+    public static void main(String[] args) throws IOException {
+        new BatchEncoderBenchmark().compareEncoders();
+    }
+}
@@ -0,0 +1,156 @@
+package com.marianhello.cdvbackgroundgeolocation;
+
+import com.marianhello.bgloc.sync.BinaryBatchEncoder;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reference decoder of BinaryBatchEncoder format used by tests
+ */
+public class BinaryBatchDecoder {
+    public static class Row {
+        public int flags;
+        public long time;
+        public double latitude;
+        public double longitude;
+        public float accuracy;
+        public float speed;
+        public float bearing;
+        public double altitude;
+        public float radius;
+        public String provider;
+        public int locationProvider;
+
+        public boolean has(int flag) {
+            return (flags & flag) != 0;
+        }
+    }
+
+    private static class Reader {
+        private final byte[] bytes;
+        private int position;
+        private final int end;
+
+        Reader(byte[] bytes, int position, int end) {
+            this.bytes = bytes;
+            this.position = position;
+            this.end = end;
+        }
+
+        int readByte() throws IOException {
+            if (position >= end) {
+                throw new IOException("Unexpected end of column");
+            }
+            return bytes[position++] & 0xFF;
+        }
+
+        long readVarint() throws IOException {
+            long value = 0;
+            int shift = 0;
+            int b;
+            do {
+                b = readByte();
+                value |= (long) (b & 0x7F) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+            return value;
+        }
+
+        long readSignedVarint() throws IOException {
+            long value = readVarint();
+            return (value >>> 1) ^ -(value & 1);
+        }
+
+        Reader column() throws IOException {
+            int length = (int) readVarint();
+            Reader column = new Reader(bytes, position, position + length);
+            position += length;
+            return column;
+        }
+
+        boolean isConsumed() {
+            return position == end;
+        }
+    }
+
+    public static List<Row> decode(byte[] batch) throws IOException {
+        Reader in = new Reader(batch, 0, batch.length);
+        if (in.readByte() != 'B' || in.readByte() != 'G' || in.readByte() != 'L') {
+            throw new IOException("Not a binary batch");
+        }
+        if (in.readByte() != BinaryBatchEncoder.VERSION) {
+            throw new IOException("Unsupported version");
+        }
+        int rowCount = (int) in.readVarint();
+        String[] providers = new String[(int) in.readVarint()];
+        for (int i = 0; i < providers.length; i++) {
+            int length = (int) in.readVarint();
+            providers[i] = new String(batch, in.position, length, "UTF-8");
+            in.position += length;
+        }
+
+        Reader flags = in.column();
+        Reader times = in.column();
+        Reader latitudes = in.column();
+        Reader longitudes = in.column();
+        Reader accuracies = in.column();
+        Reader speeds = in.column();
+        Reader bearings = in.column();
+        Reader altitudes = in.column();
+        Reader radii = in.column();
+        Reader providerIndices = in.column();
+        Reader locationProviders = in.column();
+
+        List<Row> rows = new ArrayList<Row>(rowCount);
+        long time = 0, latitude = 0, longitude = 0, altitude = 0;
+        for (int i = 0; i < rowCount; i++) {
+            Row row = new Row();
+            row.flags = flags.readByte();
+            time += times.readSignedVarint();
+            latitude += latitudes.readSignedVarint();
+            longitude += longitudes.readSignedVarint();
+            row.time = time;
+            row.latitude = latitude / BinaryBatchEncoder.COORDINATE_SCALE;
+            row.longitude = longitude / BinaryBatchEncoder.COORDINATE_SCALE;
+            if (row.has(BinaryBatchEncoder.FLAG_HAS_ACCURACY)) {
+                row.accuracy = (float) (accuracies.readSignedVarint() / BinaryBatchEncoder.ACCURACY_SCALE);
+            }
+            if (row.has(BinaryBatchEncoder.FLAG_HAS_SPEED)) {
+                row.speed = (float) (speeds.readSignedVarint() / BinaryBatchEncoder.SPEED_SCALE);
+            }
+            if (row.has(BinaryBatchEncoder.FLAG_HAS_BEARING)) {
+                row.bearing = (float) (bearings.readSignedVarint() / BinaryBatchEncoder.BEARING_SCALE);
+            }
+            if (row.has(BinaryBatchEncoder.FLAG_HAS_ALTITUDE)) {
+                altitude += altitudes.readSignedVarint();
+                row.altitude = altitude / BinaryBatchEncoder.ALTITUDE_SCALE;
+            }
+            if (row.has(BinaryBatchEncoder.FLAG_HAS_RADIUS)) {
+                row.radius = (float) (radii.readSignedVarint() / BinaryBatchEncoder.RADIUS_SCALE);
+            }
+            if (row.has(BinaryBatchEncoder.FLAG_HAS_PROVIDER)) {
+                row.provider = providers[(int) providerIndices.readVarint()];
+            }
+            if (row.has(BinaryBatchEncoder.FLAG_HAS_LOCATION_PROVIDER)) {
+                row.locationProvider = (int) locationProviders.readSignedVarint();
+            }
+            rows.add(row);
+        }
+
+        Reader[] columns = {
+                flags, times, latitudes, longitudes, accuracies, speeds,
+                bearings, altitudes, radii, providerIndices, locationProviders
+        };
+        for (Reader column : columns) {
+            if (!column.isConsumed()) {
+                throw new IOException("Column has trailing bytes");
+            }
+        }
+        if (!in.isConsumed()) {
+            throw new IOException("Batch has trailing bytes");
+        }
+        return rows;
+    }
+}
@@ -0,0 +1,69 @@
+package com.marianhello.cdvbackgroundgeolocation;
+
+import android.test.suitebuilder.annotation.SmallTest;
+
+import com.marianhello.bgloc.sync.BatchEncoder;
+import com.marianhello.bgloc.sync.BatchEncoderFactory;
+import com.marianhello.bgloc.sync.BinaryBatchEncoder;
+import com.marianhello.bgloc.sync.JsonBatchEncoder;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.List;
+
+@SmallTest
+public class BinaryBatchEncoderTest {
+
+    private static byte[] encode(BatchEncoder encoder, int rows) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Assert.assertEquals(rows, encoder.encode(new InMemoryLocationCursor(rows), out));
+        return out.toByteArray();
+    }
+
+    @Test
+    public void roundTrip() throws IOException {
+        int count = 1000;
+        List<BinaryBatchDecoder.Row> rows = BinaryBatchDecoder.decode(encode(new BinaryBatchEncoder(), count));
+
+        Assert.assertEquals(count, rows.size());
+        for (int i = 0; i < count; i++) {
+            BinaryBatchDecoder.Row row = rows.get(i);
+            Assert.assertEquals(InMemoryLocationCursor.time(i), row.time);
+            Assert.assertEquals(InMemoryLocationCursor.latitude(i), row.latitude, 1e-7);
+            Assert.assertEquals(InMemoryLocationCursor.longitude(i), row.longitude, 1e-7);
+            Assert.assertEquals(InMemoryLocationCursor.accuracy(i), row.accuracy, 0.1f);
+            Assert.assertEquals(InMemoryLocationCursor.speed(i), row.speed, 0.01f);
+            Assert.assertEquals(InMemoryLocationCursor.bearing(i), row.bearing, 0.1f);
+            Assert.assertEquals(InMemoryLocationCursor.altitude(i), row.altitude, 0.01);
+            Assert.assertEquals(InMemoryLocationCursor.hasRadius(i), row.has(BinaryBatchEncoder.FLAG_HAS_RADIUS));
+            Assert.assertEquals(InMemoryLocationCursor.PROVIDER, row.provider);
+            Assert.assertEquals(1, row.locationProvider);
+        }
+    }
+
+    @Test
+    public void roundTripEmptyCursor() throws IOException {
+        Assert.assertEquals(0, BinaryBatchDecoder.decode(encode(new BinaryBatchEncoder(), 0)).size());
+    }
+
+    @Test
+    public void binaryIsSmallerThanJson() throws IOException {
+        int count = 1000;
+        byte[] binary = encode(new BinaryBatchEncoder(), count);
+        byte[] json = encode(new JsonBatchEncoder(), count);
+        Assert.assertTrue(binary.length * 5 < json.length);
+    }
+
+    @Test
+    public void createEncoder() {
+        Assert.assertTrue(BatchEncoderFactory.createEncoder("binary") instanceof BinaryBatchEncoder);
+        Assert.assertTrue(BatchEncoderFactory.createEncoder("json") instanceof JsonBatchEncoder);
+        Assert.assertTrue(BatchEncoderFactory.createEncoder(null) instanceof JsonBatchEncoder);
+        Assert.assertEquals("application/vnd.bgloc.batch", BatchEncoderFactory.createEncoder("binary").getContentType());
+        Assert.assertEquals("application/json", BatchEncoderFactory.createEncoder("json").getContentType());
+    }
+}
@@ -0,0 +1,131 @@
+package com.marianhello.cdvbackgroundgeolocation;
+
+import android.test.suitebuilder.annotation.SmallTest;
+
+import com.marianhello.bgloc.Config;
+import com.marianhello.bgloc.data.ConfigRepository;
+import com.marianhello.bgloc.data.ConfigurationDAO;
+
+import junit.framework.Assert;
+
+import org.json.JSONException;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Set;
+
+@SmallTest
+public class ConfigRepositoryTest {
+
+    /**
+     * Stands for database shared by all processes
+     */
+    private static class InMemoryConfigurationDAO implements ConfigurationDAO {
+        Config config;
+        long version = 0;
+        int retrieveCount = 0;
+
+        public boolean persistConfiguration(Config config) {
+            this.config = config;
+            version++;
+            return true;
+        }
+
+        public Config retrieveConfiguration() {
+            retrieveCount++;
+            return config;
+        }
+
+        public long getConfigurationVersion() {
+            return version;
+        }
+    }
+
+    private InMemoryConfigurationDAO dao;
+    private ConfigRepository repository;
+    private List<Set<String>> changes;
+
+    @Before
+    public void setUp() {
+        dao = new InMemoryConfigurationDAO();
+        repository = new ConfigRepository(dao);
+        changes = new ArrayList<Set<String>>();
+        repository.addListener(new ConfigRepository.ConfigChangeListener() {
+            public void onConfigChanged(Config config, Set<String> changedOptions) {
+                changes.add(changedOptions);
+            }
+        });
+    }
+
+    @Test
+    public void diffReportsChangedOptions() {
+        Config config = new Config();
+        Config other = new Config();
+        Assert.assertTrue(config.diff(other).isEmpty());
+
+        other.setDistanceFilter(10);
+        other.setUrl("http://server/locations");
+        other.setStationaryRadius(config.getStationaryRadius());
+        Set<String> changed = config.diff(other);
+        Assert.assertEquals(2, changed.size());
+        Assert.assertTrue(changed.contains("distanceFilter"));
+        Assert.assertTrue(changed.contains("url"));
+    }
+
+    @Test
+    public void diffComparesHeadersByValue() {
+        Config config = new Config();
+        Config other = new Config();
+        HashMap<String, String> headers = new HashMap<String, String>();
+        headers.put("X-Token", "1");
+        config.setHttpHeaders(headers);
+        other.setHttpHeaders(new HashMap<String, String>(headers));
+        Assert.assertTrue(config.diff(other).isEmpty());
+    }
+
+    @Test
+    public void configIsHydratedOnlyOnVersionChange() throws JSONException {
+        dao.persistConfiguration(new Config());
+        Config config = repository.getConfig();
+        Assert.assertSame(config, repository.getConfig());
+        Assert.assertSame(config, repository.getConfig());
+        Assert.assertEquals(1, dao.retrieveCount);
+    }
+
+    @Test
+    public void persistUpdatesCacheAndNotifies() throws JSONException {
+        dao.persistConfiguration(new Config());
+        Config config = new Config();
+        config.setInterval(1000);
+        Assert.assertTrue(repository.persistConfig(config));
+
+        Assert.assertSame(config, repository.getConfig());
+        Assert.assertEquals(1, changes.size());
+        Assert.assertEquals(1, changes.get(0).size());
+        Assert.assertTrue(changes.get(0).contains("interval"));
+    }
+
+    @Test
+    public void persistOfSameConfigDoesNotNotify() throws JSONException {
+        Assert.assertTrue(repository.persistConfig(new Config()));
+        Assert.assertTrue(repository.persistConfig(new Config()));
+        Assert.assertTrue(changes.isEmpty());
+    }
+
+    @Test
+    public void changeByOtherProcessIsReloaded() throws JSONException {
+        dao.persistConfiguration(new Config());
+        repository.getConfig();
+
+        Config config = new Config();
+        config.setSyncThreshold(5);
+        dao.persistConfiguration(config); // other process writes database directly
+
+        Assert.assertEquals(5, repository.getConfig().getSyncThreshold().intValue());
+        Assert.assertEquals(1, changes.size());
+        Assert.assertTrue(changes.get(0).contains("syncThreshold"));
+    }
+}
@@ -0,0 +1,167 @@
+package com.marianhello.cdvbackgroundgeolocation;
+
+import android.test.suitebuilder.annotation.SmallTest;
+
+import com.marianhello.bgloc.data.BackgroundLocation;
+import com.marianhello.bgloc.pipeline.FusionStage;
+import com.marianhello.bgloc.pipeline.LocationPipeline;
+import com.marianhello.bgloc.pipeline.LocationStage;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+@SmallTest
+public class FusionStageTest {
+
+    /**
+     * @return locations of both traces ordered by time, network locations delayed by offset
+     */
+    private static List<BackgroundLocation> interleave(List<BackgroundLocation> gps, List<BackgroundLocation> network, long offset) {
+        List<BackgroundLocation> locations = new ArrayList<BackgroundLocation>(gps);
+        for (BackgroundLocation location : network) {
+            location.setTime(location.getTime() + offset);
+            locations.add(location);
+        }
+        for (BackgroundLocation location : locations) {
+            location.setElapsedRealtimeNanos(location.getTime() * 1000000L);
+        }
+        Collections.sort(locations, new Comparator<BackgroundLocation>() {
+            public int compare(BackgroundLocation a, BackgroundLocation b) {
+                return a.getTime() < b.getTime() ? -1 : (a.getTime() == b.getTime() ? 0 : 1);
+            }
+        });
+        return locations;
+    }
+
+    private static List<BackgroundLocation> fuse(FusionStage stage, List<BackgroundLocation> locations) {
+        List<BackgroundLocation> out = new ArrayList<BackgroundLocation>();
+        for (BackgroundLocation location : locations) {
+            stage.process(location, out);
+        }
+        stage.flush(out);
+        return out;
+    }
+
+    private static BackgroundLocation createLocation(String provider, long time, double latitude, float accuracy) {
+        BackgroundLocation location = new BackgroundLocation(provider);
+        location.setTime(time);
+        location.setElapsedRealtimeNanos(time * 1000000L);
+        location.setLatitude(latitude);
+        location.setLongitude(17);
+        location.setAccuracy(accuracy);
+        return location;
+    }
+
+    @Test
+    public void singleLocationPerWindow() {
+        List<BackgroundLocation> gps = new TraceGenerator(1).setProvider("gps").walk(120, 5).fixes;
+        List<BackgroundLocation> network = new TraceGenerator(2).setProvider("network").walk(120, 30).fixes;
+        List<BackgroundLocation> locations = interleave(gps, network, 300);
+
+        List<BackgroundLocation> fused = fuse(new FusionStage(500), locations);
+        Assert.assertEquals(120, fused.size());
+        for (int i = 0; i < fused.size(); i++) {
+            Assert.assertSame(gps.get(i), fused.get(i));
+            Assert.assertTrue(fused.get(i).getAccuracy() <= 5);
+        }
+    }
+
+    @Test
+    public void networkFillsGpsGaps() {
+        List<BackgroundLocation> gps = new TraceGenerator(3).setProvider("gps").walk(60, 5).fixes;
+        List<BackgroundLocation> network = new TraceGenerator(4).setProvider("network").walk(60, 30).fixes;
+        gps.subList(20, 40).clear(); // lost GPS signal
+        List<BackgroundLocation> locations = interleave(gps, network, 300);
+
+        List<BackgroundLocation> fused = fuse(new FusionStage(500), locations);
+        Assert.assertEquals(60, fused.size());
+        Assert.assertEquals("gps", fused.get(19).getProvider());
+        Assert.assertEquals("network", fused.get(20).getProvider());
+        Assert.assertEquals("network", fused.get(39).getProvider());
+        Assert.assertEquals("gps", fused.get(40).getProvider());
+    }
+
+    @Test
+    public void windowLongerThanIntervalKeepsBest() {
+        List<BackgroundLocation> locations = new ArrayList<BackgroundLocation>();
+        for (int i = 0; i < 10; i++) {
+            locations.add(createLocation("gps", i * 200, 49.0, i == 3 ? 3 : 10));
+        }
+        List<BackgroundLocation> fused = fuse(new FusionStage(1000), locations);
+        Assert.assertEquals(2, fused.size());
+        Assert.assertEquals(600, fused.get(0).getTime());
+        Assert.assertEquals(3f, fused.get(0).getAccuracy());
+        Assert.assertEquals(1800, fused.get(1).getTime());
+    }
+
+    @Test
+    public void consistentLocationsAreMerged() {
+        double meters = 10 / (6371008.8 * Math.PI / 180);
+        List<BackgroundLocation> locations = new ArrayList<BackgroundLocation>();
+        locations.add(createLocation("gps", 0, 49.0, 10));
+        locations.add(createLocation("network", 100, 49.0 + meters, 10));
+
+        List<BackgroundLocation> fused = fuse(new FusionStage(500), locations);
+        Assert.assertEquals(1, fused.size());
+        Assert.assertEquals("network", fused.get(0).getProvider()); // newer and same accuracy
+        Assert.assertEquals(49.0 + meters / 2, fused.get(0).getLatitude(), 1e-9);
+        Assert.assertEquals(10 / Math.sqrt(2), fused.get(0).getAccuracy(), 0.01);
+    }
+
+    @Test
+    public void inconsistentLocationsAreNotMerged() {
+        double meters = 500 / (6371008.8 * Math.PI / 180);
+        List<BackgroundLocation> locations = new ArrayList<BackgroundLocation>();
+        locations.add(createLocation("gps", 0, 49.0, 5));
+        locations.add(createLocation("network", 100, 49.0 + meters, 30));
+
+        List<BackgroundLocation> fused = fuse(new FusionStage(500), locations);
+        Assert.assertEquals(1, fused.size());
+        Assert.assertEquals(49.0, fused.get(0).getLatitude(), 0);
+        Assert.assertEquals(5f, fused.get(0).getAccuracy());
+    }
+
+    @Test
+    public void zeroWindowPassesAll() {
+        List<BackgroundLocation> gps = new TraceGenerator(5).setProvider("gps").walk(10, 5).fixes;
+        List<BackgroundLocation> network = new TraceGenerator(6).setProvider("network").walk(10, 30).fixes;
+        Assert.assertEquals(20, fuse(new FusionStage(0), interleave(gps, network, 300)).size());
+    }
+
+    @Test
+    public void windowIsEmittedAtDeadlineWithoutNextLocation() {
+        final List<BackgroundLocation> emitted = new ArrayList<BackgroundLocation>();
+        LocationPipeline pipeline = new LocationPipeline(Arrays.<LocationStage>asList(new FusionStage(500)),
+                new LocationPipeline.Sink() {
+                    public void onLocation(BackgroundLocation location) {
+                        emitted.add(location);
+                    }
+                });
+        Assert.assertEquals(Long.MAX_VALUE, pipeline.getHoldDeadline());
+
+        BackgroundLocation gps = createLocation("gps", 1000, 49.0, 5);
+        pipeline.process(gps);
+        pipeline.process(createLocation("network", 1200, 49.00001, 30));
+        Assert.assertTrue(emitted.isEmpty());
+        Assert.assertEquals(1500, pipeline.getHoldDeadline());
+
+        pipeline.expire(1499);
+        Assert.assertTrue(emitted.isEmpty());
+        pipeline.expire(1500);
+        Assert.assertEquals(1, emitted.size());
+        Assert.assertSame(gps, emitted.get(0));
+        Assert.assertEquals(Long.MAX_VALUE, pipeline.getHoldDeadline());
+
+        // next location starts new window
+        pipeline.process(createLocation("gps", 5000, 49.001, 5));
+        Assert.assertEquals(1, emitted.size());
+        Assert.assertEquals(5500, pipeline.getHoldDeadline());
+    }
+}
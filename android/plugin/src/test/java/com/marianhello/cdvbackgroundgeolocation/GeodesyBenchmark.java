@@ -0,0 +1,109 @@
+package com.marianhello.cdvbackgroundgeolocation;
+
+import com.marianhello.bgloc.Geodesy;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+/**
+ * Speed and accuracy of Geodesy distances
+ *
+ * Computes distances between consecutive points of generated track (point 1 m to 1 km apart,
+ * as distance filter does on every location) and reports nanos per call and max relative
+ * difference from haversine. Android framework is not available in JVM tests, comparison
+ * with Location.distanceBetween (WGS84 ellipsoid) is in instrumented GeodesyLocationTest.
+ *
+ * Run with: ./gradlew test -Pbenchmark --tests '*GeodesyBenchmark' -i
+ */
+public class GeodesyBenchmark {
+    private static final int POINTS = 100000;
+    private static final int WARMUP_ROUNDS = 3;
+    private static final int ROUNDS = 5;
+
+    private static final int HAVERSINE = 0;
+    private static final int EQUIRECTANGULAR = 1;
+    private static final int DISTANCE = 2;
+    private static final String[] NAMES = { "haversine", "equirectangular", "distance" };
+
+    private final double[] latitudes = new double[POINTS];
+    private final double[] longitudes = new double[POINTS];
+    private final double[] reference = new double[POINTS];
+
+    public GeodesyBenchmark() {
+        Random random = new Random(1);
+        double[] point = new double[2];
+        latitudes[0] = 49.2;
+        longitudes[0] = 16.6;
+        for (int i = 1; i < POINTS; i++) {
+            Geodesy.destination(latitudes[i - 1], longitudes[i - 1], random.nextDouble() * 360, 1 + random.nextDouble() * 999, point);
+            latitudes[i] = point[0];
+            longitudes[i] = point[1];
+        }
+        for (int i = 1; i < POINTS; i++) {
+            reference[i] = Geodesy.haversine(latitudes[i - 1], longitudes[i - 1], latitudes[i], longitudes[i]);
+        }
+    }
+
+    private double sum(int method, double[] distances) {
+        double sum = 0;
+        for (int i = 1; i < POINTS; i++) {
+            double distance;
+            switch (method) {
+                case HAVERSINE:
+                    distance = Geodesy.haversine(latitudes[i - 1], longitudes[i - 1], latitudes[i], longitudes[i]);
+                    break;
+                case EQUIRECTANGULAR:
+                    distance = Geodesy.equirectangular(latitudes[i - 1], longitudes[i - 1], latitudes[i], longitudes[i]);
+                    break;
+                default:
+                    distance = Geodesy.distance(latitudes[i - 1], longitudes[i - 1], latitudes[i], longitudes[i]);
+            }
+            if (distances != null) {
+                distances[i] = distance;
+            }
+            sum += distance;
+        }
+        return sum;
+    }
+
+    /**
+     * @return max relative difference from haversine
+     */
+    private double run(int method) {
+        double blackhole = 0;
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            blackhole += sum(method, null);
+        }
+        long bestNanos = Long.MAX_VALUE;
+        for (int i = 0; i < ROUNDS; i++) {
+            long start = System.nanoTime();
+            blackhole += sum(method, null);
+            bestNanos = Math.min(bestNanos, System.nanoTime() - start);
+        }
+
+        double[] distances = new double[POINTS];
+        sum(method, distances);
+        double maxError = 0;
+        for (int i = 1; i < POINTS; i++) {
+            maxError = Math.max(maxError, Math.abs(distances[i] - reference[i]) / reference[i]);
+        }
+
+        System.out.println(String.format("%s ns/call: %.1f max difference: %.4f%% (checksum %.0f)",
+                NAMES[method], bestNanos / (double) (POINTS - 1), maxError * 100, blackhole));
+        return maxError;
+    }
+
+    @Test
+    public void compareDistances() {
+        run(HAVERSINE);
+        Assert.assertTrue(run(EQUIRECTANGULAR) < 0.001);
+        Assert.assertTrue(run(DISTANCE) < 0.001);
+    }
+
+    public static void main(String[] args) {
+        new GeodesyBenchmark().compareDistances();
+    }
+}
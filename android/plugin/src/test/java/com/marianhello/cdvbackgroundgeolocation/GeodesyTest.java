@@ -0,0 +1,68 @@
+package com.marianhello.cdvbackgroundgeolocation;
+
+import android.test.suitebuilder.annotation.SmallTest;
+
+import com.marianhello.bgloc.Geodesy;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+@SmallTest
+public class GeodesyTest {
+
+    @Test
+    public void degreeOfLatitude() {
+        Assert.assertEquals(Geodesy.METERS_PER_DEGREE, Geodesy.haversine(49, 17, 50, 17), 1e-6);
+        Assert.assertEquals(Geodesy.METERS_PER_DEGREE, Geodesy.equirectangular(49, 17, 50, 17), 1e-6);
+    }
+
+    @Test
+    public void halfOfCircumference() {
+        Assert.assertEquals(Math.PI * Geodesy.EARTH_RADIUS, Geodesy.haversine(0, 0, 0, 180), 1e-6);
+        Assert.assertEquals(Math.PI * Geodesy.EARTH_RADIUS, Geodesy.distance(90, 0, -90, 0), 1e-6);
+    }
+
+    @Test
+    public void equirectangularCrossesAntimeridian() {
+        Assert.assertEquals(Geodesy.haversine(0, 179.99, 0, -179.99), Geodesy.equirectangular(0, 179.99, 0, -179.99), 1e-3);
+    }
+
+    @Test
+    public void equirectangularErrorIsBounded() {
+        Random random = new Random(1);
+        double[] point = new double[2];
+        for (int i = 0; i < 100000; i++) {
+            double latitude = (random.nextDouble() * 2 - 1) * (Geodesy.EQUIRECTANGULAR_MAX_LATITUDE - 1);
+            double longitude = (random.nextDouble() * 2 - 1) * 180;
+            double distance = 1 + random.nextDouble() * (Geodesy.EQUIRECTANGULAR_MAX_DISTANCE - 1);
+            Geodesy.destination(latitude, longitude, random.nextDouble() * 360, distance, point);
+
+            double haversine = Geodesy.haversine(latitude, longitude, point[0], point[1]);
+            double equirectangular = Geodesy.equirectangular(latitude, longitude, point[0], point[1]);
+            Assert.assertEquals(distance, haversine, 1e-6);
+            Assert.assertTrue(Math.abs(equirectangular - haversine) <= haversine * Geodesy.EQUIRECTANGULAR_MAX_ERROR);
+        }
+    }
+
+    @Test
+    public void bearingOfCardinalDirections() {
+        Assert.assertEquals(0, Geodesy.bearing(49, 17, 50, 17), 1e-9);
+        Assert.assertEquals(180, Geodesy.bearing(50, 17, 49, 17), 1e-9);
+        Assert.assertEquals(90, Geodesy.bearing(0, 17, 0, 18), 1e-9);
+        Assert.assertEquals(270, Geodesy.bearing(0, 18, 0, 17), 1e-9);
+    }
+
+    @Test
+    public void destinationRoundTrip() {
+        double[] point = new double[2];
+        Geodesy.destination(49.2, 16.6, 37, 12345, point);
+        Assert.assertEquals(12345, Geodesy.haversine(49.2, 16.6, point[0], point[1]), 1e-6);
+        Assert.assertEquals(37, Geodesy.bearing(49.2, 16.6, point[0], point[1]), 1e-9);
+
+        Geodesy.destination(0, 179.9, 90, 50000, point);
+        Assert.assertTrue(point[1] < -179);
+    }
+}
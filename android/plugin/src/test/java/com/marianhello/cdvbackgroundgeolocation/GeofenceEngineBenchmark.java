@@ -0,0 +1,101 @@
+package com.marianhello.cdvbackgroundgeolocation;
+
+import com.marianhello.bgloc.data.BackgroundLocation;
+import com.marianhello.bgloc.data.Geofence;
+import com.marianhello.bgloc.geofence.GeofenceEngine;
+import com.marianhello.bgloc.geofence.GeofenceEvent;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Cost per location of GeofenceEngine with 10k fences compared to scan of all fences
+ *
+ * Fences are scattered over city sized area (20 km across) driven through by generated
+ * city and highway traces. Test checks that engine emits same events as scan, timing
+ * (index build time and micros per location) is reported only by main.
+ *
+ * Event check runs with: ./gradlew test -Pbenchmark --tests '*GeofenceEngineBenchmark'
+ * Timing is reported by running main (eg. from IDE), so no wall clock result depends on test machine.
+ */
+public class GeofenceEngineBenchmark {
+    private static final int FENCES = 10000;
+    private static final int WARMUP_ROUNDS = 3;
+    private static final int ROUNDS = 5;
+
+    private final List<Geofence> geofences = GeofenceScan.randomGeofences(1, FENCES, 49.2, 16.6, 10000);
+    private final List<BackgroundLocation> locations = new ArrayList<BackgroundLocation>();
+
+    public GeofenceEngineBenchmark() {
+        locations.addAll(new TraceGenerator(1).city(10).fixes);
+        locations.addAll(new TraceGenerator(2).highway(10).fixes);
+    }
+
+    private List<GeofenceEvent> run(GeofenceEngine engine) {
+        List<GeofenceEvent> events = new ArrayList<GeofenceEvent>();
+        for (BackgroundLocation location : locations) {
+            engine.process(location, events);
+        }
+        return events;
+    }
+
+    private List<GeofenceEvent> run(GeofenceScan scan) {
+        List<GeofenceEvent> events = new ArrayList<GeofenceEvent>();
+        for (BackgroundLocation location : locations) {
+            scan.process(location, events);
+        }
+        return events;
+    }
+
+    /**
+     * @return best time in nanos of single round (fresh fence state, index build excluded)
+     */
+    private long time(boolean useEngine) {
+        long bestNanos = Long.MAX_VALUE;
+        for (int i = 0; i < WARMUP_ROUNDS + ROUNDS; i++) {
+            GeofenceEngine engine = useEngine ? new GeofenceEngine(geofences) : null;
+            GeofenceScan scan = useEngine ? null : new GeofenceScan(geofences);
+            long start = System.nanoTime();
+            if (useEngine) {
+                run(engine);
+            } else {
+                run(scan);
+            }
+            long nanos = System.nanoTime() - start;
+            if (i >= WARMUP_ROUNDS) {
+                bestNanos = Math.min(bestNanos, nanos);
+            }
+        }
+        return bestNanos;
+    }
+
+    @Test
+    public void engineEventsMatchScan() {
+        List<GeofenceEvent> expected = run(new GeofenceScan(geofences));
+        List<GeofenceEvent> events = run(new GeofenceEngine(geofences));
+        Assert.assertEquals(GeofenceScan.describe(expected), GeofenceScan.describe(events));
+    }
+
+    private void report() {
+        long buildNanos = Long.MAX_VALUE;
+        for (int i = 0; i < WARMUP_ROUNDS + ROUNDS; i++) {
+            long start = System.nanoTime();
+            new GeofenceEngine(geofences);
+            buildNanos = Math.min(buildNanos, System.nanoTime() - start);
+        }
+        long engineNanos = time(true);
+        long scanNanos = time(false);
+
+        System.out.println(String.format("%d fences index build: %.1f ms", FENCES, buildNanos / 1e6));
+        System.out.println(String.format("engine us/location: %.2f", engineNanos / 1e3 / locations.size()));
+        System.out.println(String.format("scan us/location: %.2f", scanNanos / 1e3 / locations.size()));
+    }
+
+    public static void main(String[] args) {
+        new GeofenceEngineBenchmark().report();
+    }
+}
@@ -0,0 +1,148 @@
+package com.marianhello.cdvbackgroundgeolocation;
+
+import android.test.suitebuilder.annotation.SmallTest;
+
+import com.marianhello.bgloc.Geodesy;
+import com.marianhello.bgloc.data.BackgroundLocation;
+import com.marianhello.bgloc.data.Geofence;
+import com.marianhello.bgloc.geofence.GeofenceEngine;
+import com.marianhello.bgloc.geofence.GeofenceEvent;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+@SmallTest
+public class GeofenceEngineTest {
+    private static BackgroundLocation createLocation(long time, double latitude, double longitude) {
+        BackgroundLocation location = new BackgroundLocation("gps");
+        location.setTime(time);
+        location.setLatitude(latitude);
+        location.setLongitude(longitude);
+        location.setAccuracy(5);
+        return location;
+    }
+
+    /**
+     * @return fence with center at given distance east of trace start (49.2, 16.6)
+     */
+    private static Geofence createGeofence(String id, double distance, float radius, long dwellTime) {
+        double[] point = new double[2];
+        Geodesy.destination(49.2, 16.6, 90, distance, point);
+        return new Geofence(id, point[0], point[1], radius, dwellTime);
+    }
+
+    private static List<GeofenceEvent> process(GeofenceEngine engine, List<BackgroundLocation> locations) {
+        List<GeofenceEvent> events = new ArrayList<GeofenceEvent>();
+        for (BackgroundLocation location : locations) {
+            engine.process(location, events);
+        }
+        return events;
+    }
+
+    @Test
+    public void walkThroughFenceEntersAndExitsOnce() {
+        TraceGenerator.Trace trace = new TraceGenerator(1).walk(600, 5);
+        GeofenceEngine engine = new GeofenceEngine(Arrays.asList(createGeofence("a", 400, 50, 0)));
+        List<GeofenceEvent> events = process(engine, trace.fixes);
+
+        Assert.assertEquals(2, events.size());
+        Assert.assertEquals(GeofenceEvent.ENTER, events.get(0).getTransition());
+        Assert.assertEquals(GeofenceEvent.EXIT, events.get(1).getTransition());
+        Assert.assertEquals("a", events.get(0).getGeofence().getId());
+        // ~350 m at 1.4 m/s, exited only beyond radius plus margin (~460 m)
+        Assert.assertEquals(250000, events.get(0).getLocation().getTime(), 15000);
+        Assert.assertEquals(330000, events.get(1).getLocation().getTime(), 15000);
+        Assert.assertFalse(engine.isInside("a"));
+    }
+
+    @Test
+    public void dwellIsReportedOnceAfterDwellTime() {
+        TraceGenerator.Trace trace = new TraceGenerator(2).stationary(600, 10);
+        GeofenceEngine engine = new GeofenceEngine(Arrays.asList(createGeofence("a", 0, 100, 60000)));
+        List<GeofenceEvent> events = process(engine, trace.fixes);
+
+        Assert.assertEquals(2, events.size());
+        Assert.assertEquals(GeofenceEvent.ENTER, events.get(0).getTransition());
+        Assert.assertEquals(0, events.get(0).getLocation().getTime());
+        Assert.assertEquals(GeofenceEvent.DWELL, events.get(1).getTransition());
+        Assert.assertEquals(60000, events.get(1).getLocation().getTime());
+    }
+
+    @Test
+    public void noiseOnBoundaryDoesNotFlap() {
+        // device standing right on the boundary
+        TraceGenerator.Trace trace = new TraceGenerator(3).stationary(600, 3);
+        GeofenceEngine engine = new GeofenceEngine(Arrays.asList(createGeofence("a", 100, 100, 0)));
+        List<GeofenceEvent> events = process(engine, trace.fixes);
+
+        Assert.assertEquals(1, events.size());
+        Assert.assertEquals(GeofenceEvent.ENTER, events.get(0).getTransition());
+    }
+
+    @Test
+    public void matchesScanOfAllFences() {
+        List<Geofence> geofences = GeofenceScan.randomGeofences(4, 2000, 49.2, 16.6, 10000);
+        TraceGenerator.Trace trace = new TraceGenerator(4).city(10);
+        trace.fixes.addAll(new TraceGenerator(5).highway(10).fixes);
+
+        GeofenceScan scan = new GeofenceScan(geofences);
+        List<GeofenceEvent> expected = new ArrayList<GeofenceEvent>();
+        for (BackgroundLocation location : trace.fixes) {
+            scan.process(location, expected);
+        }
+        List<GeofenceEvent> events = process(new GeofenceEngine(geofences), trace.fixes);
+
+        Assert.assertTrue(expected.size() > 10);
+        Assert.assertEquals(GeofenceScan.describe(expected), GeofenceScan.describe(events));
+    }
+
+    @Test
+    public void fencesAcrossAntimeridianAndNearPoleAreEntered() {
+        GeofenceEngine engine = new GeofenceEngine(Arrays.asList(
+                new Geofence("antimeridian", 0, 179.9995, 200, 0),
+                new Geofence("pole", 89.9, 0, 50000, 0)));
+        List<GeofenceEvent> events = new ArrayList<GeofenceEvent>();
+
+        engine.process(createLocation(0, 0, -179.9995), events);
+        Assert.assertEquals(1, events.size());
+        Assert.assertTrue(engine.isInside("antimeridian"));
+
+        events.clear();
+        engine.process(createLocation(1000, 89.95, 120), events);
+        Assert.assertEquals(2, events.size());
+        Assert.assertFalse(engine.isInside("antimeridian"));
+        Assert.assertTrue(engine.isInside("pole"));
+    }
+
+    @Test
+    public void replacingFencesKeepsState() {
+        Geofence a = createGeofence("a", 0, 100, 0);
+        Geofence b = createGeofence("b", 0, 200, 0);
+        GeofenceEngine engine = new GeofenceEngine(Arrays.asList(a));
+        List<GeofenceEvent> events = new ArrayList<GeofenceEvent>();
+        engine.process(createLocation(0, 49.2, 16.6), events);
+        Assert.assertEquals(1, events.size());
+
+        engine.setGeofences(Arrays.asList(a, b));
+        events.clear();
+        engine.process(createLocation(1000, 49.2, 16.6), events);
+        // only new fence is entered
+        Assert.assertEquals(1, events.size());
+        Assert.assertEquals("b", events.get(0).getGeofence().getId());
+
+        engine.setGeofences(Arrays.asList(b));
+        events.clear();
+        engine.process(createLocation(2000, 50, 17), events);
+        // removed fence is dropped without exit
+        Assert.assertEquals(1, events.size());
+        Assert.assertEquals("b", events.get(0).getGeofence().getId());
+        Assert.assertEquals(GeofenceEvent.EXIT, events.get(0).getTransition());
+        Assert.assertEquals(1, engine.size());
+        Assert.assertFalse(engine.isInside("a"));
+    }
+}
@@ -0,0 +1,81 @@
+package com.marianhello.cdvbackgroundgeolocation;
+
+import com.marianhello.bgloc.Geodesy;
+import com.marianhello.bgloc.data.BackgroundLocation;
+import com.marianhello.bgloc.data.Geofence;
+import com.marianhello.bgloc.geofence.GeofenceEngine;
+import com.marianhello.bgloc.geofence.GeofenceEvent;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Reference geofence evaluation testing every fence on every location (same transition rules
+ * as GeofenceEngine, without index)
+ */
+public class GeofenceScan {
+    private final List<Geofence> geofences;
+    private final boolean[] inside;
+    private final boolean[] dwellReported;
+    private final long[] enteredAt;
+
+    public GeofenceScan(List<Geofence> geofences) {
+        this.geofences = geofences;
+        inside = new boolean[geofences.size()];
+        dwellReported = new boolean[geofences.size()];
+        enteredAt = new long[geofences.size()];
+    }
+
+    public void process(BackgroundLocation location, List<GeofenceEvent> out) {
+        for (int i = 0; i < geofences.size(); i++) {
+            Geofence geofence = geofences.get(i);
+            double radius = geofence.getRadius();
+            double distance = Geodesy.distance(geofence.getLatitude(), geofence.getLongitude(),
+                    location.getLatitude(), location.getLongitude());
+            if (inside[i]) {
+                if (distance > radius + Math.max(radius * GeofenceEngine.EXIT_HYSTERESIS, GeofenceEngine.MIN_EXIT_MARGIN)) {
+                    inside[i] = false;
+                    out.add(new GeofenceEvent(geofence, GeofenceEvent.EXIT, location));
+                } else if (geofence.getDwellTime() > 0 && !dwellReported[i]
+                        && location.getTime() - enteredAt[i] >= geofence.getDwellTime()) {
+                    dwellReported[i] = true;
+                    out.add(new GeofenceEvent(geofence, GeofenceEvent.DWELL, location));
+                }
+            } else if (distance <= radius) {
+                inside[i] = true;
+                dwellReported[i] = false;
+                enteredAt[i] = location.getTime();
+                out.add(new GeofenceEvent(geofence, GeofenceEvent.ENTER, location));
+            }
+        }
+    }
+
+    /**
+     * @return fences with radius 50 to 500 m and dwell time 0 to 5 min scattered around given point
+     */
+    public static List<Geofence> randomGeofences(long seed, int count, double latitude, double longitude, double spread) {
+        Random random = new Random(seed);
+        List<Geofence> geofences = new ArrayList<Geofence>(count);
+        double[] point = new double[2];
+        for (int i = 0; i < count; i++) {
+            Geodesy.destination(latitude, longitude, random.nextDouble() * 360, Math.sqrt(random.nextDouble()) * spread, point);
+            geofences.add(new Geofence("fence" + i, point[0], point[1],
+                    50 + random.nextInt(450), random.nextInt(6) * 60000L));
+        }
+        return geofences;
+    }
+
+    /**
+     * @return events as sorted strings (engine reports events of single location in any order)
+     */
+    public static List<String> describe(List<GeofenceEvent> events) {
+        List<String> descriptions = new ArrayList<String>(events.size());
+        for (GeofenceEvent event : events) {
+            descriptions.add(event.getLocation().getTime() + " " + event.toString());
+        }
+        Collections.sort(descriptions);
+        return descriptions;
+    }
+}
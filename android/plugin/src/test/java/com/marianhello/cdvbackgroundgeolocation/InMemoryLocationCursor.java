@@ -0,0 +1,318 @@
+package com.marianhello.cdvbackgroundgeolocation;
+
+import android.content.ContentResolver;
+import android.database.CharArrayBuffer;
+import android.database.ContentObserver;
+import android.database.Cursor;
+import android.database.DataSetObserver;
+import android.net.Uri;
+import android.os.Bundle;
+
+import com.marianhello.bgloc.data.sqlite.SQLiteLocationContract.LocationEntry;
+
+/**
+ * Read only cursor over generated location rows
+ *
+ * Row values are computed from row position, so cursor itself
+ * does not allocate while iterating. Intended for JVM tests and benchmarks
+ * of code consuming location cursors.
+ */
+public class InMemoryLocationCursor implements Cursor {
+    public static final String PROVIDER = "gps";
+
+    private static final String[] COLUMNS = {
+            LocationEntry._ID,
+            LocationEntry.COLUMN_NAME_PROVIDER,
+            LocationEntry.COLUMN_NAME_TIME,
+            LocationEntry.COLUMN_NAME_LATITUDE,
+            LocationEntry.COLUMN_NAME_LONGITUDE,
+            LocationEntry.COLUMN_NAME_ACCURACY,
+            LocationEntry.COLUMN_NAME_SPEED,
+            LocationEntry.COLUMN_NAME_BEARING,
+            LocationEntry.COLUMN_NAME_ALTITUDE,
+            LocationEntry.COLUMN_NAME_RADIUS,
+            LocationEntry.COLUMN_NAME_HAS_ACCURACY,
+            LocationEntry.COLUMN_NAME_HAS_SPEED,
+            LocationEntry.COLUMN_NAME_HAS_BEARING,
+            LocationEntry.COLUMN_NAME_HAS_ALTITUDE,
+            LocationEntry.COLUMN_NAME_HAS_RADIUS,
+            LocationEntry.COLUMN_NAME_LOCATION_PROVIDER
+    };
+
+    private final int count;
+    private int position = -1;
+    private boolean closed = false;
+
+    public InMemoryLocationCursor(int count) {
+        this.count = count;
+    }
+
+    public static long time(int row) {
+        return 1469000000000L + row * 1000L;
+    }
+
+    public static double latitude(int row) {
+        return 48.1486 + row * 0.00001;
+    }
+
+    public static double longitude(int row) {
+        return 17.1077 - row * 0.00001;
+    }
+
+    public static float accuracy(int row) {
+        return 5 + (row % 20);
+    }
+
+    public static float speed(int row) {
+        return (row % 30) * 0.5f;
+    }
+
+    public static float bearing(int row) {
+        return row % 360;
+    }
+
+    public static double altitude(int row) {
+        return 150 + (row % 50) * 0.25;
+    }
+
+    public static boolean hasRadius(int row) {
+        return row % 2 == 0;
+    }
+
+    private double value(int column) {
+        switch (column) {
+            case 0: return position + 1;
+            case 2: return time(position);
+            case 3: return latitude(position);
+            case 4: return longitude(position);
+            case 5: return accuracy(position);
+            case 6: return speed(position);
+            case 7: return bearing(position);
+            case 8: return altitude(position);
+            case 9: return 0;
+            case 10: case 11: case 12: case 13: return 1;
+            case 14: return hasRadius(position) ? 1 : 0;
+            case 15: return 1;
+            default: throw new IllegalArgumentException("Column is not numeric: " + column);
+        }
+    }
+
+    @Override
+    public int getCount() {
+        return count;
+    }
+
+    @Override
+    public int getPosition() {
+        return position;
+    }
+
+    @Override
+    public boolean move(int offset) {
+        return moveToPosition(position + offset);
+    }
+
+    @Override
+    public boolean moveToPosition(int position) {
+        if (position < -1) {
+            position = -1;
+        } else if (position > count) {
+            position = count;
+        }
+        this.position = position;
+        return position >= 0 && position < count;
+    }
+
+    @Override
+    public boolean moveToFirst() {
+        return moveToPosition(0);
+    }
+
+    @Override
+    public boolean moveToLast() {
+        return moveToPosition(count - 1);
+    }
+
+    @Override
+    public boolean moveToNext() {
+        return moveToPosition(position + 1);
+    }
+
+    @Override
+    public boolean moveToPrevious() {
+        return moveToPosition(position - 1);
+    }
+
+    @Override
+    public boolean isFirst() {
+        return position == 0 && count > 0;
+    }
+
+    @Override
+    public boolean isLast() {
+        return position == count - 1 && count > 0;
+    }
+
+    @Override
+    public boolean isBeforeFirst() {
+        return position == -1;
+    }
+
+    @Override
+    public boolean isAfterLast() {
+        return position == count;
+    }
+
+    @Override
+    public int getColumnIndex(String columnName) {
+        for (int i = 0; i < COLUMNS.length; i++) {
+            if (COLUMNS[i].equals(columnName)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public int getColumnIndexOrThrow(String columnName) throws IllegalArgumentException {
+        int index = getColumnIndex(columnName);
+        if (index < 0) {
+            throw new IllegalArgumentException("column '" + columnName + "' does not exist");
+        }
+        return index;
+    }
+
+    @Override
+    public String getColumnName(int columnIndex) {
+        return COLUMNS[columnIndex];
+    }
+
+    @Override
+    public String[] getColumnNames() {
+        return COLUMNS.clone();
+    }
+
+    @Override
+    public int getColumnCount() {
+        return COLUMNS.length;
+    }
+
+    @Override
+    public byte[] getBlob(int columnIndex) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public String getString(int columnIndex) {
+        if (columnIndex == 1) {
+            return PROVIDER;
+        }
+        return String.valueOf(value(columnIndex));
+    }
+
+    @Override
+    public void copyStringToBuffer(int columnIndex, CharArrayBuffer buffer) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public short getShort(int columnIndex) {
+        return (short) value(columnIndex);
+    }
+
+    @Override
+    public int getInt(int columnIndex) {
+        return (int) value(columnIndex);
+    }
+
+    @Override
+    public long getLong(int columnIndex) {
+        return (long) value(columnIndex);
+    }
+
+    @Override
+    public float getFloat(int columnIndex) {
+        return (float) value(columnIndex);
+    }
+
+    @Override
+    public double getDouble(int columnIndex) {
+        return value(columnIndex);
+    }
+
+    @Override
+    public int getType(int columnIndex) {
+        switch (columnIndex) {
+            case 1: return FIELD_TYPE_STRING;
+            case 3: case 4: case 5: case 6: case 7: case 8: case 9: return FIELD_TYPE_FLOAT;
+            default: return FIELD_TYPE_INTEGER;
+        }
+    }
+
+    @Override
+    public boolean isNull(int columnIndex) {
+        return false;
+    }
+
+    @Override
+    public void deactivate() {
+    }
+
+    @Override
+    public boolean requery() {
+        return false;
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+    }
+
+    @Override
+    public boolean isClosed() {
+        return closed;
+    }
+
+    @Override
+    public void registerContentObserver(ContentObserver observer) {
+    }
+
+    @Override
+    public void unregisterContentObserver(ContentObserver observer) {
+    }
+
+    @Override
+    public void registerDataSetObserver(DataSetObserver observer) {
+    }
+
+    @Override
+    public void unregisterDataSetObserver(DataSetObserver observer) {
+    }
+
+    @Override
+    public void setNotificationUri(ContentResolver cr, Uri uri) {
+    }
+
+    @Override
+    public Uri getNotificationUri() {
+        return null;
+    }
+
+    @Override
+    public boolean getWantsAllOnMoveCalls() {
+        return false;
+    }
+
+    public void setExtras(Bundle extras) {
+    }
+
+    @Override
+    public Bundle getExtras() {
+        return null;
+    }
+
+    @Override
+    public Bundle respond(Bundle extras) {
+        return null;
+    }
+}
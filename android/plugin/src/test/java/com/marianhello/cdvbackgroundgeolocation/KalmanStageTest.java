@@ -0,0 +1,154 @@
+package com.marianhello.cdvbackgroundgeolocation;
+
+import android.test.suitebuilder.annotation.SmallTest;
+
+import com.marianhello.bgloc.data.BackgroundLocation;
+import com.marianhello.bgloc.pipeline.KalmanStage;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@SmallTest
+public class KalmanStageTest {
+    private static final float PROCESS_NOISE = 1f;
+
+    private static List<BackgroundLocation> copy(List<BackgroundLocation> fixes) {
+        List<BackgroundLocation> copies = new ArrayList<BackgroundLocation>(fixes.size());
+        for (BackgroundLocation fix : fixes) {
+            copies.add(new BackgroundLocation(fix));
+        }
+        return copies;
+    }
+
+    private static List<BackgroundLocation> smooth(List<BackgroundLocation> fixes, KalmanStage stage) {
+        List<BackgroundLocation> out = new ArrayList<BackgroundLocation>();
+        for (BackgroundLocation fix : copy(fixes)) {
+            stage.process(fix, out);
+        }
+        return out;
+    }
+
+    private static double rmsError(List<BackgroundLocation> fixes, List<double[]> truth, int from) {
+        double sum = 0;
+        for (int i = from; i < fixes.size(); i++) {
+            double error = TraceGenerator.distance(fixes.get(i), truth.get(i));
+            sum += error * error;
+        }
+        return Math.sqrt(sum / (fixes.size() - from));
+    }
+
+    /**
+     * @return number of locations passing distance filter (min distance from last passed location)
+     */
+    private static int distanceFiltered(List<BackgroundLocation> fixes, double minDistance) {
+        int count = 0;
+        BackgroundLocation last = null;
+        for (BackgroundLocation fix : fixes) {
+            if (last == null || TraceGenerator.distance(fix.getLatitude(), fix.getLongitude(),
+                    last.getLatitude(), last.getLongitude()) >= minDistance) {
+                last = fix;
+                count++;
+            }
+        }
+        return count;
+    }
+
+    @Test
+    public void walkErrorIsReduced() {
+        TraceGenerator.Trace trace = new TraceGenerator(1).walk(600, 15);
+        List<BackgroundLocation> smoothed = smooth(trace.fixes, new KalmanStage(PROCESS_NOISE));
+
+        Assert.assertEquals(trace.size(), smoothed.size());
+        double rawError = rmsError(trace.fixes, trace.truth, 30);
+        double smoothedError = rmsError(smoothed, trace.truth, 30);
+        Assert.assertTrue(String.format("rms error raw: %.1fm smoothed: %.1fm", rawError, smoothedError),
+                smoothedError < rawError * 0.5);
+    }
+
+    @Test
+    public void cityErrorIsReduced() {
+        TraceGenerator.Trace trace = new TraceGenerator(2).city(10);
+        List<BackgroundLocation> smoothed = smooth(trace.fixes, new KalmanStage(3));
+
+        double rawError = rmsError(trace.fixes, trace.truth, 10);
+        double smoothedError = rmsError(smoothed, trace.truth, 10);
+        Assert.assertTrue(String.format("rms error raw: %.1fm smoothed: %.1fm", rawError, smoothedError),
+                smoothedError < rawError * 0.8);
+    }
+
+    @Test
+    public void stationaryJitterPassesDistanceFilterLess() {
+        TraceGenerator.Trace trace = new TraceGenerator(3).stationary(600, 20);
+        List<BackgroundLocation> smoothed = smooth(trace.fixes, new KalmanStage(PROCESS_NOISE));
+
+        int rawCount = distanceFiltered(trace.fixes, 10);
+        int smoothedCount = distanceFiltered(smoothed, 10);
+        Assert.assertTrue(String.format("points after distance filter raw: %d smoothed: %d", rawCount, smoothedCount),
+                smoothedCount * 3 < rawCount);
+    }
+
+    @Test
+    public void speedAndBearingAreEstimated() {
+        TraceGenerator.Trace trace = new TraceGenerator(4).walk(300, 10);
+        List<BackgroundLocation> smoothed = smooth(trace.fixes, new KalmanStage(PROCESS_NOISE));
+
+        double speedSum = 0;
+        double bearingSum = 0;
+        int bearingCount = 0;
+        for (int i = 100; i < smoothed.size(); i++) {
+            BackgroundLocation location = smoothed.get(i);
+            Assert.assertTrue(location.hasSpeed());
+            speedSum += location.getSpeed();
+            if (location.hasBearing()) {
+                bearingSum += location.getBearing();
+                bearingCount++;
+            }
+        }
+        int count = smoothed.size() - 100;
+        Assert.assertEquals(1.4, speedSum / count, 0.3);
+        Assert.assertTrue(bearingCount > count * 0.9);
+        Assert.assertEquals(90, bearingSum / bearingCount, 10);
+    }
+
+    @Test
+    public void locationWithoutAccuracyPassesUnchanged() {
+        KalmanStage stage = new KalmanStage(PROCESS_NOISE);
+        List<BackgroundLocation> out = new ArrayList<BackgroundLocation>();
+        TraceGenerator.Trace trace = new TraceGenerator(5).walk(10, 10);
+        for (BackgroundLocation fix : copy(trace.fixes)) {
+            stage.process(fix, out);
+        }
+
+        BackgroundLocation location = new BackgroundLocation("network");
+        location.setTime(20000);
+        location.setLatitude(50);
+        location.setLongitude(17);
+        stage.process(location, out);
+        Assert.assertEquals(11, out.size());
+        Assert.assertEquals(50, out.get(10).getLatitude(), 0);
+        Assert.assertFalse(out.get(10).hasSpeed());
+    }
+
+    @Test
+    public void filterRestartsAfterGap() {
+        KalmanStage stage = new KalmanStage(PROCESS_NOISE);
+        List<BackgroundLocation> out = new ArrayList<BackgroundLocation>();
+        for (BackgroundLocation fix : copy(new TraceGenerator(6).walk(60, 10).fixes)) {
+            stage.process(fix, out);
+        }
+
+        BackgroundLocation far = new BackgroundLocation("gps");
+        far.setTime(60000 + KalmanStage.MAX_GAP_MILLIS + 1);
+        far.setLatitude(50);
+        far.setLongitude(17);
+        far.setAccuracy(10);
+        stage.process(far, out);
+        // first location after restart is not moved towards old estimate
+        Assert.assertEquals(50, far.getLatitude(), 0);
+        Assert.assertEquals(17, far.getLongitude(), 0);
+    }
+}
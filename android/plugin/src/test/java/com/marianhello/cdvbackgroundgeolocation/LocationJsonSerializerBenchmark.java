@@ -0,0 +1,106 @@
+package com.marianhello.cdvbackgroundgeolocation;
+
+import com.marianhello.bgloc.sync.LocationJsonSerializer;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.lang.reflect.Method;
+
+/**
+ * Plain benchmark harness of LocationJsonSerializer
+ *
+ * Serializes 10k and 100k generated rows into discarding writer and reports
+ * rows/sec, bytes written per row and bytes allocated per row
+ * (allocation is reported only on JVMs exposing per thread allocation counter).
+ *
+ * Run with: ./gradlew test -Pbenchmark --tests '*LocationJsonSerializerBenchmark' -i
+ */
+public class LocationJsonSerializerBenchmark {
+    private static final int WARMUP_ROUNDS = 3;
+    private static final int ROUNDS = 5;
+
+    private static class CountingWriter extends Writer {
+        long count = 0;
+
+        @Override
+        public void write(char[] cbuf, int off, int len) {
+            count += len;
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    private static long allocatedBytes() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        try {
+            // com.sun.management.ThreadMXBean is not available on every JVM
+            Class<?> sunBean = Class.forName("com.sun.management.ThreadMXBean");
+            Method method = sunBean.getMethod("getThreadAllocatedBytes", long.class);
+            return (Long) method.invoke(bean, Thread.currentThread().getId());
+        } catch (Exception e) {
+            return -1;
+        }
+    }
+
+    private static long serialize(int rows, CountingWriter writer) throws IOException {
+        return new LocationJsonSerializer(new InMemoryLocationCursor(rows), writer).writeAll();
+    }
+
+    private void run(int rows) throws IOException {
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            serialize(rows, new CountingWriter());
+        }
+
+        long bestNanos = Long.MAX_VALUE;
+        long bestAllocated = Long.MAX_VALUE;
+        long chars = 0;
+        for (int i = 0; i < ROUNDS; i++) {
+            CountingWriter writer = new CountingWriter();
+            long allocatedBefore = allocatedBytes();
+            long start = System.nanoTime();
+            long written = serialize(rows, writer);
+            long nanos = System.nanoTime() - start;
+            long allocated = allocatedBytes() - allocatedBefore;
+
+            Assert.assertEquals(rows, written);
+            bestNanos = Math.min(bestNanos, nanos);
+            bestAllocated = Math.min(bestAllocated, allocated);
+            chars = writer.count;
+        }
+
+        System.out.println(String.format(
+                "LocationJsonSerializer rows: %d rows/sec: %.0f chars/row: %.1f allocated bytes/row: %s",
+                rows,
+                rows / (bestNanos / 1e9),
+                chars / (double) rows,
+                allocatedBytes() < 0 ? "n/a" : String.format("%.2f", bestAllocated / (double) rows)));
+    }
+
+    @Test
+    public void serialize10kRows() throws IOException {
+        run(10000);
+    }
+
+    @Test
+    public void serialize100kRows() throws IOException {
+        run(100000);
+    }
+
+    public static void main(String[] args) throws IOException {
+        LocationJsonSerializerBenchmark benchmark = new LocationJsonSerializerBenchmark();
+        benchmark.run(10000);
+        benchmark.run(100000);
+    }
+}
@@ -0,0 +1,86 @@
+package com.marianhello.cdvbackgroundgeolocation;
+
+import android.test.suitebuilder.annotation.SmallTest;
+
+import com.marianhello.bgloc.data.sqlite.SQLiteLocationContract.LocationEntry;
+import com.marianhello.bgloc.sync.LocationJsonSerializer;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+
+@SmallTest
+public class LocationJsonSerializerTest {
+
+    @Test
+    public void serializeRows() throws IOException {
+        StringWriter writer = new StringWriter();
+        LocationJsonSerializer serializer = new LocationJsonSerializer(new InMemoryLocationCursor(2), writer);
+
+        Assert.assertEquals(2, serializer.writeAll());
+        String expected = new StringBuilder("[")
+                .append("{\"provider\":\"gps\",\"time\":").append(InMemoryLocationCursor.time(0))
+                .append(",\"latitude\":").append(InMemoryLocationCursor.latitude(0))
+                .append(",\"longitude\":").append(InMemoryLocationCursor.longitude(0))
+                .append(",\"accuracy\":").append((double) InMemoryLocationCursor.accuracy(0))
+                .append(",\"speed\":").append((double) InMemoryLocationCursor.speed(0))
+                .append(",\"bearing\":").append((double) InMemoryLocationCursor.bearing(0))
+                .append(",\"altitude\":").append(InMemoryLocationCursor.altitude(0))
+                .append(",\"radius\":0.0")
+                .append(",\"locationProvider\":1},")
+                .append("{\"provider\":\"gps\",\"time\":").append(InMemoryLocationCursor.time(1))
+                .append(",\"latitude\":").append(InMemoryLocationCursor.latitude(1))
+                .append(",\"longitude\":").append(InMemoryLocationCursor.longitude(1))
+                .append(",\"accuracy\":").append((double) InMemoryLocationCursor.accuracy(1))
+                .append(",\"speed\":").append((double) InMemoryLocationCursor.speed(1))
+                .append(",\"bearing\":").append((double) InMemoryLocationCursor.bearing(1))
+                .append(",\"altitude\":").append(InMemoryLocationCursor.altitude(1))
+                .append(",\"locationProvider\":1}")
+                .append("]")
+                .toString();
+        Assert.assertEquals(expected, writer.toString());
+    }
+
+    @Test
+    public void serializeNullLocationProviderAsZero() throws IOException {
+        StringWriter writer = new StringWriter();
+        InMemoryLocationCursor cursor = new InMemoryLocationCursor(1) {
+            @Override
+            public boolean isNull(int columnIndex) {
+                return columnIndex == getColumnIndex(LocationEntry.COLUMN_NAME_LOCATION_PROVIDER);
+            }
+
+            @Override
+            public int getInt(int columnIndex) {
+                return isNull(columnIndex) ? 0 : super.getInt(columnIndex);
+            }
+        };
+
+        Assert.assertEquals(1, new LocationJsonSerializer(cursor, writer).writeAll());
+        Assert.assertTrue(writer.toString().endsWith(",\"locationProvider\":0}]"));
+    }
+
+    @Test
+    public void serializeEmptyCursor() throws IOException {
+        StringWriter writer = new StringWriter();
+        Assert.assertEquals(0, new LocationJsonSerializer(new InMemoryLocationCursor(0), writer).writeAll());
+        Assert.assertEquals("[]", writer.toString());
+    }
+
+    @Test
+    public void serializeManyRowsAcrossBufferBoundary() throws IOException {
+        StringWriter writer = new StringWriter();
+        Assert.assertEquals(1000, new LocationJsonSerializer(new InMemoryLocationCursor(1000), writer).writeAll());
+        String json = writer.toString();
+        Assert.assertTrue(json.startsWith("[{\"provider\":\"gps\""));
+        Assert.assertTrue(json.endsWith("\"locationProvider\":1}]"));
+        int objects = 0;
+        for (int i = 0; i < json.length(); i++) {
+            if (json.charAt(i) == '{') objects++;
+        }
+        Assert.assertEquals(1000, objects);
+    }
+}
@@ -0,0 +1,187 @@
+package com.marianhello.cdvbackgroundgeolocation;
+
+import android.test.suitebuilder.annotation.SmallTest;
+
+import com.marianhello.bgloc.Config;
+import com.marianhello.bgloc.data.BackgroundLocation;
+import com.marianhello.bgloc.pipeline.AccuracyGateStage;
+import com.marianhello.bgloc.pipeline.DedupStage;
+import com.marianhello.bgloc.pipeline.LocationPipeline;
+import com.marianhello.bgloc.pipeline.LocationPipelineFactory;
+import com.marianhello.bgloc.pipeline.LocationStage;
+import com.marianhello.bgloc.pipeline.StageStats;
+import com.marianhello.bgloc.pipeline.ThrottleStage;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+@SmallTest
+public class LocationPipelineTest {
+
+    private static class CollectingSink implements LocationPipeline.Sink {
+        final List<BackgroundLocation> locations = new ArrayList<BackgroundLocation>();
+
+        public void onLocation(BackgroundLocation location) {
+            locations.add(location);
+        }
+    }
+
+    /**
+     * Holds back every location until next one arrives
+     */
+    private static class DelayStage extends LocationStage {
+        private BackgroundLocation pending;
+
+        public String getName() {
+            return "delay";
+        }
+
+        public void process(BackgroundLocation location, List<BackgroundLocation> out) {
+            if (pending != null) {
+                out.add(pending);
+            }
+            pending = location;
+        }
+
+        public void flush(List<BackgroundLocation> out) {
+            if (pending != null) {
+                out.add(pending);
+                pending = null;
+            }
+        }
+    }
+
+    private static BackgroundLocation createLocation(long time, double latitude, float accuracy) {
+        BackgroundLocation location = new BackgroundLocation("test");
+        location.setTime(time);
+        location.setLatitude(latitude);
+        location.setLongitude(17.0);
+        location.setAccuracy(accuracy);
+        return location;
+    }
+
+    @Test
+    public void emptyPipelinePassesAll() {
+        CollectingSink sink = new CollectingSink();
+        LocationPipeline pipeline = new LocationPipeline(Collections.<LocationStage>emptyList(), sink);
+        pipeline.process(createLocation(1000, 49.0, 10));
+        pipeline.process(createLocation(1000, 49.0, 10));
+        Assert.assertEquals(2, sink.locations.size());
+        Assert.assertTrue(pipeline.getStats().isEmpty());
+    }
+
+    @Test
+    public void accuracyGateDropsInaccurate() {
+        CollectingSink sink = new CollectingSink();
+        LocationPipeline pipeline = new LocationPipeline(
+                Arrays.<LocationStage>asList(new AccuracyGateStage(50)), sink);
+        pipeline.process(createLocation(1000, 49.0, 10));
+        pipeline.process(createLocation(2000, 49.1, 500));
+        pipeline.process(createLocation(3000, 49.2, 50));
+        pipeline.process(new BackgroundLocation("test")); // without accuracy
+
+        Assert.assertEquals(3, sink.locations.size());
+        StageStats stats = pipeline.getStats().get(0);
+        Assert.assertEquals("accuracy", stats.getName());
+        Assert.assertEquals(4, stats.getReceived());
+        Assert.assertEquals(3, stats.getEmitted());
+        Assert.assertEquals(1, stats.getDropped());
+    }
+
+    @Test
+    public void dedupDropsRepeatedFix() {
+        CollectingSink sink = new CollectingSink();
+        LocationPipeline pipeline = new LocationPipeline(Arrays.<LocationStage>asList(new DedupStage()), sink);
+        pipeline.process(createLocation(1000, 49.0, 10));
+        pipeline.process(createLocation(1000, 49.0, 20));
+        pipeline.process(createLocation(1000, 49.1, 10));
+        pipeline.process(createLocation(2000, 49.1, 10));
+        Assert.assertEquals(3, sink.locations.size());
+    }
+
+    @Test
+    public void throttlePassesOnePerInterval() {
+        CollectingSink sink = new CollectingSink();
+        LocationPipeline pipeline = new LocationPipeline(Arrays.<LocationStage>asList(new ThrottleStage(5000)), sink);
+        for (int i = 0; i <= 20; i++) {
+            pipeline.process(createLocation(i * 1000, 49.0 + i * 0.001, 10));
+        }
+        Assert.assertEquals(5, sink.locations.size());
+        Assert.assertEquals(15000, sink.locations.get(3).getTime());
+    }
+
+    @Test
+    public void droppedLocationDoesNotReachFollowingStages() {
+        CollectingSink sink = new CollectingSink();
+        LocationPipeline pipeline = new LocationPipeline(
+                Arrays.<LocationStage>asList(new AccuracyGateStage(50), new DedupStage()), sink);
+        pipeline.process(createLocation(1000, 49.0, 500));
+        pipeline.process(createLocation(2000, 49.0, 5));
+
+        List<StageStats> stats = pipeline.getStats();
+        Assert.assertEquals(2, stats.get(0).getReceived());
+        Assert.assertEquals(1, stats.get(1).getReceived());
+        Assert.assertEquals(1, sink.locations.size());
+    }
+
+    @Test
+    public void flushPassesHeldBackLocationThroughFollowingStages() {
+        CollectingSink sink = new CollectingSink();
+        LocationPipeline pipeline = new LocationPipeline(
+                Arrays.<LocationStage>asList(new DelayStage(), new ThrottleStage(5000)), sink);
+        pipeline.process(createLocation(1000, 49.0, 10));
+        pipeline.process(createLocation(2000, 49.1, 10));
+        pipeline.process(createLocation(9000, 49.2, 10));
+        Assert.assertEquals(1, sink.locations.size());
+
+        pipeline.flush();
+        Assert.assertEquals(2, sink.locations.size());
+        Assert.assertEquals(9000, sink.locations.get(1).getTime());
+        Assert.assertEquals(3, pipeline.getStats().get(0).getEmitted());
+    }
+
+    @Test
+    public void pipelineIsCreatedFromConfig() {
+        Config config = new Config();
+        config.setMaxAccuracy(30);
+        config.setPipeline(new ArrayList<String>(Arrays.asList("dedup", "unknown", "accuracy")));
+
+        CollectingSink sink = new CollectingSink();
+        LocationPipeline pipeline = LocationPipelineFactory.createPipeline(config, sink);
+        LocationStage[] stages = pipeline.getStages();
+        Assert.assertEquals(2, stages.length);
+        Assert.assertEquals("dedup", stages[0].getName());
+        Assert.assertEquals("accuracy", stages[1].getName());
+
+        pipeline.process(createLocation(1000, 49.0, 40));
+        Assert.assertTrue(sink.locations.isEmpty());
+    }
+
+    @Test
+    public void defaultPipelinePassesAll() {
+        CollectingSink sink = new CollectingSink();
+        LocationPipeline pipeline = LocationPipelineFactory.createPipeline(new Config(), sink);
+        Assert.assertEquals(3, pipeline.getStages().length);
+        for (int i = 0; i < 10; i++) {
+            pipeline.process(createLocation(i * 1000, 49.0 + i * 0.001, 1000));
+        }
+        Assert.assertEquals(10, sink.locations.size());
+    }
+
+    @Test
+    public void pipelineOptionsAreDetected() {
+        Config config = new Config();
+        config.setThrottleInterval(1000);
+        Assert.assertTrue(LocationPipelineFactory.isAffected(new Config().diff(config)));
+
+        config = new Config();
+        config.setUrl("http://server/locations");
+        Assert.assertFalse(LocationPipelineFactory.isAffected(new Config().diff(config)));
+    }
+}
@@ -0,0 +1,129 @@
+package com.marianhello.cdvbackgroundgeolocation;
+
+import android.test.suitebuilder.annotation.SmallTest;
+
+import com.google.android.gms.location.DetectedActivity;
+import com.marianhello.bgloc.data.BackgroundLocation;
+import com.marianhello.bgloc.pipeline.OutlierStage;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@SmallTest
+public class OutlierStageTest {
+    private static final double METERS_PER_DEGREE = TraceGenerator.EARTH_RADIUS * Math.PI / 180;
+
+    /**
+     * @return network location given meters north of location, half second later
+     */
+    private static BackgroundLocation teleport(BackgroundLocation location, double meters) {
+        BackgroundLocation network = new BackgroundLocation("network");
+        network.setTime(location.getTime() + 500);
+        network.setLatitude(location.getLatitude() + meters / METERS_PER_DEGREE);
+        network.setLongitude(location.getLongitude());
+        network.setAccuracy(30);
+        return network;
+    }
+
+    private static List<BackgroundLocation> run(OutlierStage stage, List<BackgroundLocation> fixes) {
+        List<BackgroundLocation> out = new ArrayList<BackgroundLocation>();
+        for (BackgroundLocation fix : fixes) {
+            stage.process(fix, out);
+        }
+        return out;
+    }
+
+    @Test
+    public void networkTeleportsAreRejected() {
+        List<BackgroundLocation> fixes = new ArrayList<BackgroundLocation>();
+        List<BackgroundLocation> teleports = new ArrayList<BackgroundLocation>();
+        TraceGenerator.Trace trace = new TraceGenerator(1).walk(300, 10);
+        for (int i = 0; i < trace.size(); i++) {
+            fixes.add(trace.fixes.get(i));
+            if (i % 10 == 5) {
+                BackgroundLocation network = teleport(trace.fixes.get(i), 300 + i);
+                fixes.add(network);
+                teleports.add(network);
+            }
+        }
+
+        OutlierStage stage = new OutlierStage();
+        List<BackgroundLocation> accepted = run(stage, fixes);
+        Assert.assertEquals(trace.size(), accepted.size());
+        Assert.assertEquals(teleports.size(), stage.getRejectedBySpeed() + stage.getRejectedByAcceleration());
+        for (BackgroundLocation location : accepted) {
+            Assert.assertEquals("gps", location.getProvider());
+        }
+    }
+
+    @Test
+    public void highwayIsNotRejected() {
+        TraceGenerator.Trace trace = new TraceGenerator(2).highway(5);
+        OutlierStage stage = new OutlierStage();
+        stage.onActivity(DetectedActivity.IN_VEHICLE);
+        // gaussian noise alone exceeds limits rarely
+        Assert.assertTrue(trace.size() - run(stage, trace.fixes).size() <= trace.size() / 100);
+    }
+
+    @Test
+    public void cityIsNotRejected() {
+        TraceGenerator.Trace trace = new TraceGenerator(3).city(10);
+        OutlierStage stage = new OutlierStage();
+        stage.onActivity(DetectedActivity.IN_VEHICLE);
+        // gaussian noise alone exceeds limits rarely
+        Assert.assertTrue(trace.size() - run(stage, trace.fixes).size() <= trace.size() / 100);
+    }
+
+    @Test
+    public void limitsFollowActivity() {
+        List<BackgroundLocation> fixes = new TraceGenerator(4).walk(20, 5).fixes;
+        fixes.add(10, teleport(fixes.get(9), 150));
+
+        OutlierStage stage = new OutlierStage();
+        stage.onActivity(DetectedActivity.IN_VEHICLE);
+        Assert.assertEquals(20, run(stage, fixes).size());
+        Assert.assertEquals(1, stage.getRejectedByAcceleration());
+
+        stage = new OutlierStage();
+        stage.onActivity(DetectedActivity.WALKING);
+        Assert.assertEquals(20, run(stage, fixes).size());
+        Assert.assertEquals(1, stage.getRejectedBySpeed());
+    }
+
+    @Test
+    public void badFirstLocationDoesNotLockOut() {
+        List<BackgroundLocation> fixes = new TraceGenerator(5).walk(30, 5).fixes;
+        BackgroundLocation first = teleport(fixes.get(0), 5000);
+        first.setTime(0);
+        fixes.add(0, first);
+
+        OutlierStage stage = new OutlierStage();
+        List<BackgroundLocation> accepted = run(stage, fixes);
+        Assert.assertEquals(OutlierStage.MAX_CONSECUTIVE_REJECTS, stage.getRejectedBySpeed());
+        Assert.assertEquals(fixes.size() - OutlierStage.MAX_CONSECUTIVE_REJECTS, accepted.size());
+        Assert.assertSame(fixes.get(OutlierStage.MAX_CONSECUTIVE_REJECTS + 1), accepted.get(1));
+    }
+
+    @Test
+    public void lastRejectedAreKept() {
+        List<BackgroundLocation> fixes = new ArrayList<BackgroundLocation>();
+        TraceGenerator.Trace trace = new TraceGenerator(6).walk(300, 5);
+        for (int i = 0; i < trace.size(); i++) {
+            fixes.add(trace.fixes.get(i));
+            if (i % 2 == 1) {
+                fixes.add(teleport(trace.fixes.get(i), 1000 + i));
+            }
+        }
+
+        OutlierStage stage = new OutlierStage();
+        run(stage, fixes);
+        List<BackgroundLocation> rejected = stage.getRejected();
+        Assert.assertEquals(150, stage.getRejectedBySpeed());
+        Assert.assertEquals(OutlierStage.MAX_REJECTED, rejected.size());
+        Assert.assertSame(fixes.get(fixes.size() - 1), rejected.get(rejected.size() - 1));
+    }
+}
@@ -0,0 +1,46 @@
+package com.marianhello.cdvbackgroundgeolocation;
+
+import android.test.suitebuilder.annotation.SmallTest;
+
+import com.marianhello.bgloc.Config;
+import com.marianhello.bgloc.LocationService;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+@SmallTest
+public class ReconfigurePathTest {
+
+    @Test
+    public void firstConfigStartsProvider() {
+        Assert.assertEquals(LocationService.RECONFIGURE_START, LocationService.reconfigurePath(false, null));
+        Assert.assertEquals(LocationService.RECONFIGURE_START,
+                LocationService.reconfigurePath(false, new Config().diff(new Config())));
+    }
+
+    @Test
+    public void sameConfigKeepsProvider() {
+        Assert.assertEquals(LocationService.RECONFIGURE_NONE,
+                LocationService.reconfigurePath(true, new Config().diff(new Config())));
+    }
+
+    @Test
+    public void intervalAndUrlAreUpdatedInPlace() {
+        Config config = new Config();
+        config.setInterval(1000);
+        config.setDistanceFilter(5);
+        config.setUrl("http://server/locations");
+        Assert.assertEquals(LocationService.RECONFIGURE_UPDATE,
+                LocationService.reconfigurePath(true, new Config().diff(config)));
+    }
+
+    @Test
+    public void locationProviderChangeRestartsProvider() {
+        Config config = new Config();
+        config.setInterval(1000);
+        config.setLocationProvider(Config.ANDROID_WEBFIT_PROVIDER);
+        Assert.assertEquals(LocationService.RECONFIGURE_RESTART,
+                LocationService.reconfigurePath(true, new Config().diff(config)));
+    }
+}
@@ -0,0 +1,194 @@
+package com.marianhello.cdvbackgroundgeolocation;
+
+import android.test.suitebuilder.annotation.SmallTest;
+
+import com.marianhello.bgloc.SamplingPolicy;
+import com.marianhello.bgloc.data.BackgroundLocation;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Random;
+
+@SmallTest
+public class SamplingPolicyTest {
+    private static final int INTERVAL = 600000;
+    private static final int FASTEST_INTERVAL = 1000;
+    private static final float SPACING = 100;
+    /** interval keeping spacing at highway speed, what fixed interval has to be set to */
+    private static final long FIXED_INTERVAL = 2500;
+
+    private static class Replay {
+        int fixes = 0;
+        int requests = 0;
+        double maxGap = 0;
+    }
+
+    /**
+     * Add speed as reported by GPS (truth speed with noise) to 1 Hz trace
+     */
+    private static TraceGenerator.Trace withSpeed(TraceGenerator.Trace trace) {
+        Random random = new Random(1);
+        for (int i = 0; i < trace.size() - 1; i++) {
+            double[] from = trace.truth.get(i);
+            double[] to = trace.truth.get(i + 1);
+            double speed = TraceGenerator.distance(from[0], from[1], to[0], to[1]);
+            trace.fixes.get(i).setSpeed((float) Math.max(0, speed + random.nextGaussian() * 0.3));
+        }
+        return trace;
+    }
+
+    /**
+     * Deliver trace locations as location manager would with interval and min distance
+     * requested by policy (or fixed interval when policy is null)
+     *
+     * @return number of delivered locations and max travelled distance between them
+     */
+    private static Replay replay(TraceGenerator.Trace trace, SamplingPolicy policy) {
+        Replay replay = new Replay();
+        long interval = policy != null ? policy.getInterval() : FIXED_INTERVAL;
+        float minDistance = policy != null ? policy.getMinDistance() : 0;
+        BackgroundLocation lastDelivered = null;
+        double travelled = 0;
+        for (int i = 0; i < trace.size(); i++) {
+            if (i > 0) {
+                double[] from = trace.truth.get(i - 1);
+                double[] to = trace.truth.get(i);
+                travelled += TraceGenerator.distance(from[0], from[1], to[0], to[1]);
+            }
+            BackgroundLocation fix = trace.fixes.get(i);
+            if (lastDelivered != null) {
+                if (fix.getTime() - lastDelivered.getTime() < interval) {
+                    continue;
+                }
+                if (TraceGenerator.distance(fix.getLatitude(), fix.getLongitude(),
+                        lastDelivered.getLatitude(), lastDelivered.getLongitude()) < minDistance) {
+                    continue;
+                }
+            }
+            replay.fixes++;
+            replay.maxGap = Math.max(replay.maxGap, travelled);
+            travelled = 0;
+            lastDelivered = fix;
+            if (policy != null && policy.update(new BackgroundLocation(fix))) {
+                replay.requests++;
+                interval = policy.getInterval();
+                minDistance = policy.getMinDistance();
+            }
+        }
+        return replay;
+    }
+
+    private static SamplingPolicy createPolicy() {
+        return new SamplingPolicy(INTERVAL, FASTEST_INTERVAL, SPACING);
+    }
+
+    private static BackgroundLocation createLocation(long time, double latitude, double longitude, float speed) {
+        BackgroundLocation location = new BackgroundLocation("gps");
+        location.setTime(time);
+        location.setLatitude(latitude);
+        location.setLongitude(longitude);
+        location.setAccuracy(5);
+        if (speed >= 0) {
+            location.setSpeed(speed);
+        }
+        return location;
+    }
+
+    @Test
+    public void walkIsSampledLessOftenAtSameSpacing() {
+        TraceGenerator.Trace trace = withSpeed(new TraceGenerator(1).walk(1800, 5));
+        SamplingPolicy policy = createPolicy();
+        Replay adaptive = replay(trace, policy);
+        Replay fixed = replay(trace, null);
+
+        Assert.assertEquals(SamplingPolicy.TIER_SLOW, policy.getTier());
+        Assert.assertTrue(adaptive.fixes * 10 < fixed.fixes);
+        Assert.assertTrue(adaptive.maxGap <= SPACING);
+        Assert.assertTrue(adaptive.requests <= 2);
+    }
+
+    @Test
+    public void highwayKeepsSpacing() {
+        TraceGenerator.Trace trace = withSpeed(new TraceGenerator(2).highway(10));
+        SamplingPolicy policy = createPolicy();
+        Replay adaptive = replay(trace, policy);
+        Replay fixed = replay(trace, null);
+
+        Assert.assertEquals(SamplingPolicy.TIER_FAST, policy.getTier());
+        Assert.assertTrue(adaptive.fixes <= fixed.fixes);
+        Assert.assertTrue(adaptive.maxGap <= SPACING);
+    }
+
+    @Test
+    public void cityStopAndGoDoesNotThrash() {
+        TraceGenerator.Trace trace = withSpeed(new TraceGenerator(3).city(5));
+        Replay adaptive = replay(trace, createPolicy());
+        Replay fixed = replay(trace, null);
+
+        // 12 legs at 12 m/s with right angle turns and stops in between, stops and turns
+        // must not lower tier (and lose spacing on next leg) nor request updates on every leg
+        Assert.assertTrue(adaptive.requests <= 12);
+        Assert.assertTrue(adaptive.fixes <= fixed.fixes);
+        Assert.assertTrue(adaptive.maxGap <= SPACING * 1.2);
+    }
+
+    @Test
+    public void stationaryIsSampledRarely() {
+        TraceGenerator.Trace trace = withSpeed(new TraceGenerator(4).stationary(1800, 10));
+        SamplingPolicy policy = createPolicy();
+        Replay adaptive = replay(trace, policy);
+
+        Assert.assertEquals(SamplingPolicy.TIER_STILL, policy.getTier());
+        Assert.assertEquals(200000, policy.getInterval());
+        Assert.assertEquals(SPACING, policy.getMinDistance(), 0);
+        Assert.assertTrue(adaptive.fixes <= 4);
+    }
+
+    @Test
+    public void speedAroundBoundaryDoesNotChangeTier() {
+        SamplingPolicy policy = createPolicy();
+        policy.update(createLocation(0, 49.2, 16.6, 3.2f));
+        Assert.assertEquals(SamplingPolicy.TIER_MEDIUM, policy.getTier());
+
+        for (int i = 1; i < 20; i++) {
+            Assert.assertFalse(policy.update(createLocation(i * 10000, 49.2, 16.6, i % 2 == 0 ? 3.3f : 2.5f)));
+        }
+        Assert.assertEquals(SamplingPolicy.TIER_MEDIUM, policy.getTier());
+
+        // lowered only after consecutive slow locations spanning downgrade time
+        Assert.assertFalse(policy.update(createLocation(200000, 49.2, 16.6, 2)));
+        Assert.assertFalse(policy.update(createLocation(230000, 49.2, 16.6, 2)));
+        Assert.assertFalse(policy.update(createLocation(250000, 49.2, 16.6, 2)));
+        Assert.assertTrue(policy.update(createLocation(260000, 49.2, 16.6, 2)));
+        Assert.assertEquals(SamplingPolicy.TIER_SLOW, policy.getTier());
+
+        // raised immediately
+        Assert.assertTrue(policy.update(createLocation(270000, 49.2, 16.6, 20)));
+        Assert.assertEquals(SamplingPolicy.TIER_FAST, policy.getTier());
+    }
+
+    @Test
+    public void speedIsDerivedWithoutReportedSpeed() {
+        SamplingPolicy policy = createPolicy();
+        List<BackgroundLocation> fixes = new TraceGenerator(5).generate(49.2, 16.6,
+                new double[][] { { 10, 0, 60 } }, 10000, 5).fixes;
+        for (BackgroundLocation fix : fixes) {
+            policy.update(fix);
+        }
+        Assert.assertEquals(SamplingPolicy.TIER_MEDIUM, policy.getTier());
+        Assert.assertEquals(8333, policy.getInterval());
+    }
+
+    @Test
+    public void inaccurateLocationIsIgnored() {
+        SamplingPolicy policy = createPolicy();
+        BackgroundLocation location = createLocation(0, 49.2, 16.6, 20);
+        location.setAccuracy(SamplingPolicy.MAX_ACCURACY + 1);
+        Assert.assertFalse(policy.update(location));
+        Assert.assertEquals(-1, policy.getTier());
+        Assert.assertEquals(INTERVAL, policy.getInterval());
+    }
+}
@@ -0,0 +1,84 @@
+package com.marianhello.cdvbackgroundgeolocation;
+
+import com.marianhello.bgloc.data.BackgroundLocation;
+import com.marianhello.bgloc.pipeline.SimplifyStage;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compression ratio and route deviation of simplify stage
+ *
+ * Simplifies synthetic city and highway traces with several tolerances and reports
+ * ratio of received to kept locations and max distance of dropped location from
+ * simplified route (segment between kept locations surrounding it).
+ *
+ * Run with: ./gradlew test -Pbenchmark --tests '*SimplifyStageBenchmark' -i
+ */
+public class SimplifyStageBenchmark {
+    private static final float[] TOLERANCES = { 5, 10, 20 };
+    private static final double METERS_PER_DEGREE = TraceGenerator.EARTH_RADIUS * Math.PI / 180;
+
+    /**
+     * @return distance in meters of point from segment a-b (local plane around a)
+     */
+    private static double segmentDistance(BackgroundLocation point, BackgroundLocation a, BackgroundLocation b) {
+        double metersPerDegreeLongitude = METERS_PER_DEGREE * Math.cos(Math.toRadians(a.getLatitude()));
+        double bx = (b.getLongitude() - a.getLongitude()) * metersPerDegreeLongitude;
+        double by = (b.getLatitude() - a.getLatitude()) * METERS_PER_DEGREE;
+        double px = (point.getLongitude() - a.getLongitude()) * metersPerDegreeLongitude;
+        double py = (point.getLatitude() - a.getLatitude()) * METERS_PER_DEGREE;
+        double lengthSquared = bx * bx + by * by;
+        double t = lengthSquared == 0 ? 0 : Math.max(0, Math.min(1, (px * bx + py * by) / lengthSquared));
+        return Math.hypot(px - t * bx, py - t * by);
+    }
+
+    /**
+     * @return max deviation in meters
+     */
+    private double run(String name, TraceGenerator.Trace trace, float tolerance) {
+        SimplifyStage stage = new SimplifyStage(tolerance);
+        List<BackgroundLocation> kept = new ArrayList<BackgroundLocation>();
+        long start = System.nanoTime();
+        for (BackgroundLocation fix : trace.fixes) {
+            stage.process(fix, kept);
+        }
+        stage.flush(kept);
+        long nanos = System.nanoTime() - start;
+
+        double maxDeviation = 0;
+        int segment = 0;
+        for (BackgroundLocation fix : trace.fixes) {
+            while (segment < kept.size() - 1 && kept.get(segment + 1).getTime() < fix.getTime()) {
+                segment++;
+            }
+            if (segment < kept.size() - 1) {
+                maxDeviation = Math.max(maxDeviation, segmentDistance(fix, kept.get(segment), kept.get(segment + 1)));
+            }
+        }
+
+        System.out.println(String.format(
+                "%s tolerance: %.0fm locations: %d kept: %d ratio: %.1f max deviation: %.1fm us/location: %.2f",
+                name, tolerance, trace.size(), kept.size(), trace.size() / (double) kept.size(),
+                maxDeviation, nanos / 1000d / trace.size()));
+
+        Assert.assertTrue(kept.size() < trace.size());
+        return maxDeviation;
+    }
+
+    @Test
+    public void simplifyTraces() {
+        for (float tolerance : TOLERANCES) {
+            Assert.assertTrue(run("city", new TraceGenerator(1).city(5), tolerance) <= tolerance + 0.01);
+            Assert.assertTrue(run("highway", new TraceGenerator(2).highway(5), tolerance) <= tolerance + 0.01);
+        }
+    }
+
+    public static void main(String[] args) {
+        new SimplifyStageBenchmark().simplifyTraces();
+    }
+}
@@ -0,0 +1,133 @@
+package com.marianhello.cdvbackgroundgeolocation;
+
+import android.test.suitebuilder.annotation.SmallTest;
+
+import com.marianhello.bgloc.data.BackgroundLocation;
+import com.marianhello.bgloc.pipeline.LocationPipeline;
+import com.marianhello.bgloc.pipeline.LocationStage;
+import com.marianhello.bgloc.pipeline.SimplifyStage;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+@SmallTest
+public class SimplifyStageTest {
+    private static final double METERS_PER_DEGREE = 6371008.8 * Math.PI / 180;
+
+    /**
+     * @return location x meters east and y meters north of 49N 17E
+     */
+    private static BackgroundLocation createLocation(long time, double x, double y) {
+        BackgroundLocation location = new BackgroundLocation("test");
+        location.setTime(time);
+        location.setLatitude(49 + y / METERS_PER_DEGREE);
+        location.setLongitude(17 + x / (METERS_PER_DEGREE * Math.cos(Math.toRadians(49))));
+        return location;
+    }
+
+    @Test
+    public void straightLineKeepsEndpoints() {
+        SimplifyStage stage = new SimplifyStage(5, 0);
+        List<BackgroundLocation> out = new ArrayList<BackgroundLocation>();
+        for (int i = 0; i < 50; i++) {
+            stage.process(createLocation(i * 1000, i * 10, (i % 2) * 3), out);
+        }
+        Assert.assertEquals(1, out.size());
+        stage.flush(out);
+        Assert.assertEquals(2, out.size());
+        Assert.assertEquals(0, out.get(0).getTime());
+        Assert.assertEquals(49000, out.get(1).getTime());
+    }
+
+    @Test
+    public void cornerIsKept() {
+        SimplifyStage stage = new SimplifyStage(5, 0);
+        List<BackgroundLocation> out = new ArrayList<BackgroundLocation>();
+        for (int i = 0; i <= 10; i++) {
+            stage.process(createLocation(i * 1000, i * 10, 0), out);
+        }
+        for (int i = 1; i <= 10; i++) {
+            stage.process(createLocation((10 + i) * 1000, 100, i * 10), out);
+        }
+        stage.flush(out);
+        Assert.assertEquals(3, out.size());
+        Assert.assertEquals(10000, out.get(1).getTime());
+        Assert.assertEquals(20000, out.get(2).getTime());
+    }
+
+    @Test
+    public void windowIsBounded() {
+        SimplifyStage stage = new SimplifyStage(5, 0);
+        List<BackgroundLocation> out = new ArrayList<BackgroundLocation>();
+        int count = SimplifyStage.MAX_WINDOW * 3 + 1;
+        for (int i = 0; i < count; i++) {
+            stage.process(createLocation(i * 1000, i * 10, 0), out);
+        }
+        Assert.assertEquals(4, out.size());
+        Assert.assertEquals(SimplifyStage.MAX_WINDOW * 1000, out.get(1).getTime());
+    }
+
+    @Test
+    public void stationaryJitterIsDropped() {
+        SimplifyStage stage = new SimplifyStage(10, 0);
+        List<BackgroundLocation> out = new ArrayList<BackgroundLocation>();
+        for (int i = 0; i < 30; i++) {
+            stage.process(createLocation(i * 1000, (i % 3) * 2, (i % 5) * 2), out);
+        }
+        Assert.assertEquals(1, out.size());
+    }
+
+    @Test
+    public void zeroTolerancePassesAll() {
+        SimplifyStage stage = new SimplifyStage(0);
+        List<BackgroundLocation> out = new ArrayList<BackgroundLocation>();
+        for (int i = 0; i < 10; i++) {
+            stage.process(createLocation(i * 1000, i * 10, 0), out);
+        }
+        stage.flush(out);
+        Assert.assertEquals(10, out.size());
+    }
+
+    @Test
+    public void holdBackIsBoundedByTime() {
+        SimplifyStage stage = new SimplifyStage(5, 10000);
+        List<BackgroundLocation> out = new ArrayList<BackgroundLocation>();
+        for (int i = 0; i < 30; i++) {
+            stage.process(createLocation(i * 1000, i * 10, 0), out);
+        }
+        Assert.assertEquals(3, out.size());
+        Assert.assertEquals(10000, out.get(1).getTime());
+        Assert.assertEquals(20000, out.get(2).getTime());
+        Assert.assertEquals(31000, stage.getHoldDeadline());
+    }
+
+    @Test
+    public void heldLocationIsPassedAtDeadlineWithoutNextLocation() {
+        final List<BackgroundLocation> emitted = new ArrayList<BackgroundLocation>();
+        LocationPipeline pipeline = new LocationPipeline(Arrays.<LocationStage>asList(new SimplifyStage(5)),
+                new LocationPipeline.Sink() {
+                    public void onLocation(BackgroundLocation location) {
+                        emitted.add(location);
+                    }
+                });
+        for (int i = 0; i <= 5; i++) {
+            pipeline.process(createLocation(i * 1000, i * 10, 0));
+        }
+        Assert.assertEquals(1, emitted.size());
+        Assert.assertEquals(1000 + SimplifyStage.MAX_HOLD_MILLIS, pipeline.getHoldDeadline());
+
+        pipeline.expire(pipeline.getHoldDeadline());
+        Assert.assertEquals(2, emitted.size());
+        Assert.assertEquals(5000, emitted.get(1).getTime());
+        Assert.assertEquals(Long.MAX_VALUE, pipeline.getHoldDeadline());
+
+        // passed location is anchor of following ones
+        pipeline.process(createLocation(20000, 60, 0));
+        Assert.assertEquals(2, emitted.size());
+    }
+}
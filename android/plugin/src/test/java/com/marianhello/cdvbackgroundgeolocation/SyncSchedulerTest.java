@@ -0,0 +1,92 @@
+package com.marianhello.cdvbackgroundgeolocation;
+
+import android.test.suitebuilder.annotation.SmallTest;
+
+import com.marianhello.bgloc.Config;
+import com.marianhello.bgloc.sync.SyncScheduler;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+@SmallTest
+public class SyncSchedulerTest {
+    private static final long NOW = 1469000000000L;
+
+    private static Config config(int syncThreshold, int syncMaxDelay, boolean syncUnmeteredOnly) {
+        Config config = new Config();
+        config.setSyncThreshold(syncThreshold);
+        config.setSyncMaxDelay(syncMaxDelay);
+        config.setSyncUnmeteredOnly(syncUnmeteredOnly);
+        return config;
+    }
+
+    @Test
+    public void idleWhenNothingPending() {
+        Assert.assertEquals(SyncScheduler.DECISION_IDLE,
+                SyncScheduler.decide(config(10, 0, false), NOW, 0, null, 0, true, false, true));
+    }
+
+    @Test
+    public void waitForConnectivity() {
+        Assert.assertEquals(SyncScheduler.DECISION_NO_CONNECTIVITY,
+                SyncScheduler.decide(config(10, 0, false), NOW, 100, NOW - 1000, 0, false, false, false));
+    }
+
+    @Test
+    public void backoffPreventsSync() {
+        Assert.assertEquals(SyncScheduler.DECISION_BACKOFF,
+                SyncScheduler.decide(config(10, 0, false), NOW, 100, NOW - 1000, NOW + 1, true, false, false));
+        Assert.assertEquals(SyncScheduler.DECISION_SYNC_THRESHOLD,
+                SyncScheduler.decide(config(10, 0, false), NOW, 100, NOW - 1000, NOW, true, false, false));
+    }
+
+    @Test
+    public void syncOnThreshold() {
+        Assert.assertEquals(SyncScheduler.DECISION_WAIT_THRESHOLD,
+                SyncScheduler.decide(config(10, 0, false), NOW, 9, NOW - 1000, 0, true, true, false));
+        Assert.assertEquals(SyncScheduler.DECISION_SYNC_THRESHOLD,
+                SyncScheduler.decide(config(10, 0, false), NOW, 10, NOW - 1000, 0, true, true, false));
+    }
+
+    @Test
+    public void unmeteredOnlyWaitsOnMeteredNetwork() {
+        Assert.assertEquals(SyncScheduler.DECISION_WAIT_UNMETERED,
+                SyncScheduler.decide(config(10, 0, true), NOW, 10, NOW - 1000, 0, true, true, true));
+        Assert.assertEquals(SyncScheduler.DECISION_SYNC_THRESHOLD,
+                SyncScheduler.decide(config(10, 0, true), NOW, 10, NOW - 1000, 0, true, false, false));
+    }
+
+    @Test
+    public void maxDelayForcesSyncOnAnyNetwork() {
+        Assert.assertEquals(SyncScheduler.DECISION_WAIT_THRESHOLD,
+                SyncScheduler.decide(config(10, 60000, true), NOW, 1, NOW - 59999, 0, true, true, false));
+        Assert.assertEquals(SyncScheduler.DECISION_SYNC_MAX_DELAY,
+                SyncScheduler.decide(config(10, 60000, true), NOW, 1, NOW - 60000, 0, true, true, false));
+    }
+
+    @Test
+    public void syncEverythingWhenChargingOnUnmeteredNetwork() {
+        Assert.assertEquals(SyncScheduler.DECISION_SYNC_CHARGING,
+                SyncScheduler.decide(config(10, 0, false), NOW, 1, NOW - 1000, 0, true, false, true));
+        Assert.assertEquals(SyncScheduler.DECISION_WAIT_THRESHOLD,
+                SyncScheduler.decide(config(10, 0, false), NOW, 1, NOW - 1000, 0, true, true, true));
+    }
+
+    @Test
+    public void batchThresholdFollowsDecision() {
+        Config config = config(10, 0, false);
+        Assert.assertEquals(10, SyncScheduler.batchThreshold(SyncScheduler.DECISION_SYNC_THRESHOLD, config));
+        Assert.assertEquals(1, SyncScheduler.batchThreshold(SyncScheduler.DECISION_SYNC_MAX_DELAY, config));
+        Assert.assertEquals(1, SyncScheduler.batchThreshold(SyncScheduler.DECISION_SYNC_CHARGING, config));
+    }
+
+    @Test
+    public void backoffDoublesUpToMaximum() {
+        Assert.assertEquals(0, SyncScheduler.backoffDelay(0));
+        Assert.assertEquals(SyncScheduler.BACKOFF_BASE_MILLIS, SyncScheduler.backoffDelay(1));
+        Assert.assertEquals(SyncScheduler.BACKOFF_BASE_MILLIS * 2, SyncScheduler.backoffDelay(2));
+        Assert.assertEquals(SyncScheduler.BACKOFF_BASE_MILLIS * 4, SyncScheduler.backoffDelay(3));
+        Assert.assertEquals(SyncScheduler.BACKOFF_MAX_MILLIS, SyncScheduler.backoffDelay(100));
+    }
+}
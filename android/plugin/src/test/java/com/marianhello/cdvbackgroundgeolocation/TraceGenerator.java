@@ -0,0 +1,119 @@
+package com.marianhello.cdvbackgroundgeolocation;
+
+import com.marianhello.bgloc.data.BackgroundLocation;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Generates noisy location traces with known true path (fixed seed, so traces are same on every run)
+ */
+public class TraceGenerator {
+    public static final double EARTH_RADIUS = 6371008.8;
+    private static final double METERS_PER_DEGREE = EARTH_RADIUS * Math.PI / 180;
+
+    public static class Trace {
+        public final List<BackgroundLocation> fixes = new ArrayList<BackgroundLocation>();
+        public final List<double[]> truth = new ArrayList<double[]>();
+
+        public int size() {
+            return fixes.size();
+        }
+    }
+
+    private final Random random;
+    private String provider = "gps";
+
+    public TraceGenerator(long seed) {
+        random = new Random(seed);
+    }
+
+    public TraceGenerator setProvider(String provider) {
+        this.provider = provider;
+        return this;
+    }
+
+    /**
+     * @param latitude start latitude
+     * @param longitude start longitude
+     * @param legs {speed m/s, bearing degrees, duration s} of every leg
+     * @param intervalMillis time between fixes
+     * @param accuracy reported accuracy, noise per axis has standard deviation accuracy / sqrt(2)
+     * @return trace starting at time 0
+     */
+    public Trace generate(double latitude, double longitude, double[][] legs, long intervalMillis, float accuracy) {
+        Trace trace = new Trace();
+        double sigma = accuracy / Math.sqrt(2);
+        double lat = latitude;
+        double lon = longitude;
+        long time = 0;
+        for (double[] leg : legs) {
+            double speed = leg[0];
+            double bearing = Math.toRadians(leg[1]);
+            long legEnd = time + (long) (leg[2] * 1000);
+            while (time < legEnd) {
+                trace.truth.add(new double[] { lat, lon });
+                BackgroundLocation fix = new BackgroundLocation(provider);
+                fix.setTime(time);
+                fix.setLatitude(lat + random.nextGaussian() * sigma / METERS_PER_DEGREE);
+                fix.setLongitude(lon + random.nextGaussian() * sigma / metersPerDegreeLongitude(lat));
+                fix.setAccuracy(accuracy);
+                trace.fixes.add(fix);
+
+                double step = speed * intervalMillis / 1000d;
+                lat += step * Math.cos(bearing) / METERS_PER_DEGREE;
+                lon += step * Math.sin(bearing) / metersPerDegreeLongitude(lat);
+                time += intervalMillis;
+            }
+        }
+        return trace;
+    }
+
+    public Trace stationary(int seconds, float accuracy) {
+        return generate(49.2, 16.6, new double[][] { { 0, 0, seconds } }, 1000, accuracy);
+    }
+
+    public Trace walk(int seconds, float accuracy) {
+        return generate(49.2, 16.6, new double[][] { { 1.4, 90, seconds } }, 1000, accuracy);
+    }
+
+    /**
+     * Blocks with right angle turns, stops at crossings
+     */
+    public Trace city(float accuracy) {
+        List<double[]> legs = new ArrayList<double[]>();
+        for (int i = 0; i < 12; i++) {
+            legs.add(new double[] { 12, (i % 4) * 90 + (i / 4) * 10, 25 });
+            legs.add(new double[] { 0, 0, 10 });
+        }
+        return generate(49.2, 16.6, legs.toArray(new double[legs.size()][]), 1000, accuracy);
+    }
+
+    /**
+     * Long straight segments with gentle curves
+     */
+    public Trace highway(float accuracy) {
+        List<double[]> legs = new ArrayList<double[]>();
+        for (int i = 0; i < 40; i++) {
+            legs.add(new double[] { 33, 45 + 15 * Math.sin(i / 4d), 30 });
+        }
+        return generate(49.2, 16.6, legs.toArray(new double[legs.size()][]), 1000, accuracy);
+    }
+
+    public static double distance(double lat1, double lon1, double lat2, double lon2) {
+        double dLat = Math.toRadians(lat2 - lat1);
+        double dLon = Math.toRadians(lon2 - lon1);
+        double a = Math.sin(dLat / 2) * Math.sin(dLat / 2)
+                + Math.cos(Math.toRadians(lat1)) * Math.cos(Math.toRadians(lat2)) * Math.sin(dLon / 2) * Math.sin(dLon / 2);
+        return 2 * EARTH_RADIUS * Math.asin(Math.sqrt(a));
+    }
+
+    public static double distance(BackgroundLocation location, double[] point) {
+        return distance(location.getLatitude(), location.getLongitude(), point[0], point[1]);
+    }
+
+    private static double metersPerDegreeLongitude(double latitude) {
+        return METERS_PER_DEGREE * Math.cos(Math.toRadians(latitude));
+    }
+}
@@ -0,0 +1,125 @@
+package com.marianhello.cdvbackgroundgeolocation;
+
+import android.test.suitebuilder.annotation.SmallTest;
+
+import com.marianhello.bgloc.data.BackgroundLocation;
+import com.marianhello.bgloc.data.TrackingSession;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+@SmallTest
+public class TrackingSessionTest {
+    // ~111 m per 0.001 degree of latitude
+    private static final double STEP = 0.001;
+
+    private static BackgroundLocation createLocation(long time, double latitude, double longitude) {
+        BackgroundLocation location = new BackgroundLocation("test");
+        location.setTime(time);
+        location.setLatitude(latitude);
+        location.setLongitude(longitude);
+        return location;
+    }
+
+    @Test
+    public void emptySession() {
+        TrackingSession session = new TrackingSession(1000L);
+        Assert.assertEquals(0, session.getPointCount());
+        Assert.assertEquals(0, session.getDuration());
+        Assert.assertEquals(0, session.getAverageSpeed(), 0);
+        Assert.assertNull(session.getMinLatitude());
+    }
+
+    @Test
+    public void accumulateDistanceAndBoundingBox() {
+        TrackingSession session = new TrackingSession(0L);
+        session.addLocation(createLocation(1000L, 49.0, 17.0));
+        session.addLocation(createLocation(11000L, 49.0 + STEP, 17.0));
+        session.addLocation(createLocation(21000L, 49.0 + STEP, 16.99));
+
+        Assert.assertEquals(3, session.getPointCount());
+        Assert.assertEquals(111 + 730, session.getDistance(), 5);
+        Assert.assertEquals(20000, session.getMovingTime());
+        Assert.assertEquals(21000, session.getDuration());
+        Assert.assertEquals(49.0, session.getMinLatitude(), 0);
+        Assert.assertEquals(49.0 + STEP, session.getMaxLatitude(), 0);
+        Assert.assertEquals(16.99, session.getMinLongitude(), 0);
+        Assert.assertEquals(17.0, session.getMaxLongitude(), 0);
+        Assert.assertEquals(session.getDistance() / 20, session.getAverageSpeed(), 1e-9);
+    }
+
+    @Test
+    public void stationarySegmentIsNotMovingTime() {
+        TrackingSession session = new TrackingSession(0L);
+        session.addLocation(createLocation(1000L, 49.0, 17.0));
+        // ~1 m in 60 s
+        session.addLocation(createLocation(61000L, 49.00001, 17.0));
+        session.addLocation(createLocation(71000L, 49.00001 + STEP, 17.0));
+
+        Assert.assertEquals(10000, session.getMovingTime());
+        Assert.assertEquals(112, session.getDistance(), 2);
+    }
+
+    private static BackgroundLocation createLocation(long time, double latitude, double longitude, float accuracy) {
+        BackgroundLocation location = createLocation(time, latitude, longitude);
+        location.setAccuracy(accuracy);
+        return location;
+    }
+
+    @Test
+    public void jitterWithinAccuracyIsNotDistance() {
+        TrackingSession session = new TrackingSession(0L);
+        session.addLocation(createLocation(1000L, 49.0, 17.0, 20));
+        // ~11 m back and forth every 10 s, accuracy 20 m
+        for (int i = 1; i <= 30; i++) {
+            session.addLocation(createLocation(1000L + i * 10000L, 49.0 + (i % 2) * 0.0001, 17.0, 20));
+        }
+
+        Assert.assertEquals(31, session.getPointCount());
+        Assert.assertEquals(0, session.getDistance(), 0);
+        Assert.assertEquals(0, session.getMovingTime());
+        Assert.assertEquals(301000L, session.getDuration());
+        Assert.assertEquals(Long.valueOf(1000L), session.getLastTime());
+        Assert.assertEquals(Long.valueOf(301000L), session.getLastLocationTime());
+    }
+
+    @Test
+    public void segmentWithinAccuracyIsMeasuredFromSameStart() {
+        TrackingSession session = new TrackingSession(0L);
+        session.addLocation(createLocation(1000L, 49.0, 17.0, 15));
+        // ~11 m steps are within accuracy, second one is ~22 m from start
+        session.addLocation(createLocation(11000L, 49.0001, 17.0, 15));
+        session.addLocation(createLocation(21000L, 49.0002, 17.0, 15));
+        session.addLocation(createLocation(31000L, 49.0003, 17.0, 15));
+
+        Assert.assertEquals(22.2, session.getDistance(), 0.5);
+        Assert.assertEquals(20000, session.getMovingTime());
+        Assert.assertEquals(Long.valueOf(21000L), session.getLastTime());
+    }
+
+    @Test
+    public void maxSpeedPrefersReportedSpeed() {
+        TrackingSession session = new TrackingSession(0L);
+        BackgroundLocation location = createLocation(1000L, 49.0, 17.0);
+        location.setSpeed(3);
+        session.addLocation(location);
+        Assert.assertEquals(3, session.getMaxSpeed(), 0);
+
+        // no reported speed, segment speed is used
+        session.addLocation(createLocation(11000L, 49.0 + STEP, 17.0));
+        Assert.assertEquals(11.1, session.getMaxSpeed(), 0.1);
+    }
+
+    @Test
+    public void outOfOrderLocationDoesNotAddDistance() {
+        TrackingSession session = new TrackingSession(0L);
+        session.addLocation(createLocation(11000L, 49.0, 17.0));
+        session.addLocation(createLocation(1000L, 49.0 + STEP, 17.0));
+
+        Assert.assertEquals(2, session.getPointCount());
+        Assert.assertEquals(0, session.getDistance(), 0);
+        Assert.assertEquals(49.0 + STEP, session.getMaxLatitude(), 0);
+        Assert.assertEquals(Long.valueOf(11000L), session.getLastTime());
+    }
+}
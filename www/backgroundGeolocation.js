@@ -175,6 +175,36 @@ var backgroundGeolocation = {
             'getValidLocations', []);
     },
 
+    getLocationsPage: function(options, success, failure) {
+        if (typeof(success) !== 'function') {
+             throw 'BackgroundGeolocation#getLocationsPage requires a success callback';
+        }
+        exec(success,
+            failure || emptyFnc,
+            'BackgroundGeolocation',
+            'getLocationsPage', [options || {}]);
+    },
+
+    streamLocations: function(options, success, failure) {
+        if (typeof(success) !== 'function') {
+             throw 'BackgroundGeolocation#streamLocations requires a success callback';
+        }
+        exec(success,
+            failure || emptyFnc,
+            'BackgroundGeolocation',
+            'streamLocations', [options || {}]);
+    },
+
+    queryLocations: function(options, success, failure) {
+        if (typeof(success) !== 'function') {
+             throw 'BackgroundGeolocation#queryLocations requires a success callback';
+        }
+        exec(success,
+            failure || emptyFnc,
+            'BackgroundGeolocation',
+            'queryLocations', [options || {}]);
+    },
+
     deleteLocation: function(locationId, success, failure) {
         exec(success || emptyFnc,
             failure || emptyFnc,
@@ -195,6 +225,84 @@ var backgroundGeolocation = {
             failure || emptyFnc,
             'BackgroundGeolocation',
             'getLogEntries', [limit]);
+    },
+
+    getSyncStats: function(success, failure) {
+        if (typeof(success) !== 'function') {
+             throw 'BackgroundGeolocation#getSyncStats requires a success callback';
+        }
+        exec(success,
+            failure || emptyFnc,
+            'BackgroundGeolocation',
+            'getSyncStats', []);
+    },
+
+    getCurrentSession: function(success, failure) {
+        if (typeof(success) !== 'function') {
+             throw 'BackgroundGeolocation#getCurrentSession requires a success callback';
+        }
+        exec(success,
+            failure || emptyFnc,
+            'BackgroundGeolocation',
+            'getCurrentSession', []);
+    },
+
+    /**
+     * Add or replace (by id) geofences
+     * @param {Array} geofences [{ id, latitude, longitude, radius, dwellTime }]
+     * @param {Function} success [optional]
+     * @param {Function} failure [optional]
+     */
+    addGeofences: function(geofences, success, failure) {
+        exec(success || emptyFnc,
+            failure || emptyFnc,
+            'BackgroundGeolocation',
+            'addGeofences', [geofences]);
+    },
+
+    /**
+     * @param {Array} ids ids of geofences to remove
+     * @param {Function} success [optional]
+     * @param {Function} failure [optional]
+     */
+    removeGeofences: function(ids, success, failure) {
+        exec(success || emptyFnc,
+            failure || emptyFnc,
+            'BackgroundGeolocation',
+            'removeGeofences', [ids]);
+    },
+
+    removeAllGeofences: function(success, failure) {
+        exec(success || emptyFnc,
+            failure || emptyFnc,
+            'BackgroundGeolocation',
+            'removeAllGeofences', []);
+    },
+
+    getGeofences: function(success, failure) {
+        if (typeof(success) !== 'function') {
+             throw 'BackgroundGeolocation#getGeofences requires a success callback';
+        }
+        exec(success,
+            failure || emptyFnc,
+            'BackgroundGeolocation',
+            'getGeofences', []);
+    },
+
+    /**
+     * Add a geofence transition listener. Your #success callback will be executed with #event param
+     * containing #id of geofence, #transition (ENTER, EXIT, DWELL) and #location which triggered it
+     * @param {Function} success
+     * @param {Function} failure [optional]
+     */
+    onGeofence: function(success, failure) {
+        if (typeof(success) !== 'function') {
+             throw 'BackgroundGeolocation#onGeofence requires a success callback';
+        }
+        exec(success,
+            failure || emptyFnc,
+            'BackgroundGeolocation',
+            'addGeofenceListener', []);
     }
 };
 